@@ -0,0 +1,362 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongConsumer;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Saves a document snapshot without ever exposing a half-written file.
+ * The text is streamed segment by segment through a {@link CharsetEncoder}
+ * into a temporary file next to the target, flushed to disk according to a
+ * {@link Sync} policy, and then renamed over the target in one atomic step.
+ * If anything fails the target is left untouched.
+ *
+ * <p>Given the {@link FileOrigin} of the text, ranges that have not been
+ * edited are copied from the original file with {@code transferTo}, which
+ * the kernel can do without passing the bytes through the JVM, so saving a
+ * small edit to a huge file costs the edit plus a sequential copy.</p>
+ */
+final class AtomicTextWriter {
+
+    /** Size of the direct buffer encoded bytes are collected in before each write. */
+    static final int BUFFER_BYTES = 64 * 1024;
+
+    /** How much durability a save pays for. */
+    enum Sync {
+        /** Leave flushing to the operating system. */
+        NEVER,
+        /** Flush the file contents before the rename. */
+        DATA,
+        /** Flush contents and metadata before the rename, and the directory after it. */
+        ALWAYS;
+
+        /** Parses the {@code file.fsync} setting; anything unknown means ALWAYS. */
+        static Sync fromConfig(String value) {
+            switch (value == null ? "" : value.trim().toLowerCase(Locale.ROOT)) {
+                case "never":
+                case "none":
+                case "false":
+                    return NEVER;
+                case "data":
+                    return DATA;
+                default:
+                    return ALWAYS;
+            }
+        }
+    }
+
+    private AtomicTextWriter() {
+    }
+
+    /**
+     * Writes the text to {@code target}, replacing it atomically.
+     * Characters the charset cannot encode fail the save instead of being
+     * silently replaced.
+     *
+     * @param progress receives the number of characters written so far
+     * @return the number of bytes written
+     */
+    static long write(PieceTableContent.Snapshot text, Path target, Charset charset, Sync sync,
+                      LongConsumer progress) throws IOException {
+        return write(text, target, charset, sync, progress, null, null);
+    }
+
+    /**
+     * Writes the text like {@link #write(PieceTableContent.Snapshot, Path, Charset, Sync, LongConsumer)},
+     * copying every range that is unchanged since {@code source} straight
+     * from its file with {@link FileChannel#transferTo}, so only edited text
+     * is encoded. The source is ignored if its file has changed on disk or
+     * was in another charset.
+     *
+     * @param source where the text was last read from or saved to, may be null
+     * @param layout receives the chunk layout of the new file, may be null
+     */
+    static long write(PieceTableContent.Snapshot text, Path target, Charset charset, Sync sync,
+                      LongConsumer progress, FileOrigin source, FileOrigin.Builder layout) throws IOException {
+        FileOrigin usable = source != null && source.isUsableFor(charset) ? source : null;
+        long[] bytes = new long[1];
+        replace(target, sync, channel -> {
+            try (FileChannel original = usable == null ? null
+                    : FileChannel.open(usable.getPath(), StandardOpenOption.READ)) {
+                Output output = new Output(channel, charset, progress, layout, usable, original);
+                text.forEachPiece(output::piece);
+                bytes[0] = output.finish();
+            }
+        });
+        return bytes[0];
+    }
+
+    /** Writes the contents of a new file; see {@link #replace}. */
+    interface Body {
+        /** Writes everything to {@code channel}, which must be left open. */
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Replaces {@code target} atomically with whatever {@code body} writes,
+     * for savers that produce their own bytes, such as the RTF and ODT
+     * writers. The file is written next to the target, flushed according
+     * to {@code sync} and renamed over it, so the target is either the old
+     * file or the complete new one.
+     */
+    static void replace(Path target, Sync sync, Body body) throws IOException {
+        if (Files.isSymbolicLink(target)) {
+            target = target.toRealPath();
+        }
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp = createTemp(directory, target);
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                body.writeTo(channel);
+                if (sync != Sync.NEVER) {
+                    channel.force(sync == Sync.ALWAYS);
+                }
+            }
+            copyPermissions(target, temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            if (sync == Sync.ALWAYS) {
+                syncDirectory(directory);
+            }
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /** Encodes or copies the pieces of the text into the temporary file in order. */
+    private static final class Output {
+
+        /** Characters encoded between layout records. */
+        private static final int SLICE_CHARS = 64 * 1024;
+
+        /** Fewest characters between two layout records. */
+        private static final int MIN_RECORD_CHARS = 4 * 1024;
+
+        private final FileChannel channel;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        // Holds a high surrogate left at the end of one piece until its pair arrives
+        private final CharBuffer carry = CharBuffer.allocate(2);
+        private final LongConsumer progress;
+        private final FileOrigin.Builder layout;
+        private final FileOrigin source;
+        private final FileChannel original;
+        private final int[] run = new int[1];
+
+        private long bytes;
+        private long chars;
+        private long recorded;
+        // Byte range of the original file waiting to be transferred
+        private long copyFrom;
+        private long copyTo;
+
+        Output(FileChannel channel, Charset charset, LongConsumer progress, FileOrigin.Builder layout,
+               FileOrigin source, FileChannel original) {
+            this.channel = channel;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            this.progress = progress;
+            this.layout = layout;
+            this.source = source;
+            this.original = original;
+        }
+
+        void piece(char[] buffer, int start, int length) throws IOException {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Save interrupted");
+            }
+            int pos = start;
+            int end = start + length;
+            while (pos < end) {
+                int origin = source == null ? -1 : source.find(buffer, pos, run);
+                if (origin < 0) {
+                    encode(buffer, pos, end - pos);
+                    return;
+                }
+                int count = Math.min(run[0], end - pos);
+                // Surrogate pairs cut by an edit are encoded, never half copied
+                int head = Character.isLowSurrogate(buffer[pos]) ? 1 : 0;
+                int tail = count > head && Character.isHighSurrogate(buffer[pos + count - 1]) ? 1 : 0;
+                if (count - head - tail <= 0) {
+                    encode(buffer, pos, count);
+                } else {
+                    encode(buffer, pos, head);
+                    copy(origin + head, count - head - tail);
+                    encode(buffer, pos + count - tail, tail);
+                }
+                pos += count;
+            }
+        }
+
+        private void encode(char[] buffer, int start, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            flushCopy();
+            for (int pos = start, end = start + length; pos < end; ) {
+                int slice = Math.min(SLICE_CHARS, end - pos);
+                CharBuffer in = CharBuffer.wrap(buffer, pos, slice);
+                if (carry.position() > 0) {
+                    carry.put(in.get()).flip();
+                    encode(carry, false);
+                    carry.clear();
+                }
+                encode(in, false);
+                if (in.hasRemaining()) {
+                    carry.put(in.get());
+                }
+                pos += slice;
+                advance(slice);
+            }
+        }
+
+        private void copy(int origin, int length) throws IOException {
+            long from;
+            long to;
+            try {
+                from = source.byteOffset(origin);
+                to = source.byteOffset(origin + length);
+            } catch (BadLocationException e) {
+                throw new IOException("Original text is out of range", e);
+            }
+            if (carry.position() > 0) {
+                // A high surrogate with no pair; let the encoder report it
+                carry.flip();
+                encode(carry, true);
+            }
+            if (from != copyTo) {
+                flushCopy();
+                copyFrom = from;
+            }
+            copyTo = to;
+            advance(length);
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyTo > copyFrom) {
+                bytes += drain();
+                for (long position = copyFrom; position < copyTo; ) {
+                    long transferred = original.transferTo(position, copyTo - position, channel);
+                    if (transferred <= 0) {
+                        throw new IOException("Original file ended early: " + source.getPath());
+                    }
+                    position += transferred;
+                }
+                bytes += copyTo - copyFrom;
+            }
+            copyFrom = 0;
+            copyTo = 0;
+        }
+
+        private void advance(int length) {
+            chars += length;
+            progress.accept(chars);
+            if (layout != null && carry.position() == 0 && chars - recorded >= MIN_RECORD_CHARS) {
+                layout.chunk(chars, bytes + out.position() + copyTo - copyFrom);
+                recorded = chars;
+            }
+        }
+
+        long finish() throws IOException {
+            flushCopy();
+            carry.flip();
+            encode(carry, true);
+            while (encoder.flush(out).isOverflow()) {
+                bytes += drain();
+            }
+            bytes += drain();
+            if (layout != null) {
+                layout.chunk(chars, bytes);
+            }
+            return bytes;
+        }
+
+        /** Encodes as much of {@code in} as possible, writing out full buffers. */
+        private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+            while (true) {
+                CoderResult result = encoder.encode(in, out, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (!result.isOverflow()) {
+                    return;
+                }
+                bytes += drain();
+            }
+        }
+
+        private long drain() throws IOException {
+            out.flip();
+            long drained = out.remaining();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+            return drained;
+        }
+    }
+
+    /**
+     * Creates the empty temporary file next to {@code target}. Unlike
+     * {@code Files.createTempFile}, which makes it readable by the owner
+     * only, this gives it the permissions of any new file, so saving to a
+     * new name does not leave an owner-only file behind.
+     */
+    private static Path createTemp(Path directory, Path target) throws IOException {
+        String prefix = "." + target.getFileName() + ".";
+        while (true) {
+            String unique = Long.toUnsignedString(ThreadLocalRandom.current().nextLong());
+            Path temp = directory.resolve(prefix + unique + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // Taken; try another name
+            }
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            if (Files.exists(from, LinkOption.NOFOLLOW_LINKS)) {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            }
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not a POSIX file system; the new file keeps default permissions
+        }
+    }
+
+    /** Makes the rename itself durable; not every platform can open a directory. */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort only
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.massey.texteditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Converts every text, source, RTF and ODT file under a directory to PDF
+ * without opening a window, for batch jobs and containers running with
+ * {@code java.awt.headless=true}. Files are converted in parallel on a
+ * fixed pool, and the output tree mirrors the input tree, with ".pdf"
+ * added to each file name.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp text-editor.jar com.massey.texteditor.BatchConverter \
+ *      [--threads N] [--encoding NAME] [--font-size N] INPUT_DIR OUTPUT_DIR
+ * </pre>
+ *
+ * <p>At the end it prints throughput in files and megabytes per second and
+ * the 50th, 90th and 99th percentile time per file.</p>
+ */
+public final class BatchConverter {
+
+    /** Extensions converted: the editor's text files plus RTF and ODT. */
+    static final Set<String> EXTENSIONS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("txt", "java", "py", "js", "cpp", "c", "rtf", "odt")));
+
+    private static final float FONT_SIZE = 12;
+
+    private final int threads;
+    private final Charset charset;
+    private final float fontSize;
+
+    BatchConverter(int threads, Charset charset, float fontSize) {
+        this.threads = threads;
+        this.charset = charset;
+        this.fontSize = fontSize;
+    }
+
+    /** Times and sizes of one batch, and the files that failed. */
+    static final class Report {
+        private final List<Long> latencies = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+        private long bytes;
+        private long elapsedNanos;
+
+        synchronized void converted(long size, long nanos) {
+            bytes += size;
+            latencies.add(nanos);
+        }
+
+        synchronized void failed(Path file, Exception e) {
+            failures.add(file + ": " + e.getMessage());
+        }
+
+        synchronized int converted() {
+            return latencies.size();
+        }
+
+        synchronized List<String> failures() {
+            return new ArrayList<>(failures);
+        }
+
+        /** Time per file at a percentile from 0 to 100, in nanoseconds, or 0 if nothing was converted. */
+        synchronized long percentile(double percent) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            // Nearest rank
+            int rank = (int) Math.ceil(percent / 100 * sorted.size());
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+        }
+
+        synchronized String format() {
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            return String.format(Locale.ROOT,
+                    "Converted %d files (%.1f MB) in %.2f s, %d failed%n"
+                    + "Throughput: %.1f files/s, %.1f MB/s%n"
+                    + "Time per file: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    latencies.size(), bytes / 1e6, seconds, failures.size(),
+                    latencies.size() / seconds, bytes / 1e6 / seconds,
+                    percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(100) / 1e6);
+        }
+    }
+
+    /**
+     * Converts the files under {@code input} into {@code output}. A file
+     * that cannot be converted is recorded in the report and the rest
+     * carry on.
+     */
+    Report convert(Path input, Path output) throws IOException, InterruptedException {
+        Report report = new Report();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore queued = new Semaphore(threads * 4);
+        long start = System.nanoTime();
+        try {
+            List<InterruptedException> interrupted = new ArrayList<>();
+            Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (!attributes.isRegularFile() || extension(file) == null) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Path target = output.resolve(input.relativize(file).toString() + ".pdf");
+                    try {
+                        queued.acquire();
+                    } catch (InterruptedException e) {
+                        interrupted.add(e);
+                        return FileVisitResult.TERMINATE;
+                    }
+                    pool.execute(() -> {
+                        try {
+                            long begin = System.nanoTime();
+                            convertFile(file, target);
+                            report.converted(attributes.size(), System.nanoTime() - begin);
+                        } catch (Exception e) {
+                            report.failed(file, e);
+                        } finally {
+                            queued.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    report.failed(file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            // Wait for the conversions still running
+            queued.acquire(threads * 4);
+            if (!interrupted.isEmpty()) {
+                throw interrupted.get(0);
+            }
+        } finally {
+            pool.shutdownNow();
+            report.elapsedNanos = System.nanoTime() - start;
+        }
+        return report;
+    }
+
+    /** Converts one file, streaming its plain text straight into the PDF. */
+    void convertFile(Path file, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        String extension = extension(file);
+        try (PdfExporter exporter = new PdfExporter(PDType1Font.HELVETICA, fontSize)) {
+            if ("rtf".equals(extension)) {
+                // The PDF is plain text anyway, so the styling is never parsed
+                TextImporter.readRtfText(file.toFile(), (chars, length) -> exporter.append(chars, 0, length),
+                                         percent -> { });
+            } else if ("odt".equals(extension)) {
+                TextImporter.readOdt(file.toFile(), (chars, length) -> exporter.append(chars, 0, length),
+                                     percent -> { });
+            } else {
+                MappedTextReader.read(file, charset, (chars, length) -> exporter.append(chars, 0, length));
+            }
+            exporter.save(target.toFile());
+        }
+    }
+
+    /** The lower-case extension if the file is one to convert, otherwise null. */
+    static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String extension = dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        return EXTENSIONS.contains(extension) ? extension : null;
+    }
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /** The value following the option at {@code args[i]}. */
+    private static String value(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i]);
+        }
+        return args[i + 1];
+    }
+
+    /** Runs the command line and returns the exit status: 0, 1 if any file failed, 2 for bad usage. */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Charset charset = StandardCharsets.UTF_8;
+        float fontSize = FONT_SIZE;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, i++));
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("--threads must be at least 1");
+                        }
+                        break;
+                    case "--encoding":
+                        charset = Charset.forName(value(args, i++));
+                        break;
+                    case "--font-size":
+                        fontSize = Float.parseFloat(value(args, i++));
+                        break;
+                    default:
+                        paths.add(args[i]);
+                }
+            }
+            if (paths.size() != 2) {
+                throw new IllegalArgumentException("Expected an input and an output directory");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println("Usage: BatchConverter [--threads N] [--encoding NAME] [--font-size N] INPUT_DIR OUTPUT_DIR");
+            return 2;
+        }
+
+        Path input = new File(paths.get(0)).toPath();
+        Path output = new File(paths.get(1)).toPath();
+        if (!Files.isDirectory(input)) {
+            err.println("Not a directory: " + input);
+            return 2;
+        }
+        try {
+            Report report = new BatchConverter(threads, charset, fontSize).convert(input, output);
+            for (String failure : report.failures()) {
+                err.println("Failed: " + failure);
+            }
+            out.println(report.format());
+            return report.failures().isEmpty() ? 0 : 1;
+        } catch (IOException | InterruptedException e) {
+            err.println("Batch conversion failed: " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.massey.texteditor;
+
+/**
+ * Lexer for C and C++ sources: // and block comments and preprocessor directives.
+ */
+class CppLexer extends SyntaxLexer {
+
+    static final String[] KEYWORDS = {
+        "alignas", "alignof", "and", "and_eq", "asm", "auto", "bitand", "bitor", "bool", "break",
+        "case", "catch", "char", "char16_t", "char32_t", "class", "compl", "const", "constexpr",
+        "const_cast", "continue", "decltype", "default", "delete", "do", "double", "dynamic_cast",
+        "else", "enum", "explicit", "export", "extern", "false", "float", "for", "friend", "goto",
+        "if", "inline", "int", "long", "mutable", "namespace", "new", "noexcept", "not", "not_eq",
+        "nullptr", "operator", "or", "or_eq", "private", "protected", "public", "register",
+        "reinterpret_cast", "return", "short", "signed", "sizeof", "static", "static_assert",
+        "static_cast", "struct", "switch", "template", "this", "thread_local", "throw", "true",
+        "try", "typedef", "typeid", "typename", "union", "unsigned", "using", "virtual", "void",
+        "volatile", "wchar_t", "while", "xor", "xor_eq"
+    };
+
+    private static final KeywordTable TABLE = new KeywordTable(KEYWORDS);
+
+    CppLexer() {
+        super(TABLE, SLASH_COMMENTS | PREPROCESSOR);
+    }
+}
@@ -0,0 +1,110 @@
+package com.massey.texteditor;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Read-only {@link CharSequence} view of a document range that reads through
+ * partial-return {@link Segment}s, so scanners and regex matchers can walk the
+ * text without copying it into a String first.
+ * The view is not thread-safe and assumes the document does not change while
+ * it is in use, so use it on the EDT or under the document read lock. A view
+ * of a {@link PieceTableContent.Snapshot} never changes and may be used on
+ * any thread, one view per thread.
+ */
+final class DocumentCharSequence implements CharSequence {
+
+    /** Characters fetched before the requested index so short backward scans stay in the window. */
+    private static final int BACKTRACK = 64;
+
+    /** Anything that fills a segment the way {@link Document#getText(int, int, Segment)} does. */
+    private interface Source {
+        void getText(int offset, int length, Segment txt) throws BadLocationException;
+    }
+
+    private final Source source;
+    private final int start;
+    private final int end;
+    private final Segment segment = new Segment();
+    private int windowStart;
+    private int windowEnd;
+
+    DocumentCharSequence(Document document) {
+        this(document, 0, document.getLength());
+    }
+
+    DocumentCharSequence(Document document, int start, int end) {
+        this(document::getText, start, end);
+    }
+
+    DocumentCharSequence(PieceTableContent.Snapshot snapshot) {
+        this(snapshot, 0, snapshot.length());
+    }
+
+    DocumentCharSequence(PieceTableContent.Snapshot snapshot, int start, int end) {
+        this(snapshot::getChars, start, end);
+    }
+
+    private DocumentCharSequence(Source source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        segment.setPartialReturn(true);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside 0.." + (end - start));
+        }
+        int offset = start + index;
+        if (offset < windowStart || offset >= windowEnd) {
+            fill(offset);
+        }
+        return segment.array[segment.offset + offset - windowStart];
+    }
+
+    private void fill(int offset) {
+        int from = Math.max(start, offset - BACKTRACK);
+        try {
+            do {
+                source.getText(from, end - from, segment);
+                windowStart = from;
+                windowEnd = from + segment.count;
+                from = windowEnd;
+            } while (windowEnd <= offset);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > end - start || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + ".." + to + " outside 0.." + (end - start));
+        }
+        return new DocumentCharSequence(source, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(end - start);
+        Segment part = new Segment();
+        part.setPartialReturn(true);
+        try {
+            for (int offset = start; offset < end; offset += part.count) {
+                source.getText(offset, end - offset, part);
+                text.append(part.array, part.offset, part.count);
+            }
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,299 @@
+package com.massey.texteditor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+
+/**
+ * Word, character and line counts of the document in a text component,
+ * kept current as it is edited. A word is a run of characters that are not
+ * whitespace, so the words are counted by counting the places where such a
+ * run starts, each of which depends only on a character and the one before
+ * it. An edit can therefore only change whether a word starts inside it or
+ * just after it, and each edit recounts exactly that stretch, once in the
+ * snapshot from before the edit and once in the document, so the cost is
+ * the size of the edit rather than of the document.
+ *
+ * <p>A new document is counted once on the common {@link ForkJoinPool}, in
+ * chunks of {@link #CHUNK_CHARS}. Edits made meanwhile are counted as
+ * differences and added when that count arrives; until then
+ * {@link #isCounted()} is false.</p>
+ *
+ * <p>Only {@link EditorDocument}s are counted, since the text before an
+ * edit is read from their snapshots. The listener and the counts belong to
+ * the EDT.</p>
+ */
+final class DocumentStatistics implements DocumentListener {
+
+    /** Characters counted by one task of the first count. */
+    static final int CHUNK_CHARS = 1 << 20;
+
+    /** Words and line breaks in some text. */
+    static final class Counts {
+        final long words;
+        final long lineBreaks;
+
+        Counts(long words, long lineBreaks) {
+            this.words = words;
+            this.lineBreaks = lineBreaks;
+        }
+
+        Counts plus(Counts other) {
+            return new Counts(words + other.words, lineBreaks + other.lineBreaks);
+        }
+    }
+
+    private final JTextComponent editor;
+    private final Runnable changed;
+    private EditorDocument document;
+    private PieceTableContent.Snapshot previous;
+    // Counted so far; only the changes since previous was first taken until the first count arrives
+    private long words;
+    private long lineBreaks;
+    private boolean counted;
+    private boolean suspended;
+    // Told apart the first counts of successive documents
+    private int generation;
+    // The stretch last asked about by selectionWords, and its words once counted or -1
+    private int selectionFrom = -1;
+    private int selectionTo = -1;
+    private long selectionWords = -1;
+    // Told apart the counts of successive selections; an edit makes a running one stale too
+    private int selectionGeneration;
+
+    /**
+     * @param changed called on the EDT whenever the counts change
+     */
+    DocumentStatistics(JTextComponent editor, Runnable changed) {
+        this.editor = editor;
+        this.changed = changed;
+        editor.addPropertyChangeListener("document", e -> attach());
+        attach();
+    }
+
+    /** Whether the first count of the document has finished. */
+    boolean isCounted() {
+        return counted;
+    }
+
+    long words() {
+        return words;
+    }
+
+    long characters() {
+        return document == null ? 0 : document.getLength();
+    }
+
+    /** Number of lines; a document without line breaks has one. */
+    long lines() {
+        return lineBreaks + 1;
+    }
+
+    /**
+     * Ignores edits while {@code suspended}, for a document being filled in
+     * bulk, and counts the whole document again, in parallel, when resumed.
+     */
+    void setSuspended(boolean suspended) {
+        boolean resumed = this.suspended && !suspended;
+        this.suspended = suspended;
+        if (suspended) {
+            counted = false;
+        } else if (resumed) {
+            attach();
+        }
+    }
+
+    /**
+     * Counts the words and line breaks in {@code [from, to)} of a snapshot,
+     * as if that stretch were all the text; a word cut by {@code from} still
+     * counts. Long stretches are counted on the common pool.
+     */
+    static Counts count(PieceTableContent.Snapshot text, int from, int to) {
+        if (to - from <= CHUNK_CHARS) {
+            return scan(text, from, from, to);
+        }
+        return ForkJoinPool.commonPool().invoke(new CountTask(text, from, from, to));
+    }
+
+    /**
+     * Words in {@code [from, to)} of the document, or -1 while they are
+     * being counted. A stretch of up to {@link #CHUNK_CHARS} is counted at
+     * once; a longer one is counted on the common pool, so dragging out a
+     * selection over a huge document never waits for it, and the listener
+     * is told when the count arrives. Asking about the same stretch again
+     * costs nothing until the document changes.
+     */
+    long selectionWords(int from, int to) {
+        if (document == null) {
+            return 0;
+        }
+        if (from == selectionFrom && to == selectionTo) {
+            return selectionWords;
+        }
+        int counting = ++selectionGeneration;
+        selectionFrom = from;
+        selectionTo = to;
+        selectionWords = -1;
+        PieceTableContent.Snapshot text = document.snapshot();
+        if (to - from <= CHUNK_CHARS) {
+            selectionWords = scan(text, from, from, to).words;
+            return selectionWords;
+        }
+        ForkJoinPool.commonPool().execute(() -> {
+            Counts total = new CountTask(text, from, from, to).invoke();
+            SwingUtilities.invokeLater(() -> {
+                if (selectionGeneration == counting) {
+                    selectionWords = total.words;
+                    changed.run();
+                }
+            });
+        });
+        return -1;
+    }
+
+    private void forgetSelection() {
+        selectionGeneration++;
+        selectionFrom = -1;
+        selectionTo = -1;
+        selectionWords = -1;
+    }
+
+    private void attach() {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        int counting = ++generation;
+        forgetSelection();
+        words = 0;
+        lineBreaks = 0;
+        counted = false;
+        changed.run();
+        Document next = editor.getDocument();
+        if (!(next instanceof EditorDocument)) {
+            document = null;
+            previous = null;
+            return;
+        }
+        document = (EditorDocument) next;
+        document.addDocumentListener(this);
+        previous = document.snapshot();
+        PieceTableContent.Snapshot text = previous;
+        ForkJoinPool.commonPool().execute(() -> {
+            Counts total = new CountTask(text, 0, 0, text.length()).invoke();
+            SwingUtilities.invokeLater(() -> {
+                if (generation == counting && !suspended) {
+                    words += total.words;
+                    lineBreaks += total.lineBreaks;
+                    counted = true;
+                    changed.run();
+                }
+            });
+        });
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        edited(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        edited(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attributes do not change the counts
+    }
+
+    /**
+     * Replaces the counts of the edited stretch, and of the character after
+     * it whose predecessor changed, with their counts after the edit.
+     */
+    private void edited(int offset, int removed, int inserted) {
+        forgetSelection();
+        if (suspended) {
+            return;
+        }
+        PieceTableContent.Snapshot now = document.snapshot();
+        Counts before = scan(previous, 0, offset, Math.min(previous.length(), offset + removed + 1));
+        Counts after = scan(now, 0, offset, Math.min(now.length(), offset + inserted + 1));
+        words += after.words - before.words;
+        lineBreaks += after.lineBreaks - before.lineBreaks;
+        previous = now;
+        changed.run();
+    }
+
+    /**
+     * Counts {@code [from, to)}, looking at the character before {@code from}
+     * to see whether a word starts there unless {@code from} is the
+     * {@code origin} of the text being counted.
+     */
+    private static Counts scan(PieceTableContent.Snapshot text, int origin, int from, int to) {
+        long words = 0;
+        long lineBreaks = 0;
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        try {
+            boolean space = true;
+            if (from > origin) {
+                text.getChars(from - 1, 1, segment);
+                space = Character.isWhitespace(segment.array[segment.offset]);
+            }
+            for (int offset = from; offset < to; ) {
+                text.getChars(offset, to - offset, segment);
+                char[] chars = segment.array;
+                for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                    char c = chars[i];
+                    boolean blank = Character.isWhitespace(c);
+                    if (space && !blank) {
+                        words++;
+                    }
+                    if (c == '\n') {
+                        lineBreaks++;
+                    }
+                    space = blank;
+                }
+                offset += segment.count;
+            }
+        } catch (BadLocationException e) {
+            // Callers stay inside the snapshot
+        }
+        return new Counts(words, lineBreaks);
+    }
+
+    /** Counts a stretch by halves until they are no longer than {@link #CHUNK_CHARS}. */
+    private static final class CountTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient PieceTableContent.Snapshot text;
+        private final int origin;
+        private final int from;
+        private final int to;
+
+        CountTask(PieceTableContent.Snapshot text, int origin, int from, int to) {
+            this.text = text;
+            this.origin = origin;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from <= CHUNK_CHARS) {
+                return scan(text, origin, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask second = new CountTask(text, origin, middle, to);
+            second.fork();
+            Counts first = new CountTask(text, origin, from, middle).compute();
+            return first.plus(second.join());
+        }
+    }
+}
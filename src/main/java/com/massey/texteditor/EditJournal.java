@@ -0,0 +1,566 @@
+package com.massey.texteditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Append-only record of the edits made to a document since it was last
+ * opened or saved, from which they can be recovered if the editor dies
+ * before they are saved. Each insert or removal becomes a small binary
+ * record with its own CRC, collected on the EDT and appended to the
+ * journal file in batches by a single background writer, so autosave
+ * costs as much as the edits rather than a rewrite of the whole file.
+ *
+ * <p>A journal starts from a base: the plain text file the document was
+ * read from or saved to, decoded as {@link MappedTextReader} would, or an
+ * empty document, or a snapshot record holding the whole text, used when
+ * the document did not come from a plain text file. Once the journal
+ * grows past twice the document, and at least {@link #COMPACT_BYTES}, it
+ * is rewritten as a single snapshot, which keeps the cost of compacting
+ * in proportion to the edits that made it necessary.</p>
+ *
+ * <p>A live journal holds a lock on a file beside it, so
+ * {@link #abandoned} lists only the journals of sessions that ended
+ * without cleaning up. {@link #recover} replays one of them, stopping
+ * quietly at a record cut short by the crash.</p>
+ */
+final class EditJournal {
+
+    /** File name suffix of journals. */
+    static final String SUFFIX = ".journal";
+
+    /** Smallest journal that is compacted into a snapshot. */
+    static final long COMPACT_BYTES = 4L << 20;
+
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final int MAGIC = 0x54454A31;
+    private static final int SNAPSHOT_CHUNK_CHARS = 64 * 1024;
+    private static final byte INSERT = 'I';
+    private static final byte REMOVE = 'R';
+    private static final byte SNAPSHOT = 'S';
+
+    /** Writes every journal, in the order the EDT asked. */
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "edit-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** What a journal recovers to. */
+    static final class Recovery {
+        /** Name of the document when the journal was written. */
+        final String name;
+        /** The file the edits apply to, or null if the journal holds the whole text. */
+        final Path base;
+        final EditorDocument document;
+        /** False if the last records were cut short and have been left out. */
+        final boolean complete;
+
+        Recovery(String name, Path base, EditorDocument document, boolean complete) {
+            this.name = name;
+            this.base = base;
+            this.document = document;
+            this.complete = complete;
+        }
+    }
+
+    private interface WriterTask {
+        void run() throws IOException;
+    }
+
+    private final Path file;
+    private final String name;
+    private final Path base;
+    private final long baseSize;
+    private final long baseModified;
+    private final Charset charset;
+    private final AtomicTextWriter.Sync sync;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    // Records not yet handed to the writer, and scratch space for the next one; EDT only
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private long journalBytes;
+    private boolean discarded;
+
+    // Writer thread only
+    private FileChannel channel;
+    private volatile IOException failure;
+
+    private EditJournal(Path file, String name, Path base, Charset charset, AtomicTextWriter.Sync sync)
+            throws IOException {
+        this.file = file;
+        this.name = name;
+        this.base = base;
+        this.baseSize = base == null ? -1 : Files.size(base);
+        this.baseModified = base == null ? -1 : Files.getLastModifiedTime(base).toMillis();
+        this.charset = charset;
+        this.sync = sync;
+        this.lockChannel = FileChannel.open(lockFile(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock locked = null;
+        try {
+            locked = lockChannel.tryLock();
+        } finally {
+            if (locked == null) {
+                lockChannel.close();
+            }
+        }
+        this.lock = locked;
+    }
+
+    /**
+     * Starts a journal in {@code directory}. The header, and the snapshot
+     * if there is one, are written in the background.
+     *
+     * @param name    names the document when offering to recover it
+     * @param base    the plain text file the document holds unchanged, or
+     *                null if it is empty or {@code initial} is given
+     * @param initial text to start from instead of a base, may be null
+     */
+    static EditJournal open(Path directory, String name, Path base, Charset charset, AtomicTextWriter.Sync sync,
+                            PieceTableContent.Snapshot initial) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "edits-", SUFFIX);
+        EditJournal journal;
+        try {
+            journal = new EditJournal(file, name, initial == null ? base : null, charset, sync);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        journal.journalBytes = initial == null ? 0 : initial.length();
+        journal.submit(() -> journal.rewrite(initial));
+        return journal;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /** The first error the writer ran into, or null; the journal is of no use after one. */
+    IOException getFailure() {
+        return failure;
+    }
+
+    /** Records text inserted at {@code offset}. */
+    void inserted(int offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try {
+            recordOut.writeByte(INSERT);
+            recordOut.writeInt(offset);
+            recordOut.writeInt(text.length());
+            recordOut.writeInt(bytes.length);
+            recordOut.write(bytes);
+        } catch (IOException e) {
+            // Writing to memory cannot fail
+        }
+        endRecord();
+    }
+
+    /** Records {@code length} characters removed at {@code offset}. */
+    void removed(int offset, int length) {
+        try {
+            recordOut.writeByte(REMOVE);
+            recordOut.writeInt(offset);
+            recordOut.writeInt(length);
+        } catch (IOException e) {
+            // Writing to memory cannot fail
+        }
+        endRecord();
+    }
+
+    /** Number of bytes recorded but not yet handed to the writer. */
+    int pendingBytes() {
+        return pending.size();
+    }
+
+    /**
+     * Hands the records so far to the writer, or, if the journal has grown
+     * large, has it rewritten as a snapshot of {@code current}, which must
+     * hold every edit recorded so far.
+     */
+    void flush(PieceTableContent.Snapshot current) {
+        if (discarded || pending.size() == 0) {
+            return;
+        }
+        long length = current.length();
+        if (journalBytes + pending.size() > Math.max(COMPACT_BYTES, 2 * length)) {
+            pending = new ByteArrayOutputStream();
+            journalBytes = length;
+            submit(() -> rewrite(current));
+            return;
+        }
+        byte[] batch = pending.toByteArray();
+        pending = new ByteArrayOutputStream();
+        journalBytes += batch.length;
+        submit(() -> append(batch));
+    }
+
+    /** Deletes the journal once the writer is done with it; the edits no longer need recovering. */
+    void discard() {
+        if (discarded) {
+            return;
+        }
+        discarded = true;
+        pending = new ByteArrayOutputStream();
+        WRITER.execute(() -> {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                delete(file);
+            } catch (IOException e) {
+                // Left behind, it is offered for recovery next time
+            } finally {
+                try {
+                    if (lock != null) {
+                        lock.release();
+                    }
+                    lockChannel.close();
+                } catch (IOException e) {
+                    // Closing the channel releases the lock anyway
+                }
+                try {
+                    Files.deleteIfExists(lockFile(file));
+                } catch (IOException e) {
+                    // An unlocked lock file does not hide a journal
+                }
+            }
+        });
+    }
+
+    /** Waits a few seconds at most for every journal write asked for so far, before exiting. */
+    static void drain() {
+        try {
+            WRITER.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Exit anyway; a journal left behind is only offered for recovery
+        }
+    }
+
+    /**
+     * Lists the journals in {@code directory} that no running editor holds,
+     * newest first.
+     */
+    static List<Path> abandoned(Path directory) throws IOException {
+        List<Path> journals = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return journals;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path journal : entries) {
+                if (!isLocked(journal)) {
+                    journals.add(journal);
+                }
+            }
+        }
+        journals.sort(Comparator.comparing((Path journal) -> {
+            try {
+                return Files.getLastModifiedTime(journal).toMillis();
+            } catch (IOException e) {
+                return 0L;
+            }
+        }).reversed());
+        return journals;
+    }
+
+    /** Reads the name of the document a journal was written for. */
+    static String nameOf(Path journal) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+            readMagic(in, journal);
+            return in.readUTF();
+        } catch (EOFException e) {
+            throw new IOException(journal.getFileName() + " is empty", e);
+        }
+    }
+
+    /** Deletes a journal and its lock file. */
+    static void delete(Path journal) throws IOException {
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(lockFile(journal));
+    }
+
+    /**
+     * Rebuilds the document a journal was written for: its base file, read
+     * as plain text, with every complete record applied in order.
+     *
+     * @throws IOException if the journal cannot be read, or the base file
+     *         is gone or has changed since the journal was started
+     */
+    static Recovery recover(Path journal) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (InputStream file = Files.newInputStream(journal);
+             CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 64 * 1024),
+                                                                 checksum)) {
+            DataInputStream in = new DataInputStream(checked);
+            String name;
+            Path base;
+            long baseSize;
+            long baseModified;
+            Charset charset;
+            try {
+                readMagic(in, journal);
+                name = in.readUTF();
+                String basePath = in.readUTF();
+                base = basePath.isEmpty() ? null : Path.of(basePath);
+                baseSize = in.readLong();
+                baseModified = in.readLong();
+                charset = Charset.forName(in.readUTF());
+            } catch (EOFException e) {
+                throw new IOException(journal.getFileName() + " ends before its header", e);
+            }
+
+            EditorDocument document = new EditorDocument();
+            boolean based = base == null;
+            boolean complete = true;
+            try {
+                while (true) {
+                    checksum.reset();
+                    int type = in.read();
+                    if (type < 0) {
+                        break;
+                    }
+                    int offset = 0;
+                    int length = 0;
+                    String text = null;
+                    EditorDocument snapshot = null;
+                    if (type == INSERT) {
+                        offset = in.readInt();
+                        length = in.readInt();
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        text = new String(bytes, StandardCharsets.UTF_8);
+                    } else if (type == REMOVE) {
+                        offset = in.readInt();
+                        length = in.readInt();
+                    } else if (type == SNAPSHOT) {
+                        snapshot = readSnapshot(in);
+                    } else {
+                        complete = false;
+                        break;
+                    }
+                    int expected = (int) checksum.getValue();
+                    if (in.readInt() != expected || (text != null && text.length() != length)) {
+                        // Written over by the crash; nothing after it can be trusted
+                        complete = false;
+                        break;
+                    }
+                    if (snapshot != null) {
+                        document = snapshot;
+                        based = true;
+                        continue;
+                    }
+                    if (!based) {
+                        readBase(document, base, baseSize, baseModified, charset, name);
+                        based = true;
+                    }
+                    if (text != null) {
+                        document.insertString(offset, text, null);
+                    } else {
+                        document.remove(offset, length);
+                    }
+                }
+            } catch (EOFException e) {
+                complete = false;
+            } catch (BadLocationException e) {
+                throw new IOException("The edits to " + name + " do not fit its saved text", e);
+            }
+            if (!based) {
+                readBase(document, base, baseSize, baseModified, charset, name);
+            }
+            return new Recovery(name, base, document, complete);
+        }
+    }
+
+    private void endRecord() {
+        crc.reset();
+        crc.update(record.toByteArray(), 0, record.size());
+        try {
+            recordOut.writeInt((int) crc.getValue());
+            record.writeTo(pending);
+        } catch (IOException e) {
+            // Writing to memory cannot fail
+        }
+        record.reset();
+    }
+
+    private void submit(WriterTask task) {
+        WRITER.execute(() -> {
+            if (failure != null) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (IOException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /** Replaces the journal with a header and, if there is one, a snapshot. */
+    private void rewrite(PieceTableContent.Snapshot text) throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        AtomicTextWriter.replace(file, sync, target -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(target), AtomicTextWriter.BUFFER_BYTES));
+            out.writeInt(MAGIC);
+            out.writeUTF(name);
+            out.writeUTF(base == null ? "" : base.toAbsolutePath().toString());
+            out.writeLong(baseSize);
+            out.writeLong(baseModified);
+            out.writeUTF(charset.name());
+            if (text != null) {
+                writeSnapshot(out, text);
+            }
+            out.flush();
+        });
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void append(byte[] batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync != AtomicTextWriter.Sync.NEVER) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * A snapshot record: the character count, then chunks of characters
+     * each with its own character and byte counts, then the CRC of it all.
+     */
+    private static void writeSnapshot(DataOutputStream out, PieceTableContent.Snapshot text) throws IOException {
+        CRC32 checksum = new CRC32();
+        DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, checksum));
+        checked.writeByte(SNAPSHOT);
+        int length = text.length();
+        checked.writeInt(length);
+        try {
+            for (int offset = 0; offset < length; ) {
+                int count = Math.min(SNAPSHOT_CHUNK_CHARS, length - offset);
+                String chunk = text.getString(offset, count);
+                if (count > 1 && offset + count < length && Character.isHighSurrogate(chunk.charAt(count - 1))) {
+                    // Keep surrogate pairs in one chunk so each encodes on its own
+                    count--;
+                    chunk = chunk.substring(0, count);
+                }
+                byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+                checked.writeInt(count);
+                checked.writeInt(bytes.length);
+                checked.write(bytes);
+                offset += count;
+            }
+        } catch (BadLocationException e) {
+            // The chunks lie inside the snapshot
+        }
+        checked.flush();
+        out.writeInt((int) checksum.getValue());
+    }
+
+    private static EditorDocument readSnapshot(DataInputStream in) throws IOException {
+        EditorDocument document = new EditorDocument();
+        int length = in.readInt();
+        try {
+            for (int read = 0; read < length; ) {
+                int count = in.readInt();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String chunk = new String(bytes, StandardCharsets.UTF_8);
+                if (count <= 0 || chunk.length() != count) {
+                    throw new EOFException("Snapshot chunk damaged");
+                }
+                document.insertString(read, chunk, null);
+                read += count;
+            }
+        } catch (BadLocationException e) {
+            // Appending at the current length cannot fail
+        }
+        return document;
+    }
+
+    private static void readBase(EditorDocument document, Path base, long size, long modified, Charset charset,
+                                 String name) throws IOException {
+        if (!Files.isRegularFile(base)) {
+            throw new IOException(base + " is gone, so the edits to " + name + " cannot be replayed");
+        }
+        if (Files.size(base) != size || Files.getLastModifiedTime(base).toMillis() != modified) {
+            throw new IOException(base + " has changed since the edits to " + name + " were made");
+        }
+        MappedTextReader.read(base, charset, (chars, length) -> {
+            try {
+                document.insertString(document.getLength(), new String(chars, 0, length), null);
+            } catch (BadLocationException e) {
+                // Appending at the current length cannot fail
+            }
+        });
+    }
+
+    private static void readMagic(DataInputStream in, Path journal) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(journal.getFileName() + " is not an edit journal");
+        }
+    }
+
+    private static Path lockFile(Path journal) {
+        return journal.resolveSibling(journal.getFileName() + LOCK_SUFFIX);
+    }
+
+    /** Whether a running editor, this one included, holds the journal. */
+    private static boolean isLocked(Path journal) {
+        Path lockFile = lockFile(journal);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.massey.texteditor;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleContext;
+
+/**
+ * Styled document used by the editor. It is backed by a
+ * {@link PieceTableContent} and hands out immutable snapshots so background
+ * workers can read the text without holding the document lock.
+ *
+ * <p>Syntax styles are applied through {@link #setLineStyles}, which
+ * rebuilds the character elements of every affected line under one write
+ * lock and fires a single change event, instead of one lock, one element
+ * split and one event per token as {@code setCharacterAttributes} would.
+ * Such changes are not undoable edits.</p>
+ */
+public class EditorDocument extends DefaultStyledDocument {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient PieceTableContent pieces;
+
+    public EditorDocument() {
+        this(new PieceTableContent());
+    }
+
+    private EditorDocument(PieceTableContent pieces) {
+        super(pieces, new StyleContext());
+        this.pieces = pieces;
+    }
+
+    /** Captures the current text in O(1); safe to call from a document listener. */
+    public PieceTableContent.Snapshot snapshot() {
+        readLock();
+        try {
+            return pieces.snapshot();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Makes the given runs the only character attributes of every line they
+     * touch. Text in those lines that no run covers, including the line
+     * break, becomes plain. Runs must be sorted and must not overlap.
+     */
+    void setLineStyles(StyleRuns runs) {
+        if (runs.size() == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            Element root = getDefaultRootElement();
+            int firstStart = root.getElement(root.getElementIndex(runs.start(0))).getStartOffset();
+            int last = runs.size() - 1;
+            int lastEnd = root.getElement(root.getElementIndex(runs.start(last))).getEndOffset();
+            DefaultDocumentEvent event = new DefaultDocumentEvent(firstStart, lastEnd - firstStart,
+                                                                  DocumentEvent.EventType.CHANGE);
+            List<Element> leaves = new ArrayList<>();
+            int i = 0;
+            while (i < runs.size()) {
+                BranchElement paragraph = (BranchElement) root.getElement(root.getElementIndex(runs.start(i)));
+                int end = paragraph.getEndOffset();
+                LeafBuilder builder = new LeafBuilder(paragraph, leaves);
+                for (; i < runs.size() && runs.start(i) < end; i++) {
+                    int start = runs.start(i);
+                    builder.extend(start, SimpleAttributeSet.EMPTY);
+                    builder.extend(Math.min(start + runs.length(i), end), runs.attributes(i));
+                }
+                builder.extend(end, SimpleAttributeSet.EMPTY);
+                builder.flush();
+
+                Element[] removed = new Element[paragraph.getElementCount()];
+                for (int k = 0; k < removed.length; k++) {
+                    removed[k] = paragraph.getElement(k);
+                }
+                Element[] added = leaves.toArray(new Element[0]);
+                paragraph.replace(0, removed.length, added);
+                event.addEdit(new ElementEdit(paragraph, 0, removed, added));
+                leaves.clear();
+            }
+            event.end();
+            fireChangedUpdate(event);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /** Turns consecutive spans of one line into leaves, merging equal neighbours. */
+    private final class LeafBuilder {
+
+        private final Element paragraph;
+        private final List<Element> leaves;
+        private int pos;
+        private int runStart;
+        private AttributeSet runAttributes;
+
+        LeafBuilder(Element paragraph, List<Element> leaves) {
+            this.paragraph = paragraph;
+            this.leaves = leaves;
+            this.pos = paragraph.getStartOffset();
+            this.runStart = pos;
+        }
+
+        /** Gives [pos, to) the attributes; does nothing if to is not past pos. */
+        void extend(int to, AttributeSet attributes) {
+            if (to <= pos) {
+                return;
+            }
+            if (runAttributes != null && !runAttributes.isEqual(attributes)) {
+                flush();
+                runStart = pos;
+            }
+            runAttributes = attributes;
+            pos = to;
+        }
+
+        void flush() {
+            if (runAttributes != null && pos > runStart) {
+                leaves.add(createLeafElement(paragraph, runAttributes, runStart, pos));
+            }
+            runAttributes = null;
+            runStart = pos;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.massey.texteditor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Finds lines in a file too large to load, by byte offset into the file
+ * mapped a window at a time. {@link #build} counts the lines once on a
+ * background thread and records where every {@link #STRIDE}th line starts
+ * in a {@code long[]}; a line in between is found by scanning forward from
+ * the checkpoint before it. Recording every line would take eight bytes
+ * per line, more than a gigabyte of heap for a 20 GB log, whereas this
+ * takes a few megabytes and a scan of a few kilobytes per lookup.
+ *
+ * <p>Lines are split at '\n', and a '\r' before it is dropped, so the
+ * charset must encode '\n' as that single byte. For charsets that do not,
+ * such as UTF-16, the file is read as UTF-8.</p>
+ *
+ * <p>{@link #build} may run on one thread while others read; readers see
+ * the lines indexed so far. Reading lines uses one cached window and must
+ * stay on one thread, normally the EDT.</p>
+ */
+final class FileLineIndex implements Closeable {
+
+    /** Lines per recorded offset. */
+    static final int STRIDE = 256;
+
+    /** Bytes mapped at a time. */
+    static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+    /** Bytes of one line decoded for display; the rest of a longer line is cut off. */
+    static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private static final int SCAN_BYTES = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long size;
+    private final int windowBytes;
+
+    // checkpoints[k] is where line k * STRIDE starts; the array is replaced, never changed, once published
+    private volatile long[] checkpoints = new long[1024];
+    private volatile long newlines;
+    private volatile long indexedBytes;
+    private volatile boolean complete;
+    private boolean endsWithNewline;
+
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+
+    FileLineIndex(Path path, Charset charset) throws IOException {
+        this(path, charset, WINDOW_BYTES);
+    }
+
+    FileLineIndex(Path path, Charset charset, int windowBytes) throws IOException {
+        this.path = path;
+        this.charset = byteCharset(charset);
+        this.windowBytes = windowBytes;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /** The charset itself if lines can be split at '\n' bytes, otherwise UTF-8. */
+    static Charset byteCharset(Charset charset) {
+        return "\n".getBytes(charset).length == 1 && "a".getBytes(charset)[0] == 'a'
+                ? charset : StandardCharsets.UTF_8;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Counts the lines of the whole file, making them readable as it goes.
+     *
+     * @param progress receives the percentage indexed so far
+     * @throws InterruptedIOException if the thread is interrupted; the
+     *         lines indexed until then stay readable
+     */
+    void build(IntConsumer progress) throws IOException {
+        // A channel of its own, as an interrupt closes the channel it strikes
+        try (FileChannel scanned = FileChannel.open(path, StandardOpenOption.READ)) {
+            build(scanned, progress);
+        }
+    }
+
+    private void build(FileChannel scanned, IntConsumer progress) throws IOException {
+        long[] offsets = checkpoints;
+        long count = 0;
+        byte[] bytes = new byte[SCAN_BYTES];
+        byte last = 0;
+        for (long position = 0; position < size; ) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Indexing interrupted");
+            }
+            int length = (int) Math.min(windowBytes, size - position);
+            MappedByteBuffer mapped = scanned.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int done = 0; done < length; ) {
+                int n = Math.min(bytes.length, length - done);
+                mapped.get(bytes, 0, n);
+                for (int i = 0; i < n; i++) {
+                    if (bytes[i] == '\n' && ++count % STRIDE == 0) {
+                        int k = (int) (count / STRIDE);
+                        if (k == offsets.length) {
+                            // Readers keep the old array until the new one is complete
+                            offsets = Arrays.copyOf(offsets, k * 2);
+                            checkpoints = offsets;
+                        }
+                        offsets[k] = position + done + i + 1;
+                    }
+                }
+                last = bytes[n - 1];
+                done += n;
+            }
+            position += length;
+            // Publishing the count last makes every checkpoint it needs visible to readers
+            indexedBytes = position;
+            newlines = count;
+            progress.accept((int) (position * 100 / size));
+        }
+        endsWithNewline = last == '\n';
+        complete = true;
+        newlines = count;
+    }
+
+    /**
+     * Lines known so far. Once the index is complete this counts a last line
+     * without a line break, and an empty file has one empty line.
+     */
+    long lineCount() {
+        long count = newlines;
+        if (complete && (size == 0 || !endsWithNewline)) {
+            count++;
+        }
+        return count;
+    }
+
+    /** Bytes of the file indexed so far. */
+    long indexedBytes() {
+        return indexedBytes;
+    }
+
+    /** The offset where a line starts, for {@code 0 <= line < lineCount()}. */
+    long lineStart(long line) throws IOException {
+        long[] offsets = checkpoints;
+        long position = offsets[(int) (line / STRIDE)];
+        for (long skip = line % STRIDE; skip > 0; skip--) {
+            position = nextLine(position);
+        }
+        return position;
+    }
+
+    /** The line containing a byte offset of the indexed part of the file. */
+    long lineOf(long offset) throws IOException {
+        long known = newlines;
+        long[] offsets = checkpoints;
+        int k = Arrays.binarySearch(offsets, 0, (int) (known / STRIDE) + 1, offset);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        long line = (long) k * STRIDE;
+        for (long position = offsets[k]; ; line++) {
+            position = nextLine(position);
+            if (position > offset || position >= size) {
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Decodes up to {@code count} lines from {@code first} on, as far as
+     * they are indexed. Tabs are expanded to {@link PdfLineBreaker#TAB_SIZE}
+     * columns so the lines can be painted as they are, and a line longer
+     * than {@link #MAX_LINE_BYTES} ends in an ellipsis.
+     */
+    List<String> lines(long first, int count) throws IOException {
+        long last = Math.min(lineCount(), first + count);
+        List<String> lines = new ArrayList<>((int) Math.max(0, last - first));
+        if (first >= last) {
+            return lines;
+        }
+        byte[] bytes = new byte[256];
+        long position = lineStart(first);
+        for (long line = first; line < last; line++) {
+            int length = 0;
+            long at = position;
+            boolean cut = false;
+            for (; at < size; at++) {
+                byte b = byteAt(at);
+                if (b == '\n') {
+                    break;
+                }
+                if (length == MAX_LINE_BYTES) {
+                    cut = true;
+                    at = nextLine(at) - 1;
+                    break;
+                }
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.min(MAX_LINE_BYTES, length * 2));
+                }
+                bytes[length++] = b;
+            }
+            if (!cut && length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            String text = expandTabs(new String(bytes, 0, length, charset));
+            lines.add(cut ? text + " …" : text);
+            position = at + 1;
+        }
+        return lines;
+    }
+
+    /** Where the line after the one containing {@code position} starts, or the file size. */
+    private long nextLine(long position) throws IOException {
+        while (position < size) {
+            ByteBuffer mapped = windowAt(position);
+            int from = (int) (position - windowStart);
+            int limit = mapped.limit();
+            for (int i = from; i < limit; i++) {
+                if (mapped.get(i) == '\n') {
+                    return windowStart + i + 1;
+                }
+            }
+            position = windowStart + limit;
+        }
+        return size;
+    }
+
+    private byte byteAt(long position) throws IOException {
+        ByteBuffer mapped = windowAt(position);
+        return mapped.get((int) (position - windowStart));
+    }
+
+    private ByteBuffer windowAt(long position) throws IOException {
+        if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+            windowStart = position / windowBytes * windowBytes;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                                 Math.min(windowBytes, size - windowStart));
+        }
+        return window;
+    }
+
+    private static String expandTabs(String text) {
+        if (text.indexOf('\t') < 0) {
+            return text;
+        }
+        StringBuilder expanded = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\t') {
+                do {
+                    expanded.append(' ');
+                } while (expanded.length() % PdfLineBreaker.TAB_SIZE != 0);
+            } else {
+                expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,211 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * Remembers how the document text maps onto the bytes of the file it was
+ * last read from or saved to, so a later save can copy unchanged ranges
+ * from that file instead of encoding them again.
+ *
+ * <p>The text is kept as a piece table snapshot. Piece table blocks are
+ * never rewritten, so a piece of the current document that points into
+ * the same block range as a piece of this snapshot still holds the file's
+ * text. Byte offsets are known at chunk boundaries; inside a chunk they are
+ * worked out from the characters, which is exact because only charsets
+ * where that is possible are supported and the text must have been read
+ * without any replacement or line separator folding.</p>
+ */
+final class FileOrigin {
+
+    private final Path path;
+    private final Charset charset;
+    private final long size;
+    private final FileTime modified;
+    private final PieceTableContent.Snapshot text;
+    private final int[] charEnds;
+    private final long[] byteEnds;
+    private final int chunks;
+    private Map<char[], TreeMap<Integer, int[]>> pieces;
+
+    private FileOrigin(Path path, Charset charset, long size, FileTime modified,
+                       PieceTableContent.Snapshot text, int[] charEnds, long[] byteEnds, int chunks) {
+        this.path = path;
+        this.charset = charset;
+        this.size = size;
+        this.modified = modified;
+        this.text = text;
+        this.charEnds = charEnds;
+        this.byteEnds = byteEnds;
+        this.chunks = chunks;
+    }
+
+    /** True for charsets whose byte length can be computed per character. */
+    static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || (charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /** True if the file can be copied from for text in the given charset. */
+    boolean isUsableFor(Charset target) {
+        if (!charset.equals(target)) {
+            return false;
+        }
+        try {
+            return Files.size(path) == size && Files.getLastModifiedTime(path).equals(modified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the offset in the file's text of the characters at
+     * {@code buffer[start]}.
+     *
+     * @return the offset, or -1 if they did not come from the file; the
+     *         number of characters that follow on contiguously is stored in
+     *         {@code run[0]}
+     */
+    int find(char[] buffer, int start, int[] run) {
+        if (pieces == null) {
+            pieces = new IdentityHashMap<>();
+            int[] offset = new int[1];
+            try {
+                text.forEachPiece((block, from, length) -> {
+                    pieces.computeIfAbsent(block, b -> new TreeMap<>())
+                          .put(from, new int[] {from + length, offset[0]});
+                    offset[0] += length;
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        TreeMap<Integer, int[]> ranges = pieces.get(buffer);
+        if (ranges == null) {
+            return -1;
+        }
+        Map.Entry<Integer, int[]> entry = ranges.floorEntry(start);
+        if (entry == null || start >= entry.getValue()[0]) {
+            return -1;
+        }
+        run[0] = entry.getValue()[0] - start;
+        return entry.getValue()[1] + start - entry.getKey();
+    }
+
+    /** Returns the byte offset in the file of a character offset in its text. */
+    long byteOffset(int charOffset) throws BadLocationException {
+        int chunk = Arrays.binarySearch(charEnds, 0, chunks, charOffset);
+        if (chunk >= 0) {
+            return byteEnds[chunk];
+        }
+        chunk = -chunk - 1;
+        int from = chunk == 0 ? 0 : charEnds[chunk - 1];
+        long bytes = chunk == 0 ? 0 : byteEnds[chunk - 1];
+        return bytes + byteLength(text, from, charOffset, charset);
+    }
+
+    /** Bytes the characters take in a charset accepted by {@link #supports}. */
+    static long byteLength(PieceTableContent.Snapshot text, int from, int to, Charset charset)
+            throws BadLocationException {
+        if (!charset.equals(StandardCharsets.UTF_8)) {
+            return to - from;
+        }
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        long bytes = 0;
+        while (from < to) {
+            text.getChars(from, to - from, segment);
+            for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                char c = segment.array[i];
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    bytes += 4;
+                } else if (!Character.isLowSurrogate(c)) {
+                    bytes += 3;
+                }
+            }
+            from += segment.count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Collects chunk boundaries while a file is read or written, and turns
+     * them into a {@link FileOrigin} when the text turns out to match the
+     * file exactly.
+     */
+    static final class Builder {
+
+        private final Charset charset;
+        private int[] charEnds = new int[64];
+        private long[] byteEnds = new long[64];
+        private int chunks;
+        private boolean exact = true;
+
+        Builder(Charset charset) {
+            this.charset = charset;
+        }
+
+        /** Records that the first {@code charEnd} characters take {@code byteEnd} bytes. */
+        void chunk(long charEnd, long byteEnd) {
+            if (charEnd > Integer.MAX_VALUE) {
+                exact = false;
+                return;
+            }
+            if (chunks > 0 && charEnd <= charEnds[chunks - 1]) {
+                return;
+            }
+            if (chunks == charEnds.length) {
+                charEnds = Arrays.copyOf(charEnds, chunks * 2);
+                byteEnds = Arrays.copyOf(byteEnds, chunks * 2);
+            }
+            charEnds[chunks] = (int) charEnd;
+            byteEnds[chunks] = byteEnd;
+            chunks++;
+        }
+
+        /** Notes that the text no longer matches the file byte for byte. */
+        void inexact() {
+            exact = false;
+        }
+
+        /**
+         * Returns the origin of {@code text} in the file at {@code path}, or
+         * null if the recorded chunks do not describe that file exactly.
+         */
+        FileOrigin build(Path path, PieceTableContent.Snapshot text) {
+            if (!exact || !supports(charset)) {
+                return null;
+            }
+            try {
+                long size = Files.size(path);
+                int chars = chunks == 0 ? 0 : charEnds[chunks - 1];
+                long bytes = chunks == 0 ? 0 : byteEnds[chunks - 1];
+                if (chars != text.length() || bytes != size) {
+                    return null;
+                }
+                return new FileOrigin(path, charset, size, Files.getLastModifiedTime(path), text,
+                                      charEnds, byteEnds, chunks);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
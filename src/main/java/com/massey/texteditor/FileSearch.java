@@ -0,0 +1,397 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds a literal string in every text file under a directory. The tree
+ * is walked on the calling thread while the files are scanned on a pool,
+ * each one through memory-mapped windows with Boyer-Moore-Horspool on the
+ * raw bytes, so nothing is decoded except the lines that hold a hit.
+ *
+ * <p>The query is encoded in the given charset, which must keep ASCII as
+ * single bytes (UTF-8 and the ISO-8859 and Windows code pages do); any
+ * other charset is searched as UTF-8. Ignoring case folds ASCII letters
+ * only, as byte-oriented grep tools do.</p>
+ */
+final class FileSearch {
+
+    /** Extensions searched, the same as the editor's "Text Files" filter. */
+    static final Set<String> EXTENSIONS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("txt", "java", "py", "js", "cpp", "c")));
+
+    /** Bytes mapped at a time; consecutive windows overlap by the query length. */
+    static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+    /** Longest stretch of a line kept to describe a hit. */
+    private static final int MAX_LINE_BYTES = 400;
+
+    /** One occurrence, located by line and column so it survives line separator changes. */
+    static final class Hit {
+        final Path file;
+        /** Line number, counting from 0. */
+        final int line;
+        /** Characters between the start of the line and the hit. */
+        final int column;
+        /** The line holding the hit, or the stretch of it around the hit if it is very long. */
+        final String text;
+
+        Hit(Path file, int line, int column, String text) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+            this.text = text;
+        }
+    }
+
+    /** Receives the hits of each file as soon as it has been scanned. */
+    interface Listener {
+        /**
+         * Called from pool threads, one file at a time, with at least one hit.
+         *
+         * @return false to stop the search
+         */
+        boolean found(Path file, List<Hit> hits);
+    }
+
+    private final Path root;
+    private final Charset charset;
+    private final boolean matchCase;
+    private final byte[] pattern;
+    private final int[] shift = new int[256];
+    private final int windowBytes;
+    private volatile boolean stopped;
+
+    FileSearch(Path root, String query, boolean matchCase, Charset charset) {
+        this(root, query, matchCase, charset, WINDOW_BYTES);
+    }
+
+    FileSearch(Path root, String query, boolean matchCase, Charset charset, int windowBytes) {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to search for");
+        }
+        this.root = root;
+        this.charset = FileLineIndex.byteCharset(charset);
+        this.matchCase = matchCase;
+        this.windowBytes = windowBytes;
+        pattern = query.getBytes(this.charset);
+        if (!matchCase) {
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = fold(pattern[i]);
+            }
+        }
+        int m = pattern.length;
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            shift[pattern[i] & 0xFF] = m - 1 - i;
+        }
+    }
+
+    /** True if the file name has one of the {@link #EXTENSIONS}. */
+    static boolean isSearchable(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Walks the tree and scans the files on {@code pool}, keeping at most a
+     * few files per thread queued so the walk cannot run far ahead. Files
+     * and directories that cannot be read are skipped. Returns once every
+     * scan has finished or the search was stopped.
+     *
+     * @param threads the number of threads in {@code pool}
+     * @return the number of files scanned
+     */
+    int run(ExecutorService pool, int threads, Listener listener) throws IOException, InterruptedException {
+        Semaphore queued = new Semaphore(threads * 4);
+        AtomicInteger scanned = new AtomicInteger();
+        boolean[] interrupted = new boolean[1];
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (stopped) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (!attributes.isRegularFile() || !isSearchable(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    queued.acquire();
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                    stopped = true;
+                    return FileVisitResult.TERMINATE;
+                }
+                pool.execute(() -> {
+                    try {
+                        if (!stopped) {
+                            List<Hit> hits = search(file);
+                            scanned.incrementAndGet();
+                            if (!hits.isEmpty() && !listener.found(file, hits)) {
+                                stopped = true;
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Unreadable files are left out, as unreadable directories are
+                    } finally {
+                        queued.release();
+                    }
+                });
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        // Wait for the files still being scanned
+        try {
+            queued.acquire(threads * 4);
+        } catch (InterruptedException e) {
+            interrupted[0] = true;
+        }
+        if (interrupted[0]) {
+            stopped = true;
+            throw new InterruptedException("Find in files interrupted");
+        }
+        return scanned.get();
+    }
+
+    /** Makes a running search finish early; queued files are skipped. */
+    void cancel() {
+        stopped = true;
+    }
+
+    /** Returns every occurrence in one file that does not overlap an earlier one. */
+    List<Hit> search(Path file) throws IOException {
+        List<Hit> hits = new ArrayList<>();
+        int m = pattern.length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long resume = 0;
+            Cursor cursor = new Cursor(channel);
+            while (position < size && !stopped) {
+                int length = (int) Math.min(windowBytes, size - position);
+                boolean last = position + length == size;
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                // Hits starting in the overlap are found by the next window
+                int limit = last ? length : length - m + 1;
+                int counted = 0;
+                for (int i = scan(window, (int) Math.max(0, resume - position), length); i >= 0 && i < limit;
+                         i = scan(window, i + m, length)) {
+                    cursor.count(window, position, counted, i);
+                    counted = i;
+                    hits.add(hit(file, cursor, window, position, position + i));
+                    resume = position + i + m;
+                }
+                cursor.count(window, position, counted, limit);
+                position += limit;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the offset of the first occurrence at or after {@code from},
+     * or -1 if there is none or the search was cancelled. Only as much of
+     * the file as it takes is mapped, so this suits files of any size.
+     */
+    long next(FileChannel channel, long from) throws IOException {
+        int m = pattern.length;
+        long size = channel.size();
+        for (long position = from; position + m <= size && !stopped; ) {
+            int length = (int) Math.min(windowBytes, size - position);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int i = scan(window, 0, length);
+            if (i >= 0) {
+                return position + i;
+            }
+            if (position + length == size) {
+                break;
+            }
+            // Windows overlap so a match across the boundary is found in the next one
+            position += Math.max(1, length - m + 1);
+        }
+        return -1;
+    }
+
+    /** Returns the index of the first match inside {@code window[from, to)}, or -1. */
+    private int scan(ByteBuffer window, int from, int to) {
+        int last = pattern.length - 1;
+        byte tail = pattern[last];
+        for (int i = from; i <= to - pattern.length; ) {
+            byte b = matchCase ? window.get(i + last) : fold(window.get(i + last));
+            if (b == tail) {
+                int j = last - 1;
+                while (j >= 0 && pattern[j] == (matchCase ? window.get(i + j) : fold(window.get(i + j)))) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[b & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Describes a hit by the stretch of its line around it, at most
+     * {@link #MAX_LINE_BYTES} long however long the line is.
+     */
+    private Hit hit(Path file, Cursor cursor, ByteBuffer window, long position, long at) throws IOException {
+        FileChannel channel = cursor.channel;
+        long from = Math.max(cursor.lineStart, at - MAX_LINE_BYTES / 2);
+        int length = (int) Math.min(channel.size() - from, MAX_LINE_BYTES);
+        byte[] bytes = new byte[length];
+        if (from >= position && from + length <= position + window.limit()) {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = window.get((int) (from - position) + i);
+            }
+        } else {
+            // The stretch started in an earlier window or runs past this one
+            ByteBuffer read = ByteBuffer.wrap(bytes);
+            while (read.hasRemaining()) {
+                if (channel.read(read, from + read.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        int start = 0;
+        if (from > cursor.lineStart && charset.equals(StandardCharsets.UTF_8)) {
+            // Do not start in the middle of a character
+            while (start < at - from && (bytes[start] & 0xC0) == 0x80) {
+                start++;
+            }
+        }
+        int end = (int) (at - from);
+        while (end < length && bytes[end] != '\n' && bytes[end] != '\r') {
+            end++;
+        }
+        String text = decode(bytes, start, end);
+        if (from > cursor.lineStart) {
+            text = "\u2026" + text;
+        }
+        if (end == length && from + length < channel.size()) {
+            text += "\u2026";
+        }
+        int column = (int) Math.min(Integer.MAX_VALUE, cursor.columnOf(at));
+        return new Hit(file, cursor.line, column, text);
+    }
+
+    private String decode(byte[] bytes, int from, int to) {
+        try {
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(ByteBuffer.wrap(bytes, from, to - from))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            // Cannot happen when errors are replaced
+            return "";
+        }
+    }
+
+    /**
+     * Where the scan of one file has got to: the line it is on, counted as
+     * {@link MappedTextReader} splits lines, and how many characters of that
+     * line lie before the last hit. Each line is decoded at most once, from
+     * one hit to the next, however many hits it holds.
+     */
+    private final class Cursor {
+        final FileChannel channel;
+        int line;
+        long lineStart;
+        private boolean afterCarriageReturn;
+        private long decoded;
+        private long column;
+        private CharsetDecoder decoder;
+        private ByteBuffer bytes;
+        private CharBuffer chars;
+
+        Cursor(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Counts the line breaks in {@code window[from, to)}. */
+        void count(ByteBuffer window, long position, int from, int to) {
+            for (int i = from; i < to; i++) {
+                byte b = window.get(i);
+                if (b == '\r' || (b == '\n' && !afterCarriageReturn)) {
+                    line++;
+                }
+                if (b == '\r' || b == '\n') {
+                    lineStart = position + i + 1;
+                }
+                afterCarriageReturn = b == '\r';
+            }
+        }
+
+        /** Characters between the start of the line and {@code at}, which lies at or after the last hit. */
+        long columnOf(long at) throws IOException {
+            if (decoder == null) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                bytes = ByteBuffer.allocate(8192);
+                chars = CharBuffer.allocate(8192);
+            }
+            if (decoded < lineStart) {
+                decoded = lineStart;
+                column = 0;
+                decoder.reset();
+                bytes.clear();
+            }
+            while (decoded < at) {
+                ByteBuffer read = bytes.duplicate();
+                read.limit(bytes.position() + (int) Math.min(bytes.remaining(), at - decoded));
+                int n = channel.read(read, decoded);
+                if (n < 0) {
+                    break;
+                }
+                decoded += n;
+                bytes.position(bytes.position() + n);
+                bytes.flip();
+                // A character cut at the end of what was read stays in the buffer for the next read
+                while (decoder.decode(bytes, chars, false).isOverflow()) {
+                    column += chars.position();
+                    chars.clear();
+                }
+                column += chars.position();
+                chars.clear();
+                bytes.compact();
+            }
+            return column;
+        }
+    }
+
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
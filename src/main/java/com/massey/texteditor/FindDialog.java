@@ -0,0 +1,315 @@
+package com.massey.texteditor;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.Frame;
+import java.awt.GridLayout;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Non-modal find dialog with find next, find previous and find all, and
+ * options for case, whole words and regular expressions. Searches start
+ * from the selection and wrap around the ends of the document. The
+ * {@link SearchEngine} is kept while the query and options stay the same,
+ * so pressing Find Next again builds nothing and copies no text. Find all
+ * with a regular expression is handed to the editor, which runs it in the
+ * background and lists the hits.
+ */
+final class FindDialog extends JDialog {
+
+    private static final Highlighter.HighlightPainter MATCH_PAINTER =
+            new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 235, 120));
+
+    private final JTextComponent editor;
+    private final Consumer<String> status;
+    private final JTextField queryField = new JTextField(24);
+    private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+    private final JCheckBox wholeWordBox = new JCheckBox("Whole word");
+    private final JCheckBox regexBox = new JCheckBox("Regular expression");
+    private final Consumer<Pattern> regexFindAll;
+    private final List<Object> highlights = new ArrayList<>();
+    private SearchEngine engine;
+
+    /**
+     * @param status       receives a one-line summary of each search for the status bar
+     * @param regexFindAll lists every match of a regular expression
+     */
+    FindDialog(Frame owner, JTextComponent editor, Consumer<String> status, Consumer<Pattern> regexFindAll) {
+        super(owner, "Find", false);
+        this.editor = editor;
+        this.status = status;
+        this.regexFindAll = regexFindAll;
+
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        options.add(matchCaseBox);
+        options.add(wholeWordBox);
+        options.add(regexBox);
+
+        JPanel query = new JPanel(new BorderLayout(5, 5));
+        query.add(new JLabel("Find:"), BorderLayout.WEST);
+        query.add(queryField, BorderLayout.CENTER);
+        query.add(options, BorderLayout.SOUTH);
+
+        JButton nextButton = new JButton("Find Next");
+        JButton previousButton = new JButton("Find Previous");
+        JButton allButton = new JButton("Find All");
+        JButton closeButton = new JButton("Close");
+        JPanel buttons = new JPanel(new GridLayout(0, 1, 5, 5));
+        buttons.add(nextButton);
+        buttons.add(previousButton);
+        buttons.add(allButton);
+        buttons.add(closeButton);
+
+        JPanel content = new JPanel(new BorderLayout(10, 10));
+        content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        content.add(query, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.EAST);
+        setContentPane(content);
+
+        nextButton.addActionListener(e -> findNext());
+        previousButton.addActionListener(e -> findPrevious());
+        allButton.addActionListener(e -> findAll());
+        closeButton.addActionListener(e -> close());
+        queryField.addActionListener(e -> findNext());
+        getRootPane().setDefaultButton(nextButton);
+        getRootPane().registerKeyboardAction(e -> close(), KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+                                             JComponent.WHEN_IN_FOCUSED_WINDOW);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                clearHighlights();
+            }
+        });
+        pack();
+        setResizable(false);
+    }
+
+    /** Shows the dialog, starting from the selected text if it is on one line. */
+    void open() {
+        String selected = editor.getSelectedText();
+        if (selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0) {
+            queryField.setText(selected);
+        }
+        queryField.selectAll();
+        if (!isVisible()) {
+            setLocationRelativeTo(getOwner());
+        }
+        setVisible(true);
+        queryField.requestFocusInWindow();
+    }
+
+    /** True once there is something to search for, so find next can run without the dialog. */
+    boolean hasQuery() {
+        return !queryField.getText().isEmpty();
+    }
+
+    /** Selects the next match after the selection, wrapping to the start. */
+    void findNext() {
+        if (regexBox.isSelected()) {
+            findNextRegex();
+            return;
+        }
+        SearchEngine search = engine();
+        if (search == null) {
+            return;
+        }
+        Document document = editor.getDocument();
+        int at = search.findNext(document, editor.getSelectionEnd());
+        boolean wrapped = false;
+        if (at < 0) {
+            at = search.findNext(document, 0);
+            wrapped = true;
+        }
+        select(at, at + search.length(), wrapped);
+    }
+
+    /** Selects the match before the selection, wrapping to the end. */
+    void findPrevious() {
+        if (regexBox.isSelected()) {
+            findPreviousRegex();
+            return;
+        }
+        SearchEngine search = engine();
+        if (search == null) {
+            return;
+        }
+        Document document = editor.getDocument();
+        int at = search.findPrevious(document, editor.getSelectionStart());
+        boolean wrapped = false;
+        if (at < 0) {
+            at = search.findPrevious(document, document.getLength());
+            wrapped = true;
+        }
+        select(at, at + search.length(), wrapped);
+    }
+
+    /** Highlights every match and reports how many there are. */
+    void findAll() {
+        if (regexBox.isSelected()) {
+            Pattern pattern = pattern();
+            if (pattern != null) {
+                clearHighlights();
+                regexFindAll.accept(pattern);
+            }
+            return;
+        }
+        SearchEngine search = engine();
+        if (search == null) {
+            return;
+        }
+        clearHighlights();
+        int[] hits = search.findAll(editor.getDocument());
+        Highlighter highlighter = editor.getHighlighter();
+        try {
+            for (int at : hits) {
+                highlights.add(highlighter.addHighlight(at, at + search.length(), MATCH_PAINTER));
+            }
+        } catch (BadLocationException e) {
+            // Offsets come from the current document
+        }
+        if (hits.length > 0) {
+            editor.select(hits[0], hits[0] + search.length());
+        }
+        status.accept(hits.length == 1 ? "1 match" : hits.length + " matches");
+    }
+
+    private void findNextRegex() {
+        Pattern pattern = pattern();
+        if (pattern == null) {
+            return;
+        }
+        Document document = editor.getDocument();
+        Matcher matcher = pattern.matcher(new DocumentCharSequence(document));
+        int from = editor.getSelectionEnd();
+        boolean found = matcher.find(from);
+        if (found && matcher.start() == editor.getSelectionStart() && matcher.end() == from) {
+            // The same empty match again; look one character further
+            found = from < document.getLength() && matcher.find(from + 1);
+        }
+        boolean wrapped = false;
+        if (!found) {
+            found = matcher.find(0);
+            wrapped = true;
+        }
+        select(found ? matcher.start() : -1, found ? matcher.end() : -1, wrapped);
+    }
+
+    private void findPreviousRegex() {
+        Pattern pattern = pattern();
+        if (pattern == null) {
+            return;
+        }
+        Document document = editor.getDocument();
+        int[] match = lastRegexMatch(pattern, document, editor.getSelectionStart());
+        boolean wrapped = false;
+        if (match == null) {
+            match = lastRegexMatch(pattern, document, document.getLength() + 1);
+            wrapped = true;
+        }
+        select(match == null ? -1 : match[0], match == null ? -1 : match[1], wrapped);
+    }
+
+    /**
+     * Returns the start and end of the last match starting before
+     * {@code before}, going back a block at a time, or null if there is none.
+     */
+    private static int[] lastRegexMatch(Pattern pattern, Document document, int before) {
+        int length = document.getLength();
+        int block = ParallelRegexSearch.OVERLAP_CHARS;
+        Matcher matcher = pattern.matcher(new DocumentCharSequence(document));
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        for (int hi = Math.min(before, length + 1); hi > 0; hi -= block) {
+            matcher.region(Math.max(0, hi - block), Math.min(length, hi + block));
+            int[] last = null;
+            while (matcher.find() && matcher.start() < hi) {
+                last = new int[] {matcher.start(), matcher.end()};
+            }
+            if (last != null) {
+                return last;
+            }
+        }
+        return null;
+    }
+
+    private void select(int start, int end, boolean wrapped) {
+        String text = queryField.getText();
+        if (start < 0) {
+            status.accept("Text not found: " + text);
+            getToolkit().beep();
+            return;
+        }
+        editor.select(start, end);
+        status.accept(wrapped ? "Found: " + text + " (wrapped)" : "Found: " + text);
+    }
+
+    /** Compiles the query as a regular expression, reporting syntax errors in the status bar. */
+    private Pattern pattern() {
+        String text = queryField.getText();
+        if (text.isEmpty()) {
+            return null;
+        }
+        int flags = Pattern.MULTILINE;
+        if (!matchCaseBox.isSelected()) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        try {
+            return Pattern.compile(wholeWordBox.isSelected() ? "\\b(?:" + text + ")\\b" : text, flags);
+        } catch (PatternSyntaxException e) {
+            status.accept("Invalid regular expression: " + e.getDescription());
+            getToolkit().beep();
+            return null;
+        }
+    }
+
+    /** Returns the engine for the current query and options, building it only when they change. */
+    private SearchEngine engine() {
+        String text = queryField.getText();
+        if (text.isEmpty()) {
+            return null;
+        }
+        boolean matchCase = matchCaseBox.isSelected();
+        boolean wholeWord = wholeWordBox.isSelected();
+        if (engine == null || !engine.getText().equals(text)
+                || engine.isMatchCase() != matchCase || engine.isWholeWord() != wholeWord) {
+            engine = new SearchEngine(text, matchCase, wholeWord);
+        }
+        return engine;
+    }
+
+    private void clearHighlights() {
+        Highlighter highlighter = editor.getHighlighter();
+        for (Object tag : highlights) {
+            highlighter.removeHighlight(tag);
+        }
+        highlights.clear();
+    }
+
+    private void close() {
+        clearHighlights();
+        setVisible(false);
+    }
+}
@@ -0,0 +1,77 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Width of every character in a PDF font, in thousandths of the font size,
+ * so laying out text costs one array lookup per character instead of
+ * encoding and measuring a String. Widths are looked up a block of 256
+ * characters at a time, the first time a character from the block is
+ * measured, and one table is shared by every export using the font.
+ * Characters the font cannot encode have no width; {@link #printable}
+ * swaps them for '?'.
+ *
+ * <p>Tables are safe to use from several threads.</p>
+ */
+final class GlyphWidths {
+
+    private static final Map<PDFont, GlyphWidths> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /** Printed in place of characters the font cannot encode. */
+    static final char REPLACEMENT = '?';
+
+    private final PDFont font;
+    private final AtomicReferenceArray<float[]> blocks = new AtomicReferenceArray<>(256);
+
+    private GlyphWidths(PDFont font) {
+        this.font = font;
+    }
+
+    /** Returns the shared table for a font. */
+    static GlyphWidths of(PDFont font) {
+        return CACHE.computeIfAbsent(font, GlyphWidths::new);
+    }
+
+    /** Width of a character in thousandths of the font size, or NaN if the font cannot encode it. */
+    float width(char c) {
+        float[] block = blocks.get(c >>> 8);
+        if (block == null) {
+            block = load(c >>> 8);
+        }
+        return block[c & 0xFF];
+    }
+
+    /** Returns the character itself if the font can show it, otherwise {@link #REPLACEMENT}. */
+    char printable(char c) {
+        return Float.isNaN(width(c)) ? REPLACEMENT : c;
+    }
+
+    /** Measures a block, under a lock since fonts are not documented to be thread-safe. */
+    private synchronized float[] load(int index) {
+        float[] block = blocks.get(index);
+        if (block != null) {
+            return block;
+        }
+        block = new float[256];
+        Arrays.fill(block, Float.NaN);
+        for (int i = 0; i < 256; i++) {
+            char c = (char) (index << 8 | i);
+            if (Character.isISOControl(c) || Character.isSurrogate(c)) {
+                continue;
+            }
+            try {
+                block[i] = font.getStringWidth(String.valueOf(c));
+            } catch (IllegalArgumentException | IOException e) {
+                // Not in the font's encoding
+            }
+        }
+        blocks.set(index, block);
+        return block;
+    }
+}
@@ -0,0 +1,288 @@
+package com.massey.texteditor;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.KeyStroke;
+import javax.swing.UIManager;
+
+/**
+ * Read-only view of a file too large for a text pane, backed by a
+ * {@link FileLineIndex}. Only the lines on screen are decoded, on every
+ * paint, so heap use depends on the window size rather than the file.
+ * The scroll bars are driven directly instead of through a
+ * {@code JScrollPane}, whose pixel coordinates are ints and cannot span
+ * hundreds of millions of lines.
+ *
+ * <p>One line at a time can be selected, by clicking or with the arrow
+ * keys, and copied with Ctrl+C. Lines are numbered from 1 in the gutter
+ * and in what goes to the status consumer; the methods count from 0.</p>
+ */
+final class HugeFileViewer extends JPanel {
+
+    /** Largest value given to the vertical scroll bar; longer files scroll in steps of several lines. */
+    private static final int MAX_BAR_VALUE = 1 << 30;
+
+    private static final int PAD = 6;
+
+    private final FileLineIndex index;
+    private final Consumer<String> status;
+    private final LinesView view = new LinesView();
+    private final JScrollBar verticalBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JScrollBar horizontalBar = new JScrollBar(JScrollBar.HORIZONTAL);
+    private long topLine;
+    private long selectedLine = -1;
+    private long linesPerUnit = 1;
+    private int widest;
+    private boolean updatingBars;
+
+    /**
+     * @param status receives the position of the selected line
+     */
+    HugeFileViewer(FileLineIndex index, Font font, Consumer<String> status) {
+        super(new BorderLayout());
+        this.index = index;
+        this.status = status;
+        view.setFont(font);
+        add(view, BorderLayout.CENTER);
+        add(verticalBar, BorderLayout.EAST);
+        add(horizontalBar, BorderLayout.SOUTH);
+
+        verticalBar.addAdjustmentListener(e -> {
+            if (!updatingBars) {
+                scrollTo(e.getValue() * linesPerUnit);
+            }
+        });
+        horizontalBar.addAdjustmentListener(e -> view.repaint());
+        view.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                // Keep the last screen full after the view grows
+                scrollTo(topLine);
+            }
+        });
+        view.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                view.requestFocusInWindow();
+                long line = topLine + e.getY() / lineHeight();
+                if (line < index.lineCount()) {
+                    select(line);
+                }
+            }
+        });
+        view.addMouseWheelListener(e -> {
+            if (e.getScrollType() == MouseWheelEvent.WHEEL_UNIT_SCROLL) {
+                scrollTo(topLine + (long) e.getWheelRotation() * e.getScrollAmount());
+            }
+        });
+        bindKeys();
+    }
+
+    FileLineIndex getIndex() {
+        return index;
+    }
+
+    /** The selected line, or -1 if none. */
+    long getSelectedLine() {
+        return selectedLine;
+    }
+
+    long getTopLine() {
+        return topLine;
+    }
+
+    /** Updates the scroll range to the lines indexed so far; call as the index grows. */
+    void indexChanged() {
+        updateBars();
+        view.repaint();
+    }
+
+    /** Selects a line and scrolls it into view, with a few lines of context above it. */
+    void goToLine(long line) {
+        long last = Math.max(0, index.lineCount() - 1);
+        line = Math.max(0, Math.min(line, last));
+        select(line);
+        if (line < topLine || line >= topLine + visibleRows()) {
+            scrollTo(line - visibleRows() / 3);
+        }
+    }
+
+    /** Shows {@code line} at the top, or as near as the end of the file allows. */
+    void scrollTo(long line) {
+        long max = Math.max(0, index.lineCount() - visibleRows());
+        topLine = Math.max(0, Math.min(line, max));
+        updateBars();
+        view.repaint();
+    }
+
+    /** The text of the selected line as shown, or null if none is selected. */
+    String getSelectedText() {
+        if (selectedLine < 0) {
+            return null;
+        }
+        try {
+            List<String> lines = index.lines(selectedLine, 1);
+            return lines.isEmpty() ? null : lines.get(0);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Puts the selected line on the clipboard. */
+    void copySelection() {
+        String text = getSelectedText();
+        if (text != null) {
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+        }
+    }
+
+    private void select(long line) {
+        selectedLine = line;
+        view.repaint();
+        status.accept(String.format("Ln %,d of %,d%s", line + 1, index.lineCount(),
+                                    index.isComplete() ? "" : "+"));
+    }
+
+    /** Moves the selection by some lines, scrolling no more than it takes to keep it in view. */
+    private void moveSelection(long lines) {
+        long last = Math.max(0, index.lineCount() - 1);
+        long line = Math.max(0, Math.min(last, (selectedLine < 0 ? topLine : selectedLine) + lines));
+        select(line);
+        if (line < topLine) {
+            scrollTo(line);
+        } else if (line >= topLine + visibleRows()) {
+            scrollTo(line - visibleRows() + 1);
+        }
+    }
+
+    private void updateBars() {
+        long lines = index.lineCount();
+        linesPerUnit = Math.max(1, (lines + MAX_BAR_VALUE - 1) / MAX_BAR_VALUE);
+        int rows = visibleRows();
+        updatingBars = true;
+        try {
+            verticalBar.setValues((int) (topLine / linesPerUnit), (int) Math.max(1, rows / linesPerUnit), 0,
+                                  (int) Math.max(1, (lines + linesPerUnit - 1) / linesPerUnit));
+            verticalBar.setBlockIncrement(Math.max(1, rows - 1));
+            int width = Math.max(1, view.getWidth());
+            horizontalBar.setValues(Math.min(horizontalBar.getValue(), Math.max(0, widest - width / 2)),
+                                    width, 0, Math.max(width, widest + gutterWidth()));
+            horizontalBar.setBlockIncrement(width / 2);
+        } finally {
+            updatingBars = false;
+        }
+    }
+
+    private int visibleRows() {
+        return Math.max(1, view.getHeight() / lineHeight());
+    }
+
+    private int lineHeight() {
+        return view.getFontMetrics(view.getFont()).getHeight();
+    }
+
+    private int gutterWidth() {
+        FontMetrics metrics = view.getFontMetrics(view.getFont());
+        return metrics.stringWidth(Long.toString(Math.max(1, index.lineCount()))) + 2 * PAD;
+    }
+
+    private void bindKeys() {
+        view.setFocusable(true);
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "up", () -> moveSelection(-1));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "down", () -> moveSelection(1));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_UP, 0), "pageUp", () -> {
+            scrollTo(topLine - visibleRows());
+            moveSelection(-visibleRows());
+        });
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_DOWN, 0), "pageDown", () -> {
+            scrollTo(topLine + visibleRows());
+            moveSelection(visibleRows());
+        });
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_HOME, InputEvent.CTRL_DOWN_MASK), "start", () -> goToLine(0));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_END, InputEvent.CTRL_DOWN_MASK), "end",
+             () -> goToLine(index.lineCount() - 1));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_C, InputEvent.CTRL_DOWN_MASK), "copy", this::copySelection);
+    }
+
+    private void bind(KeyStroke key, String name, Runnable action) {
+        view.getInputMap(JComponent.WHEN_FOCUSED).put(key, name);
+        view.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    /** Paints the numbered lines from {@link #topLine} down. */
+    private final class LinesView extends JComponent {
+        @Override
+        protected void paintComponent(Graphics g) {
+            Color background = UIManager.getColor("TextPane.background");
+            Color selection = UIManager.getColor("TextPane.selectionBackground");
+            g.setColor(background != null ? background : Color.WHITE);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setFont(getFont());
+            FontMetrics metrics = g.getFontMetrics();
+            int height = metrics.getHeight();
+            int gutter = gutterWidth();
+            List<String> lines;
+            try {
+                lines = index.lines(topLine, getHeight() / height + 1);
+            } catch (IOException e) {
+                g.setColor(Color.RED);
+                g.drawString("Cannot read " + index.getPath().getFileName() + ": " + e.getMessage(),
+                             PAD, metrics.getAscent());
+                return;
+            }
+            int x = gutter + PAD - horizontalBar.getValue();
+            boolean wider = false;
+            for (int i = 0; i < lines.size(); i++) {
+                int y = i * height;
+                long line = topLine + i;
+                if (line == selectedLine) {
+                    g.setColor(selection != null ? selection : new Color(0xCC, 0xE0, 0xFF));
+                    g.fillRect(gutter, y, getWidth() - gutter, height);
+                }
+                String text = lines.get(i);
+                int width = metrics.stringWidth(text);
+                if (width > widest) {
+                    widest = width;
+                    wider = true;
+                }
+                g.setColor(getForeground() != null ? getForeground() : Color.BLACK);
+                Graphics clipped = g.create(gutter, 0, getWidth() - gutter, getHeight());
+                clipped.drawString(text, x - gutter, y + metrics.getAscent());
+                clipped.dispose();
+                String number = Long.toString(line + 1);
+                g.setColor(Color.GRAY);
+                g.drawString(number, gutter - PAD - metrics.stringWidth(number), y + metrics.getAscent());
+            }
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawLine(gutter - 1, 0, gutter - 1, getHeight());
+            if (wider) {
+                updateBars();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.massey.texteditor;
+
+/**
+ * Lexer for Java sources: // and block comments, text blocks, char and string literals.
+ */
+class JavaLexer extends SyntaxLexer {
+
+    static final String[] KEYWORDS = {
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+        "const", "continue", "default", "do", "double", "else", "enum", "extends", "final",
+        "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+        "interface", "long", "native", "new", "package", "private", "protected", "public",
+        "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+        "throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false", "null"
+    };
+
+    private static final KeywordTable TABLE = new KeywordTable(KEYWORDS);
+
+    JavaLexer() {
+        super(TABLE, SLASH_COMMENTS | TEXT_BLOCKS);
+    }
+}
@@ -0,0 +1,23 @@
+package com.massey.texteditor;
+
+/**
+ * Lexer for JavaScript sources: // and block comments and backtick template literals.
+ */
+class JavaScriptLexer extends SyntaxLexer {
+
+    static final String[] KEYWORDS = {
+        "abstract", "arguments", "await", "boolean", "break", "byte", "case", "catch", "char",
+        "class", "const", "continue", "debugger", "default", "delete", "do", "double", "else",
+        "enum", "eval", "export", "extends", "false", "final", "finally", "float", "for",
+        "function", "goto", "if", "implements", "import", "in", "instanceof", "int", "interface",
+        "let", "long", "native", "new", "null", "package", "private", "protected", "public",
+        "return", "short", "static", "super", "switch", "synchronized", "this", "throw", "throws",
+        "transient", "true", "try", "typeof", "var", "void", "volatile", "while", "with", "yield"
+    };
+
+    private static final KeywordTable TABLE = new KeywordTable(KEYWORDS);
+
+    JavaScriptLexer() {
+        super(TABLE, SLASH_COMMENTS | TEMPLATE_STRINGS);
+    }
+}
@@ -0,0 +1,99 @@
+package com.massey.texteditor;
+
+/**
+ * Perfect hash table of keywords that is probed with a character range, so
+ * the lexer can test an identifier without allocating a String for it.
+ * The seed is chosen at construction so that no two keywords share a slot,
+ * which makes every lookup a single probe and one array comparison.
+ */
+final class KeywordTable {
+
+    private final char[][] slots;
+    private final int mask;
+    private final int seed;
+    private final int minLength;
+    private final int maxLength;
+
+    KeywordTable(String... keywords) {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        int[] hashes = new int[keywords.length];
+        for (int k = 0; k < keywords.length; k++) {
+            int hash = 0;
+            for (int i = 0; i < keywords[k].length(); i++) {
+                hash = step(hash, keywords[k].charAt(i));
+            }
+            hashes[k] = hash;
+            min = Math.min(min, keywords[k].length());
+            max = Math.max(max, keywords[k].length());
+        }
+        minLength = min;
+        maxLength = max;
+
+        int size = Integer.highestOneBit(Math.max(1, keywords.length)) * 8;
+        while (true) {
+            for (int candidate = 1; candidate < 4096; candidate++) {
+                char[][] table = new char[size][];
+                if (fill(table, size - 1, candidate, keywords, hashes)) {
+                    slots = table;
+                    mask = size - 1;
+                    seed = candidate;
+                    return;
+                }
+            }
+            size *= 2;
+        }
+    }
+
+    private static boolean fill(char[][] table, int mask, int seed, String[] keywords, int[] hashes) {
+        for (int k = 0; k < keywords.length; k++) {
+            int slot = index(hashes[k], seed, mask);
+            if (table[slot] != null) {
+                if (keywords[k].equals(new String(table[slot]))) {
+                    continue;
+                }
+                return false;
+            }
+            table[slot] = keywords[k].toCharArray();
+        }
+        return true;
+    }
+
+    /** Rolling hash the lexer updates while it scans an identifier. */
+    static int step(int hash, char c) {
+        return hash * 31 + c;
+    }
+
+    private static int index(int hash, int seed, int mask) {
+        int h = (hash ^ seed) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Tests whether text[start, start + length), whose rolling hash is
+     * {@code hash}, is a keyword.
+     */
+    boolean contains(char[] text, int start, int length, int hash) {
+        if (length < minLength || length > maxLength) {
+            return false;
+        }
+        char[] keyword = slots[index(hash, seed, mask)];
+        if (keyword == null || keyword.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keyword[i] != text[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean contains(String word) {
+        int hash = 0;
+        for (int i = 0; i < word.length(); i++) {
+            hash = step(hash, word.charAt(i));
+        }
+        return contains(word.toCharArray(), 0, word.length(), hash);
+    }
+}
@@ -0,0 +1,106 @@
+package com.massey.texteditor;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+
+/**
+ * Line numbers for the document of a text component, kept current as it
+ * is edited. The offsets of the line breaks are held in an
+ * {@link OffsetIndex}, so an edit costs the line breaks it adds or removes
+ * and finding the line of an offset, or the start of a line, is a binary
+ * search however long the document is.
+ *
+ * <p>Line breaks rather than line starts are recorded because an insert
+ * moves a line break at its own offset along with the text, just as the
+ * offset index moves its entries, whereas the start of a line must stay
+ * put when text is typed at the very start of it.</p>
+ *
+ * <p>Lines and columns count from 0, and a column is a number of
+ * characters, so a tab counts as one.</p>
+ */
+final class LineIndex implements DocumentListener {
+
+    private final JTextComponent editor;
+    private final Segment segment = new Segment();
+    private Document document;
+    private OffsetIndex breaks;
+
+    LineIndex(JTextComponent editor) {
+        this.editor = editor;
+        segment.setPartialReturn(true);
+        editor.addPropertyChangeListener("document", e -> attach());
+        attach();
+    }
+
+    /** Number of lines; a document without line breaks has one. */
+    int lineCount() {
+        return breaks.size() + 1;
+    }
+
+    /** The line holding {@code offset}; a line break belongs to the line it ends. */
+    int lineOf(int offset) {
+        return breaks.ceiling(offset);
+    }
+
+    /** Offset of the first character of a line, for {@code 0 <= line < lineCount()}. */
+    int lineStart(int line) {
+        return line == 0 ? 0 : breaks.get(line - 1) + 1;
+    }
+
+    /** Offset of the line break ending a line, or the document length for the last line. */
+    int lineEnd(int line) {
+        return line < breaks.size() ? breaks.get(line) : document.getLength();
+    }
+
+    /** Characters between the start of its line and {@code offset}. */
+    int columnOf(int offset) {
+        return offset - lineStart(lineOf(offset));
+    }
+
+    private void attach() {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = editor.getDocument();
+        document.addDocumentListener(this);
+        breaks = new OffsetIndex(document.getLength());
+        scan(0, document.getLength());
+    }
+
+    /** Adds the line breaks found in {@code [from, to)}. */
+    private void scan(int from, int to) {
+        try {
+            for (int offset = from; offset < to; ) {
+                document.getText(offset, to - offset, segment);
+                for (int i = 0; i < segment.count; i++) {
+                    if (segment.array[segment.offset + i] == '\n') {
+                        breaks.add(offset + i);
+                    }
+                }
+                offset += segment.count;
+            }
+        } catch (BadLocationException e) {
+            // The range lies inside the document the event came from
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        breaks.replace(e.getOffset(), 0, e.getLength());
+        scan(e.getOffset(), e.getOffset() + e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        breaks.replace(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attributes do not move lines
+    }
+}
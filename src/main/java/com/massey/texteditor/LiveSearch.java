@@ -0,0 +1,335 @@
+package com.massey.texteditor;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Highlights every occurrence of a search string in a text component and
+ * keeps the hits current as the document changes. The hits are held in an
+ * {@link OffsetIndex}, and each edit only rescans the few characters around
+ * it, so typing stays cheap however many hits there are. A single highlight
+ * covers the whole document; its painter looks up just the hits inside the
+ * area being painted, rather than the highlighter tracking one entry per hit.
+ *
+ * <p>Narrowing the query by typing more characters filters the existing
+ * hits instead of searching again, since every match of the longer string
+ * starts at a match of the shorter one. Any other change of query searches
+ * the whole document again: on the EDT up to {@link #SYNC_CHARS}, and
+ * otherwise on a background thread over a snapshot, showing the old hits
+ * until the new ones arrive. A search overtaken by another query is
+ * dropped, and one overtaken by an edit is run again.</p>
+ */
+final class LiveSearch implements DocumentListener {
+
+    private static final Color HIT_COLOR = new Color(255, 235, 120);
+    private static final Color CURRENT_COLOR = new Color(255, 160, 60);
+
+    /** Longest document searched again on the EDT when the query changes. */
+    static final int SYNC_CHARS = 1 << 20;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "live-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JTextComponent editor;
+    private final Consumer<String> status;
+    private final Highlighter.HighlightPainter painter = new HitPainter();
+    private Document document;
+    private Object highlight;
+    private SearchEngine engine;
+    // The query the hits were found for; an older one while a background search runs
+    private SearchEngine found;
+    private OffsetIndex hits;
+    // Edit and query counters; only the EDT writes them, the worker polls the volatile copy
+    private int edits;
+    private int queries;
+    private volatile int latestQuery;
+
+    /**
+     * @param status receives the "n of m" count whenever it changes
+     */
+    LiveSearch(JTextComponent editor, Consumer<String> status) {
+        this.editor = editor;
+        this.status = status;
+        editor.addPropertyChangeListener("document", e -> attach());
+        editor.addCaretListener(e -> {
+            if (engine != null) {
+                report();
+            }
+        });
+        attach();
+    }
+
+    /**
+     * Searches for {@code text}, or clears the highlights if it is empty.
+     */
+    void setQuery(String text, boolean matchCase, boolean wholeWord) {
+        if (text.isEmpty()) {
+            clear();
+            return;
+        }
+        SearchEngine previous = found;
+        engine = new SearchEngine(text, matchCase, wholeWord);
+        latestQuery = ++queries;
+        if (previous != null && hits != null && !wholeWord && !previous.isWholeWord()
+                && previous.isMatchCase() == matchCase && text.startsWith(previous.getText())) {
+            narrow();
+        } else if (document.getLength() > SYNC_CHARS && document instanceof EditorDocument) {
+            rescanLater();
+        } else {
+            rescan();
+        }
+        if (highlight == null) {
+            try {
+                highlight = editor.getHighlighter().addHighlight(0, document.getLength(), painter);
+            } catch (BadLocationException e) {
+                // The whole document is always a valid range
+            }
+        }
+        editor.repaint();
+        report();
+    }
+
+    /** Removes the highlights and forgets the hits. */
+    void clear() {
+        engine = null;
+        found = null;
+        hits = null;
+        latestQuery = ++queries;
+        if (highlight != null) {
+            editor.getHighlighter().removeHighlight(highlight);
+            highlight = null;
+        }
+        editor.repaint();
+    }
+
+    SearchEngine getEngine() {
+        return engine;
+    }
+
+    /** Number of hits, or 0 when nothing is being searched for. */
+    int count() {
+        return hits == null ? 0 : hits.size();
+    }
+
+    /** Whether a background search for the current query is still running. */
+    boolean isSearching() {
+        return engine != null && found != engine;
+    }
+
+    /** Returns the hit offsets in order, mainly for tests. */
+    int[] hits() {
+        return hits == null ? new int[0] : hits.toArray();
+    }
+
+    /** Selects the next hit after the selection, or the first one. */
+    void selectNext() {
+        if (count() > 0) {
+            int index = hits.ceiling(editor.getSelectionStart() + 1);
+            select(index < hits.size() ? index : 0);
+        }
+    }
+
+    /** Selects the hit before the selection, or the last one. */
+    void selectPrevious() {
+        if (count() > 0) {
+            int index = hits.ceiling(editor.getSelectionStart()) - 1;
+            select(index >= 0 ? index : hits.size() - 1);
+        }
+    }
+
+    private void select(int index) {
+        int at = hits.get(index);
+        editor.select(at, at + found.length());
+    }
+
+    private void attach() {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = editor.getDocument();
+        document.addDocumentListener(this);
+        if (highlight != null) {
+            // The old highlight belongs to the old document
+            editor.getHighlighter().removeHighlight(highlight);
+            highlight = null;
+        }
+        // The hits belong to the old document too, so none can be narrowed or kept
+        found = null;
+        hits = null;
+        if (engine != null) {
+            setQuery(engine.getText(), engine.isMatchCase(), engine.isWholeWord());
+        }
+    }
+
+    private void rescan() {
+        setHits(engine.findAll(document));
+    }
+
+    private void setHits(int[] all) {
+        hits = new OffsetIndex(document.getLength());
+        for (int at : all) {
+            hits.add(at);
+        }
+        found = engine;
+    }
+
+    /** Searches a snapshot on the worker, with an engine of its own since engines are not thread-safe. */
+    private void rescanLater() {
+        int query = queries;
+        int edit = edits;
+        SearchEngine searching = new SearchEngine(engine.getText(), engine.isMatchCase(), engine.isWholeWord());
+        PieceTableContent.Snapshot text = ((EditorDocument) document).snapshot();
+        WORKER.execute(() -> {
+            if (latestQuery != query) {
+                return;
+            }
+            int[] all = searching.findAll(text);
+            SwingUtilities.invokeLater(() -> {
+                if (queries != query) {
+                    return;
+                }
+                if (edits != edit) {
+                    // The snapshot is out of date; search the text as it is now
+                    rescanLater();
+                    return;
+                }
+                setHits(all);
+                editor.repaint();
+                report();
+            });
+        });
+    }
+
+    /** Keeps the hits that still match after characters were added to the query. */
+    private void narrow() {
+        found = engine;
+        OffsetIndex narrowed = new OffsetIndex(document.getLength());
+        int length = document.getLength();
+        for (int i = 0, size = hits.size(); i < size; i++) {
+            int at = hits.get(i);
+            if (at + engine.length() <= length && engine.findWithin(document, at, at + engine.length()) == at) {
+                narrowed.add(at);
+            }
+        }
+        hits = narrowed;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        edited(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        edited(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attributes do not affect the hits
+    }
+
+    /**
+     * Drops the hits the edit touched, moves the later ones, and searches
+     * only the stretch of text around the edit that a new hit could overlap.
+     */
+    private void edited(int offset, int removed, int inserted) {
+        edits++;
+        if (found == null) {
+            return;
+        }
+        int m = found.length();
+        // A whole-word hit also depends on the characters either side of it
+        int margin = found.isWholeWord() ? 1 : 0;
+        int from = Math.max(0, offset - m + 1 - margin);
+        hits.removeRange(from, offset + removed + margin);
+        hits.replace(offset, removed, inserted);
+
+        int to = Math.min(document.getLength(), offset + inserted + m - 1 + margin);
+        int index = hits.ceiling(from);
+        // Hits never overlap, so start after the one before the stretch
+        int start = index > 0 ? Math.max(from, hits.get(index - 1) + m) : from;
+        int last = -1;
+        for (int at = found.findWithin(document, start, to); at >= 0; at = found.findWithin(document, at + m, to)) {
+            hits.add(at);
+            last = at;
+        }
+        if (last >= 0) {
+            // A later hit overlapped by a new one loses out, as in a full search
+            hits.removeRange(last + 1, last + m);
+        }
+        editor.repaint();
+        report();
+    }
+
+    /** Shows "n of m" when a hit is selected, otherwise just the count. */
+    private void report() {
+        int count = count();
+        String text;
+        if (isSearching()) {
+            text = "Searching for " + engine.getText() + "...";
+        } else if (count == 0) {
+            text = "No matches for " + engine.getText();
+        } else {
+            int index = hits.ceiling(editor.getSelectionStart());
+            boolean selected = index < count && hits.get(index) == editor.getSelectionStart()
+                    && editor.getSelectionEnd() == editor.getSelectionStart() + found.length();
+            text = selected ? (index + 1) + " of " + count : count + (count == 1 ? " match" : " matches");
+        }
+        status.accept(text);
+    }
+
+    /** Paints the hits that fall inside the clip, found by binary search. */
+    private final class HitPainter implements Highlighter.HighlightPainter {
+        @Override
+        public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+            if (hits == null || hits.size() == 0) {
+                return;
+            }
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = c.getVisibleRect();
+            }
+            int m = found.length();
+            int first = c.viewToModel2D(new Point2D.Double(0, clip.y));
+            int last = c.viewToModel2D(new Point2D.Double(c.getWidth(), clip.y + clip.height));
+            int selection = c.getSelectionStart();
+            try {
+                for (int i = hits.ceiling(Math.max(0, first - m + 1)); i < hits.size(); i++) {
+                    int at = hits.get(i);
+                    if (at > last) {
+                        break;
+                    }
+                    Rectangle2D start = c.modelToView2D(at);
+                    Rectangle2D end = c.modelToView2D(at + m);
+                    if (start == null || end == null) {
+                        continue;
+                    }
+                    g.setColor(at == selection ? CURRENT_COLOR : HIT_COLOR);
+                    double right = end.getY() == start.getY() ? end.getX() : c.getWidth();
+                    g.fillRect((int) start.getX(), (int) start.getY(),
+                               Math.max(1, (int) (right - start.getX())), (int) start.getHeight());
+                }
+            } catch (BadLocationException e) {
+                // Hits are kept within the document
+            }
+        }
+    }
+}
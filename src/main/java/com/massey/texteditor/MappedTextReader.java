@@ -0,0 +1,157 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes a text file through memory-mapped windows and hands the result
+ * to a consumer in fixed-size chunks, so opening a file never builds a
+ * whole-file String or a String per line.
+ * Line separators (CR LF and lone CR) are normalised to '\n' as the
+ * Swing text package expects.
+ */
+final class MappedTextReader {
+
+    /** Bytes mapped at a time; the decoder carries partial characters across windows. */
+    static final int WINDOW_BYTES = 16 * 1024 * 1024;
+
+    /** Characters handed to the consumer per chunk. */
+    static final int CHUNK_CHARS = 64 * 1024;
+
+    /** Stands in for bytes the charset cannot decode, as CodingErrorAction.REPLACE would. */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /**
+     * Receives decoded text in file order. The array is reused between
+     * calls, so implementations must copy what they keep.
+     */
+    interface ChunkConsumer {
+        void accept(char[] chars, int length) throws IOException;
+    }
+
+    private MappedTextReader() {
+    }
+
+    /**
+     * Decodes the whole file into the consumer.
+     *
+     * @return the number of bytes read
+     */
+    static long read(Path path, Charset charset, ChunkConsumer consumer) throws IOException {
+        return read(path, charset, WINDOW_BYTES, consumer);
+    }
+
+    static long read(Path path, Charset charset, int windowBytes, ChunkConsumer consumer) throws IOException {
+        return read(path, charset, windowBytes, consumer, null);
+    }
+
+    /**
+     * Decodes the whole file into the consumer and, if {@code layout} is not
+     * null, records in it how many bytes each chunk came from.
+     */
+    static long read(Path path, Charset charset, ChunkConsumer consumer, FileOrigin.Builder layout)
+            throws IOException {
+        return read(path, charset, WINDOW_BYTES, consumer, layout);
+    }
+
+    static long read(Path path, Charset charset, int windowBytes, ChunkConsumer consumer,
+                     FileOrigin.Builder layout) throws IOException {
+        // Errors are replaced by hand so the layout can be told the text is not exact
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer decoded = CharBuffer.allocate(CHUNK_CHARS);
+        Normaliser normaliser = new Normaliser(consumer, layout);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                long windowLength = Math.min(windowBytes, size - position);
+                endOfInput = position + windowLength == size;
+                ByteBuffer window = windowLength == 0
+                        ? ByteBuffer.allocate(0)
+                        : channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+                while (true) {
+                    CoderResult result = decoder.decode(window, decoded, endOfInput);
+                    if (result.isError()) {
+                        window.position(window.position() + result.length());
+                        if (!decoded.hasRemaining()) {
+                            normaliser.drain(decoded, position + window.position());
+                        }
+                        decoded.put(REPLACEMENT);
+                        if (layout != null) {
+                            layout.inexact();
+                        }
+                        continue;
+                    }
+                    normaliser.drain(decoded, position + window.position());
+                    if (!result.isOverflow()) {
+                        break;
+                    }
+                }
+                if (!endOfInput && window.position() == 0) {
+                    throw new IOException("Cannot decode " + path + " at byte " + position);
+                }
+                // Bytes of a character split across the window edge are re-mapped next time
+                position += window.position();
+            }
+            while (decoder.flush(decoded).isOverflow()) {
+                normaliser.drain(decoded, size);
+            }
+            normaliser.drain(decoded, size);
+            return size;
+        }
+    }
+
+    /** Copies decoded text into the reusable chunk while folding CR LF and CR into LF. */
+    private static final class Normaliser {
+        private final ChunkConsumer consumer;
+        private final FileOrigin.Builder layout;
+        private final char[] chunk = new char[CHUNK_CHARS];
+        private boolean afterCarriageReturn;
+        private long emitted;
+
+        Normaliser(ChunkConsumer consumer, FileOrigin.Builder layout) {
+            this.consumer = consumer;
+            this.layout = layout;
+        }
+
+        /** Emits the decoded characters, which came from the file up to {@code byteEnd}. */
+        void drain(CharBuffer decoded, long byteEnd) throws IOException {
+            decoded.flip();
+            int length = 0;
+            boolean folded = false;
+            while (decoded.hasRemaining()) {
+                char c = decoded.get();
+                if (c == '\n' && afterCarriageReturn) {
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = c == '\r';
+                folded |= afterCarriageReturn;
+                chunk[length++] = afterCarriageReturn ? '\n' : c;
+            }
+            decoded.clear();
+            if (length > 0) {
+                consumer.accept(chunk, length);
+                emitted += length;
+            }
+            if (layout != null) {
+                if (folded) {
+                    layout.inexact();
+                }
+                layout.chunk(emitted, byteEnd);
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.massey.texteditor;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a {@link StyledSnapshot} as an ODT file, streaming it into a
+ * {@link ZipOutputStream} whose content.xml comes straight from an
+ * {@link XMLStreamWriter}, so neither the XML nor a DOM of it is ever
+ * built. Each line of the text becomes a {@code text:p}; runs with
+ * character attributes become spans with an automatic style, collected in
+ * a pass over the runs alone before the text is written.
+ *
+ * <p>White space is written the way ODF wants it, so it reads back as it
+ * was: runs of spaces beyond the first, and spaces at the start or end of
+ * a paragraph or span, as {@code text:s}, and tabs as {@code text:tab}.</p>
+ */
+final class OdtWriter {
+
+    static final String MIME_TYPE = "application/vnd.oasis.opendocument.text";
+
+    private static final String OFFICE_NS = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+    private static final String TEXT_NS = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+    private static final String STYLE_NS = "urn:oasis:names:tc:opendocument:xmlns:style:1.0";
+    private static final String FO_NS = "urn:oasis:names:tc:opendocument:xmlns:xsl-fo-compatible:1.0";
+    private static final String MANIFEST_NS = "urn:oasis:names:tc:opendocument:xmlns:manifest:1.0";
+
+    private static final XMLOutputFactory XML_OUTPUT = XMLOutputFactory.newFactory();
+
+    private final XMLStreamWriter xml;
+    private final LongConsumer progress;
+    // Automatic style names by the text properties they stand for
+    private final Map<String, String> styles = new LinkedHashMap<>();
+    private final char[] pending = new char[4096];
+    private int pendingLength;
+    private int spaces;
+    private boolean atElementStart = true;
+    // Style of the current run, and whether its span element is open
+    private String span;
+    private boolean inSpan;
+    private long written;
+
+    private OdtWriter(XMLStreamWriter xml, LongConsumer progress) {
+        this.xml = xml;
+        this.progress = progress;
+    }
+
+    /**
+     * Writes the document to {@code out} as a complete ODT archive; the
+     * stream is left open.
+     *
+     * @param progress receives the number of characters written so far
+     */
+    static void write(StyledSnapshot document, OutputStream out, LongConsumer progress) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // The MIME type comes first and uncompressed, so tools can recognise the file
+        byte[] mimeType = MIME_TYPE.getBytes(StandardCharsets.US_ASCII);
+        ZipEntry mimeEntry = new ZipEntry("mimetype");
+        mimeEntry.setMethod(ZipEntry.STORED);
+        mimeEntry.setSize(mimeType.length);
+        CRC32 crc = new CRC32();
+        crc.update(mimeType);
+        mimeEntry.setCrc(crc.getValue());
+        zip.putNextEntry(mimeEntry);
+        zip.write(mimeType);
+        zip.closeEntry();
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/manifest.xml"));
+            writeManifest(zip);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            XMLStreamWriter xml = XML_OUTPUT.createXMLStreamWriter(zip, "UTF-8");
+            new OdtWriter(xml, progress).writeContent(document);
+            xml.close();
+            zip.closeEntry();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot write ODT file: " + e.getMessage(), e);
+        }
+        zip.finish();
+    }
+
+    private static void writeManifest(OutputStream out) throws XMLStreamException {
+        XMLStreamWriter xml = XML_OUTPUT.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.setPrefix("manifest", MANIFEST_NS);
+        xml.writeStartElement(MANIFEST_NS, "manifest");
+        xml.writeNamespace("manifest", MANIFEST_NS);
+        xml.writeAttribute(MANIFEST_NS, "version", "1.2");
+        fileEntry(xml, "/", MIME_TYPE);
+        fileEntry(xml, "content.xml", "text/xml");
+        xml.writeEndElement();
+        xml.writeEndDocument();
+        xml.close();
+    }
+
+    private static void fileEntry(XMLStreamWriter xml, String path, String mediaType) throws XMLStreamException {
+        xml.writeEmptyElement(MANIFEST_NS, "file-entry");
+        xml.writeAttribute(MANIFEST_NS, "full-path", path);
+        xml.writeAttribute(MANIFEST_NS, "media-type", mediaType);
+    }
+
+    private void writeContent(StyledSnapshot document) throws XMLStreamException, IOException {
+        for (int run = 0; run < document.runCount(); run++) {
+            String properties = textProperties(document.attributes(run));
+            if (!properties.isEmpty()) {
+                styles.putIfAbsent(properties, "T" + (styles.size() + 1));
+            }
+        }
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.setPrefix("office", OFFICE_NS);
+        xml.setPrefix("text", TEXT_NS);
+        xml.setPrefix("style", STYLE_NS);
+        xml.setPrefix("fo", FO_NS);
+        xml.writeStartElement(OFFICE_NS, "document-content");
+        xml.writeNamespace("office", OFFICE_NS);
+        xml.writeNamespace("text", TEXT_NS);
+        xml.writeNamespace("style", STYLE_NS);
+        xml.writeNamespace("fo", FO_NS);
+        xml.writeAttribute(OFFICE_NS, "version", "1.2");
+        xml.writeStartElement(OFFICE_NS, "automatic-styles");
+        for (Map.Entry<String, String> style : styles.entrySet()) {
+            xml.writeStartElement(STYLE_NS, "style");
+            xml.writeAttribute(STYLE_NS, "name", style.getValue());
+            xml.writeAttribute(STYLE_NS, "family", "text");
+            xml.writeEmptyElement(STYLE_NS, "text-properties");
+            String[] properties = style.getKey().split("\n");
+            for (int i = 0; i < properties.length; i += 3) {
+                xml.writeAttribute(properties[i], properties[i + 1], properties[i + 2]);
+            }
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        xml.writeStartElement(OFFICE_NS, "body");
+        xml.writeStartElement(OFFICE_NS, "text");
+        xml.writeStartElement(TEXT_NS, "p");
+        document.forEachRun(new StyledSnapshot.Visitor() {
+            @Override
+            public void run(AttributeSet attributes) throws IOException {
+                try {
+                    closeSpan();
+                } catch (XMLStreamException e) {
+                    throw new IOException("Cannot write ODT file: " + e.getMessage(), e);
+                }
+                span = styles.get(textProperties(attributes));
+            }
+
+            @Override
+            public void chars(char[] chars, int start, int length) throws IOException {
+                try {
+                    for (int i = start, end = start + length; i < end; i++) {
+                        character(chars[i]);
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException("Cannot write ODT file: " + e.getMessage(), e);
+                }
+                written += length;
+                progress.accept(written);
+            }
+        });
+        closeSpan();
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndDocument();
+    }
+
+    private void character(char c) throws XMLStreamException {
+        switch (c) {
+            case ' ':
+                spaces++;
+                return;
+            case '\n':
+                // The run's style carries on in the next paragraph
+                closeSpan();
+                xml.writeEndElement();
+                xml.writeStartElement(TEXT_NS, "p");
+                atElementStart = true;
+                return;
+            case '\r':
+                return;
+            case '\t':
+                openSpan();
+                flushSpaces(false);
+                flushText();
+                xml.writeEmptyElement(TEXT_NS, "tab");
+                atElementStart = false;
+                return;
+            default:
+                if (c < 0x20 || c == 0xfffe || c == 0xffff) {
+                    // Not allowed in XML
+                    return;
+                }
+                openSpan();
+                flushSpaces(true);
+                if (pendingLength == pending.length) {
+                    flushText();
+                }
+                pending[pendingLength++] = c;
+                atElementStart = false;
+        }
+    }
+
+    /**
+     * Opens the span of the current run before its first character, so
+     * spaces held back from the start of the run go inside it.
+     */
+    private void openSpan() throws XMLStreamException {
+        if (span != null && !inSpan) {
+            xml.writeStartElement(TEXT_NS, "span");
+            xml.writeAttribute(TEXT_NS, "style-name", span);
+            inSpan = true;
+            atElementStart = true;
+        }
+    }
+
+    private void closeSpan() throws XMLStreamException {
+        if (spaces > 0) {
+            openSpan();
+        }
+        flushSpaces(false);
+        flushText();
+        if (inSpan) {
+            xml.writeEndElement();
+            inSpan = false;
+        }
+    }
+
+    /**
+     * Writes the spaces held back so far.
+     *
+     * @param beforeText whether text follows in the same element, so one
+     *                   space can be written as it is
+     */
+    private void flushSpaces(boolean beforeText) throws XMLStreamException {
+        if (spaces == 0) {
+            return;
+        }
+        int counted = spaces;
+        if (beforeText && !atElementStart) {
+            // A single space between words survives white space collapsing
+            if (pendingLength == pending.length) {
+                flushText();
+            }
+            pending[pendingLength++] = ' ';
+            counted--;
+        }
+        spaces = 0;
+        if (counted > 0) {
+            flushText();
+            xml.writeEmptyElement(TEXT_NS, "s");
+            if (counted > 1) {
+                xml.writeAttribute(TEXT_NS, "c", Integer.toString(counted));
+            }
+            atElementStart = false;
+        }
+    }
+
+    private void flushText() throws XMLStreamException {
+        if (pendingLength > 0) {
+            xml.writeCharacters(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
+    }
+
+    /**
+     * The ODF text properties of a run as namespace, name and value
+     * triples, one per line, or an empty string for plain text.
+     */
+    private static String textProperties(AttributeSet attributes) {
+        StringBuilder properties = new StringBuilder();
+        Object family = attributes.getAttribute(StyleConstants.FontFamily);
+        if (family != null) {
+            property(properties, FO_NS, "font-family", family.toString());
+        }
+        Object size = attributes.getAttribute(StyleConstants.FontSize);
+        if (size != null) {
+            property(properties, FO_NS, "font-size", size + "pt");
+        }
+        Object color = attributes.getAttribute(StyleConstants.Foreground);
+        if (color instanceof Color) {
+            property(properties, FO_NS, "color",
+                     String.format(Locale.ROOT, "#%06x", ((Color) color).getRGB() & 0xffffff));
+        }
+        if (StyleConstants.isBold(attributes)) {
+            property(properties, FO_NS, "font-weight", "bold");
+        }
+        if (StyleConstants.isItalic(attributes)) {
+            property(properties, FO_NS, "font-style", "italic");
+        }
+        if (StyleConstants.isUnderline(attributes)) {
+            property(properties, STYLE_NS, "text-underline-style", "solid");
+        }
+        if (StyleConstants.isStrikeThrough(attributes)) {
+            property(properties, STYLE_NS, "text-line-through-style", "solid");
+        }
+        return properties.toString();
+    }
+
+    private static void property(StringBuilder properties, String namespace, String name, String value) {
+        properties.append(namespace).append('\n').append(name).append('\n')
+                  .append(value.replace('\n', ' ')).append('\n');
+    }
+}
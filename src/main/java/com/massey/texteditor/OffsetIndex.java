@@ -0,0 +1,117 @@
+package com.massey.texteditor;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of offsets into a document that keeps up with edits cheaply.
+ * The offsets live in a gap buffer: those before the gap are stored as is
+ * and those after it as their distance from the end of the document, so an
+ * edit at the gap moves every later offset without touching it. Moving the
+ * gap to an edit costs the number of offsets it passes, which for typing
+ * in one place is next to nothing even with hundreds of thousands of
+ * offsets. Lookups are binary searches.
+ */
+final class OffsetIndex {
+
+    private int[] buffer = new int[64];
+    private int gapStart;
+    private int gapEnd = buffer.length;
+    private int documentLength;
+
+    OffsetIndex(int documentLength) {
+        this.documentLength = documentLength;
+    }
+
+    /** Removes every offset and starts over for a document of the given length. */
+    void clear(int documentLength) {
+        gapStart = 0;
+        gapEnd = buffer.length;
+        this.documentLength = documentLength;
+    }
+
+    int size() {
+        return buffer.length - (gapEnd - gapStart);
+    }
+
+    int get(int index) {
+        return index < gapStart ? buffer[index] : documentLength - buffer[index + gapEnd - gapStart];
+    }
+
+    /** Returns the index of the first offset at or after {@code offset}, or {@link #size()}. */
+    int ceiling(int offset) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (get(mid) < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Adds an offset if it is not already there. */
+    void add(int offset) {
+        int index = ceiling(offset);
+        if (index < size() && get(index) == offset) {
+            return;
+        }
+        moveGap(index);
+        if (gapStart == gapEnd) {
+            grow();
+        }
+        buffer[gapStart++] = offset;
+    }
+
+    /** Removes the offsets in {@code [from, to)}. */
+    void removeRange(int from, int to) {
+        moveGap(ceiling(from));
+        while (gapEnd < buffer.length && documentLength - buffer[gapEnd] < to) {
+            gapEnd++;
+        }
+    }
+
+    /**
+     * Follows an edit that replaced {@code removed} characters at
+     * {@code offset} with {@code inserted} new ones. Offsets inside the
+     * removed range are dropped and those at or after its end move with the
+     * text.
+     */
+    void replace(int offset, int removed, int inserted) {
+        removeRange(offset, offset + removed);
+        // The gap is now at the edit, so shifting the tail is just a new length
+        documentLength += inserted - removed;
+    }
+
+    /** Returns the offsets as a plain array, mainly for tests. */
+    int[] toArray() {
+        int[] offsets = new int[size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = get(i);
+        }
+        return offsets;
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            for (int i = gapStart - 1; i >= index; i--) {
+                buffer[--gapEnd] = documentLength - buffer[i];
+            }
+        } else {
+            for (int i = gapStart; i < index; i++) {
+                buffer[i] = documentLength - buffer[gapEnd++];
+            }
+        }
+        gapStart = index;
+    }
+
+    private void grow() {
+        int tail = buffer.length - gapEnd;
+        int[] bigger = Arrays.copyOf(buffer, buffer.length * 2);
+        System.arraycopy(buffer, gapEnd, bigger, bigger.length - tail, tail);
+        gapEnd = bigger.length - tail;
+        buffer = bigger;
+    }
+}
@@ -0,0 +1,328 @@
+package com.massey.texteditor;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * Finds every match of a regular expression in a document snapshot on all
+ * cores. The text is cut into line-aligned chunks that a {@link ForkJoinPool}
+ * matches in parallel, and the hits are merged back into document order as
+ * soon as every chunk before them is done, so results stream out while later
+ * chunks are still being matched.
+ *
+ * <p>Each chunk only reports matches that start inside it, but its matcher
+ * may read up to {@link #OVERLAP_CHARS} further, so a match can run into the
+ * next chunk; a match that reaches even that limit is found again against
+ * the rest of the text. Lookarounds see past the chunk edges. When a match
+ * does run into the next chunk, that chunk's own hits were found from the
+ * wrong place, so the merge searches again from the end of the match until
+ * it lands on one of those hits, after which the two agree. The result is
+ * the same as one matcher run over the whole text, except that a match that
+ * could only be found by reading more than {@link #OVERLAP_CHARS} past the
+ * chunk it starts in is missed.</p>
+ */
+final class ParallelRegexSearch {
+
+    /** Target chunk length; each chunk is extended to the end of its last line. */
+    static final int CHUNK_CHARS = 1 << 20;
+
+    /** How far past its chunk a matcher may read to finish a match. */
+    static final int OVERLAP_CHARS = 64 * 1024;
+
+    /** Receives hits in document order, on a pool thread, one batch at a time. */
+    interface Listener {
+        /**
+         * @param starts the start offsets of the hits, in order
+         * @param ends   the matching end offsets
+         * @param count  how many entries of the arrays are used
+         * @return false to stop the search
+         */
+        boolean found(int[] starts, int[] ends, int count);
+    }
+
+    private final PieceTableContent.Snapshot text;
+    private final Pattern pattern;
+    // Chunk i covers [bounds[i], bounds[i + 1])
+    private final int[] bounds;
+    private final Hits[] results;
+    private volatile boolean cancelled;
+
+    // Merge state, guarded by this
+    private Listener listener;
+    private int merged;
+    private int resume;
+    private int total;
+
+    ParallelRegexSearch(PieceTableContent.Snapshot text, Pattern pattern) {
+        this(text, pattern, CHUNK_CHARS);
+    }
+
+    ParallelRegexSearch(PieceTableContent.Snapshot text, Pattern pattern, int chunkChars) {
+        this.text = text;
+        this.pattern = pattern;
+        this.bounds = lineAlignedBounds(text, chunkChars);
+        this.results = new Hits[bounds.length - 1];
+    }
+
+    /** Number of chunks the text was cut into. */
+    int chunks() {
+        return results.length;
+    }
+
+    /**
+     * Runs the search on {@code pool} and waits for it.
+     *
+     * @return the number of hits handed to the listener
+     * @throws InterruptedException if the calling thread is interrupted,
+     *         which also stops the search
+     */
+    int run(ForkJoinPool pool, Listener listener) throws InterruptedException {
+        synchronized (this) {
+            this.listener = listener;
+        }
+        ForkJoinTask<Void> task = pool.submit(new ChunkTask(0, results.length));
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+        synchronized (this) {
+            return total;
+        }
+    }
+
+    /** Stops the search; chunks already being matched finish early. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Splits the chunks in halves until one is left, which is then matched. */
+    private final class ChunkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        ChunkTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                completed(from, match(from));
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, middle), new ChunkTask(middle, to));
+            }
+        }
+    }
+
+    /** Collects the hits that start inside one chunk. */
+    private Hits match(int chunk) {
+        Hits hits = new Hits();
+        ChunkMatcher matcher = new ChunkMatcher(bounds[chunk], bounds[chunk + 1]);
+        while (matcher.find()) {
+            hits.add(matcher.start(), matcher.end());
+        }
+        return hits;
+    }
+
+    /**
+     * Finds the matches that start before the end of a chunk, reading at
+     * most {@link #OVERLAP_CHARS} past it unless a match needs more.
+     */
+    private final class ChunkMatcher {
+        private final int end;
+        private final int limit;
+        private Matcher matcher;
+        private boolean extended;
+
+        ChunkMatcher(int from, int end) {
+            this.end = end;
+            this.limit = Math.min(text.length(), end + OVERLAP_CHARS);
+            this.matcher = matcher(from, limit);
+        }
+
+        boolean find() {
+            if (extended) {
+                // Back to the bounded region after a long match
+                int from = matcher.end() > matcher.start() ? matcher.end() : matcher.end() + 1;
+                if (from > text.length() || !startsInside(from)) {
+                    return false;
+                }
+                matcher = matcher(from, limit);
+                extended = false;
+            }
+            if (cancelled || !matcher.find() || !startsInside(matcher.start())) {
+                return false;
+            }
+            if (matcher.hitEnd() && limit < text.length()) {
+                // The match reached the overlap limit; find it again with all the text
+                matcher = matcher(matcher.start(), text.length());
+                extended = true;
+                return matcher.find() && startsInside(matcher.start());
+            }
+            return true;
+        }
+
+        /** The last chunk also owns the end of the text, where an empty match can sit. */
+        private boolean startsInside(int offset) {
+            return offset < end || end == text.length();
+        }
+
+        int start() {
+            return matcher.start();
+        }
+
+        int end() {
+            return matcher.end();
+        }
+    }
+
+    private Matcher matcher(int from, int to) {
+        Matcher matcher = pattern.matcher(new DocumentCharSequence(text));
+        matcher.region(from, to);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        return matcher;
+    }
+
+    /** Stores a finished chunk and hands on every chunk whose predecessors are all done. */
+    private synchronized void completed(int chunk, Hits hits) {
+        results[chunk] = hits;
+        while (merged < results.length && results[merged] != null && !cancelled) {
+            Hits next = results[merged];
+            results[merged] = null;
+            emit(resync(merged, next));
+            merged++;
+        }
+    }
+
+    /**
+     * Fixes up the start of a chunk's hits when the previous hit ran into
+     * it, by matching on from where that hit ended until a match agrees
+     * with one the chunk found itself.
+     */
+    private Hits resync(int chunk, Hits hits) {
+        int end = bounds[chunk + 1];
+        if (resume <= bounds[chunk]) {
+            return hits;
+        }
+        Hits fixed = new Hits();
+        if (resume >= end) {
+            // The previous hit covered the whole chunk
+            return fixed;
+        }
+        int next = 0;
+        ChunkMatcher matcher = new ChunkMatcher(resume, end);
+        while (matcher.find()) {
+            while (next < hits.count && hits.starts[next] < matcher.start()) {
+                next++;
+            }
+            if (next < hits.count && hits.starts[next] == matcher.start() && hits.ends[next] == matcher.end()) {
+                // From here on the chunk's own hits are what one matcher would find
+                fixed.addAll(hits, next);
+                return fixed;
+            }
+            fixed.add(matcher.start(), matcher.end());
+        }
+        return fixed;
+    }
+
+    private void emit(Hits hits) {
+        if (hits.count == 0) {
+            return;
+        }
+        resume = hits.ends[hits.count - 1];
+        total += hits.count;
+        if (!listener.found(hits.starts, hits.ends, hits.count)) {
+            cancelled = true;
+        }
+    }
+
+    /** Cuts the text roughly every {@code chunkChars}, moving each cut past the next line break. */
+    private static int[] lineAlignedBounds(PieceTableContent.Snapshot text, int chunkChars) {
+        int length = text.length();
+        int[] bounds = new int[Math.max(2, length / chunkChars + 2)];
+        int count = 1;
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int cut = 0;
+        try {
+            while (cut < length) {
+                int next = cut + chunkChars;
+                if (next >= length) {
+                    cut = length;
+                } else {
+                    cut = length;
+                    while (next < length) {
+                        text.getChars(next, length - next, segment);
+                        int newline = indexOf(segment, '\n');
+                        if (newline >= 0) {
+                            cut = next + newline + 1;
+                            break;
+                        }
+                        next += segment.count;
+                    }
+                }
+                if (count == bounds.length) {
+                    bounds = Arrays.copyOf(bounds, count * 2);
+                }
+                bounds[count++] = cut;
+            }
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+        if (count == 1) {
+            // Even empty text is one chunk, since a pattern can match nothing
+            bounds[count++] = 0;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static int indexOf(Segment segment, char c) {
+        for (int i = 0; i < segment.count; i++) {
+            if (segment.array[segment.offset + i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Growable parallel arrays of hit start and end offsets. */
+    private static final class Hits {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count;
+
+        void add(int start, int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        void addAll(Hits other, int from) {
+            for (int i = from; i < other.count; i++) {
+                add(other.starts[i], other.ends[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.massey.texteditor;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Writes plain text to a PDF as it is handed over, one A4 page after
+ * another. Text goes through a {@link PdfLineBreaker}, so the whole export
+ * is a single pass, and each page is written out as soon as it is full.
+ * The document is kept in a scratch file rather than on the heap, which
+ * keeps memory use flat however long the text is.
+ *
+ * <p>The layout matches the editor's earlier export: 50 pt margins, lines
+ * 1.5 times the font size apart and an extra half line after each line of
+ * the source text.</p>
+ *
+ * <p>Breaking lines is most of the work, and a line of the source text
+ * breaks the same wherever it lands on a page, so
+ * {@link #export(PieceTableContent.Snapshot, PDFont, float, File, ForkJoinPool, IntConsumer)}
+ * splits the text at line ends into blocks, lays the blocks out on a
+ * fork-join pool and writes them in order on the calling thread. Only the
+ * vertical position carries over from one block to the next, and that is
+ * settled while writing.</p>
+ */
+final class PdfExporter implements Closeable {
+
+    static final float MARGIN = 50;
+
+    /** Characters per block laid out in parallel; blocks end at the first line end after this. */
+    static final int BLOCK_CHARS = 1 << 20;
+
+    private final PDDocument document;
+    private final PDFont font;
+    private final float fontSize;
+    private final float leading;
+    private final PdfLineBreaker breaker;
+    private final PDRectangle pageSize = PDRectangle.A4;
+    private PDPageContentStream contents;
+    private float y;
+    private float lastY;
+
+    PdfExporter(PDFont font, float fontSize) {
+        this.document = new PDDocument(MemoryUsageSetting.setupTempFileOnly());
+        this.font = font;
+        this.fontSize = fontSize;
+        this.leading = 1.5f * fontSize;
+        this.breaker = new PdfLineBreaker(GlyphWidths.of(font), lineWidth(fontSize), new PdfLineBreaker.Sink() {
+            @Override
+            public void line(String text) throws IOException {
+                show(text);
+            }
+
+            @Override
+            public void paragraphEnd() {
+                y -= leading * 0.5f;
+            }
+        });
+        this.y = top();
+    }
+
+    /** Lays out more text; a '\n' ends a line of the source. */
+    void append(char[] chars, int start, int length) throws IOException {
+        breaker.append(chars, start, length);
+    }
+
+    void append(CharSequence text) throws IOException {
+        breaker.append(text);
+    }
+
+    /** Number of pages so far. */
+    int getPageCount() {
+        return document.getNumberOfPages();
+    }
+
+    /** Writes out a block laid out elsewhere, as if its text had been appended. */
+    void append(Block block) throws IOException {
+        breaker.finish();
+        for (int i = 0; i < block.lines.size(); i++) {
+            y -= block.gapsBefore[i] * leading * 0.5f;
+            show(block.lines.get(i));
+        }
+        y -= block.trailingGaps * leading * 0.5f;
+    }
+
+    /**
+     * Finishes the last page and writes the PDF; an empty text gives one
+     * blank page. The PDF is written through {@link AtomicTextWriter#replace},
+     * so a failed or interrupted export leaves an existing file as it was
+     * and a new file gets the usual permissions.
+     */
+    void save(File file) throws IOException {
+        breaker.finish();
+        endPage();
+        if (document.getNumberOfPages() == 0) {
+            document.addPage(new PDPage(pageSize));
+        }
+        AtomicTextWriter.replace(file.toPath(), AtomicTextWriter.Sync.NEVER, channel -> {
+            // PDFBox closes the stream it saves to, but the channel must stay open
+            OutputStream out = new FilterOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), AtomicTextWriter.BUFFER_BYTES)) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    this.out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            document.save(out);
+            out.flush();
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            endPage();
+        } finally {
+            document.close();
+        }
+    }
+
+    /** Exports a document snapshot piece by piece on the calling thread, without copying the text. */
+    static void export(PieceTableContent.Snapshot snapshot, PDFont font, float fontSize, File file)
+            throws IOException {
+        try (PdfExporter exporter = new PdfExporter(font, fontSize)) {
+            snapshot.forEachPiece(exporter::append);
+            exporter.save(file);
+        }
+    }
+
+    /**
+     * Exports a document snapshot, laying out blocks of it on {@code pool}
+     * while the pages are written here in order. A few blocks per thread
+     * are laid out ahead of the writer at most, so memory stays bounded.
+     *
+     * @param progress receives the percentage written after each block
+     * @throws InterruptedException if the calling thread is interrupted;
+     *         the target file is then left untouched
+     */
+    static void export(PieceTableContent.Snapshot snapshot, PDFont font, float fontSize, File file,
+                       ForkJoinPool pool, IntConsumer progress) throws IOException, InterruptedException {
+        export(snapshot, font, fontSize, file, pool, progress, BLOCK_CHARS);
+    }
+
+    static void export(PieceTableContent.Snapshot snapshot, PDFont font, float fontSize, File file,
+                       ForkJoinPool pool, IntConsumer progress, int blockChars)
+            throws IOException, InterruptedException {
+        int[] bounds = blockBounds(snapshot, blockChars);
+        int blocks = bounds.length - 1;
+        int ahead = Math.max(2, pool.getParallelism() * 2);
+        GlyphWidths widths = GlyphWidths.of(font);
+        float width = lineWidth(fontSize);
+        Deque<ForkJoinTask<Block>> pending = new ArrayDeque<>();
+        try (PdfExporter exporter = new PdfExporter(font, fontSize)) {
+            int submitted = 0;
+            for (int i = 0; i < blocks; i++) {
+                for (; submitted < blocks && submitted - i < ahead; submitted++) {
+                    int from = bounds[submitted];
+                    int to = bounds[submitted + 1];
+                    pending.add(pool.submit(() -> Block.layout(snapshot, from, to, widths, width)));
+                }
+                exporter.append(await(pending.poll()));
+                progress.accept((int) ((long) bounds[i + 1] * 100 / Math.max(1, snapshot.length())));
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException("PDF export interrupted");
+            }
+            exporter.save(file);
+        } finally {
+            for (ForkJoinTask<Block> task : pending) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /** Splits the text into blocks of about {@code blockChars} that end just after a line end. */
+    static int[] blockBounds(PieceTableContent.Snapshot snapshot, int blockChars) {
+        int length = snapshot.length();
+        int[] bounds = new int[Math.max(2, length / blockChars + 2)];
+        int count = 1;
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        try {
+            int at = 0;
+            while (at < length) {
+                int next = Math.min(length, at + blockChars);
+                // Run on to the end of the line, so no line is split between blocks
+                search:
+                while (next < length) {
+                    snapshot.getChars(next, length - next, segment);
+                    for (int i = 0; i < segment.count; i++) {
+                        if (segment.array[segment.offset + i] == '\n') {
+                            next += i + 1;
+                            break search;
+                        }
+                    }
+                    next += segment.count;
+                }
+                if (count == bounds.length) {
+                    bounds = Arrays.copyOf(bounds, count * 2);
+                }
+                bounds[count++] = next;
+                at = next;
+            }
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+        // An empty text is one empty block
+        return Arrays.copyOf(bounds, Math.max(2, count));
+    }
+
+    private static Block await(ForkJoinTask<Block> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** Line width in thousandths of the font size, as {@link PdfLineBreaker} measures it. */
+    private static float lineWidth(float fontSize) {
+        return (PDRectangle.A4.getWidth() - 2 * MARGIN) / fontSize * 1000;
+    }
+
+    /**
+     * Lines of a block of text, each with the number of source line ends
+     * before it, ready to be placed on pages.
+     */
+    static final class Block implements PdfLineBreaker.Sink {
+        final List<String> lines = new ArrayList<>();
+        int[] gapsBefore = new int[16];
+        int trailingGaps;
+
+        static Block layout(PieceTableContent.Snapshot snapshot, int from, int to, GlyphWidths widths,
+                            float width) throws IOException {
+            Block block = new Block();
+            PdfLineBreaker breaker = new PdfLineBreaker(widths, width, block);
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            try {
+                for (int at = from; at < to; at += segment.count) {
+                    snapshot.getChars(at, to - at, segment);
+                    breaker.append(segment.array, segment.offset, segment.count);
+                }
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException(e.getMessage());
+            }
+            breaker.finish();
+            return block;
+        }
+
+        @Override
+        public void line(String text) {
+            if (lines.size() == gapsBefore.length) {
+                gapsBefore = Arrays.copyOf(gapsBefore, lines.size() * 2);
+            }
+            gapsBefore[lines.size()] = trailingGaps;
+            trailingGaps = 0;
+            lines.add(text);
+        }
+
+        @Override
+        public void paragraphEnd() {
+            trailingGaps++;
+        }
+    }
+
+    private void show(String text) throws IOException {
+        if (y < MARGIN) {
+            endPage();
+            y = top();
+        }
+        if (contents == null) {
+            startPage();
+        }
+        // One text object per page, each line placed relative to the one before
+        contents.newLineAtOffset(0, y - lastY);
+        contents.showText(text);
+        lastY = y;
+        y -= leading;
+    }
+
+    private void startPage() throws IOException {
+        PDPage page = new PDPage(pageSize);
+        document.addPage(page);
+        contents = new PDPageContentStream(document, page);
+        contents.setFont(font, fontSize);
+        contents.beginText();
+        contents.newLineAtOffset(pageSize.getLowerLeftX() + MARGIN, top());
+        lastY = top();
+    }
+
+    private void endPage() throws IOException {
+        if (contents != null) {
+            PDPageContentStream ending = contents;
+            contents = null;
+            ending.endText();
+            ending.close();
+        }
+    }
+
+    private float top() {
+        return pageSize.getUpperRightY() - MARGIN;
+    }
+}
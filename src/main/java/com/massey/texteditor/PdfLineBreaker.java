@@ -0,0 +1,109 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+
+/**
+ * Breaks text into lines that fit a given width, in one pass over the
+ * characters. The width of the line so far is kept as a running sum from
+ * {@link GlyphWidths}, and the last space is remembered, so a line never
+ * has to be measured again as it grows. Lines break at the last space that
+ * fits, which is dropped, and a word too wide for a line on its own is cut
+ * wherever it has to be.
+ *
+ * <p>Tabs are expanded to the next multiple of {@link #TAB_SIZE} characters
+ * and characters the font cannot show are printed as '?'.</p>
+ */
+final class PdfLineBreaker {
+
+    static final int TAB_SIZE = 4;
+
+    /** Receives the layout in text order. */
+    interface Sink {
+        /** One line of output, never empty. */
+        void line(String text) throws IOException;
+
+        /** The end of a line of the source text. */
+        void paragraphEnd() throws IOException;
+    }
+
+    private final GlyphWidths widths;
+    private final float maxWidth;
+    private final Sink sink;
+    private final StringBuilder line = new StringBuilder();
+    private float lineWidth;
+    private int lastSpace = -1;
+    private float widthAfterSpace;
+
+    /**
+     * @param maxWidth the line width in thousandths of the font size; lines
+     *                 are kept strictly narrower than this
+     */
+    PdfLineBreaker(GlyphWidths widths, float maxWidth, Sink sink) {
+        this.widths = widths;
+        this.maxWidth = maxWidth;
+        this.sink = sink;
+    }
+
+    void append(char[] chars, int start, int length) throws IOException {
+        for (int i = start, end = start + length; i < end; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                flush();
+                sink.paragraphEnd();
+            } else if (c == '\t') {
+                do {
+                    add(' ');
+                } while (line.length() % TAB_SIZE != 0);
+            } else {
+                add(widths.printable(c));
+            }
+        }
+    }
+
+    void append(CharSequence text) throws IOException {
+        char[] chars = text.toString().toCharArray();
+        append(chars, 0, chars.length);
+    }
+
+    /** Emits what is left of the last line; the breaker can be used again afterwards. */
+    void finish() throws IOException {
+        flush();
+    }
+
+    private void add(char c) throws IOException {
+        float width = widths.width(c);
+        line.append(c);
+        lineWidth += width;
+        if (c == ' ') {
+            lastSpace = line.length() - 1;
+            widthAfterSpace = lineWidth;
+        }
+        while (lineWidth >= maxWidth && line.length() > 1) {
+            if (lastSpace >= 0) {
+                // Move the word being written to the next line
+                emit(lastSpace);
+                line.delete(0, lastSpace + 1);
+                lineWidth -= widthAfterSpace;
+                lastSpace = -1;
+            } else {
+                // No space to break at, so cut the word before this character
+                emit(line.length() - 1);
+                line.delete(0, line.length() - 1);
+                lineWidth = width;
+            }
+        }
+    }
+
+    private void emit(int end) throws IOException {
+        if (end > 0) {
+            sink.line(line.substring(0, end));
+        }
+    }
+
+    private void flush() throws IOException {
+        emit(line.length());
+        line.setLength(0);
+        lineWidth = 0;
+        lastSpace = -1;
+    }
+}
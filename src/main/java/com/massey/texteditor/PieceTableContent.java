@@ -0,0 +1,584 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Piece table implementation of {@link AbstractDocument.Content}.
+ *
+ * <p>Text lives in append-only character blocks that are never modified once
+ * written. The document is an ordered sequence of pieces, each naming a range
+ * of one block, kept in a treap whose nodes carry subtree lengths. Inserts and
+ * removes split and merge the treap in O(log n) regardless of document size,
+ * and consecutive typing extends the last piece instead of adding a new one.
+ * Blocks that no piece refers to any more are reclaimed by the GC.</p>
+ *
+ * <p>Because nodes are never modified, {@link #snapshot()} is O(1) and the
+ * returned view stays valid and safe to read from other threads while
+ * editing continues.</p>
+ *
+ * <p>Positions are kept in a sorted gap buffer like {@link javax.swing.text.GapContent}:
+ * marks before the gap store absolute offsets and marks after it store their
+ * distance from the end, so an edit only touches the marks between the
+ * previous and the current edit location.</p>
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+
+    /** Size of the shared block that small inserts are copied into. */
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    private static final char[] EMPTY = new char[0];
+
+    private Node root;
+    private char[] addBlock = new char[BLOCK_SIZE];
+    private int addUsed;
+    private int seed = 0x2545F491;
+
+    private final MarkTable marks = new MarkTable();
+
+    /**
+     * Creates content holding the single implied line break that
+     * {@link AbstractDocument} expects.
+     */
+    public PieceTableContent() {
+        root = newPiece("\n");
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        return marks.create(offset);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where > length() || where < 0) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        if (str.isEmpty()) {
+            return null;
+        }
+        insert(where, str);
+        return new InsertUndo(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length()) {
+            throw new BadLocationException("Invalid remove", length() + 1);
+        }
+        if (nitems == 0) {
+            return null;
+        }
+        String removed = getString(where, nitems);
+        delete(where, nitems);
+        return new RemoveUndo(where, removed);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        char[] chars = new char[len];
+        copy(root, where, where + len, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Fills the segment without copying when the range lies inside one piece,
+     * or when partial returns are allowed, in which case only the part up to
+     * the end of the first piece is returned.
+     */
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        readChars(root, where, len, txt);
+    }
+
+    /**
+     * Returns an immutable view of the document text, that is everything but
+     * the implied final line break.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(root, length() - 1);
+    }
+
+    private static void readChars(Node root, int where, int len, Segment txt) {
+        if (len == 0) {
+            txt.array = EMPTY;
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        Node node = root;
+        int offset = where;
+        while (true) {
+            int leftSize = size(node.left);
+            if (offset < leftSize) {
+                node = node.left;
+            } else if (offset < leftSize + node.length) {
+                offset -= leftSize;
+                break;
+            } else {
+                offset -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+        int available = node.length - offset;
+        if (len <= available || txt.isPartialReturn()) {
+            txt.array = node.buffer;
+            txt.offset = node.start + offset;
+            txt.count = Math.min(len, available);
+            return;
+        }
+        char[] chars = new char[len];
+        copy(root, where, where + len, chars, 0);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0) {
+            throw new BadLocationException("Invalid location", where);
+        }
+        if (where + len > length()) {
+            throw new BadLocationException("Invalid location", length() + 1);
+        }
+    }
+
+    private void insert(int where, String str) {
+        marks.beforeInsert(where);
+        Node[] parts = split(root, where);
+        Node left = parts[0];
+        Node last = rightmost(left);
+        int n = str.length();
+        if (last != null && last.buffer == addBlock && last.start + last.length == addUsed
+                && addBlock.length - addUsed >= n) {
+            // Typing continues the previous insert, so grow that piece in place
+            str.getChars(0, n, addBlock, addUsed);
+            addUsed += n;
+            left = extendRightmost(left, n);
+        } else {
+            left = merge(left, newPiece(str));
+        }
+        // Marks after the gap store their distance from the end, so they have already moved
+        root = merge(left, parts[1]);
+    }
+
+    private void delete(int where, int nitems) {
+        marks.beforeRemove(where, nitems);
+        Node[] head = split(root, where);
+        Node[] tail = split(head[1], nitems);
+        root = merge(head[0], tail[1]);
+    }
+
+    /** Copies the string into the add blocks and returns a single piece for it. */
+    private Node newPiece(String str) {
+        int n = str.length();
+        char[] buffer;
+        int start;
+        if (addBlock.length - addUsed >= n) {
+            buffer = addBlock;
+            start = addUsed;
+            addUsed += n;
+        } else if (n >= BLOCK_SIZE / 2) {
+            // Large inserts such as file chunks get a block of their own
+            buffer = new char[n];
+            start = 0;
+        } else {
+            addBlock = new char[BLOCK_SIZE];
+            addUsed = n;
+            buffer = addBlock;
+            start = 0;
+        }
+        str.getChars(0, n, buffer, start);
+        return new Node(buffer, start, n, nextPriority(), null, null);
+    }
+
+    private int nextPriority() {
+        // xorshift keeps the treap balanced without a shared Random
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /** Splits the tree so the first result holds exactly {@code pos} characters. */
+    private static Node[] split(Node node, int pos) {
+        if (node == null) {
+            return new Node[2];
+        }
+        int leftSize = size(node.left);
+        if (pos <= leftSize) {
+            Node[] parts = split(node.left, pos);
+            parts[1] = node.withChildren(parts[1], node.right);
+            return parts;
+        }
+        if (pos >= leftSize + node.length) {
+            Node[] parts = split(node.right, pos - leftSize - node.length);
+            parts[0] = node.withChildren(node.left, parts[0]);
+            return parts;
+        }
+        int k = pos - leftSize;
+        Node[] parts = new Node[2];
+        parts[0] = new Node(node.buffer, node.start, k, node.priority, node.left, null);
+        parts[1] = new Node(node.buffer, node.start + k, node.length - k, node.priority, null, node.right);
+        return parts;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return a.withChildren(a.left, merge(a.right, b));
+        }
+        return b.withChildren(merge(a, b.left), b.right);
+    }
+
+    private static Node rightmost(Node node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static Node extendRightmost(Node node, int n) {
+        if (node.right == null) {
+            return new Node(node.buffer, node.start, node.length + n, node.priority, node.left, null);
+        }
+        return node.withChildren(node.left, extendRightmost(node.right, n));
+    }
+
+    /** Copies the characters in [from, to) of the subtree into dest. */
+    private static int copy(Node node, int from, int to, char[] dest, int destPos) {
+        if (node == null || from >= to) {
+            return destPos;
+        }
+        int leftSize = size(node.left);
+        if (from < leftSize) {
+            destPos = copy(node.left, from, Math.min(to, leftSize), dest, destPos);
+        }
+        int pieceFrom = Math.max(from - leftSize, 0);
+        int pieceTo = Math.min(to - leftSize, node.length);
+        if (pieceFrom < pieceTo) {
+            System.arraycopy(node.buffer, node.start + pieceFrom, dest, destPos, pieceTo - pieceFrom);
+            destPos += pieceTo - pieceFrom;
+        }
+        int rightStart = leftSize + node.length;
+        if (to > rightStart) {
+            destPos = copy(node.right, Math.max(from - rightStart, 0), to - rightStart, dest, destPos);
+        }
+        return destPos;
+    }
+
+    /**
+     * Point-in-time view of the text. Readers on any thread may use it;
+     * Segments it fills point into shared blocks and must not be modified.
+     */
+    public static final class Snapshot {
+        private final Node root;
+        private final int length;
+
+        Snapshot(Node root, int length) {
+            this.root = root;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /** Same contract as {@link AbstractDocument.Content#getChars}. */
+        public void getChars(int where, int len, Segment txt) throws BadLocationException {
+            if (where < 0 || len < 0 || where + len > length) {
+                throw new BadLocationException("Invalid location", where);
+            }
+            readChars(root, where, len, txt);
+        }
+
+        public String getString(int where, int len) throws BadLocationException {
+            if (where < 0 || len < 0 || where + len > length) {
+                throw new BadLocationException("Invalid location", where);
+            }
+            char[] chars = new char[len];
+            copy(root, where, where + len, chars, 0);
+            return new String(chars);
+        }
+
+        /**
+         * Visits the pieces in text order. Identical (buffer, start) pairs in
+         * two snapshots mean identical text, since blocks are never rewritten.
+         */
+        public void forEachPiece(PieceVisitor visitor) throws IOException {
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            int offset = 0;
+            while (offset < length && (node != null || !stack.isEmpty())) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                node = stack.pop();
+                int count = Math.min(node.length, length - offset);
+                if (count > 0) {
+                    visitor.visit(node.buffer, node.start, count);
+                }
+                offset += count;
+                node = node.right;
+            }
+        }
+    }
+
+    /** Receives the pieces of a {@link Snapshot}; the arrays must not be modified. */
+    public interface PieceVisitor {
+        void visit(char[] buffer, int start, int length) throws IOException;
+    }
+
+    /** Immutable treap node describing one piece and the subtree below it. */
+    private static final class Node {
+        final char[] buffer;
+        final int start;
+        final int length;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(char[] buffer, int start, int length, int priority, Node left, Node right) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + length + size(right);
+        }
+
+        Node withChildren(Node newLeft, Node newRight) {
+            return new Node(buffer, start, length, priority, newLeft, newRight);
+        }
+    }
+
+    /**
+     * Sorted gap buffer of marks. Callers move the gap to the edit location
+     * first, then marks after the gap follow the end of the document for free.
+     */
+    private final class MarkTable {
+        private Mark[] entries = new Mark[16];
+        private int gapStart;
+        private int gapEnd = entries.length;
+        private int unused;
+        private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+
+        Position create(int offset) {
+            purge();
+            moveGap(offset, false);
+            if (gapEnd < entries.length && entries[gapEnd].offset() == offset) {
+                StickyPosition existing = entries[gapEnd].get();
+                if (existing != null) {
+                    return existing;
+                }
+            }
+            if (gapStart == gapEnd) {
+                grow();
+            }
+            StickyPosition position = new StickyPosition();
+            Mark mark = new Mark(position, queue);
+            mark.value = offset;
+            position.mark = mark;
+            entries[gapStart++] = mark;
+            return position;
+        }
+
+        void beforeInsert(int where) {
+            // Marks at zero stay at zero, every other mark at the insert point moves with the text
+            moveGap(where, where == 0);
+        }
+
+        void beforeRemove(int where, int nitems) {
+            moveGap(where, true);
+            // Marks inside the removed range collapse onto its start
+            while (gapEnd < entries.length && entries[gapEnd].offset() <= where + nitems) {
+                Mark mark = entries[gapEnd];
+                entries[gapEnd++] = null;
+                mark.afterGap = false;
+                mark.value = where;
+                entries[gapStart++] = mark;
+            }
+        }
+
+        /** Moves the gap so that exactly the marks before {@code offset} precede it. */
+        private void moveGap(int offset, boolean includeOffset) {
+            int documentLength = length();
+            while (gapStart > 0) {
+                Mark mark = entries[gapStart - 1];
+                int value = mark.value;
+                if (value < offset || (includeOffset && value == offset)) {
+                    break;
+                }
+                entries[--gapStart] = null;
+                mark.afterGap = true;
+                mark.value = documentLength - value;
+                entries[--gapEnd] = mark;
+            }
+            while (gapEnd < entries.length) {
+                Mark mark = entries[gapEnd];
+                int value = documentLength - mark.value;
+                if (value > offset || (!includeOffset && value == offset)) {
+                    break;
+                }
+                entries[gapEnd++] = null;
+                mark.afterGap = false;
+                mark.value = value;
+                entries[gapStart++] = mark;
+            }
+        }
+
+        private void grow() {
+            Mark[] grown = new Mark[entries.length * 2];
+            int tail = entries.length - gapEnd;
+            System.arraycopy(entries, 0, grown, 0, gapStart);
+            System.arraycopy(entries, gapEnd, grown, grown.length - tail, tail);
+            entries = grown;
+            gapEnd = grown.length - tail;
+        }
+
+        /** Drops marks whose positions were collected once enough of them pile up. */
+        private void purge() {
+            while (queue.poll() != null) {
+                unused++;
+            }
+            int used = gapStart + entries.length - gapEnd;
+            if (unused < 64 || unused < used / 4) {
+                return;
+            }
+            int head = 0;
+            for (int i = 0; i < gapStart; i++) {
+                if (entries[i].get() != null) {
+                    entries[head++] = entries[i];
+                }
+            }
+            int tail = entries.length;
+            for (int i = entries.length - 1; i >= gapEnd; i--) {
+                if (entries[i].get() != null) {
+                    entries[--tail] = entries[i];
+                }
+            }
+            Arrays.fill(entries, head, tail, null);
+            gapStart = head;
+            gapEnd = tail;
+            unused = 0;
+        }
+    }
+
+    /** Bookkeeping for one position; weakly held so unused positions can go away. */
+    private final class Mark extends WeakReference<StickyPosition> {
+        int value;
+        boolean afterGap;
+
+        Mark(StickyPosition position, ReferenceQueue<StickyPosition> queue) {
+            super(position, queue);
+        }
+
+        int offset() {
+            return afterGap ? length() - value : value;
+        }
+    }
+
+    private final class StickyPosition implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            return mark.offset();
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    private final class InsertUndo extends AbstractUndoableEdit {
+        private static final long serialVersionUID = 1L;
+        private final int offset;
+        private final int length;
+        private String string;
+
+        InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                string = getString(offset, length);
+                delete(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insert(offset, string);
+            string = null;
+        }
+    }
+
+    private final class RemoveUndo extends AbstractUndoableEdit {
+        private static final long serialVersionUID = 1L;
+        private final int offset;
+        private final String string;
+
+        RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.string = string;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insert(offset, string);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            delete(offset, string.length());
+        }
+    }
+}
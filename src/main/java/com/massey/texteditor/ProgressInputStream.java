@@ -0,0 +1,82 @@
+package com.massey.texteditor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.IntConsumer;
+
+/**
+ * Reports how far a stream of known size has been read, as a percentage,
+ * and fails the next read once the reading thread is interrupted. Parsers
+ * such as the RTF reader never check for interruption themselves, so this
+ * is what lets a cancelled load stop early.
+ */
+final class ProgressInputStream extends FilterInputStream {
+
+    private final long size;
+    private final IntConsumer progress;
+    private long position;
+    private int reported;
+
+    /**
+     * @param size     the expected number of bytes, or a value below one if unknown
+     * @param progress receives each new percentage; never called if the size is unknown
+     */
+    ProgressInputStream(InputStream in, long size, IntConsumer progress) {
+        super(in);
+        this.size = size;
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkInterrupted();
+        int b = super.read();
+        if (b >= 0) {
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkInterrupted();
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            advance(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkInterrupted();
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // A reset would move the position backwards without telling us
+        return false;
+    }
+
+    private void advance(long bytes) {
+        position += bytes;
+        if (size > 0) {
+            int percent = (int) Math.min(100, position * 100 / size);
+            if (percent != reported) {
+                reported = percent;
+                progress.accept(percent);
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Reading interrupted");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.massey.texteditor;
+
+/**
+ * Lexer for Python sources: # comments and triple-quoted strings that span lines.
+ */
+class PythonLexer extends SyntaxLexer {
+
+    static final String[] KEYWORDS = {
+        "False", "None", "True", "and", "as", "assert", "break", "class", "continue", "def",
+        "del", "elif", "else", "except", "finally", "for", "from", "global", "if", "import",
+        "in", "is", "lambda", "nonlocal", "not", "or", "pass", "raise", "return", "try",
+        "while", "with", "yield", "async", "await"
+    };
+
+    private static final KeywordTable TABLE = new KeywordTable(KEYWORDS);
+
+    PythonLexer() {
+        super(TABLE, HASH_COMMENTS | TRIPLE_QUOTES);
+    }
+}
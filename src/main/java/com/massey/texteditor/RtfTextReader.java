@@ -0,0 +1,374 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streams the plain text out of an RTF file in one pass, for when the
+ * styling is not wanted. Control words are read and dropped, except the
+ * handful that stand for characters, and destination groups such as the
+ * font table, pictures and document info are skipped whole, so memory use
+ * does not depend on the size of the file.
+ *
+ * <p>Text in the document's code page (set by the ansicpg control word,
+ * Windows-1252 if none is given) is decoded a run of bytes at a time, so
+ * double-byte code pages work too. A Unicode character skips as many
+ * fallback characters after it as the uc control word says.</p>
+ */
+final class RtfTextReader {
+
+    /** Groups whose content is never document text. */
+    private static final Set<String> DESTINATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "fonttbl", "colortbl", "stylesheet", "info", "pict", "object", "header", "headerl", "headerr",
+            "headerf", "footer", "footerl", "footerr", "footerf", "listtable", "listoverridetable", "rsidtbl",
+            "revtbl", "themedata", "colorschememapping", "datastore", "latentstyles", "generator", "xmlnstbl",
+            "filetbl", "nonshppict", "fldinst", "footnote", "annotation")));
+
+    private static final Charset DEFAULT_CODE_PAGE = Charset.forName("windows-1252");
+
+    private final InputStream in;
+    private final MappedTextReader.ChunkConsumer out;
+    private final char[] chunk = new char[MappedTextReader.CHUNK_CHARS];
+    private int length;
+    private int pushedBack = -1;
+
+    // Bytes in the code page waiting to be decoded together
+    private final ByteBuffer pendingBytes = ByteBuffer.allocate(4096);
+    private final CharBuffer decoded = CharBuffer.allocate(4096);
+    private CharsetDecoder decoder = decoderFor(DEFAULT_CODE_PAGE);
+
+    // Group nesting; everything at or below skipFrom is being skipped
+    private int depth;
+    private int skipFrom = Integer.MAX_VALUE;
+    // Fallback characters per Unicode character, kept for each open group
+    private int[] unicodeSkip = new int[64];
+    // Fallback characters still to drop after a Unicode character
+    private int fallbackLeft;
+
+    private RtfTextReader(InputStream in, MappedTextReader.ChunkConsumer out) {
+        this.in = in;
+        this.out = out;
+        unicodeSkip[0] = 1;
+    }
+
+    /** Reads the whole stream and hands its text to {@code out}; the stream is not closed. */
+    static void read(InputStream in, MappedTextReader.ChunkConsumer out) throws IOException {
+        new RtfTextReader(in, out).read();
+    }
+
+    private void read() throws IOException {
+        // A control word can only name a destination straight after the '{'
+        boolean groupStart = false;
+        for (int b = next(); b >= 0; b = next()) {
+            boolean opened = false;
+            switch (b) {
+                case '{':
+                    flushBytes();
+                    openGroup();
+                    opened = true;
+                    break;
+                case '}':
+                    flushBytes();
+                    closeGroup();
+                    break;
+                case '\\':
+                    // The optional marker keeps the group start open for the word after it
+                    opened = controlWord(groupStart);
+                    break;
+                case '\r':
+                case '\n':
+                    // Line breaks in the file are not text
+                    opened = groupStart;
+                    break;
+                default:
+                    if (!skipping()) {
+                        if (fallbackLeft > 0) {
+                            fallbackLeft--;
+                        } else if (b < 0x80) {
+                            flushBytes();
+                            put((char) b);
+                        } else {
+                            addByte(b);
+                        }
+                    }
+                    break;
+            }
+            groupStart = opened;
+        }
+        flushBytes();
+        if (length > 0) {
+            out.accept(chunk, length);
+        }
+    }
+
+    /**
+     * Handles what follows a backslash.
+     *
+     * @param groupStart whether this comes first in a group, where a control
+     *                   word can name a destination
+     * @return whether the next control word still comes first in its group
+     */
+    private boolean controlWord(boolean groupStart) throws IOException {
+        int b = next();
+        if (b < 0) {
+            return false;
+        }
+        if (!isLetter(b)) {
+            return controlSymbol(b, groupStart);
+        }
+        StringBuilder word = new StringBuilder();
+        while (b >= 0 && isLetter(b)) {
+            word.append((char) b);
+            b = next();
+        }
+        boolean negative = false;
+        int parameter = 0;
+        if (b == '-') {
+            negative = true;
+            b = next();
+        }
+        while (b >= '0' && b <= '9') {
+            parameter = parameter * 10 + (b - '0');
+            b = next();
+        }
+        if (negative) {
+            parameter = -parameter;
+        }
+        if (b != ' ' && b >= 0) {
+            // Anything but a space ends the word and belongs to the text
+            pushedBack = b;
+        }
+        String name = word.toString();
+        if (groupStart && DESTINATIONS.contains(name)) {
+            skipFromHere();
+            return false;
+        }
+        if (skipping()) {
+            return false;
+        }
+        switch (name) {
+            case "ansicpg":
+                flushBytes();
+                decoder = decoderFor(codePage(parameter));
+                break;
+            case "uc":
+                unicodeSkip[depth] = Math.max(0, parameter);
+                break;
+            case "u":
+                flushBytes();
+                put((char) (parameter < 0 ? parameter + 65536 : parameter));
+                fallbackLeft = unicodeSkip[depth];
+                break;
+            case "par":
+            case "line":
+            case "sect":
+            case "page":
+            case "row":
+                text('\n');
+                break;
+            case "tab":
+            case "cell":
+                text('\t');
+                break;
+            case "emdash":
+                text('—');
+                break;
+            case "endash":
+                text('–');
+                break;
+            case "bullet":
+                text('•');
+                break;
+            case "lquote":
+                text('‘');
+                break;
+            case "rquote":
+                text('’');
+                break;
+            case "ldblquote":
+                text('“');
+                break;
+            case "rdblquote":
+                text('”');
+                break;
+            case "emspace":
+            case "enspace":
+            case "qmspace":
+                text(' ');
+                break;
+            default:
+                // Formatting, which plain text has no use for
+                break;
+        }
+        return false;
+    }
+
+    private boolean controlSymbol(int b, boolean groupStart) throws IOException {
+        switch (b) {
+            case '*':
+                // Optional destinations are for readers that know them, and none of them is text
+                if (groupStart) {
+                    skipFromHere();
+                }
+                return groupStart;
+            case '\'':
+                int high = Character.digit(next(), 16);
+                int low = Character.digit(next(), 16);
+                if (high >= 0 && low >= 0 && !skipping()) {
+                    if (fallbackLeft > 0) {
+                        fallbackLeft--;
+                    } else {
+                        addByte(high << 4 | low);
+                    }
+                }
+                break;
+            case '\\':
+            case '{':
+            case '}':
+                if (!skipping()) {
+                    text((char) b);
+                }
+                break;
+            case '~':
+                if (!skipping()) {
+                    text(' ');
+                }
+                break;
+            case '_':
+                if (!skipping()) {
+                    text('-');
+                }
+                break;
+            case '\r':
+            case '\n':
+                // A backslash before a line break is a paragraph mark
+                if (!skipping()) {
+                    text('\n');
+                }
+                break;
+            default:
+                // Optional hyphens and the like only matter for layout
+                break;
+        }
+        return false;
+    }
+
+    private void openGroup() {
+        depth++;
+        if (depth == unicodeSkip.length) {
+            unicodeSkip = Arrays.copyOf(unicodeSkip, depth * 2);
+        }
+        unicodeSkip[depth] = unicodeSkip[depth - 1];
+    }
+
+    private void closeGroup() {
+        if (depth > 0) {
+            depth--;
+        }
+        if (depth < skipFrom) {
+            skipFrom = Integer.MAX_VALUE;
+        }
+        fallbackLeft = 0;
+    }
+
+    private void skipFromHere() throws IOException {
+        if (!skipping()) {
+            flushBytes();
+            skipFrom = depth;
+        }
+    }
+
+    private boolean skipping() {
+        return depth >= skipFrom;
+    }
+
+    /** Adds a character that stands for itself, unless it is Unicode fallback text. */
+    private void text(char c) throws IOException {
+        if (fallbackLeft > 0) {
+            fallbackLeft--;
+            return;
+        }
+        flushBytes();
+        put(c);
+    }
+
+    private void addByte(int b) throws IOException {
+        if (!pendingBytes.hasRemaining()) {
+            flushBytes();
+        }
+        pendingBytes.put((byte) b);
+    }
+
+    /** Decodes the bytes gathered so far in the document's code page. */
+    private void flushBytes() throws IOException {
+        if (pendingBytes.position() == 0) {
+            return;
+        }
+        pendingBytes.flip();
+        decoder.reset();
+        boolean overflow;
+        do {
+            overflow = decoder.decode(pendingBytes, decoded, true).isOverflow();
+            if (!overflow) {
+                decoder.flush(decoded);
+            }
+            decoded.flip();
+            while (decoded.hasRemaining()) {
+                put(decoded.get());
+            }
+            decoded.clear();
+        } while (overflow);
+        pendingBytes.clear();
+    }
+
+    private void put(char c) throws IOException {
+        if (length == chunk.length) {
+            out.accept(chunk, length);
+            length = 0;
+        }
+        chunk[length++] = c;
+    }
+
+    private int next() throws IOException {
+        if (pushedBack >= 0) {
+            int b = pushedBack;
+            pushedBack = -1;
+            return b;
+        }
+        return in.read();
+    }
+
+    private static boolean isLetter(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static Charset codePage(int number) {
+        if (number == 65001) {
+            return StandardCharsets.UTF_8;
+        }
+        for (String name : new String[] {"windows-" + number, "x-windows-" + number, "cp" + number}) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // Try the next spelling
+            }
+        }
+        return DEFAULT_CODE_PAGE;
+    }
+
+    private static CharsetDecoder decoderFor(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
@@ -0,0 +1,165 @@
+package com.massey.texteditor;
+
+import java.awt.Color;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+
+/**
+ * Writes a {@link StyledSnapshot} as RTF, streaming it through a buffered
+ * writer so the document is never turned into one big string. The font
+ * and colour tables come first, from a pass over the runs alone; the text
+ * then follows in one group per run with its font, size, colour and
+ * bold, italic, underline and strike-through.
+ *
+ * <p>Characters from Latin-1 are written as {@code \'hh} escapes in the
+ * Windows-1252 code page and everything else as Unicode control words
+ * with a '?' fallback, so the file is plain ASCII and reads back the same
+ * with Swing's RTF reader and with {@link RtfTextReader}.</p>
+ */
+final class RtfWriter {
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+
+    private final Writer out;
+    private final LongConsumer progress;
+    private final Map<String, Integer> fonts = new LinkedHashMap<>();
+    private final Map<Color, Integer> colors = new LinkedHashMap<>();
+    private long written;
+    private boolean inRun;
+
+    private RtfWriter(Writer out, LongConsumer progress) {
+        this.out = out;
+        this.progress = progress;
+    }
+
+    /**
+     * Writes the document to {@code out}, which is flushed but left open.
+     *
+     * @param progress receives the number of characters written so far
+     */
+    static void write(StyledSnapshot document, OutputStream out, LongConsumer progress) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), BUFFER_CHARS);
+        new RtfWriter(writer, progress).write(document);
+        writer.flush();
+    }
+
+    private void write(StyledSnapshot document) throws IOException {
+        for (int run = 0; run < document.runCount(); run++) {
+            AttributeSet attributes = document.attributes(run);
+            fonts.putIfAbsent(StyleConstants.getFontFamily(attributes), fonts.size());
+            Color color = foreground(attributes);
+            if (color != null) {
+                // Colour 0 is the reader's default, so defined colours start at 1
+                colors.putIfAbsent(color, colors.size() + 1);
+            }
+        }
+        out.write("{\\rtf1\\ansi\\ansicpg1252\\deff0\\uc1\n{\\fonttbl");
+        for (Map.Entry<String, Integer> font : fonts.entrySet()) {
+            out.write("{\\f" + font.getValue() + "\\fnil ");
+            escape(font.getKey());
+            out.write(";}");
+        }
+        out.write("}\n{\\colortbl;");
+        for (Color color : colors.keySet()) {
+            out.write("\\red" + color.getRed() + "\\green" + color.getGreen() + "\\blue" + color.getBlue() + ";");
+        }
+        out.write("}\n");
+        document.forEachRun(new StyledSnapshot.Visitor() {
+            @Override
+            public void run(AttributeSet attributes) throws IOException {
+                if (inRun) {
+                    out.write('}');
+                }
+                inRun = true;
+                out.write('{');
+                format(attributes);
+                out.write(' ');
+            }
+
+            @Override
+            public void chars(char[] chars, int start, int length) throws IOException {
+                for (int i = start, end = start + length; i < end; i++) {
+                    character(chars[i]);
+                }
+                written += length;
+                progress.accept(written);
+            }
+        });
+        if (inRun) {
+            out.write('}');
+        }
+        out.write("}\n");
+    }
+
+    private void format(AttributeSet attributes) throws IOException {
+        out.write("\\f" + fonts.get(StyleConstants.getFontFamily(attributes)));
+        out.write("\\fs" + StyleConstants.getFontSize(attributes) * 2);
+        Color color = foreground(attributes);
+        if (color != null) {
+            out.write("\\cf" + colors.get(color));
+        }
+        if (StyleConstants.isBold(attributes)) {
+            out.write("\\b");
+        }
+        if (StyleConstants.isItalic(attributes)) {
+            out.write("\\i");
+        }
+        if (StyleConstants.isUnderline(attributes)) {
+            out.write("\\ul");
+        }
+        if (StyleConstants.isStrikeThrough(attributes)) {
+            out.write("\\strike");
+        }
+    }
+
+    private void character(char c) throws IOException {
+        switch (c) {
+            case '\n':
+                out.write("\\par\n");
+                break;
+            case '\t':
+                out.write("\\tab ");
+                break;
+            case '\r':
+                break;
+            case '\\':
+            case '{':
+            case '}':
+                out.write('\\');
+                out.write(c);
+                break;
+            default:
+                if (c >= 0x20 && c < 0x7f) {
+                    out.write(c);
+                } else if (c >= 0xa0 && c <= 0xff) {
+                    // Windows-1252 matches Latin-1 from here on
+                    out.write("\\'" + Character.forDigit(c >> 4, 16) + Character.forDigit(c & 0xf, 16));
+                } else if (c >= 0x80) {
+                    // Signed 16 bits, as RTF readers expect
+                    out.write("\\u" + (short) c + "?");
+                }
+                break;
+        }
+    }
+
+    private void escape(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            character(text.charAt(i));
+        }
+    }
+
+    /** The run's colour if it sets one, otherwise null for the reader's default. */
+    private static Color foreground(AttributeSet attributes) {
+        Object color = attributes.getAttribute(StyleConstants.Foreground);
+        return color instanceof Color ? (Color) color : null;
+    }
+}
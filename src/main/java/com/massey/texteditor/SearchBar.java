@@ -0,0 +1,127 @@
+package com.massey.texteditor;
+
+import java.awt.FlowLayout;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.function.Consumer;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Search-as-you-type bar shown above the editor. Every keystroke in the
+ * field updates the {@link LiveSearch} highlights at once; Enter and
+ * Shift+Enter step through the hits and Escape closes the bar.
+ */
+final class SearchBar extends JPanel {
+
+    private final JTextComponent editor;
+    private final JTextField queryField = new JTextField(24);
+    private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+    private final JCheckBox wholeWordBox = new JCheckBox("Whole word");
+    private final JLabel countLabel = new JLabel();
+    private final LiveSearch search;
+
+    /**
+     * @param status receives the "n of m" count as well as the bar itself
+     */
+    SearchBar(JTextComponent editor, Consumer<String> status) {
+        super(new FlowLayout(FlowLayout.LEFT, 6, 2));
+        this.editor = editor;
+        this.search = new LiveSearch(editor, text -> {
+            countLabel.setText(text);
+            status.accept(text);
+        });
+
+        JButton previousButton = new JButton("Previous");
+        JButton nextButton = new JButton("Next");
+        JButton closeButton = new JButton("Close");
+        add(new JLabel("Find:"));
+        add(queryField);
+        add(previousButton);
+        add(nextButton);
+        add(matchCaseBox);
+        add(wholeWordBox);
+        add(countLabel);
+        add(closeButton);
+        setBorder(BorderFactory.createMatteBorder(0, 0, 1, 0, getBackground().darker()));
+
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        matchCaseBox.addActionListener(e -> update());
+        wholeWordBox.addActionListener(e -> update());
+        previousButton.addActionListener(e -> search.selectPrevious());
+        nextButton.addActionListener(e -> search.selectNext());
+        closeButton.addActionListener(e -> close());
+        queryField.addActionListener(e -> search.selectNext());
+        queryField.registerKeyboardAction(e -> search.selectPrevious(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, InputEvent.SHIFT_DOWN_MASK), JComponent.WHEN_FOCUSED);
+        registerKeyboardAction(e -> close(), KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+                               JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
+        setVisible(false);
+    }
+
+    /** Shows the bar with the selected text, if it is on one line, as the query. */
+    void open() {
+        String selected = editor.getSelectedText();
+        if (selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0) {
+            queryField.setText(selected);
+        }
+        setVisible(true);
+        revalidate();
+        update();
+        queryField.selectAll();
+        queryField.requestFocusInWindow();
+    }
+
+    /** True while the bar is open with something to search for. */
+    boolean isSearching() {
+        return isVisible() && !queryField.getText().isEmpty();
+    }
+
+    void selectNext() {
+        search.selectNext();
+    }
+
+    void selectPrevious() {
+        search.selectPrevious();
+    }
+
+    private void update() {
+        if (isVisible()) {
+            search.setQuery(queryField.getText(), matchCaseBox.isSelected(), wholeWordBox.isSelected());
+        }
+        if (queryField.getText().isEmpty()) {
+            countLabel.setText("");
+        }
+    }
+
+    /** Hides the bar and clears its highlights. */
+    void close() {
+        search.clear();
+        countLabel.setText("");
+        setVisible(false);
+        editor.requestFocusInWindow();
+    }
+}
@@ -0,0 +1,266 @@
+package com.massey.texteditor;
+
+import java.util.Arrays;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Finds a literal string in a document with Boyer-Moore-Horspool, reading
+ * the text through partial-return {@link Segment}s so the piece table hands
+ * out its own arrays and nothing is copied. A match that straddles two
+ * segments is checked in a small bridge buffer of under twice the pattern
+ * length, so repeated searches of a huge document allocate nothing.
+ *
+ * <p>The shift table is indexed by the low byte of each character and keeps
+ * the smallest shift of all characters sharing it, which stays correct for
+ * any alphabet at the cost of shorter skips on colliding characters.
+ * Case-insensitive matching compares characters folded with
+ * {@link #fold(char)}.</p>
+ *
+ * <p>An engine is not thread-safe, and the document must not change while
+ * it searches, so use it on the EDT or under the document read lock. A
+ * {@link PieceTableContent.Snapshot} never changes, so it can be searched
+ * on any thread by an engine of its own.</p>
+ */
+final class SearchEngine {
+
+    /** Characters searched at a time when scanning backwards. */
+    private static final int BACKWARD_BLOCK = 64 * 1024;
+
+    private final String text;
+    private final boolean matchCase;
+    private final boolean wholeWord;
+    private final char[] pattern;
+    private final int[] shift = new int[256];
+    private final char[] bridge;
+    private final Segment segment = new Segment();
+    private final Segment probe = new Segment();
+
+    /** The text being searched, read the same way from a document or a snapshot. */
+    private interface Text {
+        int length();
+
+        void getChars(int offset, int length, Segment segment) throws BadLocationException;
+    }
+
+    /**
+     * @param text      the string to find, not empty
+     * @param matchCase whether upper and lower case must match exactly
+     * @param wholeWord whether matches must not touch a letter, digit or underscore
+     */
+    SearchEngine(String text, boolean matchCase, boolean wholeWord) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to search for");
+        }
+        this.text = text;
+        this.matchCase = matchCase;
+        this.wholeWord = wholeWord;
+        int m = text.length();
+        pattern = new char[m];
+        for (int i = 0; i < m; i++) {
+            pattern[i] = matchCase ? text.charAt(i) : fold(text.charAt(i));
+        }
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            shift[pattern[i] & 0xFF] = m - 1 - i;
+        }
+        bridge = new char[2 * m];
+        segment.setPartialReturn(true);
+        probe.setPartialReturn(true);
+    }
+
+    String getText() {
+        return text;
+    }
+
+    boolean isMatchCase() {
+        return matchCase;
+    }
+
+    boolean isWholeWord() {
+        return wholeWord;
+    }
+
+    /** Length of every match. */
+    int length() {
+        return pattern.length;
+    }
+
+    /**
+     * Returns the offset of the first match starting at or after
+     * {@code from}, or -1 if there is none.
+     */
+    int findNext(Document document, int from) {
+        return findWithin(document, Math.max(0, from), document.getLength());
+    }
+
+    /**
+     * Returns the offset of the last match starting before {@code before},
+     * or -1 if there is none. The text is searched forwards a block at a
+     * time, going back one block whenever one holds no match.
+     */
+    int findPrevious(Document document, int before) {
+        int length = document.getLength();
+        int hi = Math.min(before, length);
+        while (hi > 0) {
+            int lo = Math.max(0, hi - BACKWARD_BLOCK);
+            int to = Math.min(length, hi + pattern.length - 1);
+            int last = -1;
+            for (int at = findWithin(document, lo, to); at >= 0 && at < hi; at = findWithin(document, at + 1, to)) {
+                last = at;
+            }
+            if (last >= 0) {
+                return last;
+            }
+            hi = lo;
+        }
+        return -1;
+    }
+
+    /** Returns the offsets of all matches that do not overlap, in order. */
+    int[] findAll(Document document) {
+        return findAll(text(document));
+    }
+
+    /** Returns the offsets of all matches in a snapshot, as {@link #findAll(Document)} does. */
+    int[] findAll(PieceTableContent.Snapshot snapshot) {
+        return findAll(text(snapshot));
+    }
+
+    private int[] findAll(Text document) {
+        int[] hits = new int[16];
+        int count = 0;
+        int length = document.length();
+        for (int at = findWithin(document, 0, length); at >= 0; at = findWithin(document, at + pattern.length, length)) {
+            if (count == hits.length) {
+                hits = Arrays.copyOf(hits, count * 2);
+            }
+            hits[count++] = at;
+        }
+        return Arrays.copyOf(hits, count);
+    }
+
+    /** Returns the first match lying wholly within {@code [from, to)}, or -1. */
+    int findWithin(Document document, int from, int to) {
+        return findWithin(text(document), from, to);
+    }
+
+    private int findWithin(Text document, int from, int to) {
+        int m = pattern.length;
+        try {
+            int pos = from;
+            while (to - pos >= m) {
+                document.getChars(pos, to - pos, segment);
+                int count = segment.count;
+                char[] array = segment.array;
+                int base = segment.offset;
+                for (int i = scan(array, base, base + count); i >= 0; i = scan(array, i + 1, base + count)) {
+                    if (isWholeWordAt(document, pos + i - base)) {
+                        return pos + i - base;
+                    }
+                }
+                int end = pos + count;
+                if (end >= to) {
+                    return -1;
+                }
+                // Matches starting in this segment but running into the next one
+                int bridgeFrom = Math.max(pos, end - m + 1);
+                int bridgeTo = Math.min(to, end + m - 1);
+                fillBridge(document, bridgeFrom, bridgeTo);
+                int bridged = bridgeTo - bridgeFrom;
+                for (int i = scan(bridge, 0, bridged); i >= 0 && bridgeFrom + i < end; i = scan(bridge, i + 1, bridged)) {
+                    if (isWholeWordAt(document, bridgeFrom + i)) {
+                        return bridgeFrom + i;
+                    }
+                }
+                pos = end;
+            }
+            return -1;
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    /** Returns the array index of the first match inside {@code array[from, to)}, or -1. */
+    private int scan(char[] array, int from, int to) {
+        int last = pattern.length - 1;
+        char tail = pattern[last];
+        for (int i = from; i <= to - pattern.length; ) {
+            char c = matchCase ? array[i + last] : fold(array[i + last]);
+            if (c == tail) {
+                int j = last - 1;
+                while (j >= 0 && pattern[j] == (matchCase ? array[i + j] : fold(array[i + j]))) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+
+    private void fillBridge(Text document, int from, int to) throws BadLocationException {
+        for (int filled = 0; from + filled < to; ) {
+            document.getChars(from + filled, to - from - filled, probe);
+            System.arraycopy(probe.array, probe.offset, bridge, filled, probe.count);
+            filled += probe.count;
+        }
+    }
+
+    private boolean isWholeWordAt(Text document, int offset) throws BadLocationException {
+        if (!wholeWord) {
+            return true;
+        }
+        int end = offset + pattern.length;
+        return (offset == 0 || !isWordChar(charAt(document, offset - 1)))
+                && (end >= document.length() || !isWordChar(charAt(document, end)));
+    }
+
+    private char charAt(Text document, int offset) throws BadLocationException {
+        document.getChars(offset, 1, probe);
+        return probe.array[probe.offset];
+    }
+
+    private static Text text(Document document) {
+        return new Text() {
+            @Override
+            public int length() {
+                return document.getLength();
+            }
+
+            @Override
+            public void getChars(int offset, int length, Segment segment) throws BadLocationException {
+                document.getText(offset, length, segment);
+            }
+        };
+    }
+
+    private static Text text(PieceTableContent.Snapshot snapshot) {
+        return new Text() {
+            @Override
+            public int length() {
+                return snapshot.length();
+            }
+
+            @Override
+            public void getChars(int offset, int length, Segment segment) throws BadLocationException {
+                snapshot.getChars(offset, length, segment);
+            }
+        };
+    }
+
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /** Folds a character for case-insensitive comparison, with a fast path for ASCII. */
+    static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
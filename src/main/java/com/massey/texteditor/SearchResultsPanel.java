@@ -0,0 +1,169 @@
+package com.massey.texteditor;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+
+/**
+ * Docked list of search hits that fills in while a search is still
+ * running. The hits themselves stay with a {@link Source}, which only has
+ * to describe the rows that are actually painted, so listing a million
+ * hits costs no more than the offsets behind them. Selecting a row opens
+ * the hit.
+ */
+final class SearchResultsPanel extends JPanel {
+
+    /** Holds the hits of one search; used on the EDT only. */
+    interface Source {
+        /** Number of hits available so far. */
+        int size();
+
+        /** One line describing a hit, such as its line number and text. */
+        String describe(int index);
+
+        /** Shows a hit in the editor. */
+        void open(int index);
+    }
+
+    private final JLabel heading = new JLabel();
+    private final JButton stopButton = new JButton("Stop");
+    private final HitModel model = new HitModel();
+    private final JList<Integer> list = new JList<>(model);
+    private Runnable stop;
+
+    SearchResultsPanel() {
+        super(new BorderLayout());
+        JButton closeButton = new JButton("Close");
+        stopButton.setMargin(new java.awt.Insets(0, 6, 0, 6));
+        closeButton.setMargin(new java.awt.Insets(0, 6, 0, 6));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        buttons.add(stopButton);
+        buttons.add(closeButton);
+        JPanel top = new JPanel(new BorderLayout());
+        top.setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 0));
+        top.add(heading, BorderLayout.CENTER);
+        top.add(buttons, BorderLayout.EAST);
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // A fixed height keeps the list from measuring every row
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 2);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index,
+                                                          boolean selected, boolean focused) {
+                return super.getListCellRendererComponent(l, model.source.describe(index), index,
+                                                          selected, focused);
+            }
+        });
+        list.addListSelectionListener(e -> {
+            int index = list.getSelectedIndex();
+            if (!e.getValueIsAdjusting() && index >= 0) {
+                model.source.open(index);
+            }
+        });
+
+        stopButton.addActionListener(e -> {
+            if (stop != null) {
+                stop.run();
+            }
+        });
+        closeButton.addActionListener(e -> {
+            if (stop != null) {
+                stop.run();
+            }
+            setVisible(false);
+        });
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        setPreferredSize(new Dimension(200, 180));
+        setVisible(false);
+    }
+
+    /**
+     * Shows the panel for a new search, replacing any earlier results.
+     *
+     * @param stop stops the search, run by the Stop and Close buttons
+     */
+    void start(String text, Source source, Runnable stop) {
+        this.stop = stop;
+        model.reset(source);
+        heading.setText(text);
+        stopButton.setEnabled(stop != null);
+        setVisible(true);
+        revalidate();
+    }
+
+    /** Shows the hits the source has gained since the last call. */
+    void update(String text) {
+        model.grow();
+        heading.setText(text);
+    }
+
+    /** Shows the last hits and disables Stop. */
+    void finished(String text) {
+        update(text);
+        stop = null;
+        stopButton.setEnabled(false);
+    }
+
+    private static final class HitModel extends AbstractListModel<Integer> {
+        private static final Source EMPTY = new Source() {
+            @Override
+            public int size() {
+                return 0;
+            }
+
+            @Override
+            public String describe(int index) {
+                return "";
+            }
+
+            @Override
+            public void open(int index) {
+            }
+        };
+
+        Source source = EMPTY;
+        private int size;
+
+        void reset(Source newSource) {
+            if (size > 0) {
+                int removed = size;
+                size = 0;
+                fireIntervalRemoved(this, 0, removed - 1);
+            }
+            source = newSource;
+            grow();
+        }
+
+        void grow() {
+            int newSize = source.size();
+            if (newSize > size) {
+                int from = size;
+                size = newSize;
+                fireIntervalAdded(this, from, newSize - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public Integer getElementAt(int index) {
+            return index;
+        }
+    }
+}
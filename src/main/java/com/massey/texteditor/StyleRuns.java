@@ -0,0 +1,50 @@
+package com.massey.texteditor;
+
+import java.util.Arrays;
+import javax.swing.text.AttributeSet;
+
+/**
+ * Sorted list of character attribute runs, collected by the highlighter and
+ * applied to an {@link EditorDocument} in one batch. Reused between passes.
+ */
+final class StyleRuns {
+
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private AttributeSet[] attributes = new AttributeSet[256];
+    private int size;
+
+    void add(int start, int length, AttributeSet attributeSet) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            attributes = Arrays.copyOf(attributes, capacity);
+        }
+        starts[size] = start;
+        lengths[size] = length;
+        attributes[size] = attributeSet;
+        size++;
+    }
+
+    void clear() {
+        Arrays.fill(attributes, 0, size, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    AttributeSet attributes(int index) {
+        return attributes[index];
+    }
+}
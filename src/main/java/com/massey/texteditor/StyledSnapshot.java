@@ -0,0 +1,133 @@
+package com.massey.texteditor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyledDocument;
+
+/**
+ * The text of a styled document together with where its character
+ * attributes change, taken at one moment so it can be written out on
+ * another thread while editing goes on. The text is a
+ * {@link PieceTableContent.Snapshot}, so nothing is copied; only the start
+ * and attributes of each run are recorded, and neighbouring runs that look
+ * the same are merged. Attribute sets from a styled document are
+ * immutable, so sharing them between threads is safe.
+ */
+final class StyledSnapshot {
+
+    private final PieceTableContent.Snapshot text;
+    private final int[] starts;
+    private final AttributeSet[] attributes;
+    private final int count;
+
+    private StyledSnapshot(PieceTableContent.Snapshot text, int[] starts, AttributeSet[] attributes, int count) {
+        this.text = text;
+        this.starts = starts;
+        this.attributes = attributes;
+        this.count = count;
+    }
+
+    /** Records the runs of a document; call on the EDT, or wherever the document is edited. */
+    static StyledSnapshot capture(EditorDocument document) {
+        StyledSnapshot[] captured = new StyledSnapshot[1];
+        document.render(() -> captured[0] = capture(document.snapshot(), document));
+        return captured[0];
+    }
+
+    /**
+     * Records the runs of {@code styles} over {@code text}, which must be
+     * a snapshot of it; a document without styles can pass null.
+     */
+    static StyledSnapshot capture(PieceTableContent.Snapshot text, StyledDocument styles) {
+        int[] starts = new int[16];
+        AttributeSet[] attributes = new AttributeSet[16];
+        int count = 0;
+        if (styles != null) {
+            Element root = styles.getDefaultRootElement();
+            for (int p = 0; p < root.getElementCount(); p++) {
+                Element paragraph = root.getElement(p);
+                for (int r = 0; r < paragraph.getElementCount(); r++) {
+                    Element run = paragraph.getElement(r);
+                    int start = Math.min(run.getStartOffset(), text.length());
+                    AttributeSet set = run.getAttributes();
+                    if (count > 0 && (start == starts[count - 1] || set.isEqual(attributes[count - 1]))) {
+                        if (start == starts[count - 1]) {
+                            attributes[count - 1] = set;
+                        }
+                        continue;
+                    }
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        attributes = Arrays.copyOf(attributes, count * 2);
+                    }
+                    starts[count] = start;
+                    attributes[count++] = set;
+                }
+            }
+        }
+        if (count == 0) {
+            starts[0] = 0;
+            attributes[count++] = SimpleAttributeSet.EMPTY;
+        }
+        return new StyledSnapshot(text, starts, attributes, count);
+    }
+
+    PieceTableContent.Snapshot text() {
+        return text;
+    }
+
+    int length() {
+        return text.length();
+    }
+
+    int runCount() {
+        return count;
+    }
+
+    AttributeSet attributes(int run) {
+        return attributes[run];
+    }
+
+    int runStart(int run) {
+        return starts[run];
+    }
+
+    int runEnd(int run) {
+        return run + 1 < count ? starts[run + 1] : text.length();
+    }
+
+    /** Receives the text in order, a run at a time. */
+    interface Visitor {
+        /** Called once before the characters of each run that has any. */
+        void run(AttributeSet attributes) throws IOException;
+
+        /** Characters of the current run; the array is only valid during the call. */
+        void chars(char[] chars, int start, int length) throws IOException;
+    }
+
+    /** Walks the text run by run without copying it. */
+    void forEachRun(Visitor visitor) throws IOException {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        try {
+            for (int run = 0; run < count; run++) {
+                int end = runEnd(run);
+                if (runStart(run) >= end) {
+                    continue;
+                }
+                visitor.run(attributes[run]);
+                for (int at = runStart(run); at < end; at += segment.count) {
+                    text.getChars(at, end - at, segment);
+                    visitor.chars(segment.array, segment.offset, segment.count);
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,609 @@
+package com.massey.texteditor;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+/**
+ * Incremental syntax highlighter.
+ *
+ * <p>The lexer state at the start of every line is kept as a checkpoint.
+ * A document edit marks only the lines it touched as damaged; re-lexing
+ * starts at the first damaged line and stops at the first line past the
+ * damage whose start state matches its stored checkpoint, since everything
+ * after it is unchanged. Typing therefore costs a line or two instead of a
+ * pass over the whole document, even inside multi-line comments.</p>
+ *
+ * <p>Lexing runs on a background worker against an immutable snapshot of
+ * the document. Only one job is in flight at a time; edits made meanwhile
+ * just widen the damaged range, so a burst of keystrokes becomes one job.
+ * Every edit bumps a version number, and a job whose version is no longer
+ * current stops early and its tokens are thrown away. The event dispatch
+ * thread only applies the style runs of current jobs, each job as a single
+ * batched document change, and each job covers a bounded amount of text so
+ * that applying it never stalls the editor.</p>
+ *
+ * <p>When a view is attached, only the lines in its visible area plus a
+ * margin are styled straight away. Lines further out are still lexed so
+ * the checkpoints stay right, but they are only flagged as pending and get
+ * styled later by low-priority jobs, or as soon as they scroll into view.
+ * A large file therefore shows a highlighted first screen without waiting
+ * for the whole document to be styled.</p>
+ */
+final class SyntaxHighlighter {
+
+    /** Characters lexed per job before handing results back to the EDT. */
+    private static final int CHARS_PER_JOB = 32 * 1024;
+
+    /** Characters a job may lex without styling them, to catch up on checkpoints. */
+    private static final int LEX_ONLY_CHARS = 1024 * 1024;
+
+    /** Lines styled above and below the visible area. */
+    private static final int MARGIN_LINES = 100;
+
+    /** Lines styled up front when no view is attached or it has no size yet. */
+    private static final int FIRST_SCREEN_LINES = 2 * MARGIN_LINES;
+
+    /** Default pause between background jobs styling off-screen lines. */
+    private static final int LAZY_DELAY_MS = 50;
+
+    /** Checkpoints past the damage passed to a job so it can stop early. */
+    private static final int EXPECTED_STATES = 256;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "syntax-highlighter");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private EditorDocument document;
+    private final AttributeSet[] styles;
+    private final StyleRuns runs = new StyleRuns();
+    private SyntaxLexer lexer;
+    private JTextComponent view;
+
+    // Lexer state at the start of each line, and whether its styles are out of date
+    private int[] lineStates = new int[64];
+    private boolean[] pending = new boolean[64];
+    private int lineCount;
+    private int pendingFrom;
+
+    // Lines styled eagerly, from the visible area of the view
+    private int windowFirst;
+    private int windowLast;
+    private final Timer lazyTimer;
+    private int lazyDelay = LAZY_DELAY_MS;
+
+    // Damaged line range, or -1 when nothing needs re-lexing
+    private int dirtyStart = -1;
+    private int dirtyEnd = -1;
+    private boolean scheduled;
+
+    // Edit counter; only the EDT writes it, the worker polls the volatile copy
+    private int version;
+    private volatile int latestVersion;
+    private Job running;
+
+    SyntaxHighlighter(EditorDocument document, Map<String, Color> colors) {
+        this.document = document;
+        this.styles = new AttributeSet[SyntaxLexer.NUMBER + 1];
+        styles[SyntaxLexer.PLAIN] = SimpleAttributeSet.EMPTY;
+        styles[SyntaxLexer.KEYWORD] = style(colors.get("keyword"), true, false);
+        styles[SyntaxLexer.STRING] = style(colors.get("string"), false, false);
+        styles[SyntaxLexer.COMMENT] = style(colors.get("comment"), false, true);
+        styles[SyntaxLexer.NUMBER] = style(colors.get("number"), false, false);
+        lazyTimer = new Timer(LAZY_DELAY_MS, e -> submit(true));
+        lazyTimer.setRepeats(false);
+    }
+
+    private static AttributeSet style(Color color, boolean bold, boolean italic) {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        StyleConstants.setForeground(attributes, color);
+        if (bold) {
+            StyleConstants.setBold(attributes, true);
+        }
+        if (italic) {
+            StyleConstants.setItalic(attributes, true);
+        }
+        return attributes;
+    }
+
+    /** Switches to a new document; highlighting restarts on the next {@link #highlightAll}. */
+    void setDocument(EditorDocument document) {
+        this.document = document;
+        this.lexer = null;
+        lineCount = 0;
+        dirtyStart = -1;
+        dirtyEnd = -1;
+        lazyTimer.stop();
+        bumpVersion();
+    }
+
+    /**
+     * Makes highlighting follow the visible area of {@code view}. Without a
+     * view the first screenful of lines is styled first.
+     */
+    void setView(JTextComponent view) {
+        this.view = view;
+    }
+
+    /**
+     * Sets the pause between background jobs that style off-screen lines.
+     * A negative delay turns them off, so lines are only styled once they
+     * scroll into view.
+     */
+    void setLazyDelay(int millis) {
+        lazyTimer.stop();
+        lazyDelay = millis;
+        if (millis >= 0) {
+            lazyTimer.setInitialDelay(millis);
+        }
+    }
+
+    /** Call when the view scrolls or resizes so newly visible lines get styled. */
+    void viewportChanged() {
+        if (lexer != null && running == null) {
+            schedule();
+        }
+    }
+
+    /**
+     * Re-lexes the whole document with the given lexer, or clears any
+     * previous highlighting when the lexer is null.
+     */
+    void highlightAll(SyntaxLexer newLexer) {
+        SyntaxLexer previous = lexer;
+        lexer = newLexer;
+        bumpVersion();
+        if (lexer == null) {
+            dirtyStart = -1;
+            dirtyEnd = -1;
+            Arrays.fill(pending, false);
+            lazyTimer.stop();
+            if (previous != null) {
+                document.setCharacterAttributes(0, document.getLength(), SimpleAttributeSet.EMPTY, true);
+            }
+            return;
+        }
+        markAllDirty();
+        schedule();
+    }
+
+    /** True when no job is running and no lines are waiting to be lexed or styled. */
+    boolean isIdle() {
+        return running == null && !scheduled && dirtyStart < 0 && firstPending(0, lineCount - 1) < 0;
+    }
+
+    /** True when the line has been lexed and its styles are up to date. */
+    boolean isStyled(int line) {
+        boolean dirty = dirtyStart >= 0 && line >= dirtyStart && line <= dirtyEnd;
+        return lexer != null && !dirty && line < lineCount && !pending[line];
+    }
+
+    /**
+     * Records the lines damaged by an insert or remove and schedules them for
+     * re-lexing. Must be called from the document listener so the checkpoint
+     * array stays in step with the line structure.
+     */
+    void documentChanged(DocumentEvent e) {
+        if (lexer == null) {
+            return;
+        }
+        bumpVersion();
+        Element root = document.getDefaultRootElement();
+        int line = root.getElementIndex(e.getOffset());
+        int delta = root.getElementCount() - lineCount;
+        if (line >= lineCount || line - delta >= lineCount) {
+            // Missed earlier events; start over from the top
+            markAllDirty();
+            schedule();
+            return;
+        }
+        shiftLines(line, delta);
+
+        if (dirtyStart > line) {
+            dirtyStart = Math.max(line, dirtyStart + delta);
+        }
+        if (dirtyEnd > line) {
+            dirtyEnd = Math.max(line, dirtyEnd + delta);
+        }
+        dirtyStart = dirtyStart < 0 ? line : Math.min(dirtyStart, line);
+        dirtyEnd = Math.max(dirtyEnd, line + Math.max(delta, 0));
+        schedule();
+    }
+
+    private void bumpVersion() {
+        version++;
+        latestVersion = version;
+    }
+
+    private void markAllDirty() {
+        lineCount = document.getDefaultRootElement().getElementCount();
+        ensureCapacity(lineCount);
+        lineStates[0] = SyntaxLexer.NORMAL;
+        dirtyStart = 0;
+        dirtyEnd = lineCount - 1;
+        Arrays.fill(pending, 0, lineCount, false);
+        pendingFrom = lineCount;
+    }
+
+    private void schedule() {
+        // Deferred so that every edit of the current event joins the same job
+        if (!scheduled) {
+            scheduled = true;
+            SwingUtilities.invokeLater(() -> submit(false));
+        }
+    }
+
+    /** Inserts or removes checkpoints after {@code line} to follow added or joined lines. */
+    private void shiftLines(int line, int delta) {
+        int tail = lineCount - line - 1;
+        if (delta > 0) {
+            ensureCapacity(lineCount + delta);
+            System.arraycopy(lineStates, line + 1, lineStates, line + 1 + delta, tail);
+            System.arraycopy(pending, line + 1, pending, line + 1 + delta, tail);
+            Arrays.fill(lineStates, line + 1, line + 1 + delta, SyntaxLexer.NORMAL);
+            Arrays.fill(pending, line + 1, line + 1 + delta, false);
+        } else if (delta < 0) {
+            System.arraycopy(lineStates, line + 1 - delta, lineStates, line + 1, tail + delta);
+            System.arraycopy(pending, line + 1 - delta, pending, line + 1, tail + delta);
+        }
+        lineCount += delta;
+        pendingFrom = Math.min(pendingFrom, line + 1);
+    }
+
+    private void ensureCapacity(int lines) {
+        if (lines > lineStates.length) {
+            int capacity = Math.max(lines, lineStates.length * 2);
+            lineStates = Arrays.copyOf(lineStates, capacity);
+            pending = Arrays.copyOf(pending, capacity);
+        }
+    }
+
+    private void markPending(int line) {
+        pending[line] = true;
+        pendingFrom = Math.min(pendingFrom, line);
+    }
+
+    /** Returns the first line in [from, to] whose styles are pending, or -1. */
+    private int firstPending(int from, int to) {
+        boolean fromLowest = from <= pendingFrom;
+        for (int line = Math.max(from, pendingFrom); line <= to; line++) {
+            if (pending[line]) {
+                if (fromLowest) {
+                    pendingFrom = line;
+                }
+                return line;
+            }
+        }
+        if (fromLowest && to >= lineCount - 1) {
+            pendingFrom = lineCount;
+        }
+        return -1;
+    }
+
+    /** Works out which lines are on screen, widened by the margin. */
+    private void updateWindow(Element root) {
+        windowFirst = 0;
+        windowLast = Math.min(lineCount - 1, FIRST_SCREEN_LINES);
+        if (view == null || view.getDocument() != document) {
+            return;
+        }
+        Rectangle visible = view.getVisibleRect();
+        if (visible.isEmpty()) {
+            return;
+        }
+        int top = view.viewToModel2D(new Point(visible.x, visible.y));
+        int bottom = view.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height));
+        if (top < 0 || bottom < 0) {
+            return;
+        }
+        windowFirst = Math.max(0, root.getElementIndex(top) - MARGIN_LINES);
+        windowLast = Math.min(lineCount - 1, root.getElementIndex(bottom) + MARGIN_LINES);
+    }
+
+    /**
+     * Starts the most urgent job unless one is already in flight: damaged
+     * lines first, then pending lines on screen, then, when {@code lazy},
+     * pending lines elsewhere.
+     */
+    private void submit(boolean lazy) {
+        if (!lazy) {
+            scheduled = false;
+        }
+        if (running != null || lexer == null) {
+            return;
+        }
+        Element root = document.getDefaultRootElement();
+        if (root.getElementCount() != lineCount) {
+            // Lost track of the line structure, e.g. edits made while loading
+            markAllDirty();
+        }
+        updateWindow(root);
+        if (dirtyStart >= 0) {
+            int line = Math.min(dirtyStart, lineCount - 1);
+            int from = dirtyEnd + 1;
+            int[] expected = Arrays.copyOfRange(lineStates, Math.min(from, lineCount),
+                                                Math.min(from + EXPECTED_STATES, lineCount));
+            start(new Job(true, line, root.getElement(line).getStartOffset(), lineStates[line],
+                          dirtyEnd, expected, windowFirst, windowLast));
+            return;
+        }
+        int line = firstPending(windowFirst, windowLast);
+        int last = windowLast;
+        if (line < 0) {
+            line = firstPending(0, lineCount - 1);
+            if (line < 0) {
+                return;
+            }
+            if (!lazy) {
+                if (lazyDelay >= 0) {
+                    lazyTimer.restart();
+                }
+                return;
+            }
+            last = lineCount - 1;
+        }
+        start(new Job(false, line, root.getElement(line).getStartOffset(), lineStates[line],
+                      -1, new int[0], line, last));
+    }
+
+    private void start(Job job) {
+        lazyTimer.stop();
+        running = job;
+        WORKER.execute(() -> {
+            job.run();
+            SwingUtilities.invokeLater(() -> finished(job));
+        });
+    }
+
+    private void finished(Job job) {
+        running = null;
+        if (!job.cancelled && job.version == version) {
+            if (job.relex) {
+                apply(job);
+            } else {
+                restyle(job);
+            }
+        }
+        // Stale results are dropped; the damaged range already covers them
+        schedule();
+    }
+
+    /** Styles the lines of a current job and advances the checkpoints. */
+    private void apply(Job job) {
+        try {
+            for (int k = 0; k < job.lines; k++) {
+                int line = job.firstLine + k;
+                if (k > 0) {
+                    int state = job.endStates[k - 1];
+                    if (line > dirtyEnd && lineStates[line] == state) {
+                        dirtyStart = -1;
+                        dirtyEnd = -1;
+                        return;
+                    }
+                    lineStates[line] = state;
+                }
+                if (job.styles(line)) {
+                    addRuns(job, k);
+                    pending[line] = false;
+                } else {
+                    markPending(line);
+                }
+            }
+            int next = job.firstLine + job.lines;
+            int state = job.endStates[job.lines - 1];
+            if (next >= lineCount || (next > dirtyEnd && lineStates[next] == state)) {
+                dirtyStart = -1;
+                dirtyEnd = -1;
+                return;
+            }
+            // Ran out of budget; continue from the next line in a new job
+            lineStates[next] = state;
+            dirtyStart = next;
+            dirtyEnd = Math.max(dirtyEnd, next);
+        } finally {
+            flushRuns();
+        }
+    }
+
+    /** Styles the pending lines of a job that ran over up-to-date checkpoints. */
+    private void restyle(Job job) {
+        for (int k = 0; k < job.lines; k++) {
+            int line = job.firstLine + k;
+            if (pending[line]) {
+                addRuns(job, k);
+                pending[line] = false;
+            }
+        }
+        flushRuns();
+    }
+
+    /** Queues the styles of one lexed line; the empty run resets the whole line. */
+    private void addRuns(Job job, int k) {
+        runs.add(job.lineStarts[k], 0, styles[SyntaxLexer.PLAIN]);
+        TokenBuffer tokens = job.tokens;
+        for (int t = k == 0 ? 0 : job.tokenEnds[k - 1]; t < job.tokenEnds[k]; t++) {
+            runs.add(tokens.start(t), tokens.length(t), styles[tokens.type(t)]);
+        }
+    }
+
+    /** Applies the queued runs as one document change. */
+    private void flushRuns() {
+        document.setLineStyles(runs);
+        runs.clear();
+    }
+
+    /**
+     * Lexes lines of a snapshot on the worker thread. Inputs are captured on
+     * the EDT when the job is created; the results are read back on the EDT
+     * once it has finished.
+     */
+    private final class Job {
+
+        final int version = SyntaxHighlighter.this.version;
+        private final SyntaxLexer lexer = SyntaxHighlighter.this.lexer;
+        private final PieceTableContent.Snapshot text = document.snapshot();
+        final boolean relex;
+        final int firstLine;
+        private final int startOffset;
+        private final int startState;
+        private final int damageEnd;
+        private final int[] expected;
+        private final int styleFirst;
+        private final int styleLast;
+
+        // Results, one entry per lexed line
+        int lines;
+        int[] lineStarts = new int[64];
+        int[] lineEnds = new int[64];
+        int[] endStates = new int[64];
+        int[] tokenEnds = new int[64];
+        final TokenBuffer tokens = new TokenBuffer();
+        private final TokenBuffer discarded = new TokenBuffer();
+        boolean cancelled;
+
+        private final Segment segment = new Segment();
+        private char[] scratch = new char[256];
+        private char[] lineArray;
+        private int lineOffset;
+
+        /**
+         * @param relex     whether checkpoints from firstLine on are being
+         *                  recomputed, or are current and only styles are due
+         * @param damageEnd last damaged line; lexing may stop past it once a
+         *                  line starts in the state listed in {@code expected}
+         */
+        Job(boolean relex, int firstLine, int startOffset, int startState, int damageEnd,
+            int[] expected, int styleFirst, int styleLast) {
+            this.relex = relex;
+            this.firstLine = firstLine;
+            this.startOffset = startOffset;
+            this.startState = startState;
+            this.damageEnd = damageEnd;
+            this.expected = expected;
+            this.styleFirst = styleFirst;
+            this.styleLast = styleLast;
+            segment.setPartialReturn(true);
+        }
+
+        boolean styles(int line) {
+            return line >= styleFirst && line <= styleLast;
+        }
+
+        void run() {
+            int length = text.length();
+            int pos = startOffset;
+            int state = startState;
+            int budget = CHARS_PER_JOB;
+            int lexOnlyBudget = LEX_ONLY_CHARS;
+            try {
+                while (true) {
+                    if (latestVersion != version) {
+                        cancelled = true;
+                        return;
+                    }
+                    int line = firstLine + lines;
+                    int end = readLine(pos, length);
+                    boolean styled = styles(line);
+                    TokenBuffer out = styled ? tokens : discarded;
+                    discarded.clear();
+                    state = lexer.lexLine(lineArray, lineOffset, lineOffset + end - pos, state, pos, out);
+                    record(pos, end, state);
+                    if (styled) {
+                        budget -= end - pos + 1;
+                    } else {
+                        lexOnlyBudget -= end - pos + 1;
+                    }
+                    if (end >= length || (!relex && line >= styleLast)) {
+                        return;
+                    }
+                    pos = end + 1;
+                    int index = line - damageEnd;
+                    boolean converged = relex && index >= 0 && index < expected.length && expected[index] == state;
+                    if (converged || budget <= 0 || lexOnlyBudget <= 0) {
+                        return;
+                    }
+                }
+            } catch (BadLocationException e) {
+                cancelled = true;
+            }
+        }
+
+        private void record(int start, int end, int state) {
+            if (lines == lineStarts.length) {
+                int capacity = lines * 2;
+                lineStarts = Arrays.copyOf(lineStarts, capacity);
+                lineEnds = Arrays.copyOf(lineEnds, capacity);
+                endStates = Arrays.copyOf(endStates, capacity);
+                tokenEnds = Arrays.copyOf(tokenEnds, capacity);
+            }
+            lineStarts[lines] = start;
+            lineEnds[lines] = end;
+            endStates[lines] = state;
+            tokenEnds[lines] = tokens.size();
+            lines++;
+        }
+
+        /**
+         * Points lineArray/lineOffset at the line starting at {@code pos},
+         * straight into the snapshot when the line lies within one piece.
+         *
+         * @return the offset of the line's end, excluding the line break
+         */
+        private int readLine(int pos, int length) throws BadLocationException {
+            text.getChars(pos, length - pos, segment);
+            int newline = indexOfNewline(segment);
+            if (newline >= 0) {
+                lineArray = segment.array;
+                lineOffset = segment.offset;
+                return pos + newline - segment.offset;
+            }
+            int count = 0;
+            int p = pos;
+            while (true) {
+                int take = newline >= 0 ? newline - segment.offset : segment.count;
+                if (count + take > scratch.length) {
+                    scratch = Arrays.copyOf(scratch, Math.max(count + take, scratch.length * 2));
+                }
+                System.arraycopy(segment.array, segment.offset, scratch, count, take);
+                count += take;
+                p += take;
+                if (newline >= 0 || p >= length) {
+                    break;
+                }
+                text.getChars(p, length - p, segment);
+                newline = indexOfNewline(segment);
+            }
+            lineArray = scratch;
+            lineOffset = 0;
+            return p;
+        }
+
+        private int indexOfNewline(Segment s) {
+            char[] array = s.array;
+            int end = s.offset + s.count;
+            for (int i = s.offset; i < end; i++) {
+                if (array[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
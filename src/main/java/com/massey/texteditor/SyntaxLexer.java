@@ -0,0 +1,282 @@
+package com.massey.texteditor;
+
+/**
+ * Single-pass, table-driven line lexer shared by the language lexers.
+ *
+ * <p>Each character is classified through a lookup table and dispatched once;
+ * identifiers are hashed while they are scanned and checked against a
+ * {@link KeywordTable}, so no substrings are created. Tokens go into a
+ * {@link TokenBuffer}. Each call starts from the state the previous line
+ * ended in, so comments and strings that span lines can be re-lexed one line
+ * at a time.</p>
+ */
+abstract class SyntaxLexer {
+
+    // Lexer states carried from one line to the next
+    static final int NORMAL = 0;
+    static final int BLOCK_COMMENT = 1;
+    static final int TRIPLE_DOUBLE = 2;
+    static final int TRIPLE_SINGLE = 3;
+    static final int TEMPLATE = 4;
+
+    // Token types
+    static final byte PLAIN = 0;
+    static final byte KEYWORD = 1;
+    static final byte STRING = 2;
+    static final byte COMMENT = 3;
+    static final byte NUMBER = 4;
+
+    // Language features
+    static final int SLASH_COMMENTS = 1;
+    static final int HASH_COMMENTS = 2;
+    static final int TRIPLE_QUOTES = 4;
+    static final int TEXT_BLOCKS = 8;
+    static final int TEMPLATE_STRINGS = 16;
+    static final int PREPROCESSOR = 32;
+
+    // Character classes
+    private static final byte OTHER = 0;
+    private static final byte IDENT = 1;
+    private static final byte DIGIT = 2;
+    private static final byte DOUBLE_QUOTE = 3;
+    private static final byte SINGLE_QUOTE = 4;
+    private static final byte SLASH = 5;
+    private static final byte HASH = 6;
+    private static final byte BACKTICK = 7;
+    private static final byte SPACE = 8;
+
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = IDENT;
+            CLASSES[Character.toUpperCase(c)] = IDENT;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        CLASSES['_'] = IDENT;
+        CLASSES['$'] = IDENT;
+        CLASSES['"'] = DOUBLE_QUOTE;
+        CLASSES['\''] = SINGLE_QUOTE;
+        CLASSES['/'] = SLASH;
+        CLASSES['#'] = HASH;
+        CLASSES['`'] = BACKTICK;
+        CLASSES[' '] = SPACE;
+        CLASSES['\t'] = SPACE;
+    }
+
+    private final KeywordTable keywords;
+    private final int features;
+
+    protected SyntaxLexer(KeywordTable keywords, int features) {
+        this.keywords = keywords;
+        this.features = features;
+    }
+
+    KeywordTable getKeywords() {
+        return keywords;
+    }
+
+    private boolean has(int feature) {
+        return (features & feature) != 0;
+    }
+
+    private static byte classOf(char c) {
+        if (c < 128) {
+            return CLASSES[c];
+        }
+        return Character.isJavaIdentifierStart(c) ? IDENT : OTHER;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        if (c < 128) {
+            byte cls = CLASSES[c];
+            return cls == IDENT || cls == DIGIT;
+        }
+        return Character.isJavaIdentifierPart(c);
+    }
+
+    /**
+     * Lexes text[start, end), which must not contain a line break, and adds
+     * its tokens to {@code out} at document offsets relative to
+     * {@code docOffset}, the position of text[start].
+     *
+     * @return the state at the start of the next line
+     */
+    int lexLine(char[] text, int start, int end, int state, int docOffset, TokenBuffer out) {
+        int base = docOffset - start;
+        int i = start;
+        if (state != NORMAL) {
+            int close = findClose(text, i, end, state);
+            if (close < 0) {
+                if (end > i) {
+                    out.add(base + i, end - i, state == BLOCK_COMMENT ? COMMENT : STRING);
+                }
+                return state;
+            }
+            out.add(base + i, close - i, state == BLOCK_COMMENT ? COMMENT : STRING);
+            i = close;
+        }
+
+        while (i < end) {
+            char c = text[i];
+            switch (classOf(c)) {
+                case IDENT: {
+                    int j = i;
+                    int hash = 0;
+                    do {
+                        hash = KeywordTable.step(hash, text[j]);
+                        j++;
+                    } while (j < end && isIdentifierPart(text[j]));
+                    if (keywords.contains(text, i, j - i, hash)) {
+                        out.add(base + i, j - i, KEYWORD);
+                    }
+                    i = j;
+                    break;
+                }
+                case DIGIT: {
+                    int j = i + 1;
+                    while (j < end && (isIdentifierPart(text[j]) || text[j] == '.')) {
+                        j++;
+                    }
+                    out.add(base + i, j - i, NUMBER);
+                    i = j;
+                    break;
+                }
+                case DOUBLE_QUOTE:
+                case SINGLE_QUOTE: {
+                    boolean triple = i + 2 < end && text[i + 1] == c && text[i + 2] == c
+                            && (has(TRIPLE_QUOTES) || (c == '"' && has(TEXT_BLOCKS)));
+                    if (triple) {
+                        int tripleState = c == '"' ? TRIPLE_DOUBLE : TRIPLE_SINGLE;
+                        int close = findClose(text, i + 3, end, tripleState);
+                        if (close < 0) {
+                            out.add(base + i, end - i, STRING);
+                            return tripleState;
+                        }
+                        out.add(base + i, close - i, STRING);
+                        i = close;
+                    } else {
+                        int close = findQuote(text, c, i + 1, end);
+                        out.add(base + i, close - i, STRING);
+                        i = close;
+                    }
+                    break;
+                }
+                case BACKTICK: {
+                    if (!has(TEMPLATE_STRINGS)) {
+                        i++;
+                        break;
+                    }
+                    int close = findClose(text, i + 1, end, TEMPLATE);
+                    if (close < 0) {
+                        out.add(base + i, end - i, STRING);
+                        return TEMPLATE;
+                    }
+                    out.add(base + i, close - i, STRING);
+                    i = close;
+                    break;
+                }
+                case SLASH: {
+                    if (has(SLASH_COMMENTS) && i + 1 < end && text[i + 1] == '/') {
+                        out.add(base + i, end - i, COMMENT);
+                        return NORMAL;
+                    }
+                    if (has(SLASH_COMMENTS) && i + 1 < end && text[i + 1] == '*') {
+                        int close = findClose(text, i + 2, end, BLOCK_COMMENT);
+                        if (close < 0) {
+                            out.add(base + i, end - i, COMMENT);
+                            return BLOCK_COMMENT;
+                        }
+                        out.add(base + i, close - i, COMMENT);
+                        i = close;
+                    } else {
+                        i++;
+                    }
+                    break;
+                }
+                case HASH: {
+                    if (has(HASH_COMMENTS)) {
+                        out.add(base + i, end - i, COMMENT);
+                        return NORMAL;
+                    }
+                    if (has(PREPROCESSOR) && onlySpacesBefore(text, start, i)) {
+                        int j = i + 1;
+                        while (j < end && classOf(text[j]) == SPACE) {
+                            j++;
+                        }
+                        while (j < end && isIdentifierPart(text[j])) {
+                            j++;
+                        }
+                        out.add(base + i, j - i, KEYWORD);
+                        i = j;
+                    } else {
+                        i++;
+                    }
+                    break;
+                }
+                default:
+                    i++;
+                    break;
+            }
+        }
+        return NORMAL;
+    }
+
+    private static boolean onlySpacesBefore(char[] text, int start, int at) {
+        for (int k = start; k < at; k++) {
+            if (classOf(text[k]) != SPACE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the offset just past the closing quote, or the line end if unterminated. */
+    private static int findQuote(char[] text, char quote, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char c = text[i];
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Finds the end of a construct that may span lines.
+     *
+     * @return the offset just past its terminator, or -1 if the line has none
+     */
+    private static int findClose(char[] text, int from, int end, int state) {
+        for (int i = from; i < end; i++) {
+            char c = text[i];
+            switch (state) {
+                case BLOCK_COMMENT:
+                    if (c == '*' && i + 1 < end && text[i + 1] == '/') {
+                        return i + 2;
+                    }
+                    break;
+                case TEMPLATE:
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '`') {
+                        return i + 1;
+                    }
+                    break;
+                default:
+                    char quote = state == TRIPLE_DOUBLE ? '"' : '\'';
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == quote && i + 2 < end && text[i + 1] == quote && text[i + 2] == quote) {
+                        return i + 3;
+                    }
+                    break;
+            }
+        }
+        return -1;
+    }
+}
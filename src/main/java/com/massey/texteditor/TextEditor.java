@@ -3,26 +3,36 @@ package com.massey.texteditor;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.*;
-import javax.swing.text.rtf.RTFEditorKit;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
 import java.awt.Desktop;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Properties;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import org.yaml.snakeyaml.Yaml;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.font.PDFont;
 
 /**
  * Advanced Text Editor with comprehensive functionality
@@ -35,26 +45,76 @@ public class TextEditor extends JFrame {
     private JScrollPane scrollPane;
     private JLabel statusLabel;
     private JLabel dateTimeLabel;
+    // Owns every periodic task, the clock included
+    private final UiScheduler scheduler = new UiScheduler();
+    // "Ln x, Col y" of the caret, or of the viewer's selected line
+    private JLabel caretLabel;
+    private JLabel statisticsLabel;
+    private LineIndex lineIndex;
+    private DocumentStatistics statistics;
+    private boolean statusUpdatePending;
+    // Edits since the document was last clean, for recovery after a crash; null while autosave is off
+    private EditJournal journal;
+    private boolean autoSave;
+    // Edits made while a save runs, recorded again in the journal started from the saved file
+    private final List<Consumer<EditJournal>> editsDuringSave = new ArrayList<>();
+    private JPanel loadPanel;
+    private JProgressBar loadProgress;
+    private JButton cancelLoadButton;
     private JFileChooser fileChooser;
     private File currentFile;
     private boolean isModified = false;
+    private boolean loading = false;
+    // Counts user edits so a save only clears the modified flag if nothing changed meanwhile
+    private long editCount;
+    private SwingWorker<FileOrigin, Long> saveWorker;
+    private SecondaryLoop saveLoop;
+    // How the document maps onto the bytes of the file it came from, for delta saves
+    private FileOrigin fileOrigin;
+    // The open that is running in the background, if any
+    private SwingWorker<?, ?> loadWorker;
+    // The background task whose progress the status bar shows, an open or an export
+    private SwingWorker<?, ?> progressWorker;
+    private SwingWorker<Void, Void> exportWorker;
+    private javax.swing.event.DocumentListener documentListener;
+    private JPanel editorPanel;
+    // Read-only view of a file too large to edit, shown instead of the text pane
+    private HugeFileViewer viewer;
+    private SwingWorker<Void, Void> indexWorker;
+    private SwingWorker<Long, Void> viewerSearch;
+    private String viewerQuery;
+    private boolean viewerMatchCase;
+    
+    // Decoded chunks allowed in flight between the reader thread and the EDT
+    private static final int MAX_PENDING_CHUNKS = 16;
     
     // Syntax highlighting
     private StyledDocument styledDocument;
     private Map<String, Color> syntaxColors;
-    private Set<String> javaKeywords;
-    private Set<String> pythonKeywords;
-    private Set<String> jsKeywords;
-    private Set<String> cppKeywords;
+    private SyntaxLexer javaLexer;
+    private SyntaxLexer pythonLexer;
+    private SyntaxLexer jsLexer;
+    private SyntaxLexer cppLexer;
+    private SyntaxHighlighter syntaxHighlighter;
+    
+    // Search
+    private FindDialog findDialog;
+    private SearchBar searchBar;
+    private SearchResultsPanel searchResults;
+    // The search filling the results panel, regex or find in files
+    private SwingWorker<?, ?> searchWorker;
+    private File searchFolder;
+    // Hits listed at most, so a pattern like "." cannot exhaust the heap
+    private static final int MAX_LISTED_HITS = 1_000_000;
     
     // Configuration
     private Properties config;
-    private static final String CONFIG_FILE = "/config.yml";
+    private static final String CONFIG_FILE = "config.yml";
     
     // Menu items
     private JMenuItem newItem, openItem, saveItem, saveAsItem, exitItem;
     private JMenuItem cutItem, copyItem, pasteItem, selectAllItem;
-    private JMenuItem searchItem, timeDateItem, aboutItem, printItem;
+    private JMenuItem searchItem, advancedFindItem, findInFilesItem, findNextItem, findPreviousItem, goToLineItem, timeDateItem, aboutItem, printItem;
     private JMenuItem pdfConvertItem, rtfOpenItem, odtOpenItem;
     
     public TextEditor() {
@@ -64,6 +124,12 @@ public class TextEditor extends JFrame {
         setupLayout();
         setupEventHandlers();
         updateDateTime();
+        scheduler.schedule("clock", 1000, false, this::updateDateTime);
+        autoSave = Boolean.parseBoolean(config.getProperty("file.auto_save", "false").trim());
+        if (autoSave) {
+            scheduler.schedule("autosave", getAutoSaveInterval() * 1000, true, this::flushJournal);
+        }
+        SwingUtilities.invokeLater(this::offerRecovery);
         
         setTitle("Advanced Text Editor - New Document");
         setSize(800, 600);
@@ -76,52 +142,56 @@ public class TextEditor extends JFrame {
             public void windowClosing(WindowEvent e) {
                 exitApplication();
             }
+            
+            @Override
+            public void windowIconified(WindowEvent e) {
+                // Nobody sees the clock of a minimised window
+                scheduler.setHidden(true);
+            }
+            
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                scheduler.setHidden(false);
+            }
         });
     }
     
     private void initializeConfiguration() {
         config = new Properties();
-        try {
-            // Try to load YAML configuration
-            Yaml yaml = new Yaml();
-            InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE);
+        // Defaults, overridden by whatever the configuration file provides
+        config.setProperty("font.name", "Consolas");
+        config.setProperty("font.size", "12");
+        config.setProperty("window.title", "Advanced Text Editor");
+        config.setProperty("file.encoding", "UTF-8");
+        config.setProperty("file.fsync", "always");
+        config.setProperty("file.rtf_import", "auto");
+        config.setProperty("file.viewer_threshold_mb", "512");
+        config.setProperty("file.auto_save", "false");
+        config.setProperty("file.auto_save_interval", "300");
+        config.setProperty("file.recovery_dir", "");
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
             if (input != null) {
-                Map<String, Object> yamlData = yaml.load(input);
-                if (yamlData != null) {
-                    // Extract font settings
-                    if (yamlData.containsKey("font")) {
-                        Map<String, Object> fontConfig = (Map<String, Object>) yamlData.get("font");
-                        config.setProperty("font.name", String.valueOf(fontConfig.getOrDefault("name", "Consolas")));
-                        config.setProperty("font.size", String.valueOf(fontConfig.getOrDefault("size", "12")));
-                    } else {
-                        config.setProperty("font.name", "Consolas");
-                        config.setProperty("font.size", "12");
-                    }
-                    
-                    // Extract window settings
-                    if (yamlData.containsKey("window")) {
-                        Map<String, Object> windowConfig = (Map<String, Object>) yamlData.get("window");
-                        config.setProperty("window.title", String.valueOf(windowConfig.getOrDefault("title", "Advanced Text Editor")));
-                    } else {
-                        config.setProperty("window.title", "Advanced Text Editor");
-                    }
-                    
-                    config.setProperty("file.encoding", "UTF-8");
-                    input.close();
+                Map<String, Object> yamlData = new Yaml().load(input);
+                Object editor = yamlData == null ? null : yamlData.get("editor");
+                if (editor instanceof Map) {
+                    flattenConfiguration("", (Map<?, ?>) editor);
                 }
-            } else {
-                // Use default configuration if config file not found
-                config.setProperty("font.name", "Consolas");
-                config.setProperty("font.size", "12");
-                config.setProperty("window.title", "Advanced Text Editor");
-                config.setProperty("file.encoding", "UTF-8");
             }
         } catch (Exception e) {
-            // Use default configuration on any error
-            config.setProperty("font.name", "Consolas");
-            config.setProperty("font.size", "12");
-            config.setProperty("window.title", "Advanced Text Editor");
-            config.setProperty("file.encoding", "UTF-8");
+            // Keep the defaults on any error
+        }
+    }
+    
+    /** Copies nested YAML settings into config as dotted keys, e.g. file.encoding. */
+    private void flattenConfiguration(String prefix, Map<?, ?> values) {
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            String key = prefix + entry.getKey();
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                flattenConfiguration(key + ".", (Map<?, ?>) value);
+            } else if (value != null && !(value instanceof List)) {
+                config.setProperty(key, String.valueOf(value));
+            }
         }
     }
     
@@ -130,8 +200,10 @@ public class TextEditor extends JFrame {
         initializeSyntaxHighlighting();
         
         // Initialize text pane with syntax highlighting
-        textPane = new JTextPane();
-        styledDocument = textPane.getStyledDocument();
+        EditorDocument document = createDocument();
+        textPane = new JTextPane(document);
+        styledDocument = document;
+        syntaxHighlighter = new SyntaxHighlighter(document, syntaxColors);
         textPane.setFont(new Font(config.getProperty("font.name", "Consolas"), 
                                  Font.PLAIN, 
                                  Integer.parseInt(config.getProperty("font.size", "12"))));
@@ -147,9 +219,30 @@ public class TextEditor extends JFrame {
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         
+        // Style what is on screen first; the rest follows lazily
+        syntaxHighlighter.setView(textPane);
+        scrollPane.getViewport().addChangeListener(e -> syntaxHighlighter.viewportChanged());
+        
+        searchResults = new SearchResultsPanel();
+        searchBar = new SearchBar(textPane, text -> statusLabel.setText(text));
+        lineIndex = new LineIndex(textPane);
+        statistics = new DocumentStatistics(textPane, this::scheduleStatusUpdate);
+        
         // Initialize status labels
         statusLabel = new JLabel("Ready");
         dateTimeLabel = new JLabel();
+        caretLabel = new JLabel("Ln 1, Col 1");
+        statisticsLabel = new JLabel();
+        
+        // Progress and cancel for files opening in the background, hidden when idle
+        loadProgress = new JProgressBar(0, 100);
+        loadProgress.setPreferredSize(new Dimension(150, loadProgress.getPreferredSize().height));
+        cancelLoadButton = new JButton("Cancel");
+        cancelLoadButton.setMargin(new Insets(0, 6, 0, 6));
+        loadPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        loadPanel.add(loadProgress);
+        loadPanel.add(cancelLoadButton);
+        loadPanel.setVisible(false);
         
         // Initialize file chooser
         fileChooser = new JFileChooser();
@@ -157,6 +250,14 @@ public class TextEditor extends JFrame {
         fileChooser.setFileFilter(new FileNameExtensionFilter("All Files", "*"));
     }
     
+    /**
+     * Creates an empty document backed by a piece table, so edits cost the
+     * same regardless of document size.
+     */
+    private static EditorDocument createDocument() {
+        return new EditorDocument();
+    }
+    
     private void initializeSyntaxHighlighting() {
         // Initialize syntax colors
         syntaxColors = new HashMap<>();
@@ -166,56 +267,11 @@ public class TextEditor extends JFrame {
         syntaxColors.put("number", new Color(0, 0, 192)); // Navy blue
         syntaxColors.put("operator", new Color(0, 0, 0)); // Black
         
-        // Initialize Java keywords
-        javaKeywords = new HashSet<>();
-        String[] javaKeywordArray = {
-            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
-            "const", "continue", "default", "do", "double", "else", "enum", "extends", "final",
-            "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
-            "interface", "long", "native", "new", "package", "private", "protected", "public",
-            "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
-            "throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false", "null"
-        };
-        javaKeywords.addAll(Arrays.asList(javaKeywordArray));
-        
-        // Initialize Python keywords
-        pythonKeywords = new HashSet<>();
-        String[] pythonKeywordArray = {
-            "False", "None", "True", "and", "as", "assert", "break", "class", "continue", "def",
-            "del", "elif", "else", "except", "finally", "for", "from", "global", "if", "import",
-            "in", "is", "lambda", "nonlocal", "not", "or", "pass", "raise", "return", "try",
-            "while", "with", "yield", "async", "await"
-        };
-        pythonKeywords.addAll(Arrays.asList(pythonKeywordArray));
-        
-        // Initialize JavaScript keywords
-        jsKeywords = new HashSet<>();
-        String[] jsKeywordArray = {
-            "abstract", "arguments", "await", "boolean", "break", "byte", "case", "catch", "char",
-            "class", "const", "continue", "debugger", "default", "delete", "do", "double", "else",
-            "enum", "eval", "export", "extends", "false", "final", "finally", "float", "for",
-            "function", "goto", "if", "implements", "import", "in", "instanceof", "int", "interface",
-            "let", "long", "native", "new", "null", "package", "private", "protected", "public",
-            "return", "short", "static", "super", "switch", "synchronized", "this", "throw", "throws",
-            "transient", "true", "try", "typeof", "var", "void", "volatile", "while", "with", "yield"
-        };
-        jsKeywords.addAll(Arrays.asList(jsKeywordArray));
-        
-        // Initialize C++ keywords
-        cppKeywords = new HashSet<>();
-        String[] cppKeywordArray = {
-            "alignas", "alignof", "and", "and_eq", "asm", "auto", "bitand", "bitor", "bool", "break",
-            "case", "catch", "char", "char16_t", "char32_t", "class", "compl", "const", "constexpr",
-            "const_cast", "continue", "decltype", "default", "delete", "do", "double", "dynamic_cast",
-            "else", "enum", "explicit", "export", "extern", "false", "float", "for", "friend", "goto",
-            "if", "inline", "int", "long", "mutable", "namespace", "new", "noexcept", "not", "not_eq",
-            "nullptr", "operator", "or", "or_eq", "private", "protected", "public", "register",
-            "reinterpret_cast", "return", "short", "signed", "sizeof", "static", "static_assert",
-            "static_cast", "struct", "switch", "template", "this", "thread_local", "throw", "true",
-            "try", "typedef", "typeid", "typename", "union", "unsigned", "using", "virtual", "void",
-            "volatile", "wchar_t", "while", "xor", "xor_eq"
-        };
-        cppKeywords.addAll(Arrays.asList(cppKeywordArray));
+        // Single-pass lexers, one per supported language
+        javaLexer = new JavaLexer();
+        pythonLexer = new PythonLexer();
+        jsLexer = new JavaScriptLexer();
+        cppLexer = new CppLexer();
     }
     
     private void setupMenuBar() {
@@ -280,10 +336,30 @@ public class TextEditor extends JFrame {
         searchItem = new JMenuItem("Find...", KeyEvent.VK_F);
         searchItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, ActionEvent.CTRL_MASK));
         
+        advancedFindItem = new JMenuItem("Advanced Find...", KeyEvent.VK_A);
+        advancedFindItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, ActionEvent.CTRL_MASK | ActionEvent.SHIFT_MASK));
+        
+        findInFilesItem = new JMenuItem("Find in Files...", KeyEvent.VK_I);
+        findInFilesItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, ActionEvent.CTRL_MASK | ActionEvent.SHIFT_MASK));
+        
         timeDateItem = new JMenuItem("Time/Date", KeyEvent.VK_D);
         timeDateItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0));
         
+        findNextItem = new JMenuItem("Find Next", KeyEvent.VK_N);
+        findNextItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        
+        findPreviousItem = new JMenuItem("Find Previous", KeyEvent.VK_P);
+        findPreviousItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, ActionEvent.SHIFT_MASK));
+        
+        goToLineItem = new JMenuItem("Go to Line...", KeyEvent.VK_G);
+        goToLineItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, ActionEvent.CTRL_MASK));
+        
         searchMenu.add(searchItem);
+        searchMenu.add(advancedFindItem);
+        searchMenu.add(findInFilesItem);
+        searchMenu.add(findNextItem);
+        searchMenu.add(findPreviousItem);
+        searchMenu.add(goToLineItem);
         searchMenu.addSeparator();
         searchMenu.add(timeDateItem);
         
@@ -320,28 +396,57 @@ public class TextEditor extends JFrame {
     private void setupLayout() {
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.add(statusLabel, BorderLayout.WEST);
-        statusPanel.add(dateTimeLabel, BorderLayout.EAST);
+        statusPanel.add(loadPanel, BorderLayout.CENTER);
+        JPanel positionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 12, 0));
+        positionPanel.setOpaque(false);
+        positionPanel.add(statisticsLabel);
+        positionPanel.add(caretLabel);
+        positionPanel.add(dateTimeLabel);
+        statusPanel.add(positionPanel, BorderLayout.EAST);
         statusPanel.setBorder(BorderFactory.createLoweredBevelBorder());
         
-        add(scrollPane, BorderLayout.CENTER);
+        editorPanel = new JPanel(new BorderLayout());
+        editorPanel.add(searchBar, BorderLayout.NORTH);
+        editorPanel.add(scrollPane, BorderLayout.CENTER);
+        editorPanel.add(searchResults, BorderLayout.SOUTH);
+        
+        add(editorPanel, BorderLayout.CENTER);
         add(statusPanel, BorderLayout.SOUTH);
     }
     
     private void setupEventHandlers() {
-        // Document listener for modification tracking
-        textPane.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+        // Document listener for modification tracking, moved along by installDocument
+        documentListener = new javax.swing.event.DocumentListener() {
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                if (loading) {
+                    return;
+                }
+                editCount++;
+                journalEdit(e);
                 setModified(true);
-                // Apply syntax highlighting after text changes
-                SwingUtilities.invokeLater(() -> applySyntaxHighlighting());
+                // Re-highlight only the lines touched by the edit
+                syntaxHighlighter.documentChanged(e);
             }
             public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                if (loading) {
+                    return;
+                }
+                editCount++;
+                journalEdit(e);
                 setModified(true);
-                // Apply syntax highlighting after text changes
-                SwingUtilities.invokeLater(() -> applySyntaxHighlighting());
+                // Re-highlight only the lines touched by the edit
+                syntaxHighlighter.documentChanged(e);
             }
             public void changedUpdate(javax.swing.event.DocumentEvent e) {
-                setModified(true);
+                // Attribute-only changes come from highlighting, not from the user
+            }
+        };
+        textPane.getDocument().addDocumentListener(documentListener);
+        textPane.addCaretListener(e -> scheduleStatusUpdate());
+        textPane.addPropertyChangeListener("document", e -> scheduleStatusUpdate());
+        cancelLoadButton.addActionListener(e -> {
+            if (progressWorker != null) {
+                progressWorker.cancel(true);
             }
         });
         
@@ -355,12 +460,29 @@ public class TextEditor extends JFrame {
         
         // Edit menu handlers
         cutItem.addActionListener(e -> textPane.cut());
-        copyItem.addActionListener(e -> textPane.copy());
+        copyItem.addActionListener(e -> {
+            if (viewer != null) {
+                viewer.copySelection();
+            } else {
+                textPane.copy();
+            }
+        });
         pasteItem.addActionListener(e -> textPane.paste());
         selectAllItem.addActionListener(e -> textPane.selectAll());
         
         // Search menu handlers
-        searchItem.addActionListener(e -> showSearchDialog());
+        searchItem.addActionListener(e -> {
+            if (viewer != null) {
+                findInViewer(true);
+            } else {
+                searchBar.open();
+            }
+        });
+        advancedFindItem.addActionListener(e -> showSearchDialog());
+        findInFilesItem.addActionListener(e -> findInFiles());
+        findNextItem.addActionListener(e -> repeatSearch(true));
+        findPreviousItem.addActionListener(e -> repeatSearch(false));
+        goToLineItem.addActionListener(e -> goToLine());
         timeDateItem.addActionListener(e -> insertTimeDate());
         
         // Advanced menu handlers
@@ -374,10 +496,15 @@ public class TextEditor extends JFrame {
     
     private void createNewDocument() {
         if (confirmSave()) {
+            cancelLoad();
+            closeViewer();
             textPane.setText("");
+            discardJournal();
             currentFile = null;
+            fileOrigin = null;
             isModified = false;
             updateTitle();
+            applySyntaxHighlighting();
             statusLabel.setText("New document created");
         }
     }
@@ -386,69 +513,599 @@ public class TextEditor extends JFrame {
         if (confirmSave()) {
             if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 File file = fileChooser.getSelectedFile();
-                if (readFile(file)) {
+                cancelLoad();
+                if (file.length() > getViewerThreshold()) {
+                    openInViewer(file);
+                    return;
+                }
+                readFile(file, () -> {
                     currentFile = file;
                     isModified = false;
                     updateTitle();
                     statusLabel.setText("File opened: " + file.getName());
-                }
+                });
             }
         }
     }
     
-    private boolean readFile(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            StringBuilder content = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
+    /**
+     * Memory-maps the file and decodes it on a worker thread. The text goes
+     * into a new document that is shown straight away, so the first screen
+     * appears while the rest streams in. The semaphore keeps the reader from
+     * running far ahead of the EDT, which bounds heap use to the document
+     * plus a few chunks. If the load is cancelled or fails, the previous
+     * document comes back untouched.
+     *
+     * @param onLoaded run on the EDT once the whole file is in
+     */
+    private void readFile(File file, Runnable onLoaded) {
+        EditorDocument previous = (EditorDocument) textPane.getDocument();
+        FileOrigin previousOrigin = fileOrigin;
+        EditorDocument document = createDocument();
+        Charset charset = getFileCharset();
+        FileOrigin.Builder layout = new FileOrigin.Builder(charset);
+        Semaphore pending = new Semaphore(MAX_PENDING_CHUNKS);
+        long fileSize = Math.max(1, file.length());
+        
+        loading = true;
+        fileOrigin = null;
+        textPane.setEditable(false);
+        installDocument(document);
+        // Counted once in parallel when complete, rather than chunk by chunk
+        statistics.setSuspended(true);
+        
+        SwingWorker<Void, String> worker = new SwingWorker<Void, String>() {
+            private long charsRead;
+            
+            @Override
+            protected Void doInBackground() throws Exception {
+                MappedTextReader.read(file.toPath(), charset, (chars, length) -> {
+                    try {
+                        pending.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("File loading interrupted");
+                    }
+                    publish(new String(chars, 0, length));
+                }, layout);
+                return null;
             }
-            textPane.setText(content.toString());
-            // Apply syntax highlighting based on file extension
-            applySyntaxHighlighting();
-            return true;
+            
+            @Override
+            protected void process(List<String> chunks) {
+                if (isCancelled()) {
+                    return;
+                }
+                boolean first = document.getLength() == 0;
+                for (String chunk : chunks) {
+                    try {
+                        document.insertString(document.getLength(), chunk, null);
+                    } catch (BadLocationException e) {
+                        // Appending at the current length cannot fail
+                    }
+                    charsRead += chunk.length();
+                    pending.release();
+                }
+                if (first) {
+                    textPane.setCaretPosition(0);
+                }
+                setProgress((int) Math.min(100, charsRead * 100 / fileSize));
+            }
+            
+            @Override
+            protected void done() {
+                loading = false;
+                setEditingEnabled(viewer == null);
+                statistics.setSuspended(false);
+                try {
+                    get();
+                    fileOrigin = layout.build(file.toPath(), document.snapshot());
+                    textPane.setCaretPosition(0);
+                    // Apply syntax highlighting based on file extension
+                    applySyntaxHighlighting(file);
+                    onLoaded.run();
+                } catch (CancellationException e) {
+                    restore();
+                    statusLabel.setText("Opening " + file.getName() + " cancelled");
+                } catch (Exception e) {
+                    restore();
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Error reading file");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error reading file: " + cause.getMessage(), 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+            
+            private void restore() {
+                installDocument(previous);
+                fileOrigin = previousOrigin;
+                applySyntaxHighlighting();
+            }
+        };
+        startLoad(worker, "Loading " + file.getName());
+    }
+    
+    /** Starts a background open, shown in the status bar; see {@link #startBackground}. */
+    private void startLoad(SwingWorker<?, ?> worker, String message) {
+        loadWorker = worker;
+        startBackground(worker, message);
+    }
+    
+    /**
+     * Shows a background task in the status bar and starts it. The worker
+     * reports through {@link SwingWorker#setProgress}; until it does the bar
+     * is indeterminate. The Cancel button interrupts it.
+     */
+    private void startBackground(SwingWorker<?, ?> worker, String message) {
+        progressWorker = worker;
+        loadProgress.setIndeterminate(true);
+        loadProgress.setValue(0);
+        loadPanel.setVisible(true);
+        statusLabel.setText(message + "...");
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && !worker.isDone()) {
+                int percent = (Integer) e.getNewValue();
+                loadProgress.setIndeterminate(false);
+                loadProgress.setValue(percent);
+                statusLabel.setText(message + "... " + percent + "%");
+            } else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+                if (loadWorker == worker) {
+                    loadWorker = null;
+                }
+                if (progressWorker == worker) {
+                    progressWorker = null;
+                    loadPanel.setVisible(false);
+                }
+            }
+        });
+        worker.execute();
+    }
+    
+    /** Cancels the open running in the background, if any; its document is discarded. */
+    private void cancelLoad() {
+        SwingWorker<?, ?> worker = loadWorker;
+        if (worker != null) {
+            worker.cancel(true);
+        }
+    }
+    
+    /** Size above which files open in the read-only viewer, from "file.viewer_threshold_mb". */
+    private long getViewerThreshold() {
+        try {
+            return Long.parseLong(config.getProperty("file.viewer_threshold_mb", "512").trim()) << 20;
+        } catch (NumberFormatException e) {
+            return 512L << 20;
+        }
+    }
+    
+    /**
+     * Shows a file too large to edit in the read-only {@link HugeFileViewer}
+     * and indexes its lines on a worker thread. The first lines can be read
+     * as soon as they are indexed, and if indexing is cancelled what was
+     * indexed stays viewable.
+     */
+    private void openInViewer(File file) {
+        openInViewer(file, -1);
+    }
+    
+    /**
+     * Opens a file in the viewer as {@link #openInViewer(File)} does and
+     * selects {@code line} once it has been indexed, if it is not negative.
+     */
+    private void openInViewer(File file, long line) {
+        FileLineIndex index;
+        try {
+            index = new FileLineIndex(file.toPath(), getFileCharset());
         } catch (IOException e) {
+            statusLabel.setText("Error reading file");
             JOptionPane.showMessageDialog(this, "Error reading file: " + e.getMessage(), 
                                         "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
+            return;
+        }
+        installDocument(createDocument());
+        currentFile = null;
+        fileOrigin = null;
+        isModified = false;
+        applySyntaxHighlighting();
+        HugeFileViewer shown = new HugeFileViewer(index, textPane.getFont(), caretLabel::setText);
+        caretLabel.setText(" ");
+        statisticsLabel.setText(String.format("%,d bytes", index.size()));
+        viewer = shown;
+        setEditingEnabled(false);
+        searchBar.close();
+        editorPanel.remove(scrollPane);
+        editorPanel.add(shown, BorderLayout.CENTER);
+        editorPanel.revalidate();
+        editorPanel.repaint();
+        updateTitle();
+        
+        indexWorker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                index.build(this::setProgress);
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                if (viewer != shown) {
+                    return;
+                }
+                indexWorker = null;
+                shown.indexChanged();
+                if (line >= 0) {
+                    shown.goToLine(line);
+                }
+                try {
+                    get();
+                    statusLabel.setText(String.format("%s opened read-only: %,d lines", 
+                                                      file.getName(), index.lineCount()));
+                } catch (CancellationException e) {
+                    statusLabel.setText(String.format("Indexing cancelled; showing the first %,d lines", 
+                                                      index.lineCount()));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Error reading file");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error reading file: " + cause.getMessage(), 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        indexWorker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && viewer == shown) {
+                shown.indexChanged();
+            }
+        });
+        startLoad(indexWorker, "Indexing " + file.getName());
+        shown.requestFocusInWindow();
+    }
+    
+    /** Puts the text pane back in place of the viewer, if one is showing. */
+    private void closeViewer() {
+        HugeFileViewer closing = viewer;
+        if (closing == null) {
+            return;
+        }
+        viewer = null;
+        viewerQuery = null;
+        if (indexWorker != null) {
+            indexWorker.cancel(true);
+            indexWorker = null;
+        }
+        if (viewerSearch != null) {
+            viewerSearch.cancel(true);
+            viewerSearch = null;
+        }
+        try {
+            closing.getIndex().close();
+        } catch (IOException e) {
+            // Nothing more to read from it
+        }
+        setEditingEnabled(!loading);
+        editorPanel.remove(closing);
+        editorPanel.add(scrollPane, BorderLayout.CENTER);
+        editorPanel.revalidate();
+        editorPanel.repaint();
+        scheduleStatusUpdate();
+    }
+    
+    /**
+     * Lets the text pane take edits, or stops it. It stays behind the
+     * viewer, so typing or pasting there would change a document nobody
+     * can see.
+     */
+    private void setEditingEnabled(boolean enabled) {
+        textPane.setEditable(enabled);
+        cutItem.setEnabled(enabled);
+        pasteItem.setEnabled(enabled);
+    }
+    
+    /**
+     * Shows the caret's line and column and the document statistics once
+     * the current event is over. A caret moved by an edit is reported
+     * before every document listener has seen that edit, so reading the
+     * line index straight away could find it one edit behind.
+     */
+    private void scheduleStatusUpdate() {
+        if (statusUpdatePending) {
+            return;
+        }
+        statusUpdatePending = true;
+        SwingUtilities.invokeLater(() -> {
+            statusUpdatePending = false;
+            if (viewer == null) {
+                int caret = Math.min(textPane.getCaretPosition(), textPane.getDocument().getLength());
+                int line = lineIndex.lineOf(caret);
+                caretLabel.setText(String.format("Ln %,d, Col %,d", line + 1, caret - lineIndex.lineStart(line) + 1));
+                statisticsLabel.setText(describeStatistics());
+            }
+        });
+    }
+    
+    /** Words, characters and lines of the document, and of the selection if there is one. */
+    private String describeStatistics() {
+        if (!statistics.isCounted()) {
+            return "Counting words...";
+        }
+        String counts = String.format("%,d words, %,d chars, %,d lines", 
+                                      statistics.words(), statistics.characters(), statistics.lines());
+        int start = textPane.getSelectionStart();
+        int end = textPane.getSelectionEnd();
+        if (start == end || !(textPane.getDocument() instanceof EditorDocument)) {
+            return counts;
+        }
+        long words = start == 0 && end == statistics.characters() ? statistics.words()
+                : statistics.selectionWords(start, end);
+        if (words < 0) {
+            return String.format("%s (counting words, %,d chars selected)", counts, end - start);
+        }
+        return String.format("%s (%,d words, %,d chars selected)", counts, words, end - start);
+    }
+    
+    /**
+     * Finds the next occurrence of a literal string in the viewer's file,
+     * from the line after the selected one, on a worker thread; see
+     * {@link FileSearch#next}. The viewer then selects the line.
+     *
+     * @param ask whether to ask for the string, rather than repeat the last one
+     */
+    private void findInViewer(boolean ask) {
+        HugeFileViewer target = viewer;
+        if (ask) {
+            JTextField queryField = new JTextField(viewerQuery == null ? "" : viewerQuery, 24);
+            JCheckBox matchCaseBox = new JCheckBox("Match case", viewerMatchCase);
+            JPanel panel = new JPanel(new BorderLayout(0, 4));
+            panel.add(queryField, BorderLayout.CENTER);
+            panel.add(matchCaseBox, BorderLayout.SOUTH);
+            int result = JOptionPane.showConfirmDialog(this, panel, "Find", JOptionPane.OK_CANCEL_OPTION,
+                                                       JOptionPane.PLAIN_MESSAGE);
+            if (result != JOptionPane.OK_OPTION || queryField.getText().isEmpty() || viewer != target) {
+                return;
+            }
+            viewerQuery = queryField.getText();
+            viewerMatchCase = matchCaseBox.isSelected();
+        }
+        if (viewerSearch != null) {
+            viewerSearch.cancel(true);
+        }
+        FileLineIndex index = target.getIndex();
+        long fromLine = target.getSelectedLine() < 0 ? target.getTopLine() : target.getSelectedLine() + 1;
+        long from;
+        try {
+            from = fromLine < index.lineCount() ? index.lineStart(fromLine) : index.size();
+        } catch (IOException e) {
+            statusLabel.setText("Error reading file: " + e.getMessage());
+            return;
+        }
+        FileSearch search = new FileSearch(index.getPath(), viewerQuery, viewerMatchCase, index.getCharset());
+        String query = viewerQuery;
+        viewerSearch = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                try (FileChannel channel = FileChannel.open(
+                        index.getPath(), StandardOpenOption.READ)) {
+                    return search.next(channel, from);
+                }
+            }
+            
+            @Override
+            protected void done() {
+                if (viewer != target || viewerSearch != this) {
+                    return;
+                }
+                viewerSearch = null;
+                try {
+                    long found = get();
+                    if (found < 0) {
+                        statusLabel.setText("\"" + query + "\" not found after line " + fromLine);
+                    } else if (found >= index.indexedBytes()) {
+                        statusLabel.setText("\"" + query + "\" found past the lines indexed so far");
+                    } else {
+                        target.goToLine(index.lineOf(found));
+                    }
+                } catch (CancellationException e) {
+                    statusLabel.setText("Search cancelled");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Search failed: " + cause.getMessage());
+                }
+            }
+        };
+        statusLabel.setText("Searching for \"" + query + "\"...");
+        viewerSearch.execute();
+    }
+    
+    /** Asks for a line number and moves there, in the editor or the viewer. */
+    private void goToLine() {
+        long lines = viewer != null ? viewer.getIndex().lineCount() : lineIndex.lineCount();
+        String answer = JOptionPane.showInputDialog(this, String.format("Line number (1 - %,d):", lines), 
+                                                    "Go to Line", JOptionPane.PLAIN_MESSAGE);
+        if (answer == null) {
+            return;
+        }
+        long line;
+        try {
+            line = Long.parseLong(answer.trim().replace(",", "")) - 1;
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Not a line number: " + answer);
+            return;
+        }
+        if (viewer != null) {
+            viewer.goToLine(line);
+        } else {
+            int index = (int) Math.max(0, Math.min(line, lineIndex.lineCount() - 1));
+            textPane.setCaretPosition(lineIndex.lineStart(index));
+            textPane.requestFocusInWindow();
+        }
+    }
+    
+    /**
+     * Shows a document in the text pane, moving the modification listener
+     * and the syntax highlighter over from the one it replaces. A file in
+     * the read-only viewer is closed.
+     */
+    private void installDocument(EditorDocument document) {
+        closeViewer();
+        discardJournal();
+        textPane.getDocument().removeDocumentListener(documentListener);
+        textPane.setDocument(document);
+        document.addDocumentListener(documentListener);
+        styledDocument = document;
+        syntaxHighlighter.setDocument(document);
+    }
+    
+    private Charset getFileCharset() {
+        try {
+            return Charset.forName(config.getProperty("file.encoding", "UTF-8"));
+        } catch (IllegalArgumentException e) {
+            return Charset.forName("UTF-8");
         }
     }
     
     private void saveFile() {
+        if (viewer != null) {
+            statusLabel.setText(viewer.getIndex().getPath().getFileName() + " is open read-only");
+            return;
+        }
         if (currentFile == null) {
             saveAsFile();
         } else {
-            if (writeFile(currentFile)) {
-                isModified = false;
-                updateTitle();
-                statusLabel.setText("File saved: " + currentFile.getName());
-            }
+            writeFile(currentFile, null);
         }
     }
     
     private void saveAsFile() {
+        if (viewer != null) {
+            statusLabel.setText(viewer.getIndex().getPath().getFileName() + " is open read-only");
+            return;
+        }
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
             if (!file.getName().contains(".")) {
                 file = new File(file.getAbsolutePath() + ".txt");
             }
-            if (writeFile(file)) {
-                currentFile = file;
-                isModified = false;
+            File target = file;
+            writeFile(target, () -> {
+                currentFile = target;
                 updateTitle();
-                statusLabel.setText("File saved: " + file.getName());
-            }
+                applySyntaxHighlighting();
+            });
         }
     }
     
-    private boolean writeFile(File file) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            writer.write(textPane.getText());
-            return true;
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error saving file: " + e.getMessage(), 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
+    /**
+     * Saves a snapshot of the document on a background thread, so editing
+     * can go on while a large file is written. The file is replaced
+     * atomically, and text unchanged since the file was opened or last saved
+     * is copied from it rather than encoded again; see {@link AtomicTextWriter}.
+     * Files named .rtf or .odt keep their formatting: the character runs are
+     * recorded here and the file is streamed out by {@link RtfWriter} or
+     * {@link OdtWriter}.
+     *
+     * @param onSaved run on the EDT after a successful save, may be null
+     */
+    private void writeFile(File file, Runnable onSaved) {
+        if (saveWorker != null) {
+            statusLabel.setText("A save is already in progress");
+            return;
+        }
+        Document document = textPane.getDocument();
+        PieceTableContent.Snapshot snapshot = ((EditorDocument) document).snapshot();
+        long savedEdits = editCount;
+        editsDuringSave.clear();
+        Charset charset = getFileCharset();
+        AtomicTextWriter.Sync sync = AtomicTextWriter.Sync.fromConfig(config.getProperty("file.fsync"));
+        FileOrigin source = fileOrigin;
+        int total = Math.max(1, snapshot.length());
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        boolean rtf = name.endsWith(".rtf");
+        StyledSnapshot styled = rtf || name.endsWith(".odt")
+                ? StyledSnapshot.capture(snapshot, (EditorDocument) document) : null;
+        
+        saveWorker = new SwingWorker<FileOrigin, Long>() {
+            @Override
+            protected FileOrigin doInBackground() throws IOException {
+                if (styled != null) {
+                    AtomicTextWriter.replace(file.toPath(), sync, channel -> {
+                        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel),
+                                                                    AtomicTextWriter.BUFFER_BYTES);
+                        if (rtf) {
+                            RtfWriter.write(styled, out, this::publish);
+                        } else {
+                            OdtWriter.write(styled, out, this::publish);
+                        }
+                        out.flush();
+                    });
+                    // Not a plain text file, so nothing can be copied from it next time
+                    return null;
+                }
+                // Unchanged ranges are copied from the file the text came from
+                FileOrigin.Builder layout = new FileOrigin.Builder(charset);
+                AtomicTextWriter.write(snapshot, file.toPath(), charset, sync, this::publish, source, layout);
+                return layout.build(file.toPath(), snapshot);
+            }
+            
+            @Override
+            protected void process(List<Long> written) {
+                long chars = written.get(written.size() - 1);
+                statusLabel.setText("Saving " + file.getName() + "... " + chars * 100 / total + "%");
+            }
+            
+            @Override
+            protected void done() {
+                saveWorker = null;
+                try {
+                    FileOrigin saved = get();
+                    if (textPane.getDocument() == document) {
+                        fileOrigin = saved;
+                    }
+                    if (editCount == savedEdits) {
+                        setModified(false);
+                    }
+                    if (onSaved != null) {
+                        onSaved.run();
+                    }
+                    if (textPane.getDocument() == document) {
+                        // The saved file is the new base; edits made during the save start the next journal
+                        discardJournal();
+                        if (editCount != savedEdits) {
+                            // Only a plain text file can be replayed over, so RTF and ODT need a snapshot
+                            startJournal((EditorDocument) document, saved == null);
+                            if (journal != null && saved != null) {
+                                for (Consumer<EditJournal> edit : editsDuringSave) {
+                                    edit.accept(journal);
+                                }
+                            }
+                        }
+                    }
+                    statusLabel.setText("File saved: " + file.getName());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Error saving file");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error saving file: " + cause.getMessage(), 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    editsDuringSave.clear();
+                    if (saveLoop != null) {
+                        saveLoop.exit();
+                    }
+                }
+            }
+        };
+        statusLabel.setText("Saving " + file.getName() + "...");
+        saveWorker.execute();
+    }
+    
+    /** Waits for a running save while still dispatching events, so the window keeps painting. */
+    private void awaitSave() {
+        if (saveWorker == null) {
+            return;
+        }
+        saveLoop = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+        try {
+            saveLoop.enter();
+        } finally {
+            saveLoop = null;
         }
     }
     
@@ -464,6 +1121,8 @@ public class TextEditor extends JFrame {
     
     private void exitApplication() {
         if (confirmSave()) {
+            discardJournal();
+            EditJournal.drain();
             System.exit(0);
         }
     }
@@ -476,6 +1135,7 @@ public class TextEditor extends JFrame {
             
             if (result == JOptionPane.YES_OPTION) {
                 saveFile();
+                awaitSave();
                 return !isModified;
             } else if (result == JOptionPane.CANCEL_OPTION) {
                 return false;
@@ -485,28 +1145,524 @@ public class TextEditor extends JFrame {
     }
     
     private void showSearchDialog() {
-        String searchText = JOptionPane.showInputDialog(this, "Find:", "Search", 
-                                                       JOptionPane.PLAIN_MESSAGE);
-        if (searchText != null && !searchText.isEmpty()) {
-            searchText(searchText);
+        if (findDialog == null) {
+            findDialog = new FindDialog(this, textPane, statusLabel::setText, this::findAllRegex);
+        }
+        findDialog.open();
+    }
+    
+    /**
+     * Steps through the hits of the search bar while it is open, otherwise
+     * repeats the last search of the dialog, or opens the bar if nothing
+     * was searched yet.
+     */
+    private void repeatSearch(boolean forward) {
+        if (viewer != null) {
+            if (!forward) {
+                statusLabel.setText("The read-only view searches forward only");
+            } else {
+                findInViewer(viewerQuery == null);
+            }
+        } else if (searchBar.isSearching()) {
+            if (forward) {
+                searchBar.selectNext();
+            } else {
+                searchBar.selectPrevious();
+            }
+        } else if (findDialog == null || !findDialog.hasQuery()) {
+            searchBar.open();
+        } else if (forward) {
+            findDialog.findNext();
+        } else {
+            findDialog.findPrevious();
+        }
+    }
+    
+    /**
+     * Lists every match of a regular expression in the results panel. The
+     * search runs over a snapshot on all cores, so the editor stays usable,
+     * and hits show up as soon as the text before them has been searched;
+     * see {@link ParallelRegexSearch}.
+     */
+    private void findAllRegex(Pattern pattern) {
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+        }
+        Document document = textPane.getDocument();
+        PieceTableContent.Snapshot snapshot = ((EditorDocument) document).snapshot();
+        DocumentHits hits = new DocumentHits(document);
+        String title = "/" + pattern.pattern() + "/";
+        
+        SwingWorker<Integer, int[]> worker = new SwingWorker<Integer, int[]>() {
+            @Override
+            protected Integer doInBackground() throws InterruptedException {
+                AtomicInteger listed = new AtomicInteger();
+                return new ParallelRegexSearch(snapshot, pattern).run(ForkJoinPool.commonPool(), (starts, ends, count) -> {
+                    int room = Math.min(count, MAX_LISTED_HITS - listed.get());
+                    // Start and end offsets travel interleaved in one array
+                    int[] batch = new int[room * 2];
+                    for (int i = 0; i < room; i++) {
+                        batch[2 * i] = starts[i];
+                        batch[2 * i + 1] = ends[i];
+                    }
+                    publish(batch);
+                    return listed.addAndGet(room) < MAX_LISTED_HITS;
+                });
+            }
+            
+            @Override
+            protected void process(List<int[]> batches) {
+                if (isCancelled()) {
+                    return;
+                }
+                for (int[] batch : batches) {
+                    hits.add(batch);
+                }
+                searchResults.update(title + ": " + hits.size() + " matches, searching...");
+            }
+            
+            @Override
+            protected void done() {
+                if (searchWorker == this) {
+                    searchWorker = null;
+                }
+                try {
+                    get();
+                    String more = hits.size() >= MAX_LISTED_HITS ? " (stopped at " + MAX_LISTED_HITS + ")" : "";
+                    searchResults.finished(title + ": " + hits.size() + " matches" + more);
+                    statusLabel.setText(hits.size() + " matches for " + title);
+                } catch (CancellationException e) {
+                    searchResults.finished(title + ": " + hits.size() + " matches, stopped");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    searchResults.finished(title + ": search failed");
+                    statusLabel.setText("Search failed: " + cause);
+                }
+            }
+        };
+        searchWorker = worker;
+        searchResults.start(title + ": searching...", hits, () -> worker.cancel(true));
+        statusLabel.setText("Searching for " + title + "...");
+        worker.execute();
+    }
+    
+    /** Hits in the open document, listed by line number and line text. */
+    private final class DocumentHits implements SearchResultsPanel.Source {
+        private final Document document;
+        private int[] offsets = new int[64];
+        private int size;
+        
+        DocumentHits(Document document) {
+            this.document = document;
+        }
+        
+        /** Appends hits given as interleaved start and end offsets. */
+        void add(int[] batch) {
+            if (2 * size + batch.length > offsets.length) {
+                offsets = java.util.Arrays.copyOf(offsets, Math.max(offsets.length * 2, 2 * size + batch.length));
+            }
+            System.arraycopy(batch, 0, offsets, 2 * size, batch.length);
+            size += batch.length / 2;
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public String describe(int index) {
+            int start = Math.min(offsets[2 * index], document.getLength());
+            Element root = document.getDefaultRootElement();
+            int lineIndex = root.getElementIndex(start);
+            Element line = root.getElement(lineIndex);
+            int end = Math.min(line.getEndOffset() - 1, line.getStartOffset() + 200);
+            try {
+                return (lineIndex + 1) + ": " + document.getText(line.getStartOffset(), end - line.getStartOffset());
+            } catch (BadLocationException e) {
+                return (lineIndex + 1) + ":";
+            }
+        }
+        
+        @Override
+        public void open(int index) {
+            if (textPane.getDocument() != document) {
+                statusLabel.setText("The document has changed since the search");
+                return;
+            }
+            int length = document.getLength();
+            textPane.select(Math.min(offsets[2 * index], length), Math.min(offsets[2 * index + 1], length));
+            textPane.requestFocusInWindow();
         }
     }
     
-    private void searchText(String searchText) {
-        String content = textPane.getText();
-        int index = content.indexOf(searchText);
-        if (index >= 0) {
-            textPane.setSelectionStart(index);
-            textPane.setSelectionEnd(index + searchText.length());
+    /**
+     * Asks for a string and a folder, then lists every occurrence in the
+     * text files below it; see {@link FileSearch}. Hits stream into the
+     * results panel as each file is scanned, and opening one loads its file.
+     */
+    private void findInFiles() {
+        String selected = textPane.getSelectedText();
+        JTextField queryField = new JTextField(selected != null && selected.indexOf('\n') < 0 ? selected : "", 24);
+        File folder = searchFolder != null ? searchFolder
+                : currentFile != null ? currentFile.getAbsoluteFile().getParentFile()
+                : new File(System.getProperty("user.dir"));
+        JTextField folderField = new JTextField(folder.getPath(), 24);
+        JButton browseButton = new JButton("Browse...");
+        JCheckBox matchCaseBox = new JCheckBox("Match case");
+        browseButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser(folderField.getText());
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (chooser.showDialog(this, "Select") == JFileChooser.APPROVE_OPTION) {
+                folderField.setText(chooser.getSelectedFile().getPath());
+            }
+        });
+        
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(2, 2, 2, 2);
+        panel.add(new JLabel("Find:"), c);
+        c.gridx = 1;
+        panel.add(queryField, c);
+        c.gridx = 0;
+        c.gridy = 1;
+        panel.add(new JLabel("In folder:"), c);
+        c.gridx = 1;
+        panel.add(folderField, c);
+        c.gridx = 2;
+        panel.add(browseButton, c);
+        c.gridx = 1;
+        c.gridy = 2;
+        panel.add(matchCaseBox, c);
+        
+        if (JOptionPane.showConfirmDialog(this, panel, "Find in Files", JOptionPane.OK_CANCEL_OPTION,
+                                          JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        String query = queryField.getText();
+        File root = new File(folderField.getText());
+        if (query.isEmpty()) {
+            return;
+        }
+        if (!root.isDirectory()) {
+            JOptionPane.showMessageDialog(this, "Not a folder: " + root, "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        searchFolder = root;
+        
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+        }
+        FileSearch search = new FileSearch(root.toPath(), query, matchCaseBox.isSelected(), getFileCharset());
+        FileHits hits = new FileHits(root.toPath(), query.length());
+        String title = "\"" + query + "\" in " + root.getPath();
+        int threads = Runtime.getRuntime().availableProcessors();
+        
+        SwingWorker<Integer, FileSearch.Hit> worker = new SwingWorker<Integer, FileSearch.Hit>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                AtomicInteger listed = new AtomicInteger();
+                try {
+                    return search.run(pool, threads, (file, found) -> {
+                        int room = Math.max(0, Math.min(found.size(), MAX_LISTED_HITS - listed.get()));
+                        publish(found.subList(0, room).toArray(new FileSearch.Hit[0]));
+                        return listed.addAndGet(room) < MAX_LISTED_HITS;
+                    });
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+            
+            @Override
+            protected void process(List<FileSearch.Hit> found) {
+                if (isCancelled()) {
+                    return;
+                }
+                hits.addAll(found);
+                searchResults.update(title + ": " + hits.describeCount() + ", searching...");
+            }
+            
+            @Override
+            protected void done() {
+                if (searchWorker == this) {
+                    searchWorker = null;
+                }
+                try {
+                    int scanned = get();
+                    String more = hits.size() >= MAX_LISTED_HITS ? " (stopped at " + MAX_LISTED_HITS + ")" : "";
+                    searchResults.finished(title + ": " + hits.describeCount() + more + ", " + scanned + " files searched");
+                    statusLabel.setText(hits.describeCount() + " for \"" + query + "\"");
+                } catch (CancellationException e) {
+                    searchResults.finished(title + ": " + hits.describeCount() + ", stopped");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    searchResults.finished(title + ": search failed");
+                    statusLabel.setText("Search failed: " + cause.getMessage());
+                }
+            }
+        };
+        searchWorker = worker;
+        searchResults.start(title + ": searching...", hits, () -> {
+            search.cancel();
+            worker.cancel(true);
+        });
+        statusLabel.setText("Searching for \"" + query + "\" in " + root.getName() + "...");
+        worker.execute();
+    }
+    
+    /** Hits from find in files, listed by path, line number and line text. */
+    private final class FileHits implements SearchResultsPanel.Source {
+        private final Path root;
+        private final int length;
+        private final List<FileSearch.Hit> hits = new java.util.ArrayList<>();
+        private final java.util.Set<Path> files = new java.util.HashSet<>();
+        
+        FileHits(Path root, int length) {
+            this.root = root;
+            this.length = length;
+        }
+        
+        void addAll(List<FileSearch.Hit> found) {
+            for (FileSearch.Hit hit : found) {
+                hits.add(hit);
+                files.add(hit.file);
+            }
+        }
+        
+        String describeCount() {
+            return hits.size() + (hits.size() == 1 ? " match" : " matches") + " in " + files.size()
+                   + (files.size() == 1 ? " file" : " files");
+        }
+        
+        @Override
+        public int size() {
+            return hits.size();
+        }
+        
+        @Override
+        public String describe(int index) {
+            FileSearch.Hit hit = hits.get(index);
+            return root.relativize(hit.file) + ":" + (hit.line + 1) + ": " + hit.text.trim();
+        }
+        
+        @Override
+        public void open(int index) {
+            FileSearch.Hit hit = hits.get(index);
+            File file = hit.file.toFile();
+            if (viewer != null
+                    && viewer.getIndex().getPath().toAbsolutePath().equals(hit.file.toAbsolutePath())) {
+                viewer.goToLine(hit.line);
+            } else if (loadWorker == null && currentFile != null
+                    && currentFile.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+                select(hit);
+            } else if (confirmSave()) {
+                cancelLoad();
+                if (file.length() > getViewerThreshold()) {
+                    // Too large for the text pane, as when opened from the File menu
+                    openInViewer(file, hit.line);
+                    return;
+                }
+                readFile(file, () -> {
+                    currentFile = file;
+                    isModified = false;
+                    updateTitle();
+                    statusLabel.setText("File opened: " + file.getName());
+                    select(hit);
+                });
+            }
+        }
+        
+        /** Selects a hit by line and column, which survive the line separators being normalised. */
+        private void select(FileSearch.Hit hit) {
+            Document document = textPane.getDocument();
+            if (hit.line >= lineIndex.lineCount()) {
+                return;
+            }
+            int start = Math.min(lineIndex.lineStart(hit.line) + hit.column, lineIndex.lineEnd(hit.line));
+            textPane.select(start, Math.min(start + length, document.getLength()));
             textPane.requestFocusInWindow();
-            statusLabel.setText("Found: " + searchText);
+        }
+    }
+    
+    /** Seconds between autosaves, from "file.auto_save_interval". */
+    private int getAutoSaveInterval() {
+        try {
+            return Math.max(1, Math.min(86400, Integer.parseInt(config.getProperty("file.auto_save_interval", "300").trim())));
+        } catch (NumberFormatException e) {
+            return 300;
+        }
+    }
+    
+    /** Where journals are kept, from "file.recovery_dir", by default in the user's home. */
+    private Path getRecoveryDirectory() {
+        String configured = config.getProperty("file.recovery_dir", "").trim();
+        return configured.isEmpty()
+                ? Paths.get(System.getProperty("user.home"), ".advanced-text-editor", "recovery")
+                : Paths.get(configured);
+    }
+    
+    /**
+     * Records an edit in the journal, starting one at the first edit since
+     * the document was clean. A document that is a plain text file as it
+     * stands, or an empty new one, is the base of the journal; anything
+     * else starts it with a snapshot that already holds the edit.
+     */
+    private void journalEdit(javax.swing.event.DocumentEvent e) {
+        if (!autoSave) {
+            return;
+        }
+        EditorDocument document = (EditorDocument) e.getDocument();
+        int offset = e.getOffset();
+        int length = e.getLength();
+        String inserted = null;
+        if (e.getType() == javax.swing.event.DocumentEvent.EventType.INSERT) {
+            try {
+                inserted = document.getText(offset, length);
+            } catch (BadLocationException ex) {
+                // The inserted text is in the document the event came from
+                return;
+            }
+        }
+        if (saveWorker != null) {
+            String text = inserted;
+            editsDuringSave.add(text != null ? target -> target.inserted(offset, text)
+                                            : target -> target.removed(offset, length));
+        }
+        if (journal == null) {
+            boolean snapshot = isModified || (fileOrigin == null && currentFile != null);
+            startJournal(document, snapshot);
+            if (journal == null || snapshot) {
+                return;
+            }
+        }
+        if (inserted != null) {
+            journal.inserted(offset, inserted);
         } else {
-            JOptionPane.showMessageDialog(this, "Text not found: " + searchText, 
-                                        "Search Result", JOptionPane.INFORMATION_MESSAGE);
-            statusLabel.setText("Text not found");
+            journal.removed(offset, length);
         }
     }
     
+    /**
+     * Starts a journal for the document in the text pane, from its base file
+     * or, with {@code snapshot}, from its current text. Autosave is turned
+     * off for the session if the journal cannot be created.
+     */
+    private void startJournal(EditorDocument document, boolean snapshot) {
+        if (!autoSave) {
+            return;
+        }
+        String name = currentFile != null ? currentFile.getName() : "New Document";
+        Path base = snapshot || fileOrigin == null ? null : fileOrigin.getPath();
+        try {
+            journal = EditJournal.open(getRecoveryDirectory(), name, base, getFileCharset(), 
+                                       AtomicTextWriter.Sync.fromConfig(config.getProperty("file.fsync")), 
+                                       snapshot ? document.snapshot() : null);
+        } catch (IOException e) {
+            autoSave = false;
+            scheduler.cancel("autosave");
+            statusLabel.setText("Autosave is off: " + e.getMessage());
+        }
+    }
+    
+    /** Drops the journal, once its edits are saved or no longer wanted. */
+    private void discardJournal() {
+        if (journal != null) {
+            journal.discard();
+            journal = null;
+        }
+    }
+    
+    /** Hands the edits recorded since the last autosave to the journal writer. */
+    private void flushJournal() {
+        if (journal == null) {
+            return;
+        }
+        IOException failure = journal.getFailure();
+        if (failure != null) {
+            discardJournal();
+            autoSave = false;
+            scheduler.cancel("autosave");
+            statusLabel.setText("Autosave failed and is off: " + failure.getMessage());
+            return;
+        }
+        journal.flush(((EditorDocument) textPane.getDocument()).snapshot());
+    }
+    
+    /**
+     * Offers to recover the edits of the last session that ended without
+     * saving them, if any; see {@link EditJournal#recover}. Declining
+     * deletes the journal, and cancelling keeps it for next time.
+     */
+    private void offerRecovery() {
+        Path found;
+        String name;
+        try {
+            List<Path> journals = EditJournal.abandoned(getRecoveryDirectory());
+            if (journals.isEmpty()) {
+                return;
+            }
+            found = journals.get(0);
+            name = EditJournal.nameOf(found);
+        } catch (IOException e) {
+            return;
+        }
+        String when = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").format(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(found.toFile().lastModified()), 
+                                        ZoneId.systemDefault()));
+        int answer = JOptionPane.showConfirmDialog(this, 
+            "Changes to " + name + " made until " + when + " were never saved.\nRecover them?", 
+            "Recover Unsaved Changes", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (answer == JOptionPane.NO_OPTION) {
+            try {
+                EditJournal.delete(found);
+            } catch (IOException e) {
+                statusLabel.setText("Could not delete " + found);
+            }
+        } else if (answer == JOptionPane.YES_OPTION && confirmSave()) {
+            recoverJournal(found);
+        }
+    }
+    
+    /** Replays a journal on a worker thread and shows the result as an unsaved document. */
+    private void recoverJournal(Path found) {
+        cancelLoad();
+        SwingWorker<EditJournal.Recovery, Void> worker = new SwingWorker<EditJournal.Recovery, Void>() {
+            @Override
+            protected EditJournal.Recovery doInBackground() throws IOException {
+                return EditJournal.recover(found);
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    EditJournal.Recovery recovery = get();
+                    installDocument(recovery.document);
+                    currentFile = recovery.base != null ? recovery.base.toFile() : null;
+                    fileOrigin = null;
+                    isModified = true;
+                    updateTitle();
+                    applySyntaxHighlighting(currentFile);
+                    textPane.setCaretPosition(0);
+                    // The recovered text starts a journal of its own before the old one goes
+                    startJournal(recovery.document, true);
+                    EditJournal.delete(found);
+                    statusLabel.setText(recovery.complete ? "Recovered unsaved changes to " + recovery.name
+                            : "Recovered " + recovery.name + "; the last edits were cut short by the crash");
+                } catch (CancellationException e) {
+                    statusLabel.setText("Recovery cancelled");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Recovery failed");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Cannot recover the unsaved changes: " 
+                                                  + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        startLoad(worker, "Recovering unsaved changes");
+    }
+    
     private void insertTimeDate() {
         LocalDateTime now = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -521,16 +1677,20 @@ public class TextEditor extends JFrame {
         LocalDateTime now = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
         dateTimeLabel.setText(now.format(formatter));
-        
-        // Update every second
-        Timer timer = new Timer(1000, e -> updateDateTime());
-        timer.setRepeats(true);
-        timer.start();
+        dateTimeLabel.setToolTipText(scheduler.describe());
+    }
+    
+    @Override
+    public void dispose() {
+        scheduler.stop();
+        super.dispose();
     }
     
     private void updateTitle() {
         String title = config.getProperty("window.title", "Advanced Text Editor");
-        if (currentFile != null) {
+        if (viewer != null) {
+            title += " - " + viewer.getIndex().getPath().getFileName() + " [read-only]";
+        } else if (currentFile != null) {
             title += " - " + currentFile.getName();
         } else {
             title += " - New Document";
@@ -542,6 +1702,9 @@ public class TextEditor extends JFrame {
     }
     
     private void setModified(boolean modified) {
+        if (isModified == modified) {
+            return;
+        }
         isModified = modified;
         updateTitle();
     }
@@ -554,12 +1717,14 @@ public class TextEditor extends JFrame {
             
             if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 File file = fileChooser.getSelectedFile();
-                if (readRTFFile(file)) {
+                cancelLoad();
+                readRTFFile(file, () -> {
                     currentFile = file;
+                    fileOrigin = null;
                     isModified = false;
                     updateTitle();
                     statusLabel.setText("RTF file opened: " + file.getName());
-                }
+                });
             }
             // Reset file filter to default
             fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt", "java", "py", "js", "cpp", "c"));
@@ -567,22 +1732,49 @@ public class TextEditor extends JFrame {
         }
     }
     
-    private boolean readRTFFile(File file) {
-        try {
-            RTFEditorKit rtfKit = new RTFEditorKit();
-            DefaultStyledDocument document = new DefaultStyledDocument();
+    /**
+     * Parses an RTF file into a new document on a worker thread. The
+     * document is not shown until it is complete, so the current one stays
+     * usable meanwhile and is kept if the load is cancelled or fails.
+     * Depending on the "file.rtf_import" setting, the styling is dropped and
+     * the text streamed in instead, which keeps memory flat for large files.
+     *
+     * @param onLoaded run on the EDT once the new document is shown
+     */
+    private void readRTFFile(File file, Runnable onLoaded) {
+        EditorDocument document = createDocument();
+        boolean plainText = TextImporter.RtfMode.fromConfig(config.getProperty("file.rtf_import"))
+                .plainText(file.length());
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                if (plainText) {
+                    TextImporter.readRtfText(file, (chars, length) -> append(document, chars, length),
+                                             this::setProgress);
+                } else {
+                    TextImporter.readRtf(file, document, this::setProgress);
+                }
+                return null;
+            }
             
-            try (FileInputStream fis = new FileInputStream(file)) {
-                rtfKit.read(fis, document, 0);
-                textPane.setDocument(document);
-                styledDocument = document;
-                return true;
-            }
-        } catch (IOException | BadLocationException e) {
-            JOptionPane.showMessageDialog(this, "Error reading RTF file: " + e.getMessage(), 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    installDocument(document);
+                    textPane.setCaretPosition(0);
+                    onLoaded.run();
+                } catch (CancellationException e) {
+                    statusLabel.setText("Opening " + file.getName() + " cancelled");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Error reading RTF file");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error reading RTF file: " + cause.getMessage(), 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        startLoad(worker, "Loading " + file.getName());
     }
     
     private void openODTFile() {
@@ -593,12 +1785,14 @@ public class TextEditor extends JFrame {
             
             if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 File file = fileChooser.getSelectedFile();
-                if (readODTFile(file)) {
+                cancelLoad();
+                readODTFile(file, () -> {
                     currentFile = file;
+                    fileOrigin = null;
                     isModified = false;
                     updateTitle();
                     statusLabel.setText("ODT file opened: " + file.getName());
-                }
+                });
             }
             // Reset file filter to default
             fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt", "java", "py", "js", "cpp", "c"));
@@ -606,65 +1800,54 @@ public class TextEditor extends JFrame {
         }
     }
     
-    private boolean readODTFile(File file) {
-        try {
-            // ODT files are ZIP archives containing XML content
-            java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(file);
-            java.util.zip.ZipEntry contentEntry = zipFile.getEntry("content.xml");
-            
-            if (contentEntry == null) {
-                JOptionPane.showMessageDialog(this, "Invalid ODT file: missing content.xml", 
-                                            "Error", JOptionPane.ERROR_MESSAGE);
-                return false;
+    /**
+     * Streams the text of an ODT file into a new document on a worker
+     * thread; see {@link TextImporter#readOdt}. As with RTF, the document
+     * is only shown once it is complete, and the current one is kept if the
+     * load is cancelled or fails.
+     *
+     * @param onLoaded run on the EDT once the new document is shown
+     */
+    private void readODTFile(File file, Runnable onLoaded) {
+        EditorDocument document = createDocument();
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                TextImporter.readOdt(file, (chars, length) -> append(document, chars, length), this::setProgress);
+                return null;
             }
             
-            // Read the XML content
-            StringBuilder content = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(zipFile.getInputStream(contentEntry), "UTF-8"))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    content.append(line).append("\n");
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    installDocument(document);
+                    textPane.setCaretPosition(0);
+                    onLoaded.run();
+                } catch (CancellationException e) {
+                    statusLabel.setText("Opening " + file.getName() + " cancelled");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Error reading ODT file");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error reading ODT file: " + cause.getMessage(), 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
-            
-            // Simple XML parsing to extract text content
-            String xmlContent = content.toString();
-            String extractedText = extractTextFromODTXML(xmlContent);
-            
-            textArea.setText(extractedText);
-            zipFile.close();
-            return true;
-            
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error reading ODT file: " + e.getMessage(), 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
+        };
+        startLoad(worker, "Loading " + file.getName());
     }
     
-    private String extractTextFromODTXML(String xmlContent) {
-        StringBuilder text = new StringBuilder();
-        
-        // Simple regex-based extraction of text content
-        // This is a basic implementation - a full ODT parser would be more complex
-        java.util.regex.Pattern textPattern = java.util.regex.Pattern.compile(">([^<]+)<");
-        java.util.regex.Matcher matcher = textPattern.matcher(xmlContent);
-        
-        while (matcher.find()) {
-            String textContent = matcher.group(1).trim();
-            if (!textContent.isEmpty() && !textContent.startsWith("<") && !textContent.startsWith("office:")) {
-                text.append(textContent).append(" ");
-            }
+    /** Adds imported text to the end of a document that is not shown yet. */
+    private static void append(EditorDocument document, char[] chars, int length) {
+        try {
+            document.insertString(document.getLength(), new String(chars, 0, length), null);
+        } catch (BadLocationException e) {
+            // Appending at the current length cannot fail
         }
-        
-        // Clean up the extracted text
-        String result = text.toString().replaceAll("\\s+", " ").trim();
-        return result.isEmpty() ? "[ODT file content could not be extracted]" : result;
     }
     
     private void convertToPDF() {
-        if (textPane.getText().trim().isEmpty()) {
+        if (isBlank(new DocumentCharSequence(textPane.getDocument()))) {
             JOptionPane.showMessageDialog(this, "No content to convert. Please add some text first.", 
                                         "No Content", JOptionPane.WARNING_MESSAGE);
             return;
@@ -699,11 +1882,64 @@ public class TextEditor extends JFrame {
                 }
             }
             
-            if (convertTextToPDF(file)) {
+            convertTextToPDF(file);
+        }
+        
+        // Reset file filter to default
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt", "java", "py", "js", "cpp", "c"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("All Files", "*"));
+    }
+    
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Exports the document to a PDF in the background, laying out pages on
+     * all cores; see {@link PdfExporter}. The export works on a snapshot,
+     * so editing can go on meanwhile, and Cancel leaves any existing file
+     * untouched.
+     */
+    private void convertTextToPDF(File file) {
+        if (exportWorker != null) {
+            JOptionPane.showMessageDialog(this, "A PDF export is already running.", 
+                                        "Export Running", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        PieceTableContent.Snapshot snapshot = ((EditorDocument) textPane.getDocument()).snapshot();
+        
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                PdfExporter.export(snapshot, PDType1Font.HELVETICA, 12, file, ForkJoinPool.commonPool(),
+                                   this::setProgress);
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                exportWorker = null;
+                try {
+                    get();
+                } catch (CancellationException e) {
+                    statusLabel.setText("PDF export cancelled");
+                    return;
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Error creating PDF");
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error creating PDF: " + cause.getMessage(), 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
                 statusLabel.setText("PDF created: " + file.getName());
                 
                 // Ask if user wants to open the PDF
-                int openResult = JOptionPane.showConfirmDialog(this, 
+                int openResult = JOptionPane.showConfirmDialog(TextEditor.this, 
                     "PDF file created successfully. Do you want to open it?", 
                     "PDF Created", 
                     JOptionPane.YES_NO_OPTION, 
@@ -713,234 +1949,46 @@ public class TextEditor extends JFrame {
                     try {
                         Desktop.getDesktop().open(file);
                     } catch (IOException e) {
-                        JOptionPane.showMessageDialog(this, "Could not open PDF file: " + e.getMessage(), 
+                        JOptionPane.showMessageDialog(TextEditor.this, "Could not open PDF file: " + e.getMessage(), 
                                                     "Error", JOptionPane.ERROR_MESSAGE);
                     }
                 }
             }
-        }
-        
-        // Reset file filter to default
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt", "java", "py", "js", "cpp", "c"));
-        fileChooser.setFileFilter(new FileNameExtensionFilter("All Files", "*"));
-    }
-    
-    private boolean convertTextToPDF(File file) {
-        try {
-            // Create a new PDF document
-            PDDocument document = new PDDocument();
-            PDPage page = new PDPage(PDRectangle.A4);
-            document.addPage(page);
-            
-            // Create a font
-            PDFont font = PDType1Font.HELVETICA;
-            float fontSize = 12;
-            float leading = 1.5f * fontSize;
-            
-            // Create content stream
-            PDPageContentStream contentStream = new PDPageContentStream(document, page);
-            contentStream.setFont(font, fontSize);
-            
-            // Set up margins
-            float margin = 50;
-            float width = page.getMediaBox().getWidth() - 2 * margin;
-            float startX = page.getMediaBox().getLowerLeftX() + margin;
-            float startY = page.getMediaBox().getUpperRightY() - margin;
-            
-            // Split text into lines
-            String text = textPane.getText();
-            String[] lines = text.split("\n");
-            
-            float currentY = startY;
-            
-            for (String line : lines) {
-                // Handle word wrapping
-                String[] words = line.split(" ");
-                StringBuilder currentLine = new StringBuilder();
-                
-                for (String word : words) {
-                    String testLine = currentLine.length() == 0 ? word : currentLine.toString() + " " + word;
-                    float textWidth = font.getStringWidth(testLine) / 1000 * fontSize;
-                    
-                    if (textWidth < width) {
-                        if (currentLine.length() == 0) {
-                            currentLine.append(word);
-                        } else {
-                            currentLine.append(" ").append(word);
-                        }
-                    } else {
-                        // Draw the current line and start a new one
-                        if (currentLine.length() > 0) {
-                            contentStream.beginText();
-                            contentStream.newLineAtOffset(startX, currentY);
-                            contentStream.showText(currentLine.toString());
-                            contentStream.endText();
-                            currentY -= leading;
-                        }
-                        currentLine = new StringBuilder(word);
-                    }
-                }
-                
-                // Draw any remaining text in the current line
-                if (currentLine.length() > 0) {
-                    contentStream.beginText();
-                    contentStream.newLineAtOffset(startX, currentY);
-                    contentStream.showText(currentLine.toString());
-                    contentStream.endText();
-                    currentY -= leading;
-                }
-                
-                // Add extra space between paragraphs (empty lines)
-                currentY -= leading * 0.5f;
-                
-                // Check if we need a new page
-                if (currentY < margin) {
-                    contentStream.close();
-                    page = new PDPage(PDRectangle.A4);
-                    document.addPage(page);
-                    contentStream = new PDPageContentStream(document, page);
-                    contentStream.setFont(font, fontSize);
-                    currentY = startY;
-                }
-            }
-            
-            contentStream.close();
-            document.save(file);
-            document.close();
-            
-            return true;
-            
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error creating PDF: " + e.getMessage(), 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
+        };
+        exportWorker = worker;
+        startBackground(worker, "Exporting " + file.getName());
     }
     
+    /**
+     * Re-highlights the whole document for the current file type. Edits
+     * after that are handled incrementally by the highlighter.
+     */
     private void applySyntaxHighlighting() {
-        try {
-            String text = textPane.getText();
-            String fileName = currentFile != null ? currentFile.getName().toLowerCase() : "";
-            
-            // Clear existing styles
-            styledDocument.setCharacterAttributes(0, text.length(), 
-                javax.swing.text.SimpleAttributeSet.EMPTY, true);
-            
-            // Determine file type and apply highlighting
-            if (fileName.endsWith(".java")) {
-                highlightJava(text);
-            } else if (fileName.endsWith(".py")) {
-                highlightPython(text);
-            } else if (fileName.endsWith(".js")) {
-                highlightJavaScript(text);
-            } else if (fileName.endsWith(".cpp") || fileName.endsWith(".cc") || fileName.endsWith(".cxx") || fileName.endsWith(".c")) {
-                highlightCpp(text);
-            }
-            
-        } catch (Exception e) {
-            // Silently ignore highlighting errors to prevent disrupting editing
-        }
-    }
-    
-    private void highlightJava(String text) {
-        highlightKeywords(text, javaKeywords, syntaxColors.get("keyword"));
-        highlightStrings(text, syntaxColors.get("string"));
-        highlightComments(text, syntaxColors.get("comment"));
-        highlightNumbers(text, syntaxColors.get("number"));
-    }
-    
-    private void highlightPython(String text) {
-        highlightKeywords(text, pythonKeywords, syntaxColors.get("keyword"));
-        highlightStrings(text, syntaxColors.get("string"));
-        highlightComments(text, syntaxColors.get("comment"));
-        highlightNumbers(text, syntaxColors.get("number"));
-    }
-    
-    private void highlightJavaScript(String text) {
-        highlightKeywords(text, jsKeywords, syntaxColors.get("keyword"));
-        highlightStrings(text, syntaxColors.get("string"));
-        highlightComments(text, syntaxColors.get("comment"));
-        highlightNumbers(text, syntaxColors.get("number"));
-    }
-    
-    private void highlightCpp(String text) {
-        highlightKeywords(text, cppKeywords, syntaxColors.get("keyword"));
-        highlightStrings(text, syntaxColors.get("string"));
-        highlightComments(text, syntaxColors.get("comment"));
-        highlightNumbers(text, syntaxColors.get("number"));
-    }
-    
-    private void highlightKeywords(String text, Set<String> keywords, java.awt.Color color) {
-        javax.swing.text.SimpleAttributeSet keywordAttr = new javax.swing.text.SimpleAttributeSet();
-        keywordAttr.addAttribute(javax.swing.text.StyleConstants.Foreground, color);
-        keywordAttr.addAttribute(javax.swing.text.StyleConstants.Bold, true);
-        
-        for (String keyword : keywords) {
-            String pattern = "\\b" + keyword + "\\b";
-            java.util.regex.Pattern p = java.util.regex.Pattern.compile(pattern);
-            java.util.regex.Matcher m = p.matcher(text);
-            
-            while (m.find()) {
-                styledDocument.setCharacterAttributes(m.start(), m.end() - m.start(), keywordAttr, true);
-            }
-        }
-    }
-    
-    private void highlightStrings(String text, java.awt.Color color) {
-        javax.swing.text.SimpleAttributeSet stringAttr = new javax.swing.text.SimpleAttributeSet();
-        stringAttr.addAttribute(javax.swing.text.StyleConstants.Foreground, color);
-        
-        // Double quotes
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("\"[^\"]*\"");
-        java.util.regex.Matcher m = p.matcher(text);
-        
-        while (m.find()) {
-            styledDocument.setCharacterAttributes(m.start(), m.end() - m.start(), stringAttr, true);
-        }
-        
-        // Single quotes
-        p = java.util.regex.Pattern.compile("'[^']*'");
-        m = p.matcher(text);
-        
-        while (m.find()) {
-            styledDocument.setCharacterAttributes(m.start(), m.end() - m.start(), stringAttr, true);
-        }
+        applySyntaxHighlighting(currentFile);
     }
     
-    private void highlightComments(String text, java.awt.Color color) {
-        javax.swing.text.SimpleAttributeSet commentAttr = new javax.swing.text.SimpleAttributeSet();
-        commentAttr.addAttribute(javax.swing.text.StyleConstants.Foreground, color);
-        commentAttr.addAttribute(javax.swing.text.StyleConstants.Italic, true);
+    private void applySyntaxHighlighting(File file) {
+        String fileName = file != null ? file.getName().toLowerCase() : "";
+        SyntaxLexer lexer = null;
         
-        // Single line comments
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("//.*$", java.util.regex.Pattern.MULTILINE);
-        java.util.regex.Matcher m = p.matcher(text);
-        
-        while (m.find()) {
-            styledDocument.setCharacterAttributes(m.start(), m.end() - m.start(), commentAttr, true);
+        // Determine file type and pick the matching lexer
+        if (fileName.endsWith(".java")) {
+            lexer = javaLexer;
+        } else if (fileName.endsWith(".py")) {
+            lexer = pythonLexer;
+        } else if (fileName.endsWith(".js")) {
+            lexer = jsLexer;
+        } else if (fileName.endsWith(".cpp") || fileName.endsWith(".cc") || fileName.endsWith(".cxx") || fileName.endsWith(".c")) {
+            lexer = cppLexer;
         }
         
-        // Multi-line comments
-        p = java.util.regex.Pattern.compile("/\\*.*?\\*/", java.util.regex.Pattern.DOTALL);
-        m = p.matcher(text);
-        
-        while (m.find()) {
-            styledDocument.setCharacterAttributes(m.start(), m.end() - m.start(), commentAttr, true);
+        try {
+            syntaxHighlighter.highlightAll(lexer);
+        } catch (RuntimeException e) {
+            // Silently ignore highlighting errors to prevent disrupting editing
         }
     }
     
-    private void highlightNumbers(String text, java.awt.Color color) {
-        javax.swing.text.SimpleAttributeSet numberAttr = new javax.swing.text.SimpleAttributeSet();
-        numberAttr.addAttribute(javax.swing.text.StyleConstants.Foreground, color);
-        
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("\\b\\d+\\.?\\d*\\b");
-        java.util.regex.Matcher m = p.matcher(text);
-        
-        while (m.find()) {
-            styledDocument.setCharacterAttributes(m.start(), m.end() - m.start(), numberAttr, true);
-        }
-    }
-
     private void showAboutDialog() {
         String aboutMessage = "Advanced Text Editor\n\n" +
                             "Developed by: YuhangLiu & JiayuXu\n" +
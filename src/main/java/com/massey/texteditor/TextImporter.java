@@ -0,0 +1,271 @@
+package com.massey.texteditor;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.rtf.RTFEditorKit;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the text of RTF and ODT files without any user interface, so the
+ * editor and the batch converter share one implementation. The methods
+ * may be called on any thread.
+ */
+final class TextImporter {
+
+    private static final String TEXT_NS = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+
+    private static final XMLInputFactory XML_INPUT = createXmlInput();
+
+    /**
+     * How RTF files are opened, from the "file.rtf_import" setting: with
+     * their styling, as plain text, or as plain text only when they are
+     * larger than {@link #PLAIN_RTF_BYTES}.
+     */
+    enum RtfMode {
+        STYLED, PLAIN, AUTO;
+
+        static RtfMode fromConfig(String value) {
+            switch (value == null ? "" : value.trim().toLowerCase(Locale.ROOT)) {
+                case "styled":
+                case "rich":
+                    return STYLED;
+                case "plain":
+                case "text":
+                    return PLAIN;
+                default:
+                    return AUTO;
+            }
+        }
+
+        /** Whether a file of this size should be read with {@link #readRtfText}. */
+        boolean plainText(long size) {
+            return this == PLAIN || (this == AUTO && size > PLAIN_RTF_BYTES);
+        }
+    }
+
+    /**
+     * Size above which RTF opens as plain text by default. Swing's RTF
+     * reader holds the whole styled document and its attributes, several
+     * times the size of the file, which past this point costs more memory
+     * than the styling is worth in a text editor.
+     */
+    static final long PLAIN_RTF_BYTES = 8L << 20;
+
+    private TextImporter() {
+    }
+
+    private static XMLInputFactory createXmlInput() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Documents are untrusted, so no DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Parses an RTF file into an empty document that no other thread is
+     * using yet.
+     *
+     * @param progress receives the percentage of the file read so far
+     */
+    static void readRtf(File file, Document document, IntConsumer progress) throws IOException {
+        try (InputStream in = new ProgressInputStream(
+                new BufferedInputStream(new FileInputStream(file)), file.length(), progress)) {
+            new RTFEditorKit().read(in, document, 0);
+        } catch (BadLocationException e) {
+            throw new IOException("Cannot read RTF file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streams the text of an RTF file to {@code out} without its styling;
+     * see {@link RtfTextReader}. Memory use stays the same whatever the
+     * size of the file.
+     *
+     * @param progress receives the percentage of the file read so far
+     */
+    static void readRtfText(File file, MappedTextReader.ChunkConsumer out, IntConsumer progress) throws IOException {
+        try (InputStream in = new ProgressInputStream(
+                new BufferedInputStream(new FileInputStream(file)), file.length(), progress)) {
+            RtfTextReader.read(in, out);
+        }
+    }
+
+    /**
+     * Streams the text of an ODT file to {@code out}, reading content.xml
+     * straight from the archive with a StAX parser, so neither the XML nor
+     * the text is ever held whole. Each {@code text:p} and {@code text:h}
+     * becomes a line; {@code text:s}, {@code text:tab} and
+     * {@code text:line-break} become spaces, a tab and a line break; other
+     * runs of white space collapse to one space as ODF specifies.
+     *
+     * @param progress receives the percentage of content.xml read so far
+     */
+    static void readOdt(File file, MappedTextReader.ChunkConsumer out, IntConsumer progress) throws IOException {
+        // ODT files are ZIP archives containing XML content
+        try (ZipFile zipFile = new ZipFile(file)) {
+            ZipEntry contentEntry = zipFile.getEntry("content.xml");
+            if (contentEntry == null) {
+                throw new IOException("Invalid ODT file: missing content.xml");
+            }
+            try (InputStream in = new ProgressInputStream(new BufferedInputStream(zipFile.getInputStream(contentEntry)),
+                                                          contentEntry.getSize(), progress)) {
+                XMLStreamReader reader = XML_INPUT.createXMLStreamReader(in);
+                try {
+                    new OdtText(out).read(reader);
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Invalid ODT file: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the text of an ODT file as one string, mainly for tests; see
+     * {@link #readOdt(File, MappedTextReader.ChunkConsumer, IntConsumer)}.
+     */
+    static String readOdt(File file, IntConsumer progress) throws IOException {
+        StringBuilder text = new StringBuilder();
+        readOdt(file, (chars, length) -> text.append(chars, 0, length), progress);
+        return text.toString();
+    }
+
+    /** Turns the parser's events into text, a chunk at a time. */
+    private static final class OdtText {
+        private final MappedTextReader.ChunkConsumer out;
+        private final char[] chunk = new char[MappedTextReader.CHUNK_CHARS];
+        private int length;
+        // Paragraphs open around the parser; text outside them is not document text
+        private int paragraphDepth;
+        private boolean atParagraphStart;
+        private boolean pendingSpace;
+
+        OdtText(MappedTextReader.ChunkConsumer out) {
+            this.out = out;
+        }
+
+        void read(XMLStreamReader reader) throws XMLStreamException, IOException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (TEXT_NS.equals(reader.getNamespaceURI())) {
+                            start(reader);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (TEXT_NS.equals(reader.getNamespaceURI()) && isParagraph(reader.getLocalName())) {
+                            paragraphDepth--;
+                            pendingSpace = false;
+                            put('\n');
+                            atParagraphStart = true;
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (paragraphDepth > 0) {
+                            characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            flush();
+        }
+
+        private void start(XMLStreamReader reader) throws IOException {
+            String name = reader.getLocalName();
+            if (isParagraph(name)) {
+                if (paragraphDepth > 0 && !atParagraphStart) {
+                    // A paragraph inside another one, such as a note, goes on a line of its own
+                    put('\n');
+                }
+                paragraphDepth++;
+                atParagraphStart = true;
+                pendingSpace = false;
+            } else if (paragraphDepth > 0) {
+                switch (name) {
+                    case "s":
+                        String count = reader.getAttributeValue(TEXT_NS, "c");
+                        int spaces = 1;
+                        try {
+                            spaces = count == null ? 1 : Math.max(1, Integer.parseInt(count.trim()));
+                        } catch (NumberFormatException e) {
+                            // Keep the single space
+                        }
+                        emitPendingSpace();
+                        for (int i = 0; i < spaces; i++) {
+                            put(' ');
+                        }
+                        break;
+                    case "tab":
+                        emitPendingSpace();
+                        put('\t');
+                        break;
+                    case "line-break":
+                        pendingSpace = false;
+                        put('\n');
+                        atParagraphStart = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private void characters(char[] chars, int start, int count) throws IOException {
+            for (int i = start, end = start + count; i < end; i++) {
+                char c = chars[i];
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    // Leading white space is dropped, runs become one space
+                    pendingSpace = !atParagraphStart;
+                } else {
+                    emitPendingSpace();
+                    put(c);
+                }
+            }
+        }
+
+        private void emitPendingSpace() throws IOException {
+            if (pendingSpace) {
+                pendingSpace = false;
+                put(' ');
+            }
+            atParagraphStart = false;
+        }
+
+        private void put(char c) throws IOException {
+            if (length == chunk.length) {
+                flush();
+            }
+            chunk[length++] = c;
+        }
+
+        private void flush() throws IOException {
+            if (length > 0) {
+                out.accept(chunk, length);
+                length = 0;
+            }
+        }
+
+        private static boolean isParagraph(String localName) {
+            return "p".equals(localName) || "h".equals(localName);
+        }
+    }
+}
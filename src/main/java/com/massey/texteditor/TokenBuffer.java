@@ -0,0 +1,49 @@
+package com.massey.texteditor;
+
+import java.util.Arrays;
+
+/**
+ * Compact token stream kept in parallel primitive arrays.
+ * The buffer is reused between lexer runs, so steady-state highlighting
+ * allocates nothing per token.
+ */
+final class TokenBuffer {
+
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private byte[] types = new byte[256];
+    private int size;
+
+    void add(int start, int length, byte type) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        starts[size] = start;
+        lengths[size] = length;
+        types[size] = type;
+        size++;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    byte type(int index) {
+        return types[index];
+    }
+}
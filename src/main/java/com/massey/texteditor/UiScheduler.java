@@ -0,0 +1,188 @@
+package com.massey.texteditor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Timer;
+
+/**
+ * Runs the editor's periodic work, such as the clock and auto-save, from a
+ * single Swing timer on the EDT. Tasks are registered by name, so
+ * scheduling a task again replaces it instead of adding another, and the
+ * number of tasks stays what the editor registered. The timer fires at the
+ * shortest period among the tasks that may run and runs whichever are due.
+ *
+ * <p>While the window is hidden, for example minimised, tasks that only
+ * update what is on screen are skipped, and the timer stops altogether if
+ * nothing else is left. They run again as soon as the window is shown.</p>
+ *
+ * <p>Each tick is timed, and {@link #describe} reports the task count and
+ * what the ticks cost, so a slow task shows up in the UI rather than as a
+ * sluggish editor. Everything here belongs to the EDT.</p>
+ */
+final class UiScheduler {
+
+    /** One registered task and what running it has cost. */
+    private static final class Task {
+        final String name;
+        final long periodNanos;
+        final boolean whileHidden;
+        final Runnable action;
+        long due;
+        long runs;
+        long maxNanos;
+
+        Task(String name, long periodNanos, boolean whileHidden, Runnable action, long due) {
+            this.name = name;
+            this.periodNanos = periodNanos;
+            this.whileHidden = whileHidden;
+            this.action = action;
+            this.due = due;
+        }
+    }
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final Timer timer;
+    private boolean hidden;
+    private boolean stopped;
+    // How early a task may run, so a timer firing a little before its due time does not delay it a period
+    private long slackNanos;
+    private long ticks;
+    private long lastTickNanos;
+    private long totalTickNanos;
+
+    UiScheduler() {
+        timer = new Timer(1000, e -> tick(System.nanoTime()));
+        timer.setRepeats(true);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Runs {@code action} every {@code periodMillis}, first after one
+     * period, replacing any task of the same name.
+     *
+     * @param whileHidden whether to keep running while the window is hidden;
+     *        false for work that only changes what is on screen
+     */
+    void schedule(String name, int periodMillis, boolean whileHidden, Runnable action) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+        long period = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        tasks.put(name, new Task(name, period, whileHidden, action, System.nanoTime() + period));
+        reschedule();
+    }
+
+    /** Removes a task; does nothing if there is none of that name. */
+    void cancel(String name) {
+        if (tasks.remove(name) != null) {
+            reschedule();
+        }
+    }
+
+    /**
+     * Skips the tasks that only update the screen while {@code hidden}.
+     * When the window is shown again they run at once, so the clock does
+     * not show a stale time for up to a second.
+     */
+    void setHidden(boolean hidden) {
+        if (this.hidden == hidden) {
+            return;
+        }
+        this.hidden = hidden;
+        if (!hidden) {
+            long now = System.nanoTime();
+            for (Task task : tasks.values()) {
+                if (!task.whileHidden) {
+                    task.due = now;
+                }
+            }
+            tick(now);
+        }
+        reschedule();
+    }
+
+    boolean isHidden() {
+        return hidden;
+    }
+
+    /** Whether the timer is running, which it is only while some task may run. */
+    boolean isRunning() {
+        return timer.isRunning();
+    }
+
+    int taskCount() {
+        return tasks.size();
+    }
+
+    /** Stops the timer for good; nothing runs after this. */
+    void stop() {
+        stopped = true;
+        timer.stop();
+    }
+
+    /** Task count, the cost of the last and the average tick, and the slowest task. */
+    String describe() {
+        Task slowest = null;
+        for (Task task : tasks.values()) {
+            if (task.runs > 0 && (slowest == null || task.maxNanos > slowest.maxNanos)) {
+                slowest = task;
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(tasks.size()).append(tasks.size() == 1 ? " periodic task" : " periodic tasks");
+        if (ticks > 0) {
+            text.append(String.format(", last tick %,d µs, average %,d µs",
+                                      lastTickNanos / 1000, totalTickNanos / ticks / 1000));
+        }
+        if (slowest != null) {
+            text.append(String.format(", slowest %s at %,d µs", slowest.name, slowest.maxNanos / 1000));
+        }
+        return text.toString();
+    }
+
+    /** Runs every task due at {@code now} that may run; the timer calls this. */
+    void tick(long now) {
+        long start = System.nanoTime();
+        // A task may schedule or cancel tasks, so run from a copy
+        for (Task task : tasks.values().toArray(new Task[0])) {
+            if (now - task.due < -slackNanos || (hidden && !task.whileHidden) || tasks.get(task.name) != task) {
+                continue;
+            }
+            // Skip the runs missed while hidden or behind instead of catching up
+            task.due = Math.max(task.due + task.periodNanos, now + task.periodNanos / 2);
+            long taskStart = System.nanoTime();
+            try {
+                task.action.run();
+            } finally {
+                long spent = System.nanoTime() - taskStart;
+                task.runs++;
+                task.maxNanos = Math.max(task.maxNanos, spent);
+            }
+        }
+        lastTickNanos = System.nanoTime() - start;
+        totalTickNanos += lastTickNanos;
+        ticks++;
+    }
+
+    /** Fires at the shortest period among the tasks that may run, or not at all. */
+    private void reschedule() {
+        long shortest = Long.MAX_VALUE;
+        for (Task task : tasks.values()) {
+            if (!hidden || task.whileHidden) {
+                shortest = Math.min(shortest, task.periodNanos);
+            }
+        }
+        if (stopped || shortest == Long.MAX_VALUE) {
+            timer.stop();
+            return;
+        }
+        slackNanos = shortest / 2;
+        int delay = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(shortest));
+        timer.setDelay(delay);
+        timer.setInitialDelay(delay);
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.swing.text.BadLocationException;
+
+public class AtomicTextWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamsAllPiecesAcrossSurrogatePairs() throws Exception {
+        PieceTableContent content = new PieceTableContent();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            expected.append("é中 line ").append(i).append('\n');
+        }
+        content.insertString(0, expected.toString());
+        // Split a surrogate pair across two pieces
+        content.insertString(5, "\uD83Dy");
+        content.insertString(6, "\uDE00");
+        expected.insert(5, "😀y");
+
+        Path file = tempDir.resolve("out.txt");
+        long[] lastProgress = new long[1];
+        long bytes = AtomicTextWriter.write(content.snapshot(), file, StandardCharsets.UTF_8,
+                                            AtomicTextWriter.Sync.ALWAYS, chars -> lastProgress[0] = chars);
+
+        byte[] written = Files.readAllBytes(file);
+        assertEquals(written.length, bytes);
+        assertEquals(expected.toString(), new String(written, StandardCharsets.UTF_8));
+        assertEquals(expected.length(), lastProgress[0]);
+        assertEquals(1, countFiles(), "Temporary file should be renamed away");
+    }
+
+    @Test
+    void testUnencodableTextLeavesTargetUntouched() throws Exception {
+        Path file = tempDir.resolve("ascii.txt");
+        Files.write(file, "original".getBytes(StandardCharsets.US_ASCII));
+        PieceTableContent content = content("café");
+
+        assertThrows(CharacterCodingException.class, () -> AtomicTextWriter.write(
+                content.snapshot(), file, StandardCharsets.US_ASCII, AtomicTextWriter.Sync.NEVER, chars -> { }));
+        assertEquals("original", new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    void testReplacesExistingFileAndKeepsPermissions() throws Exception {
+        Path file = tempDir.resolve("script.py");
+        Files.write(file, "old contents that are longer".getBytes(StandardCharsets.UTF_8));
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwxr-x---");
+        if (posix) {
+            Files.setPosixFilePermissions(file, permissions);
+        }
+
+        AtomicTextWriter.write(content("new").snapshot(), file, StandardCharsets.UTF_8,
+                               AtomicTextWriter.Sync.DATA, chars -> { });
+
+        assertEquals("new", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        if (posix) {
+            assertEquals(permissions, Files.getPosixFilePermissions(file));
+        }
+    }
+
+    @Test
+    void testNewFileGetsTheDefaultPermissions() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path plain = Files.createFile(tempDir.resolve("plain.txt"));
+        Path saved = tempDir.resolve("saved.txt");
+
+        AtomicTextWriter.write(content("new").snapshot(), saved, StandardCharsets.UTF_8,
+                               AtomicTextWriter.Sync.NEVER, chars -> { });
+
+        // Whatever the umask allows, not just the owner as for a temporary file
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(saved));
+    }
+
+    @Test
+    void testDeltaSaveCopiesUnchangedRangesFromOriginal() throws Exception {
+        StringBuilder original = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            original.append("ünïcode line ").append(i).append(" 😀\n");
+        }
+        Path file = tempDir.resolve("big.txt");
+        Files.write(file, original.toString().getBytes(StandardCharsets.UTF_8));
+        PieceTableContent content = new PieceTableContent();
+        FileOrigin origin = load(file, content);
+        assertNotNull(origin);
+
+        // Change a byte the edit did not touch, keeping size and timestamp, to see it copied
+        byte[] bytes = Files.readAllBytes(file);
+        int marker = original.indexOf("line 5000 ");
+        int markerByte = original.substring(0, marker).getBytes(StandardCharsets.UTF_8).length;
+        bytes[markerByte] = 'L';
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, bytes);
+        Files.setLastModifiedTime(file, modified);
+
+        StringBuilder expected = new StringBuilder(original);
+        expected.setCharAt(marker, 'L');
+        content.insertString(100000, "EDIT");
+        expected.insert(100000, "EDIT");
+        content.remove(400000, 20);
+        expected.delete(400000, 400020);
+        content.insertString(content.length() - 1, "tail");
+        expected.append("tail");
+
+        FileOrigin.Builder layout = new FileOrigin.Builder(StandardCharsets.UTF_8);
+        AtomicTextWriter.write(content.snapshot(), file, StandardCharsets.UTF_8, AtomicTextWriter.Sync.NEVER,
+                               chars -> { }, origin, layout);
+        assertEquals(expected.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+        // The layout of the saved file lets the next save copy from it in turn
+        FileOrigin saved = layout.build(file, content.snapshot());
+        assertNotNull(saved);
+        content.insertString(10, "again");
+        expected.insert(10, "again");
+        Path copy = tempDir.resolve("copy.txt");
+        AtomicTextWriter.write(content.snapshot(), copy, StandardCharsets.UTF_8, AtomicTextWriter.Sync.NEVER,
+                               chars -> { }, saved, null);
+        assertEquals(expected.toString(), new String(Files.readAllBytes(copy), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testModifiedOriginalIsNotCopied() throws Exception {
+        Path file = tempDir.resolve("changed.txt");
+        Files.write(file, "alpha\nbeta\n".getBytes(StandardCharsets.UTF_8));
+        PieceTableContent content = new PieceTableContent();
+        FileOrigin origin = load(file, content);
+        Files.write(file, "ALPHA\nBETA\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+        AtomicTextWriter.write(content.snapshot(), file, StandardCharsets.UTF_8, AtomicTextWriter.Sync.NEVER,
+                               chars -> { }, origin, null);
+        assertEquals("alpha\nbeta\n", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testFoldedLineSeparatorsHaveNoOrigin() throws Exception {
+        Path file = tempDir.resolve("crlf.txt");
+        Files.write(file, "one\r\ntwo\r\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(load(file, new PieceTableContent()));
+
+        Path latin = tempDir.resolve("latin.txt");
+        Files.write(latin, new byte[] {'c', 'a', 'f', (byte) 0xE9});
+        assertNull(load(latin, new PieceTableContent()), "Malformed UTF-8 was replaced");
+    }
+
+    @Test
+    void testSyncPolicyFromConfig() {
+        assertEquals(AtomicTextWriter.Sync.NEVER, AtomicTextWriter.Sync.fromConfig("never"));
+        assertEquals(AtomicTextWriter.Sync.DATA, AtomicTextWriter.Sync.fromConfig(" Data "));
+        assertEquals(AtomicTextWriter.Sync.ALWAYS, AtomicTextWriter.Sync.fromConfig("always"));
+        assertEquals(AtomicTextWriter.Sync.ALWAYS, AtomicTextWriter.Sync.fromConfig(null));
+    }
+
+    private static PieceTableContent content(String text) throws BadLocationException {
+        PieceTableContent content = new PieceTableContent();
+        content.insertString(0, text);
+        return content;
+    }
+
+    private static FileOrigin load(Path file, PieceTableContent content) throws IOException {
+        FileOrigin.Builder layout = new FileOrigin.Builder(StandardCharsets.UTF_8);
+        MappedTextReader.read(file, StandardCharsets.UTF_8, 4096, (chars, length) -> {
+            try {
+                content.insertString(content.length() - 1, new String(chars, 0, length));
+            } catch (BadLocationException e) {
+                throw new IOException(e);
+            }
+        }, layout);
+        return layout.build(file, content.snapshot());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+}
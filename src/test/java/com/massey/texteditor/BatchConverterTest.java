@@ -0,0 +1,106 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+public class BatchConverterTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void testConvertsEveryFormatIntoAMirroredTree() throws Exception {
+        Path input = Files.createDirectories(folder.resolve("in/src"));
+        Files.write(input.resolve("Main.java"), "class Main {\r\n    int answer = 42;\r\n}\r\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("in/notes.txt"), "plain notes".getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve("in/letter.rtf"),
+                    "{\\rtf1\\ansi{\\fonttbl\\f0\\fswiss Helvetica;}\\f0 Dear reader,\\par rich text\\par}"
+                        .getBytes(StandardCharsets.US_ASCII));
+        writeOdt(folder.resolve("in/report.odt"),
+                 "<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+                 + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"><office:body><office:text><text:p>Quarterly report</text:p>"
+                 + "</office:text></office:body></office:document-content>");
+        Files.write(folder.resolve("in/image.bin"), new byte[] {0, 1, 2});
+
+        BatchConverter.Report report = new BatchConverter(2, StandardCharsets.UTF_8, 12)
+                .convert(folder.resolve("in"), folder.resolve("out"));
+
+        assertEquals(4, report.converted());
+        assertTrue(report.failures().isEmpty(), report.failures().toString());
+        assertTrue(text("out/src/Main.java.pdf").contains("int answer = 42;"));
+        assertTrue(text("out/notes.txt.pdf").contains("plain notes"));
+        assertTrue(text("out/letter.rtf.pdf").contains("rich text"));
+        assertTrue(text("out/report.odt.pdf").contains("Quarterly report"));
+        assertFalse(Files.exists(folder.resolve("out/image.bin.pdf")));
+        assertTrue(report.format().contains("Converted 4 files"));
+    }
+
+    @Test
+    void testBrokenFileIsReportedAndTheRestCarryOn() throws Exception {
+        Path input = Files.createDirectories(folder.resolve("in"));
+        Files.write(input.resolve("broken.odt"), "not a zip".getBytes(StandardCharsets.UTF_8));
+        Files.write(input.resolve("fine.txt"), "fine".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int status = BatchConverter.run(new String[] {"--threads", "3", input.toString(), folder.resolve("out").toString()},
+                                        new PrintStream(out, true), new PrintStream(err, true));
+
+        assertEquals(1, status);
+        assertTrue(err.toString().contains("broken.odt"));
+        assertTrue(out.toString().contains("Converted 1 files"));
+        assertTrue(out.toString().contains("files/s"));
+        assertTrue(Files.exists(folder.resolve("out/fine.txt.pdf")));
+    }
+
+    @Test
+    void testBadUsage() {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        assertEquals(2, BatchConverter.run(new String[] {"only-one"}, discard, discard));
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        assertEquals(2, BatchConverter.run(new String[] {"a", "b", "--threads"}, discard,
+                                           new PrintStream(errors, true)));
+        assertTrue(errors.toString().startsWith("Missing value for --threads"), errors.toString());
+        assertEquals(2, BatchConverter.run(new String[] {"--threads", "0", "a", "b"}, discard, discard));
+    }
+
+    @Test
+    void testPercentilesUseNearestRank() {
+        BatchConverter.Report report = new BatchConverter.Report();
+        for (int i = 1; i <= 100; i++) {
+            report.converted(1, i);
+        }
+        assertEquals(50, report.percentile(50));
+        assertEquals(90, report.percentile(90));
+        assertEquals(99, report.percentile(99));
+        assertEquals(100, report.percentile(100));
+        assertEquals(0, new BatchConverter.Report().percentile(50));
+    }
+
+    private String text(String pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(folder.resolve(pdf).toFile())) {
+            return new PDFTextStripper().getText(document);
+        }
+    }
+
+    private static void writeOdt(Path file, String content) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+    }
+}
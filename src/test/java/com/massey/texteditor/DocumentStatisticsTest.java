@@ -0,0 +1,164 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+public class DocumentStatisticsTest {
+
+    /** Runs on the EDT, where the statistics are kept. */
+    private static void onEdt(ThrowingRunnable task) throws Exception {
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    private static void awaitCount(DocumentStatistics statistics) throws Exception {
+        boolean[] counted = new boolean[1];
+        for (int i = 0; i < 500 && !counted[0]; i++) {
+            onEdt(() -> counted[0] = statistics.isCounted());
+            if (!counted[0]) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(counted[0], "first count never finished");
+    }
+
+    private static long words(String text) {
+        String trimmed = text.trim();
+        return trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+    }
+
+    @Test
+    void testCountsALargeDocumentInParallel() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < DocumentStatistics.CHUNK_CHARS * 3 + 100) {
+            text.append("the quick  brown\tfox\n");
+        }
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, text.toString(), null);
+        DocumentStatistics[] statistics = new DocumentStatistics[1];
+        onEdt(() -> statistics[0] = new DocumentStatistics(new JTextPane(document), () -> { }));
+        awaitCount(statistics[0]);
+        onEdt(() -> {
+            long lines = text.chars().filter(c -> c == '\n').count() + 1;
+            assertEquals(words(text.toString()), statistics[0].words());
+            assertEquals(text.length(), statistics[0].characters());
+            assertEquals(lines, statistics[0].lines());
+            // Chunk edges in the middle of a word do not count it twice
+            assertEquals(2, DocumentStatistics.count(document.snapshot(), 6, 14).words);
+        });
+    }
+
+    @Test
+    void testMatchesARecountUnderRandomEdits() throws Exception {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        DocumentStatistics[] statistics = new DocumentStatistics[1];
+        onEdt(() -> statistics[0] = new DocumentStatistics(pane, () -> { }));
+        awaitCount(statistics[0]);
+        onEdt(() -> {
+            Random random = new Random(11);
+            Document document = pane.getDocument();
+            String[] pieces = {"a", " ", "\n", "word ", " two words\n", "\t"};
+            for (int round = 0; round < 3000; round++) {
+                int length = document.getLength();
+                int offset = random.nextInt(length + 1);
+                if (random.nextInt(3) == 0 && length > 0) {
+                    document.remove(offset, Math.min(length - offset, random.nextInt(6)));
+                } else {
+                    document.insertString(offset, pieces[random.nextInt(pieces.length)], null);
+                }
+                String text = document.getText(0, document.getLength());
+                assertEquals(words(text), statistics[0].words(), "round " + round);
+                assertEquals(text.chars().filter(c -> c == '\n').count() + 1, statistics[0].lines());
+            }
+        });
+    }
+
+    @Test
+    void testCountsALongSelectionInTheBackground() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < DocumentStatistics.CHUNK_CHARS * 2) {
+            text.append("one two\n");
+        }
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, text.toString(), null);
+        int[] calls = new int[1];
+        DocumentStatistics[] statistics = new DocumentStatistics[1];
+        onEdt(() -> statistics[0] = new DocumentStatistics(new JTextPane(document), () -> calls[0]++));
+        awaitCount(statistics[0]);
+        int end = text.length() - 8;
+
+        onEdt(() -> {
+            assertEquals(2, statistics[0].selectionWords(4, 12));
+            calls[0] = 0;
+            assertEquals(-1, statistics[0].selectionWords(0, end));
+        });
+        long[] words = {-1};
+        for (int i = 0; i < 500 && words[0] < 0; i++) {
+            onEdt(() -> words[0] = statistics[0].selectionWords(0, end));
+            if (words[0] < 0) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(words(text.substring(0, end)), words[0]);
+        onEdt(() -> {
+            assertEquals(1, calls[0], "told once the count arrived");
+            // An edit makes the count stale
+            document.insertString(0, "more ", null);
+            assertEquals(-1, statistics[0].selectionWords(0, end));
+        });
+    }
+
+    @Test
+    void testSuspendedEditsAreCountedWhenResumed() throws Exception {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        DocumentStatistics[] statistics = new DocumentStatistics[1];
+        onEdt(() -> {
+            statistics[0] = new DocumentStatistics(pane, () -> { });
+            statistics[0].setSuspended(true);
+            pane.getDocument().insertString(0, "one two\nthree", null);
+            assertFalse(statistics[0].isCounted());
+            statistics[0].setSuspended(false);
+        });
+        awaitCount(statistics[0]);
+        onEdt(() -> {
+            assertEquals(3, statistics[0].words());
+            assertEquals(2, statistics[0].lines());
+        });
+    }
+
+    @Test
+    void testFollowsANewDocument() throws Exception {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        DocumentStatistics[] statistics = new DocumentStatistics[1];
+        onEdt(() -> statistics[0] = new DocumentStatistics(pane, () -> { }));
+        awaitCount(statistics[0]);
+        EditorDocument next = new EditorDocument();
+        try {
+            next.insertString(0, "alpha beta gamma", null);
+        } catch (BadLocationException e) {
+            fail(e);
+        }
+        onEdt(() -> pane.setDocument(next));
+        awaitCount(statistics[0]);
+        onEdt(() -> assertEquals(3, statistics[0].words()));
+    }
+}
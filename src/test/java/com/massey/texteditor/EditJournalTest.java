@@ -0,0 +1,163 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+
+public class EditJournalTest {
+
+    @TempDir
+    Path folder;
+
+    private Path journals() {
+        return folder.resolve("recovery");
+    }
+
+    private static String text(EditorDocument document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    /** Makes random edits to the document and records them, as the editor's listener would. */
+    private static void edit(EditorDocument document, EditJournal journal, Random random, int edits)
+            throws BadLocationException {
+        String[] pieces = {"a", "héllo ", "\n", "𝄞", "tab\there"};
+        for (int i = 0; i < edits; i++) {
+            int length = document.getLength();
+            int offset = random.nextInt(length + 1);
+            if (random.nextInt(3) == 0 && length > 0) {
+                int removed = Math.min(length - offset, random.nextInt(5));
+                document.remove(offset, removed);
+                journal.removed(offset, removed);
+            } else {
+                String piece = pieces[random.nextInt(pieces.length)];
+                document.insertString(offset, piece, null);
+                journal.inserted(offset, piece);
+            }
+        }
+    }
+
+    @Test
+    void testReplaysEditsOverANewDocument() throws Exception {
+        EditorDocument document = new EditorDocument();
+        EditJournal journal = EditJournal.open(journals(), "New Document", null, StandardCharsets.UTF_8,
+                                               AtomicTextWriter.Sync.NEVER, null);
+        Random random = new Random(3);
+        edit(document, journal, random, 200);
+        journal.flush(document.snapshot());
+        edit(document, journal, random, 200);
+        journal.flush(document.snapshot());
+        EditJournal.drain();
+        assertNull(journal.getFailure());
+
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getFile());
+        assertTrue(recovery.complete);
+        assertNull(recovery.base);
+        assertEquals("New Document", recovery.name);
+        assertEquals(text(document), text(recovery.document));
+        journal.discard();
+    }
+
+    @Test
+    void testReplaysOverTheBaseFileAndRefusesAChangedOne() throws Exception {
+        Path base = folder.resolve("notes.txt");
+        Files.write(base, "first line\r\nsecond line\n".getBytes(StandardCharsets.UTF_8));
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "first line\nsecond line\n", null);
+        EditJournal journal = EditJournal.open(journals(), "notes.txt", base, StandardCharsets.UTF_8,
+                                               AtomicTextWriter.Sync.DATA, null);
+        edit(document, journal, new Random(5), 100);
+        journal.flush(document.snapshot());
+        EditJournal.drain();
+
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getFile());
+        assertEquals(base.toAbsolutePath(), recovery.base);
+        assertEquals(text(document), text(recovery.document));
+
+        Files.write(base, "changed".getBytes(StandardCharsets.UTF_8));
+        IOException error = assertThrows(IOException.class, () -> EditJournal.recover(journal.getFile()));
+        assertTrue(error.getMessage().contains("has changed"), error.getMessage());
+        journal.discard();
+    }
+
+    @Test
+    void testStopsAtARecordCutShort() throws Exception {
+        EditorDocument document = new EditorDocument();
+        EditJournal journal = EditJournal.open(journals(), "New Document", null, StandardCharsets.UTF_8,
+                                               AtomicTextWriter.Sync.NEVER, null);
+        document.insertString(0, "kept", null);
+        journal.inserted(0, "kept");
+        journal.flush(document.snapshot());
+        journal.inserted(4, " and lost");
+        journal.flush(document.snapshot());
+        EditJournal.drain();
+        try (FileChannel channel = FileChannel.open(journal.getFile(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getFile());
+        assertFalse(recovery.complete);
+        assertEquals("kept", text(recovery.document));
+        journal.discard();
+    }
+
+    @Test
+    void testCompactsIntoASnapshotOnceLarge() throws Exception {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "start", null);
+        EditJournal journal = EditJournal.open(journals(), "big.rtf", null, StandardCharsets.UTF_8,
+                                               AtomicTextWriter.Sync.NEVER, document.snapshot());
+        StringBuilder chunk = new StringBuilder();
+        while (chunk.length() < 64 * 1024) {
+            chunk.append("churn ");
+        }
+        // Each round inserts and removes the same text, so the journal grows while the document does not
+        for (long written = 0; written < EditJournal.COMPACT_BYTES * 2; written += 2 * chunk.length()) {
+            document.insertString(5, chunk.toString(), null);
+            journal.inserted(5, chunk.toString());
+            document.remove(5, chunk.length());
+            journal.removed(5, chunk.length());
+            journal.flush(document.snapshot());
+        }
+        document.insertString(0, ">", null);
+        journal.inserted(0, ">");
+        journal.flush(document.snapshot());
+        EditJournal.drain();
+
+        assertTrue(Files.size(journal.getFile()) < EditJournal.COMPACT_BYTES, "size " + Files.size(journal.getFile()));
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getFile());
+        assertTrue(recovery.complete);
+        assertEquals(">start", text(recovery.document));
+        journal.discard();
+    }
+
+    @Test
+    void testListsOnlyJournalsNobodyHolds() throws Exception {
+        EditJournal live = EditJournal.open(journals(), "live", null, StandardCharsets.UTF_8,
+                                            AtomicTextWriter.Sync.NEVER, null);
+        live.inserted(0, "x");
+        live.flush(new EditorDocument().snapshot());
+        EditJournal.drain();
+        assertTrue(EditJournal.abandoned(journals()).isEmpty());
+
+        // What a crash leaves: a journal whose lock nobody holds
+        Path orphan = journals().resolve("edits-orphan" + EditJournal.SUFFIX);
+        Files.copy(live.getFile(), orphan);
+        assertEquals(1, EditJournal.abandoned(journals()).size());
+        assertEquals("live", EditJournal.nameOf(orphan));
+
+        live.discard();
+        EditJournal.drain();
+        assertFalse(Files.exists(live.getFile()));
+        EditJournal.delete(orphan);
+        assertTrue(EditJournal.abandoned(journals()).isEmpty());
+    }
+}
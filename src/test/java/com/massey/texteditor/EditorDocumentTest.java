@@ -0,0 +1,105 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+public class EditorDocumentTest {
+
+    private static SimpleAttributeSet color(Color color) {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        StyleConstants.setForeground(attributes, color);
+        return attributes;
+    }
+
+    @Test
+    void testSetLineStylesReplacesStylesOfTouchedLines() throws BadLocationException {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "int x = 1;\nfoo\nbar\n", null);
+        document.setCharacterAttributes(11, 3, color(Color.RED), true);
+        document.setCharacterAttributes(15, 3, color(Color.RED), true);
+
+        StyleRuns runs = new StyleRuns();
+        runs.add(0, 3, color(Color.BLUE));
+        runs.add(8, 1, color(Color.GREEN));
+        runs.add(11, 0, SimpleAttributeSet.EMPTY);
+        document.setLineStyles(runs);
+
+        assertEquals(Color.BLUE, foreground(document, 0));
+        assertEquals(Color.BLACK, foreground(document, 4));
+        assertEquals(Color.GREEN, foreground(document, 8));
+        assertEquals(Color.BLACK, foreground(document, 9));
+        assertEquals(Color.BLACK, foreground(document, 12), "Line with only an empty run is reset");
+        assertEquals(Color.RED, foreground(document, 16), "Untouched line keeps its styles");
+
+        Element first = document.getParagraphElement(0);
+        assertEquals(4, first.getElementCount());
+        assertEquals(11, first.getElement(3).getEndOffset());
+        assertEquals(1, document.getParagraphElement(12).getElementCount());
+        assertEquals("int x = 1;\nfoo\nbar\n", document.getText(0, document.getLength()));
+    }
+
+    @Test
+    void testSetLineStylesFiresOneChangeEvent() throws BadLocationException {
+        EditorDocument document = new EditorDocument();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("a b c d\n");
+        }
+        document.insertString(0, text.toString(), null);
+        List<DocumentEvent> events = new ArrayList<>();
+        document.addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                events.add(e);
+            }
+            public void removeUpdate(DocumentEvent e) {
+                events.add(e);
+            }
+            public void changedUpdate(DocumentEvent e) {
+                events.add(e);
+            }
+        });
+        int[] undoable = new int[1];
+        document.addUndoableEditListener(e -> undoable[0]++);
+
+        StyleRuns runs = new StyleRuns();
+        for (int line = 0; line < 100; line++) {
+            for (int i = 0; i < 4; i++) {
+                runs.add(line * 8 + i * 2, 1, color(i % 2 == 0 ? Color.BLUE : Color.GRAY));
+            }
+        }
+        document.setLineStyles(runs);
+
+        assertEquals(1, events.size());
+        assertEquals(DocumentEvent.EventType.CHANGE, events.get(0).getType());
+        assertEquals(0, events.get(0).getOffset());
+        assertEquals(800, events.get(0).getLength());
+        assertEquals(0, undoable[0], "Style batches are not undoable edits");
+        assertEquals(Color.GRAY, foreground(document, 8 * 57 + 2));
+        assertEquals(8, document.getParagraphElement(8 * 57).getElementCount());
+    }
+
+    @Test
+    void testSnapshotMatchesText() throws BadLocationException {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "hello", null);
+        PieceTableContent.Snapshot snapshot = document.snapshot();
+        document.insertString(5, " world", null);
+        assertEquals(5, snapshot.length());
+        assertEquals("hello", snapshot.getString(0, 5));
+        assertEquals(11, document.snapshot().length());
+    }
+
+    private static Color foreground(EditorDocument document, int offset) {
+        return StyleConstants.getForeground(document.getCharacterElement(offset).getAttributes());
+    }
+}
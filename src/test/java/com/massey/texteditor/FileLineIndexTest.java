@@ -0,0 +1,101 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FileLineIndexTest {
+
+    @TempDir
+    Path folder;
+
+    private Path write(String name, String text) throws IOException {
+        Path file = folder.resolve(name);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    void testIndexesEveryLineAcrossWindowsAndCheckpoints() throws Exception {
+        StringBuilder text = new StringBuilder();
+        int count = FileLineIndex.STRIDE * 5 + 17;
+        for (int i = 0; i < count; i++) {
+            text.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Path file = write("log.txt", text.toString());
+        List<Integer> progress = new ArrayList<>();
+        // A small window puts many lines across window edges
+        try (FileLineIndex index = new FileLineIndex(file, StandardCharsets.UTF_8, 1000)) {
+            index.build(progress::add);
+            assertTrue(index.isComplete());
+            assertEquals(count, index.lineCount());
+            assertEquals(100, (int) progress.get(progress.size() - 1));
+
+            for (long line : new long[] {0, 1, FileLineIndex.STRIDE - 1, FileLineIndex.STRIDE, count - 1}) {
+                assertEquals(Arrays.asList("line " + line), index.lines(line, 1));
+                long start = index.lineStart(line);
+                assertEquals(text.indexOf("line " + line + (line % 3 == 0 ? "\r" : "\n")), start);
+                assertEquals(line, index.lineOf(start));
+                assertEquals(line, index.lineOf(start + 5));
+            }
+            List<String> lines = index.lines(count - 3, 10);
+            assertEquals(Arrays.asList("line " + (count - 3), "line " + (count - 2), "line " + (count - 1)), lines);
+        }
+    }
+
+    @Test
+    void testLastLineWithoutBreakEmptyFileAndLongLines() throws Exception {
+        try (FileLineIndex index = new FileLineIndex(write("empty.txt", ""), StandardCharsets.UTF_8)) {
+            index.build(percent -> { });
+            assertEquals(1, index.lineCount());
+            assertEquals(Arrays.asList(""), index.lines(0, 5));
+        }
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < FileLineIndex.MAX_LINE_BYTES + 100; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+        Path file = write("mixed.txt", "a\tb\n" + longLine + "\nend");
+        try (FileLineIndex index = new FileLineIndex(file, StandardCharsets.UTF_8)) {
+            index.build(percent -> { });
+            assertEquals(3, index.lineCount());
+            List<String> lines = index.lines(0, 3);
+            assertEquals("a   b", lines.get(0));
+            assertEquals(longLine.substring(0, FileLineIndex.MAX_LINE_BYTES) + " …", lines.get(1));
+            assertEquals("end", lines.get(2));
+        }
+    }
+
+    @Test
+    void testInterruptedBuildKeepsWhatWasIndexed() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        Path file = write("log.txt", text.toString());
+        try (FileLineIndex index = new FileLineIndex(file, StandardCharsets.UTF_8, 2000)) {
+            assertThrows(java.io.InterruptedIOException.class, () -> index.build(percent -> {
+                if (percent > 20) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertFalse(index.isComplete());
+            long lines = index.lineCount();
+            assertTrue(lines > 0 && lines < 1000, "lines " + lines);
+            assertEquals(Arrays.asList("line " + (lines - 1)), index.lines(lines - 1, 5));
+        }
+    }
+
+    @Test
+    void testCharsetsWithoutSingleByteLineBreaksFallBackToUtf8() {
+        assertEquals(StandardCharsets.ISO_8859_1, FileLineIndex.byteCharset(StandardCharsets.ISO_8859_1));
+        assertEquals(StandardCharsets.UTF_8, FileLineIndex.byteCharset(StandardCharsets.UTF_16));
+    }
+}
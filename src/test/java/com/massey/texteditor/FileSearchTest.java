@@ -0,0 +1,172 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FileSearchTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void testFindsHitsAcrossWindowEdges() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append(i % 7 == 0 ? " needle here" : "").append("\r\n");
+        }
+        Path file = write("big.txt", text.toString());
+        String[] lines = text.toString().split("\r\n");
+
+        // Tiny windows put many hits across a window edge
+        for (int window : new int[] {16, 100, FileSearch.WINDOW_BYTES}) {
+            List<FileSearch.Hit> hits = new FileSearch(folder, "needle", true, StandardCharsets.UTF_8, window)
+                    .search(file);
+            assertEquals(72, hits.size(), "window " + window);
+            for (FileSearch.Hit hit : hits) {
+                assertEquals(0, hit.line % 7);
+                assertEquals(lines[hit.line], hit.text);
+                assertEquals(lines[hit.line].indexOf("needle"), hit.column);
+            }
+        }
+    }
+
+    @Test
+    void testNextFindsTheFirstHitAfterAnOffset() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append("line ").append(i).append(i % 50 == 49 ? " NEEDLE" : "").append('\n');
+        }
+        Path file = write("log.txt", text.toString());
+        String content = text.toString();
+        for (int window : new int[] {16, 100, FileSearch.WINDOW_BYTES}) {
+            FileSearch search = new FileSearch(file, "needle", false, StandardCharsets.UTF_8, window);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long first = search.next(channel, 0);
+                assertEquals(content.indexOf("NEEDLE"), first, "window " + window);
+                assertEquals(content.indexOf("NEEDLE", (int) first + 1), search.next(channel, first + 1));
+                assertEquals(-1, search.next(channel, content.lastIndexOf("NEEDLE") + 1));
+            }
+        }
+    }
+
+    @Test
+    void testColumnCountsCharactersAndCaseIsFolded() throws Exception {
+        Path file = write("notes.txt", "first\nhéllo Wörld World\nWORLD");
+        List<FileSearch.Hit> hits = new FileSearch(folder, "world", false, StandardCharsets.UTF_8).search(file);
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.get(0).line);
+        assertEquals(12, hits.get(0).column);
+        assertEquals(2, hits.get(1).line);
+        assertEquals(0, hits.get(1).column);
+        assertTrue(new FileSearch(folder, "world", true, StandardCharsets.UTF_8).search(file).isEmpty());
+    }
+
+    @Test
+    void testHitsOnOneLongLineKeepOnlyTheTextAroundThem() throws Exception {
+        // A minified file: one long line with a hit every few hundred bytes
+        StringBuilder text = new StringBuilder();
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            text.append("var é").append(i).append("=1;");
+            if (i % 2 == 0) {
+                columns.add(text.length());
+                text.append("needle;");
+            }
+            for (int pad = 0; pad < 40; pad++) {
+                text.append("x;");
+            }
+        }
+        Path file = write("app.min.js", text.toString());
+
+        for (int window : new int[] {1000, FileSearch.WINDOW_BYTES}) {
+            List<FileSearch.Hit> hits = new FileSearch(folder, "needle", true, StandardCharsets.UTF_8, window)
+                    .search(file);
+            assertEquals(columns.size(), hits.size(), "window " + window);
+            for (int i = 0; i < hits.size(); i++) {
+                FileSearch.Hit hit = hits.get(i);
+                assertEquals(0, hit.line);
+                assertEquals((int) columns.get(i), hit.column);
+                assertTrue(hit.text.length() <= 402, "text of " + hit.text.length());
+                assertTrue(hit.text.contains("needle"));
+            }
+        }
+    }
+
+    @Test
+    void testLoneCarriageReturnsEndLines() throws Exception {
+        Path file = write("mac.txt", "one\rtwo needle\r\nthree\n\rneedle\r");
+        for (int window : new int[] {8, FileSearch.WINDOW_BYTES}) {
+            List<FileSearch.Hit> hits = new FileSearch(folder, "needle", true, StandardCharsets.UTF_8, window)
+                    .search(file);
+            assertEquals(2, hits.size(), "window " + window);
+            assertEquals(1, hits.get(0).line);
+            assertEquals("two needle", hits.get(0).text);
+            assertEquals(4, hits.get(0).column);
+            assertEquals(4, hits.get(1).line);
+            assertEquals("needle", hits.get(1).text);
+            assertEquals(0, hits.get(1).column);
+        }
+    }
+
+    @Test
+    void testWalksOnlyTextFiles() throws Exception {
+        write("a.java", "class A { int target; }");
+        write("b.bin", "target");
+        write("README", "target");
+        Files.createDirectories(folder.resolve("src/deep"));
+        write("src/deep/c.py", "target = 1\ntarget = 2\n");
+        write("src/d.js", "nothing");
+
+        List<String> found = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            int scanned = new FileSearch(folder, "target", true, StandardCharsets.UTF_8).run(pool, 3, (file, hits) -> {
+                for (FileSearch.Hit hit : hits) {
+                    found.add(folder.relativize(file).toString().replace('\\', '/') + ":" + hit.line);
+                }
+                return true;
+            });
+            assertEquals(3, scanned);
+        } finally {
+            pool.shutdownNow();
+        }
+        Collections.sort(found);
+        assertEquals(List.of("a.java:0", "src/deep/c.py:0", "src/deep/c.py:1"), found);
+    }
+
+    @Test
+    void testListenerCanStopTheSearch() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            write("f" + i + ".txt", "target");
+        }
+        int[] calls = new int[1];
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            new FileSearch(folder, "target", true, StandardCharsets.UTF_8).run(pool, 1, (file, hits) -> {
+                calls[0]++;
+                return false;
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, calls[0]);
+    }
+
+    private Path write(String name, String text) throws Exception {
+        Path file = folder.resolve(name);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
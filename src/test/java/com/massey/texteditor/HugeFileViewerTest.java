@@ -0,0 +1,54 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HugeFileViewerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void testGoToLineScrollsAndReportsPosition() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("entry ").append(i).append('\n');
+        }
+        Path file = folder.resolve("app.log");
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+        List<String> status = new ArrayList<>();
+        try (FileLineIndex index = new FileLineIndex(file, StandardCharsets.UTF_8)) {
+            index.build(percent -> { });
+            HugeFileViewer viewer = new HugeFileViewer(index, new Font(Font.MONOSPACED, Font.PLAIN, 12), status::add);
+            viewer.setSize(400, 300);
+            viewer.doLayout();
+            viewer.indexChanged();
+
+            viewer.goToLine(2999);
+            assertEquals(2999, viewer.getSelectedLine());
+            assertTrue(viewer.getTopLine() <= 2999 && viewer.getTopLine() > 2900, "top " + viewer.getTopLine());
+            assertEquals("Ln 3,000 of 5,000", status.get(status.size() - 1));
+            assertEquals("entry 2999", viewer.getSelectedText());
+
+            // Scrolling stops with the last line at the bottom
+            viewer.scrollTo(Long.MAX_VALUE / 2);
+            assertTrue(viewer.getTopLine() < 5000 && viewer.getTopLine() > 4900);
+            viewer.goToLine(-10);
+            assertEquals(0, viewer.getSelectedLine());
+            assertEquals(0, viewer.getTopLine());
+
+            // Painting decodes only what is on screen
+            BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+            viewer.paint(image.getGraphics());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import javax.swing.JTextPane;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+public class LineIndexTest {
+
+    @Test
+    void testFindsLinesAndColumns() throws BadLocationException {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        pane.getDocument().insertString(0, "one\ntwo\n\nfour", null);
+        LineIndex index = new LineIndex(pane);
+        assertEquals(4, index.lineCount());
+        assertEquals(0, index.lineOf(3));
+        assertEquals(1, index.lineOf(4));
+        assertEquals(3, index.lineOf(13));
+        assertEquals(8, index.lineStart(2));
+        assertEquals(8, index.lineEnd(2));
+        assertEquals(13, index.lineEnd(3));
+        assertEquals(2, index.columnOf(11));
+    }
+
+    @Test
+    void testTypingAtTheStartOfALineKeepsItsStart() throws BadLocationException {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        LineIndex index = new LineIndex(pane);
+        Document document = pane.getDocument();
+        document.insertString(0, "ab\ncd", null);
+        document.insertString(3, "xy", null);
+        assertEquals(3, index.lineStart(1));
+        assertEquals(2, index.lineEnd(0));
+        document.insertString(2, "\n\n", null);
+        assertEquals(4, index.lineCount());
+        assertEquals(5, index.lineStart(3));
+        document.remove(1, 3);
+        assertEquals("a\nxycd", document.getText(0, document.getLength()));
+        assertEquals(2, index.lineCount());
+        assertEquals(2, index.lineStart(1));
+    }
+
+    @Test
+    void testFollowsANewDocument() throws BadLocationException {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        LineIndex index = new LineIndex(pane);
+        EditorDocument next = new EditorDocument();
+        next.insertString(0, "a\nb\nc", null);
+        pane.setDocument(next);
+        assertEquals(3, index.lineCount());
+        next.insertString(0, "\n", null);
+        assertEquals(4, index.lineCount());
+    }
+
+    @Test
+    void testMatchesTheDocumentLinesUnderRandomEdits() throws BadLocationException {
+        Random random = new Random(7);
+        JTextPane pane = new JTextPane(new EditorDocument());
+        LineIndex index = new LineIndex(pane);
+        Document document = pane.getDocument();
+        String[] pieces = {"a", "bc\n", "\n", "\n\nxyz", "hello world"};
+        for (int round = 0; round < 2000; round++) {
+            int length = document.getLength();
+            int offset = random.nextInt(length + 1);
+            if (random.nextInt(3) == 0 && length > 0) {
+                document.remove(offset, Math.min(length - offset, random.nextInt(8)));
+            } else {
+                document.insertString(offset, pieces[random.nextInt(pieces.length)], null);
+            }
+            Element root = document.getDefaultRootElement();
+            assertEquals(root.getElementCount(), index.lineCount(), "round " + round);
+            int probe = random.nextInt(document.getLength() + 1);
+            int line = root.getElementIndex(probe);
+            assertEquals(line, index.lineOf(probe), "round " + round);
+            assertEquals(root.getElement(line).getStartOffset(), index.lineStart(line), "round " + round);
+        }
+    }
+}
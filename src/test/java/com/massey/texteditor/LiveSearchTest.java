@@ -0,0 +1,128 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+public class LiveSearchTest {
+
+    @Test
+    void testHitsFollowRandomEdits() throws BadLocationException {
+        for (boolean wholeWord : new boolean[] {false, true}) {
+            JTextPane pane = new JTextPane(new EditorDocument());
+            EditorDocument document = (EditorDocument) pane.getDocument();
+            document.insertString(0, "the cat sat on the mat; the end", null);
+            LiveSearch search = new LiveSearch(pane, text -> { });
+            search.setQuery("the", false, wholeWord);
+
+            Random random = new Random(wholeWord ? 2 : 1);
+            String[] pieces = {"the", "he", "t", " ", "xthe", "The ", "e", "th"};
+            for (int round = 0; round < 2000; round++) {
+                int length = document.getLength();
+                if (length > 0 && random.nextInt(3) == 0) {
+                    int offset = random.nextInt(length);
+                    document.remove(offset, Math.min(length - offset, 1 + random.nextInt(4)));
+                } else {
+                    document.insertString(random.nextInt(length + 1), pieces[random.nextInt(pieces.length)], null);
+                }
+                assertArrayEquals(new SearchEngine("the", false, wholeWord).findAll(document), search.hits(),
+                                  "round " + round + " of \"" + document.getText(0, document.getLength()) + "\"");
+            }
+        }
+    }
+
+    @Test
+    void testNarrowingMatchesFullSearch() throws BadLocationException {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        pane.getDocument().insertString(0, "format for fork forest FOR forty", null);
+        LiveSearch search = new LiveSearch(pane, text -> { });
+        search.setQuery("f", false, false);
+        search.setQuery("fo", false, false);
+        search.setQuery("for", false, false);
+        assertEquals(6, search.count());
+        search.setQuery("fore", false, false);
+        assertArrayEquals(new SearchEngine("fore", false, false).findAll(pane.getDocument()), search.hits());
+        assertEquals(1, search.count());
+    }
+
+    @Test
+    void testReportsPositionOfSelectedHit() throws BadLocationException {
+        JTextPane pane = new JTextPane(new EditorDocument());
+        pane.getDocument().insertString(0, "a b a b a", null);
+        AtomicReference<String> status = new AtomicReference<>();
+        LiveSearch search = new LiveSearch(pane, status::set);
+        search.setQuery("a", true, false);
+        assertEquals("3 matches", status.get());
+        pane.setCaretPosition(0);
+        search.selectNext();
+        assertEquals(4, pane.getSelectionStart());
+        assertEquals("2 of 3", status.get());
+        search.setQuery("z", true, false);
+        assertEquals("No matches for z", status.get());
+    }
+
+    @Test
+    void testLargeDocumentsAreSearchedAgainInTheBackground() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; text.length() <= LiveSearch.SYNC_CHARS; line++) {
+            text.append(line % 100 == 0 ? "alpha beta gamma\n" : "alpha beta\n");
+        }
+        JTextPane pane = new JTextPane(new EditorDocument());
+        pane.getDocument().insertString(0, text.toString(), null);
+        LiveSearch[] search = new LiveSearch[1];
+        int[] betas = new int[1];
+        onEdt(() -> {
+            search[0] = new LiveSearch(pane, status -> { });
+            search[0].setQuery("beta", true, false);
+            assertTrue(search[0].isSearching());
+        });
+        awaitSearch(search[0]);
+        onEdt(() -> {
+            betas[0] = search[0].count();
+            assertArrayEquals(new SearchEngine("beta", true, false).findAll(pane.getDocument()), search[0].hits());
+
+            search[0].setQuery("gamma", true, false);
+            assertTrue(search[0].isSearching());
+            assertEquals(betas[0], search[0].count(), "old hits stay until the new ones arrive");
+            // Edited while the snapshot is being searched, so the search runs again
+            pane.getDocument().insertString(0, "gamma ", null);
+        });
+        awaitSearch(search[0]);
+        onEdt(() -> assertArrayEquals(new SearchEngine("gamma", true, false).findAll(pane.getDocument()),
+                                      search[0].hits()));
+    }
+
+    private static void awaitSearch(LiveSearch search) throws Exception {
+        boolean[] searching = {true};
+        for (int i = 0; i < 500 && searching[0]; i++) {
+            onEdt(() -> searching[0] = search.isSearching());
+            if (searching[0]) {
+                Thread.sleep(10);
+            }
+        }
+        assertFalse(searching[0], "search never finished");
+    }
+
+    private static void onEdt(ThrowingRunnable task) throws Exception {
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
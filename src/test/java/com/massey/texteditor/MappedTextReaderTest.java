@@ -0,0 +1,52 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedTextReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLineSeparatorsAreNormalised() throws IOException {
+        Path file = tempDir.resolve("crlf.txt");
+        Files.write(file, "one\r\ntwo\rthree\nfour\r".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("one\ntwo\nthree\nfour\n", readAll(file, MappedTextReader.WINDOW_BYTES));
+    }
+
+    @Test
+    void testMultiByteCharactersAcrossWindows() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append("é中😀 line ").append(i).append('\n');
+        }
+        Path file = tempDir.resolve("utf8.txt");
+        Files.write(file, expected.toString().getBytes(StandardCharsets.UTF_8));
+
+        // Tiny windows force characters to straddle the window edges
+        assertEquals(expected.toString(), readAll(file, 7));
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path file = tempDir.resolve("empty.txt");
+        Files.write(file, new byte[0]);
+
+        assertEquals("", readAll(file, MappedTextReader.WINDOW_BYTES));
+    }
+
+    private String readAll(Path file, int windowBytes) throws IOException {
+        StringBuilder text = new StringBuilder();
+        MappedTextReader.read(file, StandardCharsets.UTF_8, windowBytes,
+                              (chars, length) -> text.append(chars, 0, length));
+        return text.toString();
+    }
+}
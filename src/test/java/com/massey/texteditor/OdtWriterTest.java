@@ -0,0 +1,84 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+public class OdtWriterTest {
+
+    @TempDir
+    Path folder;
+
+    private Path write(EditorDocument document) throws IOException {
+        Path file = folder.resolve("out.odt");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            OdtWriter.write(StyledSnapshot.capture(document), out, chars -> { });
+        }
+        return file;
+    }
+
+    private static String entry(ZipFile zip, String name) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testWritesAValidPackage() throws Exception {
+        Path file = write(RtfWriterTest.styledDocument());
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            ZipEntry first = zip.entries().nextElement();
+            assertEquals("mimetype", first.getName());
+            assertEquals(ZipEntry.STORED, first.getMethod());
+            assertEquals(OdtWriter.MIME_TYPE, entry(zip, "mimetype"));
+            assertTrue(entry(zip, "META-INF/manifest.xml").contains("content.xml"));
+            String content = entry(zip, "content.xml");
+            assertTrue(content.contains("fo:font-weight=\"bold\""));
+            assertTrue(content.contains("fo:color=\"#ff0000\""));
+            assertTrue(content.contains("fo:font-style=\"italic\""));
+            assertTrue(content.contains("<text:span text:style-name=\"T1\">"));
+        }
+    }
+
+    @Test
+    void testWhiteSpaceRoundTrips() throws Exception {
+        String text = "  leading and   inner spaces \n\ttab\tand trailing  \n\nafter <an & empty> line ";
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, text, null);
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        // A styled run that starts on a space and crosses a line break
+        document.setCharacterAttributes(text.indexOf(" inner") - 1, 20, bold, false);
+
+        String read = TextImporter.readOdt(write(document).toFile(), percent -> { });
+        // Every paragraph ends with a line break when read back
+        assertEquals(text + "\n", read);
+    }
+
+    @Test
+    void testStyleCarriesAcrossParagraphs() throws Exception {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "one\ntwo", null);
+        SimpleAttributeSet italic = new SimpleAttributeSet();
+        StyleConstants.setItalic(italic, true);
+        document.setCharacterAttributes(0, document.getLength(), italic, false);
+
+        try (ZipFile zip = new ZipFile(write(document).toFile())) {
+            String content = entry(zip, "content.xml");
+            assertTrue(content.contains("<text:p><text:span text:style-name=\"T1\">one</text:span></text:p>"
+                                        + "<text:p><text:span text:style-name=\"T1\">two</text:span></text:p>"),
+                       content);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class OffsetIndexTest {
+
+    @Test
+    void testAddKeepsOrderWithoutDuplicates() {
+        OffsetIndex index = new OffsetIndex(100);
+        for (int offset : new int[] {50, 10, 90, 10, 30, 50}) {
+            index.add(offset);
+        }
+        assertArrayEquals(new int[] {10, 30, 50, 90}, index.toArray());
+        assertEquals(2, index.ceiling(31));
+        assertEquals(4, index.ceiling(91));
+    }
+
+    @Test
+    void testReplaceShiftsLaterOffsets() {
+        OffsetIndex index = new OffsetIndex(100);
+        for (int offset : new int[] {10, 20, 30, 40}) {
+            index.add(offset);
+        }
+        index.replace(20, 0, 5);
+        assertArrayEquals(new int[] {10, 25, 35, 45}, index.toArray());
+        index.replace(12, 20, 1);
+        assertArrayEquals(new int[] {10, 16, 26}, index.toArray());
+    }
+
+    @Test
+    void testMatchesReferenceListUnderRandomEdits() {
+        Random random = new Random(13);
+        int length = 1000;
+        OffsetIndex index = new OffsetIndex(length);
+        List<Integer> expected = new ArrayList<>();
+        for (int round = 0; round < 5000; round++) {
+            int offset = random.nextInt(length + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (offset < length && !expected.contains(offset)) {
+                        expected.add(offset);
+                        expected.sort(null);
+                    }
+                    if (offset < length) {
+                        index.add(offset);
+                    }
+                    break;
+                case 1: {
+                    int to = Math.min(length, offset + random.nextInt(20));
+                    expected.removeIf(o -> o >= offset && o < to);
+                    index.removeRange(offset, to);
+                    break;
+                }
+                default: {
+                    int removed = random.nextInt(Math.min(10, length - offset) + 1);
+                    int inserted = random.nextInt(10);
+                    List<Integer> next = new ArrayList<>();
+                    for (int o : expected) {
+                        if (o < offset) {
+                            next.add(o);
+                        } else if (o >= offset + removed) {
+                            next.add(o + inserted - removed);
+                        }
+                    }
+                    expected = next;
+                    length += inserted - removed;
+                    index.replace(offset, removed, inserted);
+                }
+            }
+            assertEquals(expected.size(), index.size(), "round " + round);
+        }
+        int[] actual = index.toArray();
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals((int) expected.get(i), actual[i]);
+        }
+    }
+}
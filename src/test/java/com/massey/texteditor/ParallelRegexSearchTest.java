@@ -0,0 +1,148 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.text.BadLocationException;
+
+public class ParallelRegexSearchTest {
+
+    private static final String LOG;
+
+    static {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            text.append(i % 17 == 0 ? "ERROR" : "INFO").append(" request ").append(i)
+                .append(i % 5 == 0 ? " took 12ms" : "").append('\n');
+            if (i % 250 == 0) {
+                text.append("BEGIN\n  multi\n  line\nEND\n");
+            }
+        }
+        LOG = text.toString();
+    }
+
+    @Test
+    void testSameHitsAsOneMatcher() throws Exception {
+        String[] patterns = {
+            "ERROR", "^INFO.*$", "\\d+ms", "(?s)BEGIN.*?END", "\\n\\n*", "x*", "(?<=request )\\d{3}\\b", "$",
+        };
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String regex : patterns) {
+                Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
+                // Tiny chunks put chunk boundaries inside many matches
+                for (int chunk : new int[] {64, 1000, ParallelRegexSearch.CHUNK_CHARS}) {
+                    assertEquals(sequential(LOG, pattern), parallel(LOG, pattern, chunk, pool),
+                                 regex + " in chunks of " + chunk);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testMatchLongerThanOverlap() throws Exception {
+        StringBuilder text = new StringBuilder("head\n<<");
+        for (int i = 0; i < ParallelRegexSearch.OVERLAP_CHARS / 8 + 100; i++) {
+            text.append("content\n");
+        }
+        text.append(">> tail\n<<short>>\n");
+        // Greedy, so the matcher stops at the overlap limit with a shortened match
+        Pattern pattern = Pattern.compile("<<[^>]*");
+
+        List<int[]> hits = parallel(text.toString(), pattern, 100, ForkJoinPool.commonPool());
+        assertEquals(sequential(text.toString(), pattern), hits);
+        assertEquals(2, hits.size());
+    }
+
+    @Test
+    void testListenerCanStopTheSearch() throws Exception {
+        EditorDocument document = documentOf(LOG);
+        ParallelRegexSearch search = new ParallelRegexSearch(document.snapshot(), Pattern.compile("INFO"), 256);
+        int[] batches = new int[1];
+        int total = search.run(ForkJoinPool.commonPool(), (starts, ends, count) -> {
+            batches[0]++;
+            return false;
+        });
+        assertEquals(1, batches[0]);
+        assertTrue(total > 0 && total < sequential(LOG, Pattern.compile("INFO")).size());
+    }
+
+    @Test
+    void testEmptyDocument() throws Exception {
+        EditorDocument document = new EditorDocument();
+        ParallelRegexSearch search = new ParallelRegexSearch(document.snapshot(), Pattern.compile("x*"));
+        assertEquals(1, search.chunks());
+        assertEquals(1, search.run(ForkJoinPool.commonPool(), (starts, ends, count) -> true));
+    }
+
+    private static List<int[]> parallel(String text, Pattern pattern, int chunkChars, ForkJoinPool pool)
+            throws BadLocationException, InterruptedException {
+        EditorDocument document = documentOf(text);
+        List<int[]> hits = new ArrayList<>();
+        int total = new ParallelRegexSearch(document.snapshot(), pattern, chunkChars).run(pool, (starts, ends, count) -> {
+            for (int i = 0; i < count; i++) {
+                hits.add(new int[] {starts[i], ends[i]});
+            }
+            return true;
+        });
+        assertEquals(hits.size(), total);
+        return new HitList(hits);
+    }
+
+    private static List<int[]> sequential(String text, Pattern pattern) {
+        List<int[]> hits = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            hits.add(new int[] {matcher.start(), matcher.end()});
+        }
+        return new HitList(hits);
+    }
+
+    private static EditorDocument documentOf(String text) throws BadLocationException {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, text, null);
+        return document;
+    }
+
+    /** Compares hits by value so assertEquals can show the first difference. */
+    private static final class HitList extends ArrayList<int[]> {
+        HitList(List<int[]> hits) {
+            super(hits);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof List) || ((List<?>) other).size() != size()) {
+                return false;
+            }
+            for (int i = 0; i < size(); i++) {
+                int[] hit = (int[]) ((List<?>) other).get(i);
+                if (hit[0] != get(i)[0] || hit[1] != get(i)[1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return size();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("[");
+            for (int[] hit : this) {
+                text.append(hit[0]).append('-').append(hit[1]).append(' ');
+            }
+            return text.append(']').toString();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+public class PdfExporterTest {
+
+    private static final PDFont FONT = PDType1Font.HELVETICA;
+    private static final float WIDTH = 495.28f;
+
+    @Test
+    void testBreaksLinesLikeWordByWordMeasuring() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append(i % 11 == 0 ? "\n" : "").append("word").append(i % 13 == 0 ? "ier " : " ")
+                .append(i % 9 == 0 ? "lorem ipsum dolor " : "");
+        }
+        for (String paragraph : text.toString().trim().split("\n")) {
+            assertEquals(measureWordByWord(paragraph.trim()), breakLines(paragraph.trim()));
+        }
+    }
+
+    @Test
+    void testCutsWordsWiderThanALine() throws IOException {
+        String word = "x".repeat(500);
+        List<String> lines = breakLines(word);
+        assertTrue(lines.size() > 1);
+        assertEquals(word, String.join("", lines));
+        for (String line : lines) {
+            assertTrue(FONT.getStringWidth(line) / 1000 * 12 < WIDTH);
+        }
+    }
+
+    @Test
+    void testExpandsTabsAndReplacesUnencodableCharacters() throws IOException {
+        assertEquals(List.of("a   b       c"), breakLines("a\tb\t\tc"));
+        assertEquals(List.of("café ? €"), breakLines("café 中 €"));
+    }
+
+    @Test
+    void testExportsPagesInOrder(@TempDir Path folder) throws IOException {
+        EditorDocument document = new EditorDocument();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Line ").append(i).append('\n');
+        }
+        try {
+            document.insertString(0, text.toString(), null);
+        } catch (javax.swing.text.BadLocationException e) {
+            throw new AssertionError(e);
+        }
+        File file = folder.resolve("out.pdf").toFile();
+        PdfExporter.export(document.snapshot(), FONT, 12, file);
+
+        try (PDDocument pdf = PDDocument.load(file)) {
+            // 742 pt of page height, 27 pt per line of source text
+            assertEquals(8, pdf.getNumberOfPages());
+            String extracted = new PDFTextStripper().getText(pdf);
+            assertTrue(extracted.indexOf("Line 0") < extracted.indexOf("Line 100"));
+            assertTrue(extracted.contains("Line 199"));
+        }
+    }
+
+    @Test
+    void testEmptyTextGivesOneBlankPage(@TempDir Path folder) throws IOException {
+        File file = folder.resolve("empty.pdf").toFile();
+        PdfExporter.export(new EditorDocument().snapshot(), FONT, 12, file);
+        try (PDDocument pdf = PDDocument.load(file)) {
+            assertEquals(1, pdf.getNumberOfPages());
+        }
+        // A new file gets what the umask allows, not the owner-only permissions of a temporary file
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Path plain = Files.createFile(folder.resolve("plain.txt"));
+            assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(file.toPath()));
+        }
+    }
+
+    @Test
+    void testParallelExportMatchesSequential(@TempDir Path folder) throws Exception {
+        StringBuilder text = new StringBuilder("\n\nstarts with blank lines\n");
+        for (int i = 0; i < 400; i++) {
+            text.append("paragraph ").append(i).append(' ');
+            for (int j = 0; j < i % 23; j++) {
+                text.append("some words to wrap ");
+            }
+            text.append(i % 7 == 0 ? "\n\n" : "\n");
+        }
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, text.toString(), null);
+
+        File sequential = folder.resolve("sequential.pdf").toFile();
+        PdfExporter.export(document.snapshot(), FONT, 12, sequential);
+        List<Integer> percents = new ArrayList<>();
+        File parallel = folder.resolve("parallel.pdf").toFile();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Small blocks so page breaks fall inside and between many of them
+            PdfExporter.export(document.snapshot(), FONT, 12, parallel, pool, percents::add, 500);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(100, (int) percents.get(percents.size() - 1));
+        try (PDDocument one = PDDocument.load(sequential); PDDocument many = PDDocument.load(parallel)) {
+            assertTrue(one.getNumberOfPages() > 10);
+            assertEquals(one.getNumberOfPages(), many.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(one), new PDFTextStripper().getText(many));
+        }
+    }
+
+    @Test
+    void testBlocksEndAfterLineEnds() throws Exception {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "aaaa\nbbbbbbbbbb\nc\n\nddd", null);
+        assertArrayEquals(new int[] {0, 5, 16, 18, 22}, PdfExporter.blockBounds(document.snapshot(), 1));
+        assertArrayEquals(new int[] {0, 16, 22}, PdfExporter.blockBounds(document.snapshot(), 6));
+        assertArrayEquals(new int[] {0, 0}, PdfExporter.blockBounds(new EditorDocument().snapshot(), 6));
+    }
+
+    @Test
+    void testInterruptedExportLeavesTargetAlone(@TempDir Path folder) throws Exception {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "text\n".repeat(1000), null);
+        File target = folder.resolve("existing.pdf").toFile();
+        java.nio.file.Files.write(target.toPath(), new byte[] {1, 2, 3});
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedException.class, () -> PdfExporter.export(
+                    document.snapshot(), FONT, 12, target, ForkJoinPool.commonPool(), percent -> { }, 100));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(3, target.length());
+        assertEquals(1, folder.toFile().list().length);
+    }
+
+    private static List<String> breakLines(String text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        PdfLineBreaker breaker = new PdfLineBreaker(GlyphWidths.of(FONT), WIDTH / 12 * 1000, new PdfLineBreaker.Sink() {
+            @Override
+            public void line(String line) {
+                lines.add(line);
+            }
+
+            @Override
+            public void paragraphEnd() {
+            }
+        });
+        breaker.append(text);
+        breaker.finish();
+        return lines;
+    }
+
+    /** The export's former algorithm, which measured the whole line again for every word. */
+    private static List<String> measureWordByWord(String text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String word : text.split(" ")) {
+            String test = current.length() == 0 ? word : current + " " + word;
+            if (FONT.getStringWidth(test) / 1000 * 12 < WIDTH) {
+                current = new StringBuilder(test);
+            } else {
+                if (current.length() > 0) {
+                    lines.add(current.toString());
+                }
+                current = new StringBuilder(word);
+            }
+        }
+        if (current.length() > 0) {
+            lines.add(current.toString());
+        }
+        return lines;
+    }
+}
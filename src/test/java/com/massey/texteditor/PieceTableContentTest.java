@@ -0,0 +1,156 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.GapContent;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleContext;
+import javax.swing.undo.UndoableEdit;
+
+public class PieceTableContentTest {
+
+    @Test
+    void testStartsWithImpliedLineBreak() throws BadLocationException {
+        PieceTableContent content = new PieceTableContent();
+        assertEquals(1, content.length());
+        assertEquals("\n", content.getString(0, 1));
+    }
+
+    @Test
+    void testRandomEditsMatchGapContent() throws BadLocationException {
+        Random random = new Random(42);
+        PieceTableContent pieces = new PieceTableContent();
+        GapContent gap = new GapContent();
+        List<Position> piecePositions = new ArrayList<>();
+        List<Position> gapPositions = new ArrayList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            int length = gap.length();
+            int action = random.nextInt(10);
+            if (action < 5) {
+                int where = random.nextInt(length);
+                String text = randomText(random, random.nextInt(8) == 0 ? 20000 : 5);
+                pieces.insertString(where, text);
+                gap.insertString(where, text);
+            } else if (action < 8 && length > 1) {
+                int where = random.nextInt(length - 1);
+                int count = random.nextInt(Math.min(50, length - 1 - where)) + 1;
+                pieces.remove(where, count);
+                gap.remove(where, count);
+            } else {
+                int offset = random.nextInt(length + 1);
+                piecePositions.add(pieces.createPosition(offset));
+                gapPositions.add(gap.createPosition(offset));
+            }
+        }
+
+        assertEquals(gap.length(), pieces.length());
+        assertEquals(gap.getString(0, gap.length()), pieces.getString(0, pieces.length()));
+        for (int i = 0; i < gapPositions.size(); i++) {
+            assertEquals(gapPositions.get(i).getOffset(), piecePositions.get(i).getOffset(),
+                         "Position " + i + " should move like GapContent");
+        }
+    }
+
+    @Test
+    void testPartialReturnSegmentsCoverWholeText() throws BadLocationException {
+        PieceTableContent content = new PieceTableContent();
+        StringBuilder expected = new StringBuilder("\n");
+        for (int i = 0; i < 200; i++) {
+            String line = "line " + i + "\n";
+            int where = i % 3 == 0 ? 0 : content.length() - 1;
+            content.insertString(where, line);
+            expected.insert(where, line);
+        }
+
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        StringBuilder walked = new StringBuilder();
+        int offset = 0;
+        while (offset < content.length()) {
+            content.getChars(offset, content.length() - offset, segment);
+            assertTrue(segment.count > 0, "Partial segments should always make progress");
+            walked.append(segment.array, segment.offset, segment.count);
+            offset += segment.count;
+        }
+        assertEquals(expected.toString(), walked.toString());
+
+        segment.setPartialReturn(false);
+        content.getChars(3, 500, segment);
+        assertEquals(expected.substring(3, 503), segment.toString());
+    }
+
+    @Test
+    void testSnapshotIsUnaffectedByLaterEdits() throws BadLocationException {
+        PieceTableContent content = new PieceTableContent();
+        content.insertString(0, "hello world");
+        PieceTableContent.Snapshot snapshot = content.snapshot();
+
+        content.insertString(5, ",");
+        content.insertString(content.length() - 1, "!");
+        content.remove(0, 1);
+
+        assertEquals(11, snapshot.length());
+        assertEquals("hello world", snapshot.getString(0, 11));
+        Segment segment = new Segment();
+        snapshot.getChars(6, 5, segment);
+        assertEquals("world", segment.toString());
+        assertThrows(BadLocationException.class, () -> snapshot.getChars(6, 6, segment));
+        assertEquals("ello, world!", content.getString(0, content.length() - 1));
+    }
+
+    @Test
+    void testUndoAndRedo() throws BadLocationException {
+        PieceTableContent content = new PieceTableContent();
+        content.insertString(0, "hello world");
+        UndoableEdit insert = content.insertString(5, ",");
+        UndoableEdit remove = content.remove(0, 6);
+        assertEquals(" world\n", content.getString(0, content.length()));
+
+        remove.undo();
+        assertEquals("hello, world\n", content.getString(0, content.length()));
+        insert.undo();
+        assertEquals("hello world\n", content.getString(0, content.length()));
+        insert.redo();
+        remove.redo();
+        assertEquals(" world\n", content.getString(0, content.length()));
+    }
+
+    @Test
+    void testRejectsRemovingImpliedLineBreak() {
+        PieceTableContent content = new PieceTableContent();
+        assertThrows(BadLocationException.class, () -> content.remove(0, 1));
+        assertThrows(BadLocationException.class, () -> content.insertString(2, "x"));
+    }
+
+    @Test
+    void testBacksStyledDocument() throws BadLocationException {
+        DefaultStyledDocument document = new DefaultStyledDocument(new PieceTableContent(), new StyleContext());
+        document.insertString(0, "first\nsecond\nthird", null);
+        document.remove(2, 6);
+        document.insertString(document.getLength(), "\nfourth", null);
+
+        assertEquals("ficond\nthird\nfourth", document.getText(0, document.getLength()));
+        Element root = document.getDefaultRootElement();
+        assertEquals(3, root.getElementCount());
+        assertEquals(7, root.getElement(1).getStartOffset());
+        assertEquals(13, root.getElement(2).getStartOffset());
+    }
+
+    private static String randomText(Random random, int maxLength) {
+        int length = random.nextInt(maxLength) + 1;
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(random.nextInt(12) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProgressInputStreamTest {
+
+    @Test
+    void testReportsEachPercentageOnce() throws IOException {
+        List<Integer> reported = new ArrayList<>();
+        byte[] data = new byte[1000];
+        try (InputStream in = new ProgressInputStream(new ByteArrayInputStream(data), data.length, reported::add)) {
+            byte[] buffer = new byte[3];
+            while (in.read(buffer) >= 0) {
+                // Small reads cross most percentages more than once
+            }
+        }
+        assertEquals(100, reported.size());
+        assertEquals(1, (int) reported.get(0));
+        assertEquals(100, (int) reported.get(reported.size() - 1));
+    }
+
+    @Test
+    void testUnknownSizeReportsNothing() throws IOException {
+        List<Integer> reported = new ArrayList<>();
+        try (InputStream in = new ProgressInputStream(new ByteArrayInputStream(new byte[10]), -1, reported::add)) {
+            assertEquals(10, in.readAllBytes().length);
+        }
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    void testInterruptStopsReading() throws IOException {
+        try (InputStream in = new ProgressInputStream(new ByteArrayInputStream(new byte[10]), 10, p -> { })) {
+            assertEquals(0, in.read());
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(InterruptedIOException.class, in::read);
+            } finally {
+                Thread.interrupted();
+            }
+        }
+    }
+}
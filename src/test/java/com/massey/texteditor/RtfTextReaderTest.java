@@ -0,0 +1,75 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RtfTextReaderTest {
+
+    private static String read(String rtf) throws IOException {
+        StringBuilder text = new StringBuilder();
+        RtfTextReader.read(new ByteArrayInputStream(rtf.getBytes(StandardCharsets.ISO_8859_1)),
+                           (chars, length) -> text.append(chars, 0, length));
+        return text.toString();
+    }
+
+    @Test
+    void testSkipsControlWordsAndDestinations() throws IOException {
+        String rtf = "{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0\\fswiss Helvetica;}}"
+                + "{\\colortbl;\\red255\\green0\\blue0;}"
+                + "{\\info{\\title Not text}{\\author Nobody}}"
+                + "{\\*\\generator Some writer;}"
+                + "\\pard\\plain\\f0\\fs24 Hello, {\\b bold}\r\n world\\par\n"
+                + "Second\\tab line\\line end\\par}";
+        assertEquals("Hello, bold world\nSecond\tline\nend\n", read(rtf));
+    }
+
+    @Test
+    void testDecodesEscapesInTheDocumentCodePage() throws IOException {
+        assertEquals("caf\u00e9 \u201cq\u201d \\{x} \u2014 \u00a9",
+                     read("{\\rtf1\\ansi\\ansicpg1252 caf\\'e9 \\ldblquote q\\rdblquote  \\\\\\{x\\} \\emdash  \u00a9}"));
+        assertEquals("\u043f\u0440\u0438",
+                     read("{\\rtf1\\ansi\\ansicpg1251 \\'ef\\'f0\\'e8}"));
+    }
+
+    @Test
+    void testUnicodeSkipsFallbackCharacters() throws IOException {
+        assertEquals("\u4e2d\u6587 \u20ac!",
+                     read("{\\rtf1\\uc1\\u20013?\\u25991? {\\uc2\\u8364\\'80\\'80}!}"));
+        assertEquals("\uffe0x", read("{\\rtf1\\uc0\\u-32x}"));
+    }
+
+    @Test
+    void testStreamsLargeDocumentsInChunks() throws IOException {
+        StringBuilder rtf = new StringBuilder("{\\rtf1\\ansi ");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            rtf.append("{\\i line} ").append(i).append("\\par\n");
+            expected.append("line ").append(i).append('\n');
+        }
+        rtf.append('}');
+        List<Integer> chunks = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        RtfTextReader.read(new ByteArrayInputStream(rtf.toString().getBytes(StandardCharsets.US_ASCII)),
+                           (chars, length) -> {
+                               chunks.add(length);
+                               text.append(chars, 0, length);
+                           });
+        assertEquals(expected.toString(), text.toString());
+        assertTrue(chunks.size() > 1);
+        assertTrue(chunks.stream().allMatch(length -> length <= MappedTextReader.CHUNK_CHARS));
+    }
+
+    @Test
+    void testRtfModeFromConfig() {
+        assertFalse(TextImporter.RtfMode.fromConfig("styled").plainText(1L << 40));
+        assertTrue(TextImporter.RtfMode.fromConfig("plain").plainText(1));
+        assertTrue(TextImporter.RtfMode.fromConfig(null).plainText(TextImporter.PLAIN_RTF_BYTES + 1));
+        assertFalse(TextImporter.RtfMode.fromConfig("auto").plainText(TextImporter.PLAIN_RTF_BYTES));
+    }
+}
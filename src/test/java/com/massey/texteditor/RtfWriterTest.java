@@ -0,0 +1,113 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+public class RtfWriterTest {
+
+    @TempDir
+    Path folder;
+
+    static EditorDocument styledDocument() throws BadLocationException {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, "Plain {braces} \\ and café €中\n\tbold red\nend", null);
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        StyleConstants.setForeground(bold, Color.RED);
+        StyleConstants.setFontFamily(bold, "Serif");
+        StyleConstants.setFontSize(bold, 18);
+        int at = document.getText(0, document.getLength()).indexOf("bold");
+        document.setCharacterAttributes(at, "bold red".length(), bold, false);
+        SimpleAttributeSet italic = new SimpleAttributeSet();
+        StyleConstants.setItalic(italic, true);
+        StyleConstants.setUnderline(italic, true);
+        document.setCharacterAttributes(document.getLength() - 3, 3, italic, false);
+        return document;
+    }
+
+    private static byte[] write(EditorDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RtfWriter.write(StyledSnapshot.capture(document), out, chars -> { });
+        return out.toByteArray();
+    }
+
+    @Test
+    void testRoundTripsTextAndStylesThroughSwing() throws Exception {
+        EditorDocument document = styledDocument();
+        Path file = folder.resolve("styled.rtf");
+        Files.write(file, write(document));
+
+        EditorDocument read = new EditorDocument();
+        TextImporter.readRtf(file.toFile(), read, percent -> { });
+        String text = document.getText(0, document.getLength());
+        assertTrue(read.getText(0, read.getLength()).startsWith(text));
+
+        AttributeSet bold = read.getCharacterElement(text.indexOf("bold") + 1).getAttributes();
+        assertTrue(StyleConstants.isBold(bold));
+        assertEquals(Color.RED, StyleConstants.getForeground(bold));
+        assertEquals("Serif", StyleConstants.getFontFamily(bold));
+        assertEquals(18, StyleConstants.getFontSize(bold));
+        AttributeSet italic = read.getCharacterElement(text.length() - 2).getAttributes();
+        assertTrue(StyleConstants.isItalic(italic));
+        assertTrue(StyleConstants.isUnderline(italic));
+        assertFalse(StyleConstants.isBold(read.getCharacterElement(1).getAttributes()));
+    }
+
+    @Test
+    void testOutputIsAsciiAndReadsBackAsPlainText() throws Exception {
+        EditorDocument document = styledDocument();
+        byte[] rtf = write(document);
+        for (byte b : rtf) {
+            assertTrue(b >= 0, "RTF output should be 7-bit");
+        }
+        Path file = folder.resolve("plain.rtf");
+        Files.write(file, rtf);
+        StringBuilder text = new StringBuilder();
+        TextImporter.readRtfText(file.toFile(), (chars, length) -> text.append(chars, 0, length), percent -> { });
+        assertEquals(document.getText(0, document.getLength()), text.toString());
+    }
+
+    @Test
+    void testSavesAtomicallyWithProgress() throws Exception {
+        EditorDocument document = new EditorDocument();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+        document.insertString(0, expected.toString(), null);
+        StyledSnapshot snapshot = StyledSnapshot.capture(document);
+        // Later edits do not reach the snapshot
+        document.insertString(0, "edited ", null);
+
+        Path file = folder.resolve("big.rtf");
+        Files.write(file, "old".getBytes(StandardCharsets.US_ASCII));
+        long[] progress = new long[1];
+        AtomicTextWriter.replace(file, AtomicTextWriter.Sync.NEVER, channel -> {
+            OutputStream out = Channels.newOutputStream(channel);
+            RtfWriter.write(snapshot, out, chars -> progress[0] = chars);
+        });
+        assertEquals(expected.length(), progress[0]);
+        StringBuilder text = new StringBuilder();
+        TextImporter.readRtfText(file.toFile(), (chars, length) -> text.append(chars, 0, length), percent -> { });
+        assertEquals(expected.toString(), text.toString());
+        assertEquals(1, snapshot.runCount());
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(1, files.count(), "Temporary file should be renamed away");
+        }
+    }
+}
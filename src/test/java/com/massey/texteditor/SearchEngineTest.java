@@ -0,0 +1,117 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Locale;
+import javax.swing.text.BadLocationException;
+
+public class SearchEngineTest {
+
+    @Test
+    void testMatchesAcrossPieceBoundaries() throws BadLocationException {
+        String text = "abcabcab needle, ab needle needleneedle neeneedle";
+        // One character per piece puts a piece boundary inside every match
+        EditorDocument document = documentOf(text, 1);
+
+        SearchEngine engine = new SearchEngine("needle", true, false);
+        assertArrayEquals(naiveFindAll(text, "needle", true), engine.findAll(document));
+        assertEquals(text.indexOf("needle"), engine.findNext(document, 0));
+        assertEquals(text.indexOf("needle", 10), engine.findNext(document, 10));
+        assertEquals(-1, engine.findNext(document, text.lastIndexOf("needle") + 1));
+    }
+
+    @Test
+    void testCaseInsensitive() throws BadLocationException {
+        String text = "Straße STRASSE Needle nEEdle ÄÖÜ äöü";
+        EditorDocument document = documentOf(text, 3);
+
+        assertArrayEquals(new int[] {text.indexOf("Needle"), text.indexOf("nEEdle")},
+                          new SearchEngine("NEEDLE", false, false).findAll(document));
+        assertArrayEquals(new int[] {text.indexOf("ÄÖÜ"), text.indexOf("äöü")},
+                          new SearchEngine("äÖü", false, false).findAll(document));
+        assertEquals(0, new SearchEngine("NEEDLE", true, false).findAll(document).length);
+    }
+
+    @Test
+    void testWholeWord() throws BadLocationException {
+        String text = "cat concat cat_ cats (cat) cat";
+        EditorDocument document = documentOf(text, 4);
+
+        assertArrayEquals(new int[] {0, text.indexOf("(cat)") + 1, text.length() - 3},
+                          new SearchEngine("cat", true, true).findAll(document));
+    }
+
+    @Test
+    void testFindPreviousAcrossBlocks() throws BadLocationException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            text.append("line ").append(i).append(i % 7000 == 0 ? " marker\n" : "\n");
+        }
+        String content = text.toString();
+        EditorDocument document = documentOf(content, 4096);
+        SearchEngine engine = new SearchEngine("marker", true, false);
+
+        int[] expected = naiveFindAll(content, "marker", true);
+        assertArrayEquals(expected, engine.findAll(document));
+        int before = document.getLength();
+        for (int i = expected.length - 1; i >= 0; i--) {
+            int at = engine.findPrevious(document, before);
+            assertEquals(expected[i], at);
+            before = at;
+        }
+        assertEquals(-1, engine.findPrevious(document, before));
+    }
+
+    @Test
+    void testRandomTextAgainstNaiveSearch() throws BadLocationException {
+        java.util.Random random = new java.util.Random(42);
+        // Characters sharing a low byte check that colliding shifts stay safe
+        char[] alphabet = {'a', 'b', 'A', 'B', 'š', 'ɡ', ' '};
+        for (int round = 0; round < 50; round++) {
+            char[] chars = new char[2000];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String text = new String(chars);
+            int from = random.nextInt(1900);
+            String needle = text.substring(from, from + 1 + random.nextInt(5));
+            EditorDocument document = documentOf(text, 1 + random.nextInt(50));
+            for (boolean matchCase : new boolean[] {true, false}) {
+                assertArrayEquals(naiveFindAll(text, needle, matchCase),
+                                  new SearchEngine(needle, matchCase, false).findAll(document),
+                                  "needle " + needle + " matchCase " + matchCase);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyPatternRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SearchEngine("", true, false));
+    }
+
+    private static EditorDocument documentOf(String text, int pieceLength) throws BadLocationException {
+        EditorDocument document = new EditorDocument();
+        // Inserting back to front keeps every chunk in a piece of its own
+        int last = (text.length() - 1) / pieceLength * pieceLength;
+        for (int i = last; i >= 0; i -= pieceLength) {
+            document.insertString(0, text.substring(i, Math.min(text.length(), i + pieceLength)), null);
+        }
+        assertEquals(text, document.getText(0, document.getLength()));
+        return document;
+    }
+
+    private static int[] naiveFindAll(String text, String needle, boolean matchCase) {
+        if (!matchCase) {
+            text = text.toLowerCase(Locale.ROOT);
+            needle = needle.toLowerCase(Locale.ROOT);
+        }
+        int[] hits = new int[0];
+        for (int at = text.indexOf(needle); at >= 0; at = text.indexOf(needle, at + needle.length())) {
+            hits = Arrays.copyOf(hits, hits.length + 1);
+            hits[hits.length - 1] = at;
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,283 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import javax.swing.JTextPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+
+public class SyntaxHighlighterTest {
+
+    private static final String JAVA_SOURCE =
+        "public class Demo {\n" +
+        "    // counter\n" +
+        "    int count = 42;\n" +
+        "    String name = \"demo\";\n" +
+        "    void run() {\n" +
+        "        count++;\n" +
+        "    }\n" +
+        "}\n";
+
+    private Map<String, Color> colors;
+    private int linesLexed;
+    private SyntaxLexer javaLexer;
+
+    @BeforeEach
+    void setUp() {
+        colors = new HashMap<>();
+        colors.put("keyword", Color.BLUE);
+        colors.put("string", Color.GREEN);
+        colors.put("comment", Color.GRAY);
+        colors.put("number", Color.RED);
+        javaLexer = new JavaLexer() {
+            @Override
+            int lexLine(char[] text, int start, int end, int state, int docOffset, TokenBuffer out) {
+                linesLexed++;
+                return super.lexLine(text, start, end, state, docOffset, out);
+            }
+        };
+    }
+
+    @Test
+    void testFullPassStylesTokens() throws Exception {
+        EditorDocument document = createDocument(JAVA_SOURCE);
+        SyntaxHighlighter highlighter = new SyntaxHighlighter(document, colors);
+        int[] changes = new int[1];
+        document.addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+            }
+            public void removeUpdate(DocumentEvent e) {
+            }
+            public void changedUpdate(DocumentEvent e) {
+                changes[0]++;
+            }
+        });
+        SwingUtilities.invokeAndWait(() -> highlighter.highlightAll(javaLexer));
+        awaitIdle(highlighter);
+        assertEquals(1, changes[0], "A pass should reach the document as one change");
+
+        assertEquals(Color.BLUE, foreground(document, JAVA_SOURCE.indexOf("class")));
+        assertTrue(StyleConstants.isBold(document.getCharacterElement(0).getAttributes()));
+        assertEquals(Color.GRAY, foreground(document, JAVA_SOURCE.indexOf("counter")));
+        assertEquals(Color.RED, foreground(document, JAVA_SOURCE.indexOf("42")));
+        assertEquals(Color.GREEN, foreground(document, JAVA_SOURCE.indexOf("demo\"")));
+        assertEquals(Color.BLACK, foreground(document, JAVA_SOURCE.indexOf("count =")));
+    }
+
+    @Test
+    void testEditInsideLineOnlyRelexesThatLine() throws Exception {
+        EditorDocument document = createDocument(JAVA_SOURCE);
+        SyntaxHighlighter highlighter = attach(document);
+        SwingUtilities.invokeAndWait(() -> highlighter.highlightAll(javaLexer));
+        awaitIdle(highlighter);
+
+        linesLexed = 0;
+        SwingUtilities.invokeAndWait(() -> insert(document, JAVA_SOURCE.indexOf("42"), "1"));
+        awaitIdle(highlighter);
+        assertEquals(1, linesLexed, "Only the edited line should be lexed again");
+    }
+
+    @Test
+    void testOpeningBlockCommentRestylesFollowingLines() throws Exception {
+        EditorDocument document = createDocument(JAVA_SOURCE);
+        SyntaxHighlighter highlighter = attach(document);
+        SwingUtilities.invokeAndWait(() -> highlighter.highlightAll(javaLexer));
+        awaitIdle(highlighter);
+
+        int start = JAVA_SOURCE.indexOf("    int count");
+        SwingUtilities.invokeAndWait(() -> insert(document, start, "/*\n"));
+        awaitIdle(highlighter);
+        String text = document.getText(0, document.getLength());
+        assertEquals(Color.GRAY, foreground(document, text.indexOf("42")));
+        assertEquals(Color.GRAY, foreground(document, text.indexOf("void")));
+
+        int close = text.indexOf("    }\n");
+        SwingUtilities.invokeAndWait(() -> insert(document, close, "*/"));
+        awaitIdle(highlighter);
+        text = document.getText(0, document.getLength());
+        assertEquals(Color.GRAY, foreground(document, text.indexOf("count++")));
+        assertEquals(Color.BLACK, foreground(document, text.lastIndexOf("}")));
+    }
+
+    @Test
+    void testPythonTripleQuotedStringSpansLines() throws Exception {
+        String source = "x = \"\"\"first\nsecond\n\"\"\"\nif x: pass # done\n";
+        EditorDocument document = createDocument(source);
+        SyntaxHighlighter highlighter = new SyntaxHighlighter(document, colors);
+        SyntaxLexer python = new PythonLexer();
+        SwingUtilities.invokeAndWait(() -> highlighter.highlightAll(python));
+        awaitIdle(highlighter);
+
+        assertEquals(Color.GREEN, foreground(document, source.indexOf("second")));
+        assertEquals(Color.BLUE, foreground(document, source.indexOf("if")));
+        assertEquals(Color.GRAY, foreground(document, source.indexOf("done")));
+    }
+
+    @Test
+    void testBurstOfEditsEndsInSameStylesAsFreshPass() throws Exception {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            source.append(JAVA_SOURCE);
+        }
+        EditorDocument document = createDocument(source.toString());
+        SyntaxHighlighter highlighter = attach(document);
+        SwingUtilities.invokeAndWait(() -> highlighter.highlightAll(javaLexer));
+
+        // Edit while the initial pass is still running so jobs go stale
+        Random random = new Random(5);
+        String[] snippets = {"/*", "*/", "\"", "\n", "x", "// y\n", "42"};
+        for (int round = 0; round < 20; round++) {
+            SwingUtilities.invokeAndWait(() -> {
+                for (int i = 0; i < 10; i++) {
+                    int offset = random.nextInt(document.getLength());
+                    if (random.nextBoolean()) {
+                        insert(document, offset, snippets[random.nextInt(snippets.length)]);
+                    } else {
+                        remove(document, offset, Math.min(3, document.getLength() - offset));
+                    }
+                }
+            });
+        }
+        awaitIdle(highlighter);
+
+        String text = document.getText(0, document.getLength());
+        EditorDocument fresh = createDocument(text);
+        SyntaxHighlighter reference = new SyntaxHighlighter(fresh, colors);
+        SwingUtilities.invokeAndWait(() -> reference.highlightAll(new JavaLexer()));
+        awaitIdle(reference);
+        for (int offset = 0; offset < text.length(); offset++) {
+            assertEquals(describe(fresh, offset), describe(document, offset), "Style at " + offset);
+        }
+    }
+
+    @Test
+    void testVisibleLinesAreStyledBeforeTheRest() throws Exception {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            source.append(JAVA_SOURCE);
+        }
+        String text = source.toString();
+        EditorDocument document = createDocument(text);
+        SyntaxHighlighter highlighter = new SyntaxHighlighter(document, colors);
+        JTextPane pane = new JTextPane(document);
+        JViewport viewport = new JViewport();
+        SwingUtilities.invokeAndWait(() -> {
+            viewport.setView(pane);
+            viewport.setSize(400, 200);
+            pane.setSize(pane.getPreferredSize());
+            highlighter.setView(pane);
+            highlighter.setLazyDelay(-1);
+            highlighter.highlightAll(javaLexer);
+        });
+        int middle = text.length() / 2;
+        int last = text.lastIndexOf("class");
+        int lastLine = document.getDefaultRootElement().getElementIndex(last);
+        int middleLine = document.getDefaultRootElement().getElementIndex(middle);
+
+        awaitStyled(highlighter, 0);
+        assertEquals(Color.BLUE, foreground(document, text.indexOf("class")));
+        assertNotEquals(Color.BLUE, foreground(document, last));
+        SwingUtilities.invokeAndWait(() -> assertFalse(highlighter.isStyled(lastLine)));
+
+        // Scrolling to the end styles the lines that come into view
+        SwingUtilities.invokeAndWait(() -> {
+            viewport.setViewPosition(new Point(0, pane.getHeight() - viewport.getHeight()));
+            highlighter.viewportChanged();
+        });
+        awaitStyled(highlighter, lastLine);
+        assertEquals(Color.BLUE, foreground(document, last));
+        SwingUtilities.invokeAndWait(() -> assertFalse(highlighter.isStyled(middleLine)));
+
+        // Background styling catches up with everything else
+        SwingUtilities.invokeAndWait(() -> {
+            highlighter.setLazyDelay(0);
+            highlighter.viewportChanged();
+        });
+        awaitIdle(highlighter);
+        assertEquals(Color.BLUE, foreground(document, text.indexOf("class", middle)));
+    }
+
+    private static void awaitStyled(SyntaxHighlighter highlighter, int line) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        boolean[] styled = new boolean[1];
+        while (true) {
+            SwingUtilities.invokeAndWait(() -> styled[0] = highlighter.isStyled(line));
+            if (styled[0]) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Line " + line + " was not styled");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitIdle(SyntaxHighlighter highlighter) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        boolean[] idle = new boolean[1];
+        while (true) {
+            SwingUtilities.invokeAndWait(() -> idle[0] = highlighter.isIdle());
+            if (idle[0]) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Highlighter did not settle");
+            Thread.sleep(5);
+        }
+    }
+
+    private SyntaxHighlighter attach(EditorDocument document) {
+        SyntaxHighlighter highlighter = new SyntaxHighlighter(document, colors);
+        document.addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                highlighter.documentChanged(e);
+            }
+            public void removeUpdate(DocumentEvent e) {
+                highlighter.documentChanged(e);
+            }
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        return highlighter;
+    }
+
+    private static EditorDocument createDocument(String text) throws Exception {
+        EditorDocument document = new EditorDocument();
+        document.insertString(0, text, null);
+        return document;
+    }
+
+    private static void insert(EditorDocument document, int offset, String text) {
+        try {
+            document.insertString(offset, text, null);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private static void remove(EditorDocument document, int offset, int length) {
+        try {
+            document.remove(offset, length);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private static String describe(EditorDocument document, int offset) {
+        AttributeSet attributes = document.getCharacterElement(offset).getAttributes();
+        return StyleConstants.getForeground(attributes) + " bold=" + StyleConstants.isBold(attributes)
+                + " italic=" + StyleConstants.isItalic(attributes);
+    }
+
+    private static Color foreground(EditorDocument document, int offset) {
+        return StyleConstants.getForeground(document.getCharacterElement(offset).getAttributes());
+    }
+}
@@ -0,0 +1,100 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyntaxLexerTest {
+
+    @Test
+    void testKeywordTableMatchesOnlyKeywords() {
+        KeywordTable table = new KeywordTable(CppLexer.KEYWORDS);
+        for (String keyword : CppLexer.KEYWORDS) {
+            assertTrue(table.contains(keyword), keyword + " should be a keyword");
+        }
+        assertFalse(table.contains("integer"));
+        assertFalse(table.contains("Int"));
+        assertFalse(table.contains("x"));
+    }
+
+    @Test
+    void testJavaTokens() {
+        String line = "if (x == 0x1F) return \"a\\\"b\"; // done";
+        TokenBuffer tokens = lex(new JavaLexer(), line, SyntaxLexer.NORMAL);
+
+        assertToken(tokens, 0, line, "if", SyntaxLexer.KEYWORD);
+        assertToken(tokens, 1, line, "0x1F", SyntaxLexer.NUMBER);
+        assertToken(tokens, 2, line, "return", SyntaxLexer.KEYWORD);
+        assertToken(tokens, 3, line, "\"a\\\"b\"", SyntaxLexer.STRING);
+        assertToken(tokens, 4, line, "// done", SyntaxLexer.COMMENT);
+        assertEquals(5, tokens.size());
+    }
+
+    @Test
+    void testStateCarriesAcrossLines() {
+        TokenBuffer tokens = new TokenBuffer();
+        SyntaxLexer java = new JavaLexer();
+        char[] open = "int a; /* start".toCharArray();
+        int state = java.lexLine(open, 0, open.length, SyntaxLexer.NORMAL, 0, tokens);
+        assertEquals(SyntaxLexer.BLOCK_COMMENT, state);
+
+        char[] close = "still */ int b;".toCharArray();
+        tokens.clear();
+        state = java.lexLine(close, 0, close.length, state, 100, tokens);
+        assertEquals(SyntaxLexer.NORMAL, state);
+        assertEquals(100, tokens.start(0));
+        assertEquals("still */".length(), tokens.length(0));
+        assertEquals(SyntaxLexer.COMMENT, tokens.type(0));
+        assertEquals(SyntaxLexer.KEYWORD, tokens.type(1));
+    }
+
+    @Test
+    void testLanguageSpecificSyntax() {
+        assertEquals(SyntaxLexer.TRIPLE_SINGLE,
+                     new PythonLexer().lexLine("s = '''doc".toCharArray(), 0, 10, SyntaxLexer.NORMAL, 0, new TokenBuffer()));
+        assertEquals(SyntaxLexer.TEMPLATE,
+                     new JavaScriptLexer().lexLine("x = `a".toCharArray(), 0, 6, SyntaxLexer.NORMAL, 0, new TokenBuffer()));
+
+        String directive = "  #include <vector>";
+        TokenBuffer tokens = lex(new CppLexer(), directive, SyntaxLexer.NORMAL);
+        assertToken(tokens, 0, directive, "#include", SyntaxLexer.KEYWORD);
+    }
+
+    @Test
+    void testManyLinesLexAlike() {
+        String line = "    public static int compute(int value) { /* block */ return value * 42; } // note\n";
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            source.append(line);
+        }
+        char[] text = source.toString().toCharArray();
+        SyntaxLexer java = new JavaLexer();
+        TokenBuffer tokens = new TokenBuffer();
+        int expected = lex(java, line.substring(0, line.length() - 1), SyntaxLexer.NORMAL).size();
+
+        int state = SyntaxLexer.NORMAL;
+        int lineStart = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] == '\n') {
+                tokens.clear();
+                state = java.lexLine(text, lineStart, i, state, lineStart, tokens);
+                // A closed block comment and a line comment carry nothing into the next line
+                assertEquals(SyntaxLexer.NORMAL, state);
+                assertEquals(expected, tokens.size());
+                assertEquals(lineStart + 4, tokens.start(0));
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    private static TokenBuffer lex(SyntaxLexer lexer, String line, int state) {
+        TokenBuffer tokens = new TokenBuffer();
+        lexer.lexLine(line.toCharArray(), 0, line.length(), state, 0, tokens);
+        return tokens;
+    }
+
+    private static void assertToken(TokenBuffer tokens, int index, String line, String text, byte type) {
+        assertEquals(line.indexOf(text), tokens.start(index), "start of " + text);
+        assertEquals(text.length(), tokens.length(index), "length of " + text);
+        assertEquals(type, tokens.type(index), "type of " + text);
+    }
+}
@@ -0,0 +1,92 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class TextImporterTest {
+
+    private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+            + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\""
+            + " xmlns:style=\"urn:oasis:names:tc:opendocument:xmlns:style:1.0\">"
+            + "<office:automatic-styles><style:style style:name=\"P1\">ignored</style:style></office:automatic-styles>"
+            + "<office:body><office:text>";
+    private static final String TAIL = "</office:text></office:body></office:document-content>";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void testKeepsParagraphsAndSpacingElements() throws IOException {
+        String xml = HEAD
+                + "<text:h text:outline-level=\"1\">Title</text:h>"
+                + "<text:p>  First   <text:span>styled</text:span>\n  paragraph  </text:p>"
+                + "<text:p/>"
+                + "<text:p>a<text:s text:c=\"3\"/>b<text:tab/>c<text:line-break/>d <text:s/></text:p>"
+                + TAIL;
+        assertEquals("Title\nFirst styled paragraph\n\na   b\tc\nd  \n", TextImporter.readOdt(odt(xml), p -> { }));
+    }
+
+    @Test
+    void testStreamsLargeDocumentsInChunks() throws IOException {
+        StringBuilder xml = new StringBuilder(HEAD);
+        for (int i = 0; i < 20000; i++) {
+            xml.append("<text:p>Paragraph number ").append(i).append("</text:p>");
+        }
+        xml.append(TAIL);
+        int[] chunks = new int[1];
+        StringBuilder text = new StringBuilder();
+        TextImporter.readOdt(odt(xml.toString()), (chars, length) -> {
+            assertTrue(length <= MappedTextReader.CHUNK_CHARS);
+            chunks[0]++;
+            text.append(chars, 0, length);
+        }, p -> { });
+        assertTrue(chunks[0] > 1);
+        assertTrue(text.toString().startsWith("Paragraph number 0\nParagraph number 1\n"));
+        assertTrue(text.toString().endsWith("Paragraph number 19999\n"));
+    }
+
+    @Test
+    void testRejectsArchiveWithoutContent() throws IOException {
+        File file = folder.resolve("empty.odt").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file.toPath()))) {
+            zip.putNextEntry(new ZipEntry("mimetype"));
+            zip.closeEntry();
+        }
+        IOException e = assertThrows(IOException.class, () -> TextImporter.readOdt(file, p -> { }));
+        assertTrue(e.getMessage().contains("content.xml"));
+    }
+
+    @Test
+    void testIgnoresDoctypeEntities() throws IOException {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE x [<!ENTITY e SYSTEM \"file:///etc/passwd\">]>"
+                + HEAD.substring(HEAD.indexOf("?>") + 2) + "<text:p>safe</text:p>" + TAIL;
+        String text;
+        try {
+            text = TextImporter.readOdt(odt(xml), p -> { });
+        } catch (IOException e) {
+            // Refusing the document is fine too
+            return;
+        }
+        assertEquals("safe\n", text);
+    }
+
+    private File odt(String content) throws IOException {
+        File file = Files.createTempFile(folder, "doc", ".odt").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file.toPath()))) {
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return file;
+    }
+}
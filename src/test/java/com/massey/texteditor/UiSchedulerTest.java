@@ -0,0 +1,76 @@
+package com.massey.texteditor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UiSchedulerTest {
+
+    private final UiScheduler scheduler = new UiScheduler();
+
+    @AfterEach
+    void stopTimer() {
+        scheduler.stop();
+    }
+
+    private static long seconds(int seconds) {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    @Test
+    void testSchedulingAgainReplacesTheTask() {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            scheduler.schedule("clock", 1000, false, first::incrementAndGet);
+        }
+        scheduler.schedule("clock", 1000, false, second::incrementAndGet);
+        assertEquals(1, scheduler.taskCount());
+
+        scheduler.tick(System.nanoTime());
+        assertEquals(0, second.get(), "not due yet");
+        scheduler.tick(seconds(1));
+        assertEquals(0, first.get());
+        assertEquals(1, second.get());
+    }
+
+    @Test
+    void testRunsEachTaskAtItsOwnPeriod() {
+        AtomicInteger fast = new AtomicInteger();
+        AtomicInteger slow = new AtomicInteger();
+        scheduler.schedule("fast", 1000, false, fast::incrementAndGet);
+        scheduler.schedule("slow", 5000, true, slow::incrementAndGet);
+        for (int second = 1; second <= 10; second++) {
+            scheduler.tick(seconds(second));
+        }
+        assertEquals(10, fast.get());
+        assertEquals(2, slow.get());
+        assertTrue(scheduler.describe().startsWith("2 periodic tasks, last tick"), scheduler.describe());
+    }
+
+    @Test
+    void testScreenTasksPauseWhileHidden() {
+        AtomicInteger clock = new AtomicInteger();
+        AtomicInteger save = new AtomicInteger();
+        scheduler.schedule("clock", 1000, false, clock::incrementAndGet);
+        assertTrue(scheduler.isRunning());
+
+        scheduler.setHidden(true);
+        assertFalse(scheduler.isRunning(), "nothing left to run");
+        scheduler.schedule("save", 1000, true, save::incrementAndGet);
+        assertTrue(scheduler.isRunning());
+        scheduler.tick(seconds(2));
+        assertEquals(0, clock.get());
+        assertEquals(1, save.get());
+
+        // Shown again, the clock catches up at once
+        scheduler.setHidden(false);
+        assertEquals(1, clock.get());
+        scheduler.cancel("save");
+        scheduler.cancel("clock");
+        assertFalse(scheduler.isRunning());
+    }
+}